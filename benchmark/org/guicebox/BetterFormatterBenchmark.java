@@ -0,0 +1,48 @@
+package org.guicebox;
+
+import java.io.*;
+import java.util.concurrent.*;
+import java.util.logging.*;
+import java.util.logging.Level;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmarks {@link BetterFormatter}, which formats every log message including those on the heartbeat path.
+ * 
+ * @author willhains
+ */
+@State(Scope.Thread) @BenchmarkMode(Mode.AverageTime) @OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BetterFormatterBenchmark
+{
+	private final BetterFormatter _formatter = new BetterFormatter();
+	private final LogRecord _record = new LogRecord(Level.INFO, "Received heartbeat: 42 BetterFormatterBenchmark");
+	private final Logger _log = Logger.getAnonymousLogger();
+	
+	@Setup public void discardOutput()
+	{
+		// Publish through a stream handler, as the console handler does, so the formatter finds its caller
+		_log.setUseParentHandlers(false);
+		_log.addHandler(new StreamHandler(new OutputStream()
+		{
+			@Override public void write(int b)
+			{
+				// Discard
+			}
+			
+			@Override public void write(byte[] b, int off, int len)
+			{
+				// Discard
+			}
+		}, _formatter));
+	}
+	
+	@Benchmark public String format()
+	{
+		return _formatter.format(_record);
+	}
+	
+	@Benchmark public void log()
+	{
+		_log.info("Received heartbeat: 42 BetterFormatterBenchmark");
+	}
+}
@@ -0,0 +1,154 @@
+package org.guicebox.failover;
+
+import com.google.inject.*;
+import java.util.concurrent.*;
+import java.util.logging.*;
+import java.util.logging.Level;
+import org.guicebox.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.annotations.Scope;
+
+/**
+ * Benchmarks {@link NodeState} transitions driven through {@link Failover} by heartbeat events, with stub
+ * {@link Heart}, {@link Ping} and {@link Application} implementations that do nothing.
+ * 
+ * @author willhains
+ */
+@State(Scope.Thread) @BenchmarkMode(Mode.AverageTime) @OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FailoverBenchmark
+{
+	private final Node _node = new Node("192.168.0.2", "FailoverBenchmark");
+	private final Node _superiorNode = new Node("192.168.0.1", "FailoverBenchmark");
+	private final Heartbeat _superior = new Heartbeat("FailoverBenchmark", "PROD", _superiorNode);
+	
+	// Notify listeners on the calling thread, so that their dispatch is measured too
+	private final Executor _sameThread = new Executor()
+	{
+		public void execute(Runnable command)
+		{
+			command.run();
+		}
+	};
+	
+	private Failover _failover;
+	private HeartbeatListener _heartbeats;
+	
+	@Setup public void join()
+	{
+		// Measure the state machine, not the logging
+		Logger.getLogger(NodeState.class.getName()).setLevel(Level.OFF);
+		final Logger log = Logger.getAnonymousLogger();
+		log.setLevel(Level.OFF);
+		
+		_failover = new Failover("FailoverBenchmark", "PROD", NodeState.Impl.STANDBY, _node, new Provider<Heart>()
+		{
+			public Heart get()
+			{
+				return new StubHeart();
+			}
+		}, new Provider<Ping>()
+		{
+			public Ping get()
+			{
+				return new StubPing();
+			}
+		}, _sameThread, log);
+		_failover.addListener(new ClusterListener()
+		{
+			public void onClusterChange(String newState)
+			{
+				// Ignore
+			}
+		});
+		_failover.join(new Application()
+		{
+			public void start()
+			{
+				// Ignore
+			}
+			
+			public void stop()
+			{
+				// Ignore
+			}
+			
+			public void warm()
+			{
+				// Ignore
+			}
+			
+			public void cool()
+			{
+				// Ignore
+			}
+		});
+	}
+	
+	@TearDown public void leave()
+	{
+		_failover.leave();
+	}
+	
+	/**
+	 * A standby receiving the primary's heartbeat: the most frequent event in a healthy cluster.
+	 */
+	@Benchmark public void standbyHeartbeat()
+	{
+		_heartbeats.onHeartbeat(_superior);
+	}
+	
+	/**
+	 * A standby volunteering to become primary, then yielding to a superior node.
+	 */
+	@Benchmark public void volunteerAndYield()
+	{
+		_heartbeats.onHeartbeatTimeout();
+		_heartbeats.onHeartbeat(_superior);
+	}
+	
+	private final class StubHeart implements Heart
+	{
+		public void listen(HeartbeatListener heartbeatListener)
+		{
+			_heartbeats = heartbeatListener;
+		}
+		
+		public void beat()
+		{
+			// Ignore
+		}
+		
+		public void stopListening()
+		{
+			// Ignore
+		}
+		
+		public void stopBeating()
+		{
+			// Ignore
+		}
+		
+		public void stop()
+		{
+			// Ignore
+		}
+	}
+	
+	private static final class StubPing implements Ping
+	{
+		public void start(PingListener pingListener)
+		{
+			// Ignore
+		}
+		
+		public void stopPinging()
+		{
+			// Ignore
+		}
+		
+		public void stop()
+		{
+			// Ignore
+		}
+	}
+}
@@ -0,0 +1,79 @@
+package org.guicebox.failover;
+
+import java.nio.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmarks the {@link Heartbeat} and {@link Node} methods called for every heartbeat received.
+ * 
+ * @author willhains
+ */
+@State(Scope.Thread) @BenchmarkMode(Mode.AverageTime) @OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HeartbeatBenchmark
+{
+	private final Node _node = new Node("192.168.0.1", "7f8a6f62-bc46-4a58-9d61-3e7b6c2d5a10");
+	private final Node _peer = new Node("192.168.0.2", "2c1e4f0b-52e4-4c8b-a3d4-9f7e8a6b1c02");
+	private final Heartbeat _own = new Heartbeat("HeartbeatBenchmark", "PROD", _node);
+	private final Heartbeat _peerBeat = new Heartbeat("HeartbeatBenchmark", "PROD", _peer);
+	private final Heartbeat _otherCluster = new Heartbeat("AnotherCluster", "PROD", _peer);
+	
+	// Reused buffer, as in the transports
+	private final HeartbeatCodec _codec = new HeartbeatCodec();
+	private final ByteBuffer _buf = ByteBuffer.allocate(HeartbeatCodec.MAX_LENGTH);
+	private final ByteBuffer _foreign = ByteBuffer.allocate(HeartbeatCodec.MAX_LENGTH);
+	
+	@Setup public void encode() throws Exception
+	{
+		_codec.encode(_peerBeat, _buf);
+		_codec.encode(_otherCluster, _foreign);
+	}
+	
+	@Benchmark public boolean heartbeatEquals()
+	{
+		return _own.equals(_peerBeat);
+	}
+	
+	@Benchmark public int heartbeatHashCode()
+	{
+		return _peerBeat.hashCode();
+	}
+	
+	@Benchmark public boolean isSameCluster()
+	{
+		return _own.isSameCluster(_peerBeat);
+	}
+	
+	@Benchmark public boolean isOtherCluster()
+	{
+		return _own.isSameCluster(_otherCluster);
+	}
+	
+	@Benchmark public int nodeCompareTo()
+	{
+		return _node.compareTo(_peer);
+	}
+	
+	@Benchmark public boolean isSuperiorTo()
+	{
+		return _node.isSuperiorTo(_peer);
+	}
+	
+	@Benchmark public ByteBuffer codecEncode() throws Exception
+	{
+		_codec.encode(_own, _buf);
+		return _buf;
+	}
+	
+	@Benchmark public Heartbeat codecDecode()
+	{
+		_buf.rewind();
+		return _codec.decode(_buf);
+	}
+	
+	@Benchmark public Heartbeat codecRejectForeign()
+	{
+		_foreign.rewind();
+		return _codec.decode(_foreign, _own);
+	}
+}
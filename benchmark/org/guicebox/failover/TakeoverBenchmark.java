@@ -0,0 +1,414 @@
+package org.guicebox.failover;
+
+import com.google.inject.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.logging.*;
+import java.util.logging.Level;
+import org.guicebox.*;
+
+/**
+ * Measures how long a {@link Failover} cluster takes to recover from the death of its primary node. Each round starts
+ * a cluster of {@link GuiceBox} nodes in this JVM, connected by an in-memory {@link Transport} and a {@link Ping} that
+ * always succeeds, waits for a primary to be elected, kills it, and times the following:
+ * <ol>
+ * <li>detection - from the kill until the first surviving node becomes VOLUNTEER.</li>
+ * <li>volunteer - from that node becoming VOLUNTEER until it becomes PRIMARY.</li>
+ * <li>app start - from the kill until the new primary runs its {@link Start} method.</li>
+ * </ol>
+ * Usage: {@code TakeoverBenchmark [nodes] [rounds] [interval:tolerance[:poll] ...]}, where interval is the
+ * {@link HeartbeatInterval} in milliseconds and tolerance is the {@link HeartbeatTolerance}. Heartbeats are pushed to
+ * the {@link Heart} by default; add {@code :poll} to have it poll the transport instead.
+ * 
+ * @author willhains
+ */
+public class TakeoverBenchmark
+{
+	private static final String _APP_NAME = "TakeoverBenchmark", _ENV = "BENCH";
+	
+	public static void main(String[] args) throws Exception
+	{
+		final int nodes = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+		final int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+		final List<String> settings = args.length > 2
+			? Arrays.asList(args).subList(2, args.length)
+			: Arrays.asList("50:3", "100:3", "100:6", "250:3");
+		assert nodes >= 2 : "Need at least two nodes";
+		
+		// Only report problems
+		Logger.getLogger("").setLevel(Level.SEVERE);
+		
+		for(String setting : settings)
+		{
+			final String[] parts = setting.split(":");
+			final int interval = Integer.parseInt(parts[0]);
+			final int tolerance = Integer.parseInt(parts[1]);
+			final boolean push = parts.length < 3 || !"poll".equals(parts[2]);
+			
+			final Histogram detection = new Histogram(), volunteer = new Histogram(), appStart = new Histogram();
+			int contested = 0;
+			for(int round = 0; round < rounds; round++)
+			{
+				final Round r = new Round(nodes, interval, tolerance, push);
+				try
+				{
+					r.run();
+					detection.add(r.getDetection());
+					volunteer.add(r.getVolunteer());
+					appStart.add(r.getAppStart());
+					if(r.isContested()) contested++;
+				}
+				finally
+				{
+					r.shutdown();
+				}
+			}
+			
+			System.out.println();
+			System.out.println(
+				nodes + " nodes, interval " + interval + "ms, tolerance " + tolerance + ", "
+					+ (push ? "push" : "poll") + ", " + rounds + " rounds (" + contested + " contested)");
+			detection.print("detection");
+			volunteer.print("volunteer");
+			appStart.print("app start");
+		}
+	}
+	
+	// One cluster, from election of the first primary until a survivor has taken over from it
+	private static final class Round
+	{
+		private final int _window;
+		private final List<Member> _members = new ArrayList<Member>();
+		private final CountDownLatch _started;
+		private volatile long _killedAt;
+		private Member _killed;
+		
+		Round(int nodes, int interval, int tolerance, boolean push)
+		{
+			_window = interval * tolerance;
+			_started = new CountDownLatch(1);
+			final List<LoopbackTransport> network = new CopyOnWriteArrayList<LoopbackTransport>();
+			for(int i = 1; i <= nodes; i++)
+			{
+				_members.add(new Member(i, network, push, interval, tolerance));
+			}
+		}
+		
+		void run() throws InterruptedException, TimeoutException
+		{
+			// Start all nodes and wait for the cluster to settle on a primary
+			for(Member member : _members)
+			{
+				member.start();
+			}
+			final long deadline = System.currentTimeMillis() + 20L * _window + 10000L;
+			while((_killed = _settledPrimary()) == null)
+			{
+				if(System.currentTimeMillis() > deadline) throw new TimeoutException("No primary elected");
+				Thread.sleep(1);
+			}
+			
+			// Kill the primary as if the process had died, then wait for a survivor to take over
+			_killedAt = System.nanoTime();
+			_killed.kill();
+			if(!_started.await(20L * _window + 10000L, TimeUnit.MILLISECONDS))
+			{
+				throw new TimeoutException("No survivor took over");
+			}
+			
+			// Give a contender time to yield
+			Thread.sleep(_window);
+		}
+		
+		// The primary, if it has started and all other nodes are standing by
+		private Member _settledPrimary()
+		{
+			Member primary = null;
+			for(Member member : _members)
+			{
+				final String state = member.getState();
+				if("PRIMARY".equals(state) && member.hasStarted() && primary == null) primary = member;
+				else if(!"STANDBY".equals(state)) return null;
+			}
+			return primary;
+		}
+		
+		private Member _newPrimary()
+		{
+			for(Member member : _members)
+			{
+				if(member != _killed && member.hasStarted()) return member;
+			}
+			throw new IllegalStateException("No new primary");
+		}
+		
+		long getDetection()
+		{
+			long first = Long.MAX_VALUE;
+			for(Member member : _members)
+			{
+				if(member != _killed && member._volunteerAt != 0) first = Math.min(first, member._volunteerAt);
+			}
+			return first - _killedAt;
+		}
+		
+		long getVolunteer()
+		{
+			final Member primary = _newPrimary();
+			return primary._primaryAt - primary._volunteerAt;
+		}
+		
+		long getAppStart()
+		{
+			return _newPrimary()._startedAt - _killedAt;
+		}
+		
+		// More than one survivor started the application
+		boolean isContested()
+		{
+			int started = 0;
+			for(Member member : _members)
+			{
+				if(member != _killed && member.hasStarted()) started++;
+			}
+			return started > 1;
+		}
+		
+		void shutdown()
+		{
+			for(Member member : _members)
+			{
+				member.kill();
+			}
+		}
+		
+		// A GuiceBox node in the cluster, with probes for the times of interest
+		private final class Member implements ClusterListener
+		{
+			private final LoopbackTransport _transport;
+			private final GuiceBox _guicebox;
+			private volatile String _state;
+			private volatile long _volunteerAt, _primaryAt, _startedAt;
+			
+			Member(int id, List<LoopbackTransport> network, boolean push, int interval, int tolerance)
+			{
+				final Node node = new Node("10.0.0." + id, Integer.toString(id));
+				final Provider<Heartbeat> pulse = new Provider<Heartbeat>()
+				{
+					public Heartbeat get()
+					{
+						return new Heartbeat(_APP_NAME, _ENV, node);
+					}
+				};
+				_transport = push ? new PushLoopbackTransport(network) : new LoopbackTransport(network);
+				final NonBlockingHeart heart = new NonBlockingHeart(pulse, _transport, Logger.getAnonymousLogger());
+				heart.setHeartbeatInterval(interval);
+				heart.setHeartbeatTolerance(tolerance);
+				
+				final Failover failover = new Failover(_APP_NAME, _ENV, node, new Provider<Heart>()
+				{
+					public Heart get()
+					{
+						return heart;
+					}
+				}, new Provider<Ping>()
+				{
+					public Ping get()
+					{
+						return new AlwaysUp();
+					}
+				}, Logger.getAnonymousLogger());
+				failover.addListener(this);
+				
+				_guicebox = Guice.createInjector(new AbstractModule()
+				{
+					@Override protected void configure()
+					{
+						bind(Cluster.class).toInstance(failover);
+						bind(Member.class).toInstance(Member.this);
+					}
+				}).getInstance(GuiceBox.class);
+			}
+			
+			void start()
+			{
+				_guicebox.start();
+			}
+			
+			void kill()
+			{
+				_transport.disconnect();
+				_guicebox.kill();
+			}
+			
+			String getState()
+			{
+				return _state;
+			}
+			
+			boolean hasStarted()
+			{
+				return _startedAt != 0;
+			}
+			
+			public void onClusterChange(String newState)
+			{
+				_state = newState;
+				if(_killedAt == 0) return;
+				final long now = System.nanoTime();
+				if("VOLUNTEER".equals(newState) && _volunteerAt == 0) _volunteerAt = now;
+				if("PRIMARY".equals(newState) && _primaryAt == 0) _primaryAt = now;
+			}
+			
+			@Start public void started()
+			{
+				_startedAt = System.nanoTime();
+				if(_killedAt != 0) _started.countDown();
+			}
+		}
+	}
+	
+	// Delivers heartbeats to every other connected transport in the same JVM
+	private static class LoopbackTransport implements Transport
+	{
+		private final List<LoopbackTransport> _network;
+		protected final BlockingQueue<Heartbeat> _inbox = new LinkedBlockingQueue<Heartbeat>();
+		
+		LoopbackTransport(List<LoopbackTransport> network)
+		{
+			_network = network;
+			_network.add(this);
+		}
+		
+		public void send(Heartbeat hb)
+		{
+			// A disconnected node's heartbeats go nowhere, as if its process had died
+			if(!_network.contains(this)) return;
+			for(LoopbackTransport peer : _network)
+			{
+				if(peer != this) peer._inbox.offer(hb);
+			}
+		}
+		
+		public Heartbeat receive(Heartbeat ownHeartbeat, int timeout) throws TimeoutException
+		{
+			try
+			{
+				final Heartbeat hb = _inbox.poll(timeout, TimeUnit.MILLISECONDS);
+				if(hb == null) throw new TimeoutException();
+				return hb;
+			}
+			catch(InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new TimeoutException();
+			}
+		}
+		
+		public void disconnect()
+		{
+			_network.remove(this);
+		}
+		
+		@Override public String toString()
+		{
+			return "loopback";
+		}
+	}
+	
+	private static final class PushLoopbackTransport extends LoopbackTransport implements PushTransport
+	{
+		PushLoopbackTransport(List<LoopbackTransport> network)
+		{
+			super(network);
+		}
+		
+		public void receive(Heartbeat ownHeartbeat, HeartbeatListener listener)
+		{
+			try
+			{
+				while(true)
+				{
+					listener.onHeartbeat(_inbox.take());
+				}
+			}
+			catch(InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+	
+	// The network is always available
+	private static final class AlwaysUp implements Ping
+	{
+		public void start(PingListener pingListener)
+		{
+			pingListener.onPing();
+		}
+		
+		public void stopPinging()
+		{
+			// Ignore
+		}
+		
+		public void stop()
+		{
+			// Ignore
+		}
+	}
+	
+	// Collects latency samples in nanoseconds, and prints their distribution in milliseconds
+	private static final class Histogram
+	{
+		private static final int _BUCKETS = 10, _BAR_WIDTH = 40;
+		private final List<Long> _samples = new ArrayList<Long>();
+		
+		void add(long nanos)
+		{
+			_samples.add(nanos);
+		}
+		
+		private long _percentile(List<Long> sorted, int percent)
+		{
+			final int index = (int)Math.ceil(percent / 100.0 * sorted.size()) - 1;
+			return sorted.get(Math.max(0, index));
+		}
+		
+		private static String _millis(long nanos)
+		{
+			return String.format("%8.1f", nanos / 1e6);
+		}
+		
+		void print(String name)
+		{
+			final List<Long> sorted = new ArrayList<Long>(_samples);
+			Collections.sort(sorted);
+			if(sorted.isEmpty()) return;
+			final long min = sorted.get(0), max = sorted.get(sorted.size() - 1);
+			System.out.println(
+				String.format("  %-10s", name) + " min" + _millis(min) + "  p50" + _millis(_percentile(sorted, 50))
+					+ "  p90" + _millis(_percentile(sorted, 90)) + "  p99" + _millis(_percentile(sorted, 99))
+					+ "  max" + _millis(max) + " (ms)");
+			
+			// Equal-width buckets between min and max
+			final int[] counts = new int[_BUCKETS];
+			final double width = Math.max(1, max - min) / (double)_BUCKETS;
+			int highest = 0;
+			for(long sample : sorted)
+			{
+				final int bucket = Math.min(_BUCKETS - 1, (int)((sample - min) / width));
+				highest = Math.max(highest, ++counts[bucket]);
+			}
+			for(int i = 0; i < _BUCKETS; i++)
+			{
+				final StringBuilder bar = new StringBuilder();
+				for(int j = counts[i] * _BAR_WIDTH / highest; j > 0; j--)
+				{
+					bar.append('#');
+				}
+				System.out.println("    " + _millis(min + (long)(i * width)) + " | " + bar + " " + counts[i]);
+			}
+		}
+	}
+}
@@ -0,0 +1,61 @@
+package org.guicebox.failover.udp;
+
+import java.net.*;
+import java.net.InetAddress;
+import java.nio.*;
+import java.util.concurrent.*;
+import org.guicebox.failover.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmarks conversion of heartbeats to and from {@link DatagramPacket}s by {@link UdpTransport}, and to and from the
+ * reused direct buffers of {@link NioTransport}.
+ * 
+ * @author willhains
+ */
+@State(Scope.Thread) @BenchmarkMode(Mode.AverageTime) @OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class UdpTransportBenchmark
+{
+	private final Heartbeat _own = new Heartbeat("UdpTransportBenchmark", "PROD", new Node(
+		"192.168.0.1",
+		"7f8a6f62-bc46-4a58-9d61-3e7b6c2d5a10"));
+	private final Heartbeat _peer = new Heartbeat("UdpTransportBenchmark", "PROD", new Node(
+		"192.168.0.2",
+		"2c1e4f0b-52e4-4c8b-a3d4-9f7e8a6b1c02"));
+	private InetAddress _group;
+	private DatagramPacket _packet;
+	
+	// Reused codec and direct buffers, as in NioTransport
+	private final HeartbeatCodec _codec = new HeartbeatCodec();
+	private final ByteBuffer _sendBuffer = ByteBuffer.allocateDirect(HeartbeatCodec.MAX_LENGTH);
+	private final ByteBuffer _receiveBuffer = ByteBuffer.allocateDirect(HeartbeatCodec.MAX_LENGTH);
+	
+	@Setup public void receive() throws Exception
+	{
+		_group = InetAddress.getByName("230.0.0.1");
+		_packet = UdpTransport.createPacket(_peer, _group, 9797);
+		_codec.encode(_peer, _receiveBuffer);
+	}
+	
+	@Benchmark public DatagramPacket encode() throws Exception
+	{
+		return UdpTransport.createPacket(_own, _group, 9797);
+	}
+	
+	@Benchmark public Heartbeat decode()
+	{
+		return UdpTransport.decodePacket(_packet);
+	}
+	
+	@Benchmark public ByteBuffer encodeDirect() throws Exception
+	{
+		_codec.encode(_own, _sendBuffer);
+		return _sendBuffer;
+	}
+	
+	@Benchmark public Heartbeat decodeDirect()
+	{
+		_receiveBuffer.rewind();
+		return _codec.decode(_receiveBuffer, _own);
+	}
+}
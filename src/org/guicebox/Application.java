@@ -10,4 +10,14 @@ public interface Application
 	void start();
 	
 	void stop();
+	
+	/**
+	 * Prepares the application to be started quickly, by calling its {@link Warm} methods.
+	 */
+	void warm();
+	
+	/**
+	 * Releases what was prepared by {@link #warm()}, by calling the application's {@link Cool} methods.
+	 */
+	void cool();
 }
\ No newline at end of file
@@ -35,4 +35,15 @@ import com.google.inject.*;
 	 * Stops notification to the specified listener.
 	 */
 	void removeListener(ClusterListener listener);
+	
+	/**
+	 * Notifies the specified listener of each transition of the state of the Cluster. Wrap the listener in a
+	 * {@link CoalescingListener} to be notified of bursts of transitions as one.
+	 */
+	void addChangeListener(ClusterChangeListener listener);
+	
+	/**
+	 * Stops notification to the specified listener.
+	 */
+	void removeChangeListener(ClusterChangeListener listener);
 }
@@ -0,0 +1,103 @@
+package org.guicebox;
+
+import net.jcip.annotations.*;
+
+/**
+ * A transition of this node from one {@link Cluster} state to another, with what caused it.
+ * 
+ * @author willhains
+ */
+@Immutable public final class ClusterChange
+{
+	/**
+	 * The kind of event that caused a transition.
+	 */
+	public enum Cause
+	{
+		/**
+		 * The node joined the cluster.
+		 */
+		JOIN,
+		
+		/**
+		 * The node left the cluster.
+		 */
+		LEAVE,
+		
+		/**
+		 * Network connectivity was confirmed.
+		 */
+		PING,
+		
+		/**
+		 * Network connectivity was lost.
+		 */
+		PING_TIMEOUT,
+		
+		/**
+		 * A heartbeat was received from another node.
+		 */
+		HEARTBEAT,
+		
+		/**
+		 * Heartbeats from other nodes stopped.
+		 */
+		HEARTBEAT_TIMEOUT
+	}
+	
+	private final String _oldState, _newState;
+	private final Cause _cause;
+	private final String _peer;
+	private final long _time;
+	
+	public ClusterChange(String oldState, String newState, Cause cause, String peer, long time)
+	{
+		_oldState = oldState;
+		_newState = newState;
+		_cause = cause;
+		_peer = peer;
+		_time = time;
+	}
+	
+	/**
+	 * @return the state before the transition ({@code null} if the node was not in the cluster).
+	 */
+	public String getOldState()
+	{
+		return _oldState;
+	}
+	
+	/**
+	 * @return the state after the transition ({@code null} if the node has left the cluster).
+	 */
+	public String getNewState()
+	{
+		return _newState;
+	}
+	
+	public Cause getCause()
+	{
+		return _cause;
+	}
+	
+	/**
+	 * @return the node whose heartbeat caused the transition, or {@code null} if it wasn't caused by a heartbeat.
+	 */
+	public String getPeer()
+	{
+		return _peer;
+	}
+	
+	/**
+	 * @return the time of the transition, in milliseconds since the epoch.
+	 */
+	public long getTime()
+	{
+		return _time;
+	}
+	
+	@Override public String toString()
+	{
+		return _oldState + " -> " + _newState + " (" + _cause + (_peer == null ? "" : " from " + _peer) + ")";
+	}
+}
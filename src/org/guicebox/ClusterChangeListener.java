@@ -0,0 +1,12 @@
+package org.guicebox;
+
+/**
+ * Listener interface for classes who want the details of each cluster state transition. Unlike
+ * {@link ClusterListener}, only called when the state actually changes.
+ * 
+ * @author willhains
+ */
+public interface ClusterChangeListener
+{
+	void onClusterChange(ClusterChange change);
+}
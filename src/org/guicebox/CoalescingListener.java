@@ -0,0 +1,77 @@
+package org.guicebox;
+
+import static java.util.concurrent.TimeUnit.*;
+import static org.guicebox.NamedExecutors.*;
+
+import java.util.concurrent.*;
+import net.jcip.annotations.*;
+
+/**
+ * Collapses bursts of {@link ClusterChange}s into one. The first change in a burst starts a window of the specified
+ * number of milliseconds; at the end of the window, the wrapped listener gets a single change from the state before
+ * the burst to the state after it, with the cause, peer and time of the last change. If the burst ends in the state it
+ * started from, the wrapped listener is not called at all.
+ * 
+ * @author willhains
+ */
+@ThreadSafe public final class CoalescingListener implements ClusterChangeListener
+{
+	private final ClusterChangeListener _listener;
+	private final long _window;
+	private final ScheduledExecutorService _timer;
+	
+	// The burst in progress, if any
+	@GuardedBy("this") private ClusterChange _first, _last;
+	
+	public CoalescingListener(ClusterChangeListener listener, long window)
+	{
+		this(listener, window, _newTimer());
+	}
+	
+	// Called by unit tests
+	CoalescingListener(ClusterChangeListener listener, long window, ScheduledExecutorService timer)
+	{
+		assert window > 0 : "Coalescing window must be > 0";
+		_listener = listener;
+		_window = window;
+		_timer = timer;
+	}
+	
+	// Exits when idle so it never keeps the JVM alive
+	private static ScheduledExecutorService _newTimer()
+	{
+		final ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, single("Cluster listener timer"));
+		timer.setKeepAliveTime(1, SECONDS);
+		timer.allowCoreThreadTimeOut(true);
+		return timer;
+	}
+	
+	private final Runnable _flush = new Runnable()
+	{
+		public void run()
+		{
+			final ClusterChange first, last;
+			synchronized(CoalescingListener.this)
+			{
+				first = _first;
+				last = _last;
+				_first = _last = null;
+			}
+			final String oldState = first.getOldState(), newState = last.getNewState();
+			if(oldState == null ? newState == null : oldState.equals(newState)) return;
+			_listener.onClusterChange(
+				new ClusterChange(oldState, newState, last.getCause(), last.getPeer(), last.getTime()));
+		}
+	};
+	
+	public void onClusterChange(ClusterChange change)
+	{
+		synchronized(this)
+		{
+			_last = change;
+			if(_first != null) return;
+			_first = change;
+		}
+		_timer.schedule(_flush, _window, MILLISECONDS);
+	}
+}
@@ -0,0 +1,287 @@
+package org.guicebox;
+
+import static java.util.concurrent.TimeUnit.*;
+import static org.guicebox.NamedExecutors.*;
+
+import com.google.inject.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.logging.*;
+
+/**
+ * Runs the commands produced by a {@link CommandFactory}. {@link Start} commands are run in an order that honours
+ * their declared {@link Start#after()} dependencies. If {@link StartThreads} is bound, independent start commands are
+ * run concurrently on a bounded pool; otherwise they are run one at a time on the calling thread.
+ * <p>
+ * {@link Stop} and {@link Kill} commands are bounded by their own {@link Stop#timeout()} or {@link Kill#timeout()}. If
+ * {@link StopTimeout} is bound, they are run concurrently and the whole transition is bounded by it as well.
+ * 
+ * @author willhains
+ */
+final class CommandRunner
+{
+	private final Logger _log;
+	
+	// Pool for running independent start commands concurrently (null means run them on the calling thread)
+	private volatile ExecutorService _startPool;
+	
+	// Pool for running stop & kill commands that have deadlines
+	private final ExecutorService _stopPool;
+	
+	// Deadline for all stop (or kill) commands to complete (zero means no deadline)
+	private volatile int _stopTimeout;
+	
+	@Inject CommandRunner(Logger log)
+	{
+		this(null, newCachedThreadPool("GuiceBox stop"), log);
+	}
+	
+	// Called by unit tests
+	CommandRunner(ExecutorService startPool, ExecutorService stopPool, Logger log)
+	{
+		_startPool = startPool;
+		_stopPool = stopPool;
+		_log = log;
+	}
+	
+	@Inject(optional = true) void setStartThreads(@StartThreads int threads)
+	{
+		assert threads > 0 : "Start threads must be > 0";
+		_startPool = newFixedThreadPool(threads, "GuiceBox start");
+	}
+	
+	@Inject(optional = true) void setStopTimeout(@StopTimeout int timeout)
+	{
+		assert timeout > 0 : "Stop timeout must be > 0";
+		_stopTimeout = timeout;
+	}
+	
+	/**
+	 * Calls all of the specified start commands, returning only when they have all completed successfully.
+	 * 
+	 * @throws GuiceBoxException if the declared dependencies between the commands are circular.
+	 * @throws Exception the error thrown by the first command to fail. No further commands are started after a failure,
+	 * but commands that are already running are allowed to complete.
+	 */
+	void start(Iterable<Callable<?>> commands) throws Exception
+	{
+		// Work out which commands must wait for which
+		final Map<Callable<?>, Set<Callable<?>>> waitingFor = new LinkedHashMap<Callable<?>, Set<Callable<?>>>();
+		final Map<Callable<?>, List<Callable<?>>> waitedOnBy = new HashMap<Callable<?>, List<Callable<?>>>();
+		for(Callable<?> cmd : commands)
+		{
+			waitingFor.put(cmd, new HashSet<Callable<?>>());
+			waitedOnBy.put(cmd, new ArrayList<Callable<?>>());
+		}
+		for(Callable<?> cmd : waitingFor.keySet())
+		{
+			if(cmd instanceof DependentCommand) for(Callable<?> other : waitingFor.keySet())
+			{
+				if(((DependentCommand)cmd).dependsOn(other))
+				{
+					waitingFor.get(cmd).add(other);
+					waitedOnBy.get(other).add(cmd);
+				}
+			}
+		}
+		
+		// Refuse to start anything if the dependencies can never be satisfied
+		final List<Callable<?>> order = _sort(waitingFor, waitedOnBy);
+		
+		final ExecutorService pool = _startPool;
+		if(pool == null)
+		{
+			// Run start commands one at a time
+			for(Callable<?> cmd : order)
+			{
+				cmd.call();
+			}
+		}
+		else
+		{
+			// Run start commands as soon as their dependencies have completed
+			_startConcurrently(pool, waitingFor, waitedOnBy);
+		}
+	}
+	
+	// Topological sort of the commands, preserving the original order where there are no dependencies
+	private static List<Callable<?>> _sort(
+		Map<Callable<?>, Set<Callable<?>>> waitingFor,
+		Map<Callable<?>, List<Callable<?>>> waitedOnBy) throws GuiceBoxException
+	{
+		final Map<Callable<?>, Integer> outstanding = new HashMap<Callable<?>, Integer>();
+		final LinkedList<Callable<?>> ready = new LinkedList<Callable<?>>();
+		for(Map.Entry<Callable<?>, Set<Callable<?>>> entry : waitingFor.entrySet())
+		{
+			outstanding.put(entry.getKey(), entry.getValue().size());
+			if(entry.getValue().isEmpty()) ready.add(entry.getKey());
+		}
+		final List<Callable<?>> order = new ArrayList<Callable<?>>(waitingFor.size());
+		while(!ready.isEmpty())
+		{
+			final Callable<?> cmd = ready.removeFirst();
+			order.add(cmd);
+			for(Callable<?> dependent : waitedOnBy.get(cmd))
+			{
+				final int remaining = outstanding.get(dependent) - 1;
+				outstanding.put(dependent, remaining);
+				if(remaining == 0) ready.add(dependent);
+			}
+		}
+		if(order.size() < waitingFor.size())
+		{
+			final Set<Callable<?>> circular = new LinkedHashSet<Callable<?>>(waitingFor.keySet());
+			circular.removeAll(order);
+			throw new GuiceBoxException("Circular @Start dependencies: " + circular);
+		}
+		return order;
+	}
+	
+	@SuppressWarnings("unchecked") private void _startConcurrently(
+		ExecutorService pool,
+		Map<Callable<?>, Set<Callable<?>>> waitingFor,
+		Map<Callable<?>, List<Callable<?>>> waitedOnBy) throws Exception
+	{
+		final CompletionService<Object> completed = new ExecutorCompletionService<Object>(pool);
+		final Map<Future<Object>, Callable<?>> running = new HashMap<Future<Object>, Callable<?>>();
+		for(Map.Entry<Callable<?>, Set<Callable<?>>> entry : waitingFor.entrySet())
+		{
+			final Callable<?> cmd = entry.getKey();
+			if(entry.getValue().isEmpty()) running.put(completed.submit((Callable<Object>)cmd), cmd);
+		}
+		
+		Throwable failure = null;
+		while(!running.isEmpty())
+		{
+			final Future<Object> done = completed.take();
+			final Callable<?> cmd = running.remove(done);
+			try
+			{
+				done.get();
+				_log.finest("GuiceBox: completed " + cmd);
+			}
+			catch(ExecutionException e)
+			{
+				// Remember the first failure, and let running commands finish
+				_log.fine("GuiceBox: failed " + cmd + ": " + e.getCause());
+				if(failure == null) failure = e.getCause();
+				continue;
+			}
+			
+			// Start any commands that were waiting only for this one
+			if(failure == null) for(Callable<?> dependent : waitedOnBy.get(cmd))
+			{
+				final Set<Callable<?>> remaining = waitingFor.get(dependent);
+				remaining.remove(cmd);
+				if(remaining.isEmpty()) running.put(completed.submit((Callable<Object>)dependent), dependent);
+			}
+		}
+		
+		// Report the failure to the caller
+		if(failure instanceof Exception) throw (Exception)failure;
+		if(failure instanceof Error) throw (Error)failure;
+		if(failure != null) throw new GuiceBoxException("Start failed", failure);
+	}
+	
+	/**
+	 * Calls all of the specified stop or kill commands. Exceptions are logged, and do not prevent the remaining commands
+	 * from being called. Commands still running after their deadline are interrupted.
+	 * 
+	 * @return the commands that overran their deadlines.
+	 */
+	List<Callable<?>> stop(Iterable<Callable<?>> commands)
+	{
+		final List<Callable<?>> overran = new ArrayList<Callable<?>>();
+		final int stopTimeout = _stopTimeout;
+		if(stopTimeout <= 0)
+		{
+			// Run commands one at a time, bounded only by their own deadlines
+			for(Callable<?> cmd : commands)
+			{
+				final long timeout = _timeoutOf(cmd);
+				if(timeout > 0)
+				{
+					if(!_await(cmd, _stopPool.submit(cmd), System.nanoTime() + MILLISECONDS.toNanos(timeout)))
+					{
+						overran.add(cmd);
+					}
+					continue;
+				}
+				try
+				{
+					cmd.call();
+				}
+				catch(Exception e)
+				{
+					// Log and keep going
+					_log.log(Level.SEVERE, "Exception while attempting to " + cmd, e);
+				}
+			}
+		}
+		else
+		{
+			// Run all commands together, bounded by the overall deadline
+			final long start = System.nanoTime();
+			final long stopDeadline = start + MILLISECONDS.toNanos(stopTimeout);
+			final Map<Callable<?>, Future<?>> running = new LinkedHashMap<Callable<?>, Future<?>>();
+			for(Callable<?> cmd : commands)
+			{
+				running.put(cmd, _stopPool.submit(cmd));
+			}
+			for(Map.Entry<Callable<?>, Future<?>> entry : running.entrySet())
+			{
+				final Callable<?> cmd = entry.getKey();
+				final long timeout = _timeoutOf(cmd);
+				final long deadline = timeout > 0 //
+					? Math.min(stopDeadline, start + MILLISECONDS.toNanos(timeout))
+					: stopDeadline;
+				if(!_await(cmd, entry.getValue(), deadline)) overran.add(cmd);
+			}
+		}
+		if(!overran.isEmpty()) _log.severe("GuiceBox: commands overran their deadlines: " + overran);
+		return overran;
+	}
+	
+	private static long _timeoutOf(Callable<?> cmd)
+	{
+		return cmd instanceof TimedCommand ? ((TimedCommand)cmd).getTimeout() : 0L;
+	}
+	
+	// Waits for the command to complete until the deadline, and interrupts it if it doesn't
+	private boolean _await(Callable<?> cmd, Future<?> result, long deadline)
+	{
+		try
+		{
+			result.get(Math.max(0L, deadline - System.nanoTime()), NANOSECONDS);
+		}
+		catch(ExecutionException e)
+		{
+			// Log and keep going
+			_log.log(Level.SEVERE, "Exception while attempting to " + cmd, e.getCause());
+		}
+		catch(TimeoutException e)
+		{
+			_log.warning("GuiceBox: interrupting " + cmd + " (deadline expired)");
+			result.cancel(true);
+			return false;
+		}
+		catch(InterruptedException e)
+		{
+			// Don't wait any longer, but restore interrupt status
+			result.cancel(true);
+			Thread.currentThread().interrupt();
+			return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Releases the threads used to run commands.
+	 */
+	void shutdown()
+	{
+		final ExecutorService pool = _startPool;
+		if(pool != null) pool.shutdownNow();
+		_stopPool.shutdownNow();
+	}
+}
@@ -0,0 +1,22 @@
+package org.guicebox;
+
+import static java.lang.annotation.ElementType.*;
+import static java.lang.annotation.RetentionPolicy.*;
+
+import java.lang.annotation.*;
+
+/**
+ * Methods annotated with this will be called to release what the {@link Warm} methods prepared, when the node can no
+ * longer take over (for example, when a {@link org.guicebox.failover.Failover} node becomes DISCONNECTED) and by
+ * {@link GuiceBox#stop()}.
+ * 
+ * @author willhains
+ */
+@Retention(RUNTIME) @Target(METHOD) public @interface Cool
+{
+	/**
+	 * Maximum milliseconds this command may run before it is interrupted and reported as overrunning. Zero means the
+	 * command is bounded only by {@link StopTimeout}, if bound.
+	 */
+	long timeout() default 0L;
+}
@@ -0,0 +1,45 @@
+package org.guicebox;
+
+import java.util.concurrent.*;
+
+/**
+ * Command object that decorates a {@link Start} command with the classes it must be started {@link Start#after()}.
+ * 
+ * @author willhains
+ */
+final class DependentCommand implements Callable<Object>
+{
+	private final Callable<?> _command;
+	private final Class<?> _owner;
+	private final Class<?>[] _after;
+	
+	DependentCommand(Callable<?> command, Class<?> owner, Class<?>... after)
+	{
+		_command = command;
+		_owner = owner;
+		_after = after;
+	}
+	
+	/**
+	 * @return {@code true} if this command must wait for the specified command to complete before it is called.
+	 */
+	boolean dependsOn(Callable<?> that)
+	{
+		if(that == this || !(that instanceof DependentCommand)) return false;
+		for(Class<?> type : _after)
+		{
+			if(type.isAssignableFrom(((DependentCommand)that)._owner)) return true;
+		}
+		return false;
+	}
+	
+	public Object call() throws Exception
+	{
+		return _command.call();
+	}
+	
+	@Override public String toString()
+	{
+		return _command.toString();
+	}
+}
@@ -8,9 +8,9 @@ import javax.management.*;
 
 /**
  * Entry point to GuiceBox. Takes a Guice {@link Injector} and searches its bindings for classes annotated with
- * {@link Start}, {@link Stop} and {@link Kill} annotations. The lifecycle of the application is then controlled via
- * these annotated members. See <a href="http://code.google.com/p/guicebox/wiki/GuiceBox">GuiceBox documentation</a> for
- * details.
+ * {@link Start}, {@link Stop}, {@link Kill}, {@link Warm} and {@link Cool} annotations. The lifecycle of the
+ * application is then controlled via these annotated members. See <a
+ * href="http://code.google.com/p/guicebox/wiki/GuiceBox">GuiceBox documentation</a> for details.
  * 
  * @author willhains
  */
@@ -40,10 +40,14 @@ import javax.management.*;
 		// GuiceBox command factory
 		private final CommandFactory _commandFactory;
 		
-		@Inject Impl(CommandFactory commandFactory, Cluster cluster, Logger log)
+		// Runs GuiceBox commands, possibly concurrently
+		private final CommandRunner _commandRunner;
+		
+		@Inject Impl(CommandFactory commandFactory, CommandRunner commandRunner, Cluster cluster, Logger log)
 		{
 			this(
 				commandFactory,
+				commandRunner,
 				cluster,
 				NamedExecutors.newSingleThreadExecutor("GuiceBox"),
 				new ShutdownHookAdapter(),
@@ -54,6 +58,7 @@ import javax.management.*;
 		// Called by unit tests
 		Impl(
 			CommandFactory commandFactory,
+			CommandRunner commandRunner,
 			Cluster cluster,
 			ExecutorService gbThread,
 			ShutdownHook hook,
@@ -63,6 +68,7 @@ import javax.management.*;
 			_log = log;
 			_cluster = cluster;
 			_commandFactory = commandFactory;
+			_commandRunner = commandRunner;
 			_gbThread = gbThread;
 			_jmxServer = jmxServer;
 			
@@ -88,7 +94,7 @@ import javax.management.*;
 			{
 				try
 				{
-					_state = _state.start(_commandFactory);
+					_state = _state.start(_commandFactory, _commandRunner);
 				}
 				catch(Throwable e)
 				{
@@ -102,14 +108,37 @@ import javax.management.*;
 		{
 			public void run()
 			{
-				_state = _state.stop(_commandFactory);
+				_state = _state.stop(_commandFactory, _commandRunner);
+			}
+		};
+		private final Runnable _warmTrigger = new Runnable()
+		{
+			public void run()
+			{
+				try
+				{
+					_state = _state.warm(_commandFactory, _commandRunner);
+				}
+				catch(Throwable e)
+				{
+					// Stay cold; warm commands will be retried before starting
+					_log.severe("GuiceBox could not warm up: " + e);
+				}
+			}
+		};
+		private final Runnable _coolTrigger = new Runnable()
+		{
+			public void run()
+			{
+				_state = _state.cool(_commandFactory, _commandRunner);
 			}
 		};
 		private final Runnable _killTrigger = new Runnable()
 		{
 			public void run()
 			{
-				_state = _state.kill(_commandFactory);
+				_state = _state.kill(_commandFactory, _commandRunner);
+				_commandRunner.shutdown();
 				_gbThread.shutdownNow();
 			}
 		};
@@ -137,12 +166,22 @@ import javax.management.*;
 				{
 					if(!_gbThread.isShutdown()) _gbThread.submit(_stopTrigger);
 				}
+				
+				public void warm()
+				{
+					if(!_gbThread.isShutdown()) _gbThread.submit(_warmTrigger);
+				}
+				
+				public void cool()
+				{
+					if(!_gbThread.isShutdown()) _gbThread.submit(_coolTrigger);
+				}
 			});
 		}
 		
 		/**
-		 * Stops the application by calling all the methods annotated with {@link Stop}, and interrupting all threads
-		 * started during {@link #start()}.
+		 * Stops the application by calling all the methods annotated with {@link Stop}, interrupting all threads
+		 * started during {@link #start()}, then calling all the methods annotated with {@link Cool}.
 		 * <p>
 		 * This method is non-blocking. It will return immediately.
 		 */
@@ -151,8 +190,12 @@ import javax.management.*;
 			// Leave the cluster
 			_cluster.leave();
 			
-			// Stop the application
-			if(!_gbThread.isShutdown()) _gbThread.submit(_stopTrigger);
+			// Stop the application and release its warm resources
+			if(!_gbThread.isShutdown())
+			{
+				_gbThread.submit(_stopTrigger);
+				_gbThread.submit(_coolTrigger);
+			}
 		}
 		
 		/**
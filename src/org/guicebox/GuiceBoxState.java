@@ -1,6 +1,5 @@
 package org.guicebox;
 
-import java.util.concurrent.*;
 import java.util.logging.*;
 
 /**
@@ -14,78 +13,115 @@ interface GuiceBoxState
 	
 	GuiceBoxState STOPPED = new GuiceBoxState()
 	{
-		public GuiceBoxState start(CommandFactory cmdFactory) throws Exception
+		public GuiceBoxState warm(CommandFactory cmdFactory, CommandRunner runner) throws Exception
 		{
-			// Run start commands
-			for(Callable<?> cmd : cmdFactory.getCommands(Start.class))
-			{
-				cmd.call();
-			}
-			_log.finer("GuiceBox STARTED");
-			return STARTED;
+			// Run warm commands
+			runner.start(cmdFactory.getCommands(Warm.class));
+			_log.finer("GuiceBox WARM");
+			return WARM;
 		}
 		
-		public GuiceBoxState stop(CommandFactory cmdFactory)
+		public GuiceBoxState cool(CommandFactory cmdFactory, CommandRunner runner)
+		{
+			// Already cool
+			return this;
+		}
+		
+		public GuiceBoxState start(CommandFactory cmdFactory, CommandRunner runner) throws Exception
+		{
+			// Warm up first
+			return warm(cmdFactory, runner).start(cmdFactory, runner);
+		}
+		
+		public GuiceBoxState stop(CommandFactory cmdFactory, CommandRunner runner)
 		{
 			// Already stopped
 			return this;
 		}
 		
-		public GuiceBoxState kill(CommandFactory cmdFactory)
+		public GuiceBoxState kill(CommandFactory cmdFactory, CommandRunner runner)
 		{
 			// Run kill commands
-			for(Callable<?> cmd : cmdFactory.getCommands(Kill.class))
-			{
-				try
-				{
-					cmd.call();
-				}
-				catch(Exception e)
-				{
-					// Log and keep going
-					_log.log(Level.SEVERE, "Exception while attempting to " + cmd, e);
-				}
-			}
+			runner.stop(cmdFactory.getCommands(Kill.class));
 			_log.info("GuiceBox KILLED");
 			return this;
 		}
 	};
 	
-	GuiceBoxState STARTED = new GuiceBoxState()
+	GuiceBoxState WARM = new GuiceBoxState()
 	{
-		public GuiceBoxState start(CommandFactory cmdFactory)
+		public GuiceBoxState warm(CommandFactory cmdFactory, CommandRunner runner)
 		{
+			// Already warm
 			return this;
 		}
 		
-		public GuiceBoxState stop(CommandFactory cmdFactory)
+		public GuiceBoxState cool(CommandFactory cmdFactory, CommandRunner runner)
 		{
-			// Run stop methods
-			for(Callable<?> cmd : cmdFactory.getCommands(Stop.class))
-			{
-				try
-				{
-					cmd.call();
-				}
-				catch(Exception e)
-				{
-					// Log and keep going
-					_log.log(Level.SEVERE, "Exception while attempting to " + cmd, e);
-				}
-			}
+			// Run cool commands
+			runner.stop(cmdFactory.getCommands(Cool.class));
 			_log.finer("GuiceBox STOPPED");
 			return STOPPED;
 		}
 		
-		public GuiceBoxState kill(CommandFactory cmdFactory)
+		public GuiceBoxState start(CommandFactory cmdFactory, CommandRunner runner) throws Exception
+		{
+			// Run start commands
+			runner.start(cmdFactory.getCommands(Start.class));
+			_log.finer("GuiceBox STARTED");
+			return STARTED;
+		}
+		
+		public GuiceBoxState stop(CommandFactory cmdFactory, CommandRunner runner)
+		{
+			// Already stopped
+			return this;
+		}
+		
+		public GuiceBoxState kill(CommandFactory cmdFactory, CommandRunner runner)
 		{
-			return stop(cmdFactory).kill(cmdFactory);
+			return cool(cmdFactory, runner).kill(cmdFactory, runner);
 		}
 	};
 	
-	GuiceBoxState start(CommandFactory cmdFactory) throws Exception;
+	GuiceBoxState STARTED = new GuiceBoxState()
+	{
+		public GuiceBoxState warm(CommandFactory cmdFactory, CommandRunner runner)
+		{
+			return this;
+		}
+		
+		public GuiceBoxState cool(CommandFactory cmdFactory, CommandRunner runner)
+		{
+			return stop(cmdFactory, runner).cool(cmdFactory, runner);
+		}
+		
+		public GuiceBoxState start(CommandFactory cmdFactory, CommandRunner runner)
+		{
+			return this;
+		}
+		
+		public GuiceBoxState stop(CommandFactory cmdFactory, CommandRunner runner)
+		{
+			// Run stop methods, remaining warm
+			runner.stop(cmdFactory.getCommands(Stop.class));
+			_log.finer("GuiceBox WARM");
+			return WARM;
+		}
+		
+		public GuiceBoxState kill(CommandFactory cmdFactory, CommandRunner runner)
+		{
+			return stop(cmdFactory, runner).kill(cmdFactory, runner);
+		}
+	};
+	
+	GuiceBoxState warm(CommandFactory cmdFactory, CommandRunner runner) throws Exception;
+	
+	GuiceBoxState cool(CommandFactory cmdFactory, CommandRunner runner);
+	
+	GuiceBoxState start(CommandFactory cmdFactory, CommandRunner runner) throws Exception;
 	
-	GuiceBoxState stop(CommandFactory cmdFactory);
+	GuiceBoxState stop(CommandFactory cmdFactory, CommandRunner runner);
 	
-	GuiceBoxState kill(CommandFactory cmdFactory);
+	GuiceBoxState kill(CommandFactory cmdFactory, CommandRunner runner);
 }
\ No newline at end of file
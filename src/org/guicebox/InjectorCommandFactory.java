@@ -1,6 +1,7 @@
 package org.guicebox;
 
 import com.google.inject.*;
+import com.google.inject.spi.*;
 import java.lang.annotation.*;
 import java.lang.reflect.*;
 import java.util.*;
@@ -8,8 +9,16 @@ import java.util.concurrent.*;
 import java.util.logging.*;
 
 /**
- * Scans the Guice {@link Injector} for implementation classes that contain the GuiceBox {@link Start}, {@link Stop} and
- * {@link Kill} annotations.
+ * Scans the Guice {@link Injector} for implementation classes that contain the GuiceBox {@link Start}, {@link Stop},
+ * {@link Kill}, {@link Warm} and {@link Cool} annotations.
+ * <p>
+ * Where the implementation class of a binding can be determined from the binding itself, it is only instantiated if it
+ * has GuiceBox annotations. Bindings to providers must be instantiated to find their class. Each class is only scanned
+ * once, however many injectors it is bound in.
+ * <p>
+ * {@link Start} methods and fields that repeat share one scheduler, sized by {@link PeriodicThreads}, which is created
+ * when the first is found and shut down by the last {@link Kill} command. Other {@link Start} fields run on threads of
+ * their own, which are virtual threads if {@link VirtualThreads} is bound to {@code true}.
  * 
  * @author willhains
  */
@@ -17,72 +26,196 @@ public final class InjectorCommandFactory implements CommandFactory
 {
 	private final Logger _log;
 	
-	// Start/Stop/Kill method invocations
+	// Start/Stop/Kill/Warm/Cool method invocations
 	private final Map<Class<? extends Annotation>, List<Callable<?>>> _commands;
 	
+	// Scheduler shared by repeating start commands (created when needed), and how long to wait for it to shut down
+	private ScheduledThreadPoolExecutor _periodic;
+	private long _periodicTimeout;
+	
+	// Whether to run all start threads on virtual threads
+	private final boolean _virtual;
+	
 	@Inject InjectorCommandFactory(Injector injector, Logger log) throws GuiceBoxException
 	{
 		_log = log;
 		
 		// Initialise command lists
 		_commands = new HashMap<Class<? extends Annotation>, List<Callable<?>>>();
-		_commands.put(Start.class, new LinkedList<Callable<?>>());
-		_commands.put(Stop.class, new LinkedList<Callable<?>>());
-		_commands.put(Kill.class, new LinkedList<Callable<?>>());
+		for(Class<? extends Annotation> a : LifecycleIndex.annotations())
+		{
+			_commands.put(a, new LinkedList<Callable<?>>());
+		}
+		final ImplementationVisitor implementations = new ImplementationVisitor(injector);
+		_virtual = _getConstant(injector, Key.get(Boolean.class, VirtualThreads.class), false);
+		if(_virtual && !NamedExecutors.isVirtualSupported())
+		{
+			_log.warning("GuiceBox: virtual threads are not supported by this JVM; using platform threads");
+		}
 		
 		// GuiceBox can only see classes that were specifically bound by the application's Modules
 		for(final Binding<?> binding : injector.getBindings().values())
 		{
 			_log.finest("GuiceBox: scanning binding: " + binding);
 			
-			// Will need an instance of each GuiceBoxed class to call its methods
+			// Skip classes with nothing for GuiceBox, without instantiating them if possible
 			final Key<?> key = binding.getKey();
+			Class<?> impl = binding.acceptTargetVisitor(implementations);
+			if(impl != null && LifecycleIndex.of(impl).isEmpty()) continue;
+			
+			// Will need an instance of each GuiceBoxed class to call its methods
 			final Object instance = injector.getInstance(key);
-			final Class<?> impl = instance.getClass();
-
-			// Search all supertypes of implementation class
-			for(final Class<?> type : Types.inheritedBy(impl))
+			if(impl == null) impl = instance.getClass();
+			final LifecycleIndex index = LifecycleIndex.of(impl);
+			
+			// Create commands to invoke GuiceBox methods
+			for(Class<? extends Annotation> a : LifecycleIndex.annotations())
 			{
-				// Search for GuiceBox methods
-				for(final Method method : type.getDeclaredMethods())
+				for(final Method method : index.getMethods(a))
 				{
-					// Determine which GuiceBox annotations the method has, if any
-					for(Class<? extends Annotation> a : _commands.keySet())
+					final InvokeMethodCommand invokeCommand = new InvokeMethodCommand(method, instance);
+					final Annotation annotation = method.getAnnotation(a);
+					_log.fine("GuiceBox: " + a.getSimpleName() + " method added: " + invokeCommand);
+					if(annotation instanceof Start && ((Start)annotation).repeat() > 0)
 					{
-						// Create command to invoke method
-						if(method.getAnnotation(a) != null)
-						{
-							final InvokeMethodCommand invokeCommand = new InvokeMethodCommand(method, instance);
-							_log.fine("GuiceBox: " + a.getSimpleName() + " method added: " + invokeCommand);
-							_commands.get(a).add(invokeCommand);
-						}
+						_addStartThread((Start)annotation, invokeCommand, method, impl, injector);
 					}
+					else _commands.get(a).add(_constrain(annotation, invokeCommand, impl));
 				}
 			}
 			
-			// Search for GuiceBox fields
-			for(final Field field : impl.getDeclaredFields())
+			// Add command objects to the start list
+			for(final Field field : index.getStartFields())
 			{
-				// Add command objects to the start list
-				final Start start = field.getAnnotation(Start.class);
-				if(start != null)
+				final Runnable runnable = StartThreadCommand.getRunnable(field, instance);
+				_addStartThread(field.getAnnotation(Start.class), runnable, field, impl, injector);
+			}
+		}
+		
+		// Shut down the shared scheduler after its commands are killed
+		if(_periodic != null)
+		{
+			final ExecutorService periodic = _periodic;
+			final long timeout = _periodicTimeout;
+			_commands.get(Kill.class).add(new Callable<Object>()
+			{
+				public Object call() throws Exception
 				{
-					// Create the thread
-					final StartThreadCommand startCommand = StartThreadCommand.create( //
-						field,
-						start.value(),
-						start.repeat(),
-						instance);
-					
-					// Add commands to start, stop and kill the thread
-					_commands.get(Start.class).add(startCommand);
-					_commands.get(Stop.class).add(startCommand.getStopCommand());
-					_commands.get(Kill.class).add(startCommand.getKillCommand());
+					try
+					{
+						periodic.shutdownNow();
+						if(timeout <= 0) periodic.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+						else if(!periodic.awaitTermination(timeout, TimeUnit.MILLISECONDS))
+						{
+							// Don't hold up the rest of the transition for tasks that ignore interruption
+							throw new TimeoutException("Periodic tasks running " + timeout + "ms after interruption");
+						}
+					}
+					catch(InterruptedException e)
+					{
+						// Restore interrupt status
+						Thread.currentThread().interrupt();
+					}
+					return null;
 				}
-			}
+				
+				@Override public String toString()
+				{
+					return "Kill periodic tasks";
+				}
+			});
+		}
+	}
+	
+	// Adds commands to start, stop and kill the thread
+	private void _addStartThread(Start start, Runnable runnable, Member member, Class<?> impl, Injector injector)
+	{
+		final ScheduledExecutorService periodic = start.repeat() > 0 ? _periodic(injector) : null;
+		if(periodic != null) _periodicTimeout = Math.max(_periodicTimeout, start.timeout());
+		final StartThreadCommand startCommand = StartThreadCommand.create(start, runnable, member, periodic, _virtual);
+		_commands.get(Start.class).add(_constrain(start, startCommand, impl));
+		_commands.get(Stop.class).add(startCommand.getStopCommand());
+		_commands.get(Kill.class).add(startCommand.getKillCommand());
+	}
+	
+	// The scheduler shared by repeating start commands
+	private ScheduledExecutorService _periodic(Injector injector)
+	{
+		if(_periodic == null)
+		{
+			final int threads = _getConstant(
+				injector,
+				Key.get(Integer.class, PeriodicThreads.class),
+				Runtime.getRuntime().availableProcessors());
+			_periodic = new ScheduledThreadPoolExecutor(threads, NamedExecutors.serial("GuiceBox periodic"));
+			_periodic.setRemoveOnCancelPolicy(true);
+		}
+		return _periodic;
+	}
+	
+	// The value bound to the key, or the default if not bound
+	private static <T> T _getConstant(Injector injector, Key<T> key, T defaultValue)
+	{
+		try
+		{
+			return injector.getInstance(key);
+		}
+		catch(ConfigurationException e)
+		{
+			// Not bound
+			return defaultValue;
 		}
 	}
 	
+	/*
+	 * Finds the class that a binding will instantiate, without instantiating it, or null if that depends on a provider.
+	 */
+	private static final class ImplementationVisitor extends DefaultBindingTargetVisitor<Object, Class<?>>
+	{
+		private final Injector _injector;
+		
+		ImplementationVisitor(Injector injector)
+		{
+			_injector = injector;
+		}
+		
+		@Override public Class<?> visit(InstanceBinding<? extends Object> binding)
+		{
+			return binding.getInstance().getClass();
+		}
+		
+		@Override public Class<?> visit(ConstructorBinding<? extends Object> binding)
+		{
+			return binding.getConstructor().getMember().getDeclaringClass();
+		}
+		
+		@Override public Class<?> visit(LinkedKeyBinding<? extends Object> binding)
+		{
+			return _injector.getBinding(binding.getLinkedKey()).acceptTargetVisitor(this);
+		}
+		
+		@Override public Class<?> visit(UntargettedBinding<? extends Object> binding)
+		{
+			return binding.getKey().getTypeLiteral().getRawType();
+		}
+		
+		@Override public Class<?> visit(ConvertedConstantBinding<? extends Object> binding)
+		{
+			return binding.getValue().getClass();
+		}
+	}
+	
+	// Attaches the ordering and deadline declared by the annotation to the command
+	private static Callable<?> _constrain(Annotation annotation, Callable<?> command, Class<?> impl)
+	{
+		if(annotation instanceof Start) return new DependentCommand(command, impl, ((Start)annotation).after());
+		if(annotation instanceof Stop) return new TimedCommand(command, ((Stop)annotation).timeout());
+		if(annotation instanceof Kill) return new TimedCommand(command, ((Kill)annotation).timeout());
+		if(annotation instanceof Warm) return new DependentCommand(command, impl, ((Warm)annotation).after());
+		if(annotation instanceof Cool) return new TimedCommand(command, ((Cool)annotation).timeout());
+		return command;
+	}
+	
 	public Iterable<Callable<?>> getCommands(Class<? extends Annotation> transition)
 	{
 		return _commands.get(transition);
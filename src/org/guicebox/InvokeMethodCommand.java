@@ -1,18 +1,24 @@
 package org.guicebox;
 
+import java.lang.invoke.*;
 import java.lang.reflect.*;
 import java.util.concurrent.*;
 
 /**
- * Command object to invoke a specified method on a specified object in the future.
+ * Command object to invoke a specified method on a specified object in the future. The method is bound to the object
+ * as a {@link MethodHandle} up front, so each call is a direct invocation without access checks, and exceptions thrown
+ * by the method are thrown as they are, not wrapped in an {@link InvocationTargetException}.
  * 
  * @author willhains
  */
-final class InvokeMethodCommand implements Callable<Object>
+final class InvokeMethodCommand implements Callable<Object>, Runnable
 {
 	private final Method _method;
 	private final Object _instance;
 	
+	// Invokes the method on the instance, returning its result (null for void methods)
+	private final MethodHandle _handle;
+	
 	InvokeMethodCommand(Method method, Object o) throws GuiceBoxException
 	{
 		// Check method for arguments
@@ -26,11 +32,57 @@ final class InvokeMethodCommand implements Callable<Object>
 		
 		_method = method;
 		_instance = o;
+		try
+		{
+			final MethodHandle handle = MethodHandles.lookup().unreflect(method);
+			_handle = (Modifier.isStatic(method.getModifiers()) ? handle : handle.bindTo(o))
+				.asType(MethodType.methodType(Object.class));
+		}
+		catch(IllegalAccessException e)
+		{
+			throw new GuiceBoxException("Cannot access: " + method, e);
+		}
 	}
 	
 	public Object call() throws Exception
 	{
-		return _method.invoke(_instance);
+		try
+		{
+			return (Object)_handle.invokeExact();
+		}
+		catch(Exception e)
+		{
+			throw e;
+		}
+		catch(Error e)
+		{
+			throw e;
+		}
+		catch(Throwable e)
+		{
+			// Not an Exception or Error, so can only be wrapped
+			throw new UndeclaredThrowableException(e);
+		}
+	}
+	
+	/**
+	 * Invokes the method as a {@link Runnable}, for scheduling; checked exceptions are wrapped in an
+	 * {@link UndeclaredThrowableException}.
+	 */
+	public void run()
+	{
+		try
+		{
+			call();
+		}
+		catch(RuntimeException e)
+		{
+			throw e;
+		}
+		catch(Exception e)
+		{
+			throw new UndeclaredThrowableException(e);
+		}
 	}
 	
 	@Override public String toString()
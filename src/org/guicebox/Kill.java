@@ -11,6 +11,10 @@ import java.lang.annotation.*;
  * @author willhains
  */
 @Retention(RUNTIME) @Target( { FIELD, METHOD }) public @interface Kill
-{	
-
+{
+	/**
+	 * Maximum milliseconds this command may run before it is interrupted and reported as overrunning. Zero means the
+	 * command is bounded only by {@link StopTimeout}, if bound.
+	 */
+	long timeout() default 0L;
 }
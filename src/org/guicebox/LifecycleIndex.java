@@ -0,0 +1,116 @@
+package org.guicebox;
+
+import java.lang.annotation.*;
+import java.lang.reflect.*;
+import java.util.*;
+import net.jcip.annotations.*;
+
+/**
+ * The GuiceBox {@link Start}, {@link Stop}, {@link Kill}, {@link Warm} and {@link Cool} methods and {@link Start}
+ * fields of an implementation class. The scan is kept in memory for as long as the class is loaded, so injectors built
+ * from the same classes within one JVM share it. Nothing is persisted: each JVM still scans every class once.
+ * 
+ * @author willhains
+ */
+@Immutable final class LifecycleIndex
+{
+	// GuiceBox annotations, in the order they are searched for
+	private static final List<Class<? extends Annotation>> _ANNOTATIONS = Collections.unmodifiableList(Arrays
+		.<Class<? extends Annotation>> asList(Start.class, Stop.class, Kill.class, Warm.class, Cool.class));
+	
+	// Scanned classes
+	private static final ClassValue<LifecycleIndex> _INDEX = new ClassValue<LifecycleIndex>()
+	{
+		@Override protected LifecycleIndex computeValue(Class<?> impl)
+		{
+			return new LifecycleIndex(impl);
+		}
+	};
+	
+	// Annotated methods of the class and its supertypes, by annotation
+	private final Map<Class<? extends Annotation>, List<Method>> _methods;
+	
+	// Annotated fields declared by the class itself
+	private final List<Field> _startFields;
+	
+	private LifecycleIndex(Class<?> impl)
+	{
+		final Map<Class<? extends Annotation>, List<Method>> methods;
+		methods = new HashMap<Class<? extends Annotation>, List<Method>>();
+		for(Class<? extends Annotation> a : _ANNOTATIONS)
+		{
+			methods.put(a, new ArrayList<Method>());
+		}
+		
+		// Search all supertypes of implementation class
+		for(final Class<?> type : Types.inheritedBy(impl))
+		{
+			for(final Method method : type.getDeclaredMethods())
+			{
+				for(Class<? extends Annotation> a : _ANNOTATIONS)
+				{
+					if(method.isAnnotationPresent(a)) methods.get(a).add(method);
+				}
+			}
+		}
+		
+		final List<Field> startFields = new ArrayList<Field>();
+		for(final Field field : impl.getDeclaredFields())
+		{
+			if(field.isAnnotationPresent(Start.class)) startFields.add(field);
+		}
+		
+		// Most classes have nothing for GuiceBox, so keep as little as possible for them
+		boolean empty = startFields.isEmpty();
+		for(Map.Entry<Class<? extends Annotation>, List<Method>> entry : methods.entrySet())
+		{
+			empty &= entry.getValue().isEmpty();
+			entry.setValue(entry.getValue().isEmpty()
+				? Collections.<Method> emptyList()
+				: Collections.unmodifiableList(entry.getValue()));
+		}
+		_methods = empty ? Collections.<Class<? extends Annotation>, List<Method>> emptyMap() : methods;
+		_startFields = startFields.isEmpty() ? Collections.<Field> emptyList() : startFields;
+	}
+	
+	/**
+	 * @return the index of the specified class, scanning it if it has not been scanned before.
+	 */
+	static LifecycleIndex of(Class<?> impl)
+	{
+		return _INDEX.get(impl);
+	}
+	
+	/**
+	 * @return the GuiceBox annotations, in the order they are searched for.
+	 */
+	static List<Class<? extends Annotation>> annotations()
+	{
+		return _ANNOTATIONS;
+	}
+	
+	/**
+	 * @return {@code true} if the class has no GuiceBox methods or fields, so it need not be instantiated.
+	 */
+	boolean isEmpty()
+	{
+		return _methods.isEmpty();
+	}
+	
+	/**
+	 * @return the methods with the specified annotation.
+	 */
+	List<Method> getMethods(Class<? extends Annotation> annotation)
+	{
+		final List<Method> methods = _methods.get(annotation);
+		return methods == null ? Collections.<Method> emptyList() : methods;
+	}
+	
+	/**
+	 * @return the {@link Start} fields.
+	 */
+	List<Field> getStartFields()
+	{
+		return _startFields;
+	}
+}
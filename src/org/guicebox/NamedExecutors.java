@@ -1,11 +1,16 @@
 package org.guicebox;
 
+import static java.util.concurrent.TimeUnit.*;
+
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.*;
+import java.util.logging.*;
 
 /**
  * Convenience class to get around the annoying feature of {@link Executors} that forces you to create a whole
- * {@link ThreadFactory} just to give your threads a name.
+ * {@link ThreadFactory} just to give your threads a name. Also offers named virtual-thread, work-stealing and bounded
+ * executors, and {@link #configure(ThreadFactory, boolean, int, Logger)} to set the daemon flag, priority and
+ * uncaught exception logging of the threads of any of them.
  * 
  * @author willhains
  */
@@ -47,6 +52,151 @@ public class NamedExecutors
 		};
 	}
 	
+	/**
+	 * @return a {@link ThreadFactory} that produces virtual threads with the specified name, if the JVM supports them
+	 * (Java 21 or later), otherwise the same as {@link #single(String)}.
+	 */
+	public static ThreadFactory virtual(String threadName)
+	{
+		try
+		{
+			// Thread.ofVirtual().name(threadName).factory(), without depending on Java 21 to compile
+			final Class<?> builder = Class.forName("java.lang.Thread$Builder");
+			final Object virtual = Thread.class.getMethod("ofVirtual").invoke(null);
+			final Object named = builder.getMethod("name", String.class).invoke(virtual, threadName);
+			return (ThreadFactory)builder.getMethod("factory").invoke(named);
+		}
+		catch(ReflectiveOperationException e)
+		{
+			// Not supported (or still a preview feature) in this JVM
+			return single(threadName);
+		}
+	}
+	
+	/**
+	 * @return a {@link ThreadFactory} that produces virtual threads with the specified name, suffixed with a hyphen and
+	 * a serial number, if the JVM supports them (Java 21 or later), otherwise the same as {@link #serial(String)}.
+	 */
+	public static ThreadFactory virtualSerial(String threadName)
+	{
+		try
+		{
+			// Thread.ofVirtual().name(threadName + "-", 0).factory(), without depending on Java 21 to compile
+			final Class<?> builder = Class.forName("java.lang.Thread$Builder");
+			final Object virtual = Thread.class.getMethod("ofVirtual").invoke(null);
+			final Object named = builder
+				.getMethod("name", String.class, long.class)
+				.invoke(virtual, threadName + "-", 0L);
+			return (ThreadFactory)builder.getMethod("factory").invoke(named);
+		}
+		catch(ReflectiveOperationException e)
+		{
+			// Not supported (or still a preview feature) in this JVM
+			return serial(threadName);
+		}
+	}
+	
+	/**
+	 * @return {@code true} if {@link #virtual(String)} produces virtual threads in this JVM.
+	 */
+	public static boolean isVirtualSupported()
+	{
+		return _isVirtual(virtual("probe").newThread(new Runnable()
+		{
+			public void run()
+			{
+				// Never started
+			}
+		}));
+	}
+	
+	// Thread.isVirtual(), without depending on Java 21 to compile
+	private static boolean _isVirtual(Thread thread)
+	{
+		try
+		{
+			return (Boolean)Thread.class.getMethod("isVirtual").invoke(thread);
+		}
+		catch(ReflectiveOperationException e)
+		{
+			// No virtual threads in this JVM
+			return false;
+		}
+	}
+	
+	/**
+	 * @return a {@link ThreadFactory} that produces threads from the specified factory with the specified daemon flag
+	 * and priority, which log uncaught exceptions to the specified logger. Virtual threads are always daemon threads,
+	 * and have a fixed priority, so only their uncaught exception handler is set.
+	 */
+	public static ThreadFactory configure(
+		final ThreadFactory factory,
+		final boolean daemon,
+		final int priority,
+		Logger log)
+	{
+		final Thread.UncaughtExceptionHandler handler = logging(log);
+		return new ThreadFactory()
+		{
+			public Thread newThread(Runnable r)
+			{
+				final Thread thread = factory.newThread(r);
+				if(!_isVirtual(thread))
+				{
+					// Virtual threads refuse to stop being daemons
+					if(thread.isDaemon() != daemon) thread.setDaemon(daemon);
+					thread.setPriority(priority);
+				}
+				thread.setUncaughtExceptionHandler(handler);
+				return thread;
+			}
+		};
+	}
+	
+	/**
+	 * @return a handler that logs uncaught exceptions, with the name of the thread, to the specified logger.
+	 */
+	public static Thread.UncaughtExceptionHandler logging(final Logger log)
+	{
+		return new Thread.UncaughtExceptionHandler()
+		{
+			public void uncaughtException(Thread t, Throwable e)
+			{
+				log.log(Level.SEVERE, "Uncaught exception in thread " + t.getName(), e);
+			}
+		};
+	}
+	
+	/**
+	 * @return a {@link Runnable} that runs the specified task with the name of the current thread set to the specified
+	 * name, for tasks that share the threads of a pool.
+	 */
+	public static Runnable named(final String threadName, final Runnable task)
+	{
+		return new Runnable()
+		{
+			public void run()
+			{
+				final Thread thread = Thread.currentThread();
+				final String poolName = thread.getName();
+				thread.setName(threadName);
+				try
+				{
+					task.run();
+				}
+				finally
+				{
+					thread.setName(poolName);
+				}
+			}
+			
+			@Override public String toString()
+			{
+				return threadName;
+			}
+		};
+	}
+	
 	/**
 	 * Uses {@link #serial(String)}.
 	 */
@@ -86,4 +236,81 @@ public class NamedExecutors
 	{
 		return Executors.newSingleThreadScheduledExecutor(single(threadName));
 	}
+	
+	/**
+	 * Starts a new virtual thread for each task, if the JVM supports them (Java 21 or later), otherwise uses
+	 * {@link #newCachedThreadPool(String)}. Uses {@link #virtualSerial(String)}.
+	 */
+	public static ExecutorService newVirtualThreadPerTaskExecutor(String threadName)
+	{
+		try
+		{
+			// Executors.newThreadPerTaskExecutor(factory), without depending on Java 21 to compile
+			return (ExecutorService)Executors.class
+				.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+				.invoke(null, virtualSerial(threadName));
+		}
+		catch(ReflectiveOperationException e)
+		{
+			// Not supported (or still a preview feature) in this JVM
+			return newCachedThreadPool(threadName);
+		}
+	}
+	
+	/**
+	 * A work-stealing pool that runs submitted tasks in FIFO order, with daemon worker threads named as
+	 * {@link #serial(String)}, which log uncaught exceptions to the specified logger.
+	 */
+	public static ForkJoinPool newWorkStealingPool(int parallelism, final String threadName, Logger log)
+	{
+		final AtomicInteger serialNo = new AtomicInteger();
+		return new ForkJoinPool(parallelism, new ForkJoinPool.ForkJoinWorkerThreadFactory()
+		{
+			public ForkJoinWorkerThread newThread(ForkJoinPool pool)
+			{
+				final ForkJoinWorkerThread thread = new ForkJoinWorkerThread(pool)
+				{
+					// Constructor is protected
+				};
+				thread.setName(threadName + "-" + serialNo.getAndIncrement());
+				return thread;
+			}
+		}, logging(log), true);
+	}
+	
+	/**
+	 * Uses {@link #serial(String)} if {@code nThreads} is > 1, otherwise uses {@link #single(String)}.
+	 */
+	public static ThreadPoolExecutor newBoundedThreadPool(
+		int nThreads,
+		int queueCapacity,
+		RejectedExecutionHandler handler,
+		String threadName)
+	{
+		return newBoundedThreadPool(
+			nThreads,
+			queueCapacity,
+			handler,
+			nThreads == 1 ? single(threadName) : serial(threadName));
+	}
+	
+	/**
+	 * A fixed-size pool whose queue holds at most {@code queueCapacity} waiting tasks, and hands any more to the
+	 * specified handler, such as {@link ThreadPoolExecutor.CallerRunsPolicy} to slow down the submitting thread.
+	 */
+	public static ThreadPoolExecutor newBoundedThreadPool(
+		int nThreads,
+		int queueCapacity,
+		RejectedExecutionHandler handler,
+		ThreadFactory threadFactory)
+	{
+		return new ThreadPoolExecutor(
+			nThreads,
+			nThreads,
+			0L,
+			MILLISECONDS,
+			new ArrayBlockingQueue<Runnable>(queueCapacity),
+			threadFactory,
+			handler);
+	}
 }
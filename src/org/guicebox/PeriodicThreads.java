@@ -0,0 +1,18 @@
+package org.guicebox;
+
+import static java.lang.annotation.ElementType.*;
+import static java.lang.annotation.RetentionPolicy.*;
+
+import com.google.inject.*;
+import java.lang.annotation.*;
+
+/**
+ * The number of threads shared by {@link Start} methods and fields that repeat. If not bound, there is up to one
+ * thread per available processor.
+ * 
+ * @author willhains
+ */
+@Retention(RUNTIME) @Target( { FIELD, PARAMETER }) @BindingAnnotation public @interface PeriodicThreads
+{	
+
+}
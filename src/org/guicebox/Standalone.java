@@ -27,4 +27,14 @@ public final class Standalone implements Cluster
 	{
 		// No action required
 	}
+	
+	public void addChangeListener(ClusterChangeListener listener)
+	{
+		// No action required
+	}
+	
+	public void removeChangeListener(ClusterChangeListener listener)
+	{
+		// No action required
+	}
 }
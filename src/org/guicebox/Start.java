@@ -6,7 +6,8 @@ import static java.lang.annotation.RetentionPolicy.*;
 import java.lang.annotation.*;
 
 /**
- * Methods and {@link Runnable} fields annotated with this will be called by {@link GuiceBox#start()}.
+ * Methods and {@link Runnable} fields annotated with this will be called by {@link GuiceBox#start()}. Methods and
+ * fields that {@link #repeat()} are run on a scheduler shared by all repeating tasks, sized by {@link PeriodicThreads}.
  * 
  * @author willhains
  */
@@ -17,5 +18,36 @@ import java.lang.annotation.*;
 	 */
 	String value() default "";
 	
+	/**
+	 * If greater than zero, the method or {@link Runnable} is run repeatedly, every this many milliseconds, until
+	 * stopped.
+	 */
 	long repeat() default 0L;
+	
+	/**
+	 * For repeating methods and {@link Runnable}s, {@code true} to wait {@link #repeat()} milliseconds after each run
+	 * finishes before starting the next, rather than starting runs at a fixed rate.
+	 */
+	boolean fixedDelay() default false;
+	
+	/**
+	 * For {@link Runnable} fields that don't {@link #repeat()}, {@code true} to run on a virtual thread where the JVM
+	 * supports them (Java 21 or later), so that many blocking tasks can run without a platform thread each. Stopping
+	 * and killing interrupt the thread as usual. Can be turned on for all fields by binding {@link VirtualThreads}.
+	 */
+	boolean virtual() default false;
+	
+	/**
+	 * For {@link Runnable} fields that don't {@link #repeat()}, the maximum milliseconds that {@link Kill} waits for
+	 * the thread to finish after interrupting it, before giving up on it and reporting it as overrunning. Zero means
+	 * wait until it finishes, bounded only by {@link StopTimeout}, if bound. For repeating methods and fields, the
+	 * shared scheduler is given the longest timeout of its tasks to finish when it is shut down.
+	 */
+	long timeout() default 10000L;
+	
+	/**
+	 * Classes whose {@link Start} methods and threads must have completed starting before this one is started. When
+	 * {@link StartThreads} is bound, start commands with no outstanding dependencies are run concurrently.
+	 */
+	Class<?>[] after() default {};
 }
@@ -5,45 +5,86 @@ import static org.guicebox.NamedExecutors.*;
 
 import java.lang.reflect.*;
 import java.util.concurrent.*;
+import java.util.logging.*;
 
 /**
- * Command object to spawn a thread in the future.
+ * Command object to spawn a thread in the future. Repeating commands can instead share a scheduler with other
+ * repeating commands, in which case the thread is given the command's name while it runs.
  * 
  * @author willhains
  */
 final class StartThreadCommand implements Callable<Object>
 {
+	private static final Logger _log = Logger.getLogger(StartThreadCommand.class.getName());
+	
 	private final ScheduledExecutorService _thread;
 	private Future<?> _task;
 	private final Runnable _runnable;
 	private final String _name;
 	private final long _interval;
+	private final boolean _fixedDelay;
+	
+	// Milliseconds to wait for the thread to finish when killed (zero means no limit)
+	private final long _timeout;
+	
+	// Whether the scheduler is shared with other commands
+	private final boolean _shared;
 	
-	private StartThreadCommand(ScheduledExecutorService thread, Runnable runnable, String name, long repeatInterval)
+	private StartThreadCommand(
+		ScheduledExecutorService thread,
+		Runnable runnable,
+		String name,
+		long repeatInterval,
+		boolean fixedDelay,
+		boolean shared,
+		long timeout)
 	{
 		_thread = thread;
-		_runnable = runnable;
+		_runnable = shared ? named(name, _logging(name, runnable)) : runnable;
 		_name = name;
 		_interval = repeatInterval;
+		_fixedDelay = fixedDelay;
+		_shared = shared;
+		_timeout = timeout;
 	}
 	
-	public static StartThreadCommand create(Field field, String name, long repeat, Object instance)
-		throws GuiceBoxException
+	/**
+	 * Creates a command to start the {@link Runnable} in the specified field, or the specified method if it repeats.
+	 * Repeating commands are run on the shared scheduler, and others on a thread of their own, which is a virtual
+	 * thread if requested and supported.
+	 * 
+	 * @param periodic the shared scheduler for repeating commands.
+	 * @param virtual {@code true} to run all non-repeating commands on virtual threads, as well as those that ask to.
+	 */
+	public static StartThreadCommand create(
+		Start start,
+		Runnable runnable,
+		Member member,
+		ScheduledExecutorService periodic,
+		boolean virtual)
+	{
+		final String threadName = buildThreadName(start.value(), member);
+		if(start.repeat() > 0)
+		{
+			return createShared(periodic, runnable, threadName, start.repeat(), start.fixedDelay());
+		}
+		final ThreadFactory thread = virtual || start.virtual() ? virtual(threadName) : single(threadName);
+		return create(Executors.newSingleThreadScheduledExecutor(thread), runnable, threadName, 0, start.timeout());
+	}
+	
+	/**
+	 * @return the {@link Runnable} in the specified {@link Start} field.
+	 */
+	public static Runnable getRunnable(Field field, Object instance) throws GuiceBoxException
 	{
 		try
 		{
-			// Create the Runnable instance
 			if(!Types.inheritedBy(field.getType()).contains(Runnable.class))
 			{
 				throw new GuiceBoxException("@Start fields must be Runnable: " + instance);
 			}
 			field.setAccessible(true);
-			final Runnable runnable = (Runnable)field.get(instance);
-			
-			// Create the executor service
-			final String threadName = buildThreadName(name, field);
-			return StartThreadCommand
-				.create(newSingleThreadScheduledExecutor(threadName), runnable, threadName, repeat);
+			return (Runnable)field.get(instance);
 		}
 		catch(IllegalAccessException e)
 		{
@@ -54,20 +95,67 @@ final class StartThreadCommand implements Callable<Object>
 	// Called by unit tests
 	static StartThreadCommand create(ScheduledExecutorService thread, Runnable runnable, String name, long repeat)
 	{
-		return new StartThreadCommand(thread, runnable, name, repeat);
+		return create(thread, runnable, name, repeat, 0L);
+	}
+	
+	// Called by unit tests
+	static StartThreadCommand create(
+		ScheduledExecutorService thread,
+		Runnable runnable,
+		String name,
+		long repeat,
+		long timeout)
+	{
+		return new StartThreadCommand(thread, runnable, name, repeat, false, false, timeout);
+	}
+	
+	// Called by unit tests
+	static StartThreadCommand createShared(
+		ScheduledExecutorService periodic,
+		Runnable runnable,
+		String name,
+		long repeat,
+		boolean fixedDelay)
+	{
+		return new StartThreadCommand(periodic, runnable, name, repeat, fixedDelay, true, 0L);
 	}
 	
-	static String buildThreadName(String name, Field field)
+	// The scheduler stops repeating a task that throws, without telling anyone, so tell the log
+	private static Runnable _logging(final String name, final Runnable task)
+	{
+		return new Runnable()
+		{
+			public void run()
+			{
+				try
+				{
+					task.run();
+				}
+				catch(RuntimeException e)
+				{
+					_log.log(Level.SEVERE, name + " failed, and will not run again", e);
+					throw e;
+				}
+				catch(Error e)
+				{
+					_log.log(Level.SEVERE, name + " failed, and will not run again", e);
+					throw e;
+				}
+			}
+		};
+	}
+	
+	static String buildThreadName(String name, Member member)
 	{
 		if(name != null && name.length() > 0) return name;
-		return field.getDeclaringClass().getSimpleName() + "." + field.getName();
+		return member.getDeclaringClass().getSimpleName() + "." + member.getName();
 	}
 	
 	public Object call()
 	{
-		_task = _interval > 0 //
-			? _thread.scheduleAtFixedRate(_runnable, 0, _interval, MILLISECONDS)
-			: _thread.submit(_runnable);
+		if(_interval <= 0) _task = _thread.submit(_runnable);
+		else if(_fixedDelay) _task = _thread.scheduleWithFixedDelay(_runnable, 0, _interval, MILLISECONDS);
+		else _task = _thread.scheduleAtFixedRate(_runnable, 0, _interval, MILLISECONDS);
 		return null;
 	}
 	
@@ -99,10 +187,21 @@ final class StartThreadCommand implements Callable<Object>
 		{
 			public Object call() throws Exception
 			{
+				// The shared scheduler is shut down once all its commands are killed
+				if(_shared)
+				{
+					if(_task != null) _task.cancel(true);
+					return null;
+				}
 				try
 				{
 					_thread.shutdownNow();
-					_thread.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+					if(_timeout <= 0) _thread.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+					else if(!_thread.awaitTermination(_timeout, MILLISECONDS))
+					{
+						// Don't hold up the rest of the transition for a thread that ignores interruption
+						throw new TimeoutException(_name + " still running " + _timeout + "ms after interruption");
+					}
 				}
 				catch(InterruptedException e)
 				{
@@ -0,0 +1,18 @@
+package org.guicebox;
+
+import static java.lang.annotation.ElementType.*;
+import static java.lang.annotation.RetentionPolicy.*;
+
+import com.google.inject.*;
+import java.lang.annotation.*;
+
+/**
+ * The number of threads used to run {@link Start} commands concurrently. If not bound, {@link Start} commands are run
+ * one at a time on the GuiceBox thread.
+ * 
+ * @author willhains
+ */
+@Retention(RUNTIME) @Target( { FIELD, PARAMETER }) @BindingAnnotation public @interface StartThreads
+{	
+
+}
@@ -0,0 +1,19 @@
+package org.guicebox;
+
+import static java.lang.annotation.ElementType.*;
+import static java.lang.annotation.RetentionPolicy.*;
+
+import com.google.inject.*;
+import java.lang.annotation.*;
+
+/**
+ * Maximum milliseconds allowed for all {@link Stop} (or all {@link Kill}) commands to complete. When bound, the
+ * commands are run concurrently, and any still running when the deadline expires are interrupted and reported. If not
+ * bound, the commands are run one at a time on the GuiceBox thread.
+ * 
+ * @author willhains
+ */
+@Retention(RUNTIME) @Target( { FIELD, PARAMETER }) @BindingAnnotation public @interface StopTimeout
+{	
+
+}
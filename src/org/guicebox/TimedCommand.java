@@ -0,0 +1,38 @@
+package org.guicebox;
+
+import java.util.concurrent.*;
+
+/**
+ * Command object that decorates a {@link Stop} or {@link Kill} command with its own deadline.
+ * 
+ * @author willhains
+ */
+final class TimedCommand implements Callable<Object>
+{
+	private final Callable<?> _command;
+	private final long _timeout;
+	
+	TimedCommand(Callable<?> command, long timeout)
+	{
+		_command = command;
+		_timeout = timeout;
+	}
+	
+	/**
+	 * @return the maximum milliseconds the command may run, or zero if it has no deadline of its own.
+	 */
+	long getTimeout()
+	{
+		return _timeout;
+	}
+	
+	public Object call() throws Exception
+	{
+		return _command.call();
+	}
+	
+	@Override public String toString()
+	{
+		return _command.toString();
+	}
+}
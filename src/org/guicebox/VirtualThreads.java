@@ -0,0 +1,18 @@
+package org.guicebox;
+
+import static java.lang.annotation.ElementType.*;
+import static java.lang.annotation.RetentionPolicy.*;
+
+import com.google.inject.*;
+import java.lang.annotation.*;
+
+/**
+ * Whether {@link Start} fields that don't repeat are run on virtual threads, as if they were all annotated with
+ * {@code virtual = true}. Defaults to {@code false}.
+ * 
+ * @author willhains
+ */
+@Retention(RUNTIME) @Target( { FIELD, PARAMETER }) @BindingAnnotation public @interface VirtualThreads
+{	
+
+}
@@ -0,0 +1,22 @@
+package org.guicebox;
+
+import static java.lang.annotation.ElementType.*;
+import static java.lang.annotation.RetentionPolicy.*;
+
+import java.lang.annotation.*;
+
+/**
+ * Methods annotated with this will be called when the {@link Cluster} makes the node ready to take over (for example,
+ * when a {@link org.guicebox.failover.Failover} node becomes STANDBY), so that expensive preparation such as loading
+ * caches or opening connections is done before the {@link Start} methods are needed. They are also called before the
+ * {@link Start} methods if the node was not already warm.
+ * 
+ * @author willhains
+ */
+@Retention(RUNTIME) @Target(METHOD) public @interface Warm
+{
+	/**
+	 * Classes whose {@link Warm} methods must have completed before this one is called.
+	 */
+	Class<?>[] after() default {};
+}
@@ -0,0 +1,18 @@
+package org.guicebox.failover;
+
+import static java.lang.annotation.ElementType.*;
+import static java.lang.annotation.RetentionPolicy.*;
+
+import com.google.inject.*;
+import java.lang.annotation.*;
+
+/**
+ * Milliseconds of extra delay in heartbeats (for example, due to garbage collection pauses) that
+ * {@link PhiAccrualFailureDetector} should tolerate on top of the learned heartbeat interval.
+ * 
+ * @author willhains
+ */
+@Retention(RUNTIME) @Target( { FIELD, PARAMETER }) @BindingAnnotation public @interface AcceptablePause
+{
+	
+}
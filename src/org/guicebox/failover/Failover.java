@@ -1,10 +1,17 @@
 package org.guicebox.failover;
 
+import static java.util.concurrent.TimeUnit.*;
+import static org.guicebox.NamedExecutors.*;
+
 import com.google.inject.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 import java.util.logging.*;
+import javax.management.*;
 import net.jcip.annotations.*;
 import org.guicebox.*;
+import org.guicebox.ClusterChange.Cause;
 
 /**
  * Implements a simple but effective active-passive failover strategy for high availability. There is a maximum of one
@@ -14,6 +21,17 @@ import org.guicebox.*;
  * connectivity. This is so a backup node can know whether it has stopped receiving heartbeats because the primary node
  * has died or because it has lost its own connectivity to the network.
  * <p>
+ * Ping and heartbeat events are applied to the node state one at a time, in arrival order, without blocking the
+ * threads that deliver them. Listeners are notified of state changes (never of events that leave the state unchanged)
+ * in order on a dedicated thread, so a slow listener cannot delay heartbeat processing.
+ * <p>
+ * The application is warmed up ({@link Warm}) whenever the node becomes STANDBY, and cooled down ({@link Cool}) when
+ * it becomes DISCONNECTED, so a takeover only has to run its {@link Start} methods.
+ * <p>
+ * When a {@link MembershipModule} is installed, every heartbeat received is recorded in the {@link Membership} view of
+ * the cluster, along with the state of the sending node. With {@link StandbyHeartbeats} enabled, standby nodes send
+ * heartbeats too, so every connected node is in the view; their heartbeats are not mistaken for those of a primary.
+ * <p>
  * Each node can be in exactly one of the following {@link NodeState}s:
  * <ol>
  * <li>DISCONNECTED - The node cannot contact the WKA.</li>
@@ -27,7 +45,8 @@ import org.guicebox.*;
  * begins sending heartbeats of its own.
  * <p>
  * If two or more nodes simultaneously attempt to become PRIMARY, they will receive each other's heartbeats. A
- * combination of start time and IP address is used to statically determine which node(s) should yield.
+ * combination of start time and IP address is used to statically determine which node(s) should yield, unless a
+ * {@link Superiority} is bound to prefer the best-prepared node.
  * <p>
  * See <a href="http://code.google.com/p/guicebox/wiki/HotFailover">GuiceBox documentation</a> for details.
  * 
@@ -37,30 +56,46 @@ import org.guicebox.*;
 {
 	private final Logger _log;
 	
-	// Concurrency lock for cluster
-	private final Object _clusterLock = new Object();
-	
 	// Application cluster name
 	private final String _appName;
 	private final String _env;
 	
-	// Heartbeat utility
+	// Heartbeat utility (_heart, _ping and _app are only accessed while applying events)
 	private final Provider<Heart> _heartFactory;
-	@GuardedBy("_clusterLock") private Heart _heart;
+	private Heart _heart;
 	
 	// Ping utility
 	private final Provider<Ping> _pingFactory;
-	@GuardedBy("_clusterLock") private Ping _ping;
+	private Ping _ping;
+	
+	// Application to start & stop
+	private Application _app;
 	
 	// Unique fingerprint of this node
 	private final Node _node;
 	
 	// State of this node in the cluster (null when not participating in the cluster)
-	@GuardedBy("_clusterLock") private NodeState _state;
+	private final AtomicReference<NodeState> _state = new AtomicReference<NodeState>();
+	
+	// Most recent heartbeat received from a primary or volunteering node
+	private volatile Heartbeat _peerHeartbeat;
+	
+	// Live peers, and whether standby nodes send heartbeats to appear in it
+	private volatile Membership _membership;
+	private volatile boolean _standbyBeats;
 	
 	// Initial state of a node when it joins the cluster
 	private final NodeState _initialState;
 	
+	// Events waiting to be applied to the node state, and the number not yet applied
+	private final Queue<Event> _events = new ConcurrentLinkedQueue<Event>();
+	private final AtomicInteger _pending = new AtomicInteger();
+	
+	// Cluster listeners and the thread that notifies them
+	private final Set<ClusterListener> _listeners = new CopyOnWriteArraySet<ClusterListener>();
+	private final Set<ClusterChangeListener> _changeListeners = new CopyOnWriteArraySet<ClusterChangeListener>();
+	private final Executor _notifier;
+	
 	@Inject Failover(
 		@ApplicationName String appName,
 		@UserName String env,
@@ -69,7 +104,7 @@ import org.guicebox.*;
 		Provider<Ping> pingFactory,
 		Logger log)
 	{
-		this(appName, env, NodeState.Impl.DISCONNECTED, node, heartFactory, pingFactory, log);
+		this(appName, env, NodeState.Impl.DISCONNECTED, node, heartFactory, pingFactory, _newNotifier(), log);
 	}
 	
 	// Should only be called from unit tests
@@ -80,6 +115,7 @@ import org.guicebox.*;
 		Node node,
 		Provider<Heart> heartFactory,
 		Provider<Ping> pingFactory,
+		Executor notifier,
 		Logger log)
 	{
 		_appName = appName;
@@ -88,117 +124,336 @@ import org.guicebox.*;
 		_node = node;
 		_heartFactory = heartFactory;
 		_pingFactory = pingFactory;
+		_notifier = notifier;
 		_log = log;
 	}
 	
+	@Inject(optional = true) final void setMembership(Membership membership)
+	{
+		_membership = membership;
+	}
+	
+	@Inject(optional = true) final void setStandbyHeartbeats(@StandbyHeartbeats boolean standbyBeats)
+	{
+		_standbyBeats = standbyBeats;
+	}
+	
+	// Single thread that delivers notifications in order, and exits when idle so it never keeps the JVM alive
+	private static Executor _newNotifier()
+	{
+		final ThreadPoolExecutor notifier = new ThreadPoolExecutor(
+			1,
+			1,
+			1,
+			SECONDS,
+			new LinkedBlockingQueue<Runnable>(),
+			single("Cluster listener"));
+		notifier.allowCoreThreadTimeOut(true);
+		return notifier;
+	}
+	
 	@Override public String toString()
 	{
 		return _appName + " (" + _env + ")";
 	}
 	
-	@GuardedBy("_clusterLock") private final Set<ClusterListener> _listeners = new HashSet<ClusterListener>();
-	
 	public void addListener(ClusterListener listener)
 	{
-		synchronized(_clusterLock)
+		_listeners.add(listener);
+	}
+	
+	public void removeListener(ClusterListener listener)
+	{
+		_listeners.remove(listener);
+	}
+	
+	/**
+	 * @return the {@link HeartbeatPayload payload} of the most recent heartbeat received from a primary or volunteering
+	 * node, or an empty map if none has been received.
+	 */
+	public Map<String, String> getPeerPayload()
+	{
+		final Heartbeat hb = _peerHeartbeat;
+		return hb == null ? Collections.<String, String> emptyMap() : hb.getPayload();
+	}
+	
+	public void addChangeListener(ClusterChangeListener listener)
+	{
+		_changeListeners.add(listener);
+	}
+	
+	public void removeChangeListener(ClusterChangeListener listener)
+	{
+		_changeListeners.remove(listener);
+	}
+	
+	// A change to the node state, together with its side effects
+	private abstract class Event
+	{
+		private final Cause _cause;
+		
+		Event(Cause cause)
+		{
+			_cause = cause;
+		}
+		
+		/**
+		 * @return the new state, given the current state (null if not participating in the cluster).
+		 */
+		abstract NodeState apply(NodeState state);
+		
+		// The node whose heartbeat caused the event, if any
+		String getPeer()
 		{
-			_listeners.add(listener);
+			return null;
 		}
 	}
 	
-	public void removeListener(ClusterListener listener)
+	// An event that is ignored when not participating in the cluster
+	private abstract class ClusterEvent extends Event
 	{
-		synchronized(_clusterLock)
+		ClusterEvent(Cause cause)
+		{
+			super(cause);
+		}
+		
+		@Override final NodeState apply(NodeState state)
 		{
-			_listeners.remove(listener);
+			return state == null ? null : applyTo(state);
 		}
+		
+		abstract NodeState applyTo(NodeState state);
 	}
 	
-	private void _changeState(NodeState newState)
+	/*
+	 * Applies the event after all previously fired events. Whichever thread finds no other events pending applies
+	 * events until there are none left, so the state changes one event at a time without any thread waiting on a lock.
+	 */
+	private void _fire(Event event)
 	{
-		synchronized(_clusterLock)
+		_events.add(event);
+		if(_pending.getAndIncrement() > 0) return;
+		do
 		{
-			_state = newState;
-			for(ClusterListener listener : _listeners)
+			final NodeState state = _state.get();
+			try
+			{
+				final Event next = _events.remove();
+				final NodeState newState = next.apply(state);
+				if(newState != state)
+				{
+					_state.set(newState);
+					final Membership membership = _membership;
+					if(membership != null) membership.setLocalState(_name(newState));
+					_prepare(state, newState);
+					_notify(new ClusterChange(
+						_name(state),
+						_name(newState),
+						next._cause,
+						next.getPeer(),
+						System.currentTimeMillis()));
+				}
+			}
+			catch(Throwable e)
 			{
-				listener.onClusterChange(newState == null ? null : newState.toString());
+				// Keep applying later events, even after an assertion fails, or no other thread would apply them
+				_log.log(Level.SEVERE, "Cluster event failed in state " + state, e);
 			}
 		}
+		while(_pending.decrementAndGet() > 0);
 	}
 	
-	public void join(final Application app)
+	/*
+	 * Warms the application up while it can take over, and cools it down when it can't. Heartbeats carry the state of
+	 * the node when they are sent (only while membership is tracked), so beating is restarted on entering a state that
+	 * sends different heartbeats.
+	 */
+	private void _prepare(NodeState oldState, NodeState newState)
 	{
-		synchronized(_clusterLock)
+		if(oldState == null || newState == null) return;
+		if(newState == NodeState.Impl.STANDBY)
 		{
-			_log.info("Joining cluster " + this);
-			
-			// Tolerate multiple calls to this method
-			if(_state != null) return;
-			
-			// Initialise the state of the node
-			_changeState(_initialState);
-			_heart = _heartFactory.get();
-			_ping = _pingFactory.get();
-			
-			// Start checking for network connectivity
-			_ping.start(new PingListener()
+			_app.warm();
+			if(_standbyBeats && _membership != null) _heart.beat();
+		}
+		else if(newState == NodeState.Impl.DISCONNECTED)
+		{
+			_app.cool();
+			if(_standbyBeats && _membership != null) _heart.stopBeating();
+		}
+		else if(newState == NodeState.Impl.VOLUNTEER && _membership != null) _heart.beat();
+	}
+	
+	private static String _name(NodeState state)
+	{
+		return state == null ? null : state.toString();
+	}
+	
+	private void _notify(final ClusterChange change)
+	{
+		_notifier.execute(new Runnable()
+		{
+			public void run()
 			{
-				public void onPing()
+				for(ClusterListener listener : _listeners)
 				{
-					synchronized(_clusterLock)
+					try
+					{
+						listener.onClusterChange(change.getNewState());
+					}
+					catch(RuntimeException e)
 					{
-						_changeState(_state.onWkaAlive());
+						_log.severe("Cluster listener failed: " + e);
 					}
 				}
-				
-				public void onPingTimeout()
+				for(ClusterChangeListener listener : _changeListeners)
 				{
-					synchronized(_clusterLock)
+					try
+					{
+						listener.onClusterChange(change);
+					}
+					catch(RuntimeException e)
 					{
-						_changeState(_state.onWkaDead(_heart, app));
+						_log.severe("Cluster listener failed: " + e);
 					}
 				}
-			});
-			
-			// Start listening for heartbeats from the primary node
-			_heart.listen(new HeartbeatListener()
+			}
+		});
+	}
+	
+	public void join(final Application app)
+	{
+		_fire(new Event(Cause.JOIN)
+		{
+			@Override NodeState apply(NodeState state)
 			{
-				public void onHeartbeat(final Heartbeat hb)
+				_log.info("Joining cluster " + Failover.this);
+				
+				// Tolerate multiple calls to this method
+				if(state != null) return state;
+				
+				// Initialise the state of the node
+				_app = app;
+				_heart = _heartFactory.get();
+				_ping = _pingFactory.get();
+				_registerJMX();
+				
+				// Start checking for network connectivity
+				_ping.start(new PingListener()
 				{
-					synchronized(_clusterLock)
+					public void onPing()
 					{
-						_changeState(_state.onPeerAlive(_node, _heart, hb, app));
+						_fire(new ClusterEvent(Cause.PING)
+						{
+							@Override NodeState applyTo(NodeState state)
+							{
+								return state.onWkaAlive();
+							}
+						});
 					}
-				}
+					
+					public void onPingTimeout()
+					{
+						_fire(new ClusterEvent(Cause.PING_TIMEOUT)
+						{
+							@Override NodeState applyTo(NodeState state)
+							{
+								return state.onWkaDead(_heart, _app);
+							}
+						});
+					}
+				});
 				
-				public void onHeartbeatTimeout()
+				// Start listening for heartbeats from the other nodes
+				_heart.listen(new HeartbeatListener()
 				{
-					synchronized(_clusterLock)
+					public void onHeartbeat(final Heartbeat hb)
 					{
-						_changeState(_state.onPeerDead(_heart, app));
+						final Membership membership = _membership;
+						if(membership != null) membership.onHeartbeat(hb);
+						
+						// Only a primary or volunteering node affects the state of this node
+						if(!hb.isContending()) return;
+						_peerHeartbeat = hb;
+						_fire(new ClusterEvent(Cause.HEARTBEAT)
+						{
+							@Override NodeState applyTo(NodeState state)
+							{
+								return state.onPeerAlive(_node, _heart, hb, _app);
+							}
+							
+							@Override String getPeer()
+							{
+								return hb.getNode().toString();
+							}
+						});
 					}
-				}
-			});
+					
+					public void onHeartbeatTimeout()
+					{
+						_fire(new ClusterEvent(Cause.HEARTBEAT_TIMEOUT)
+						{
+							@Override NodeState applyTo(NodeState state)
+							{
+								return state.onPeerDead(_heart, _app);
+							}
+						});
+					}
+				});
+				return _initialState;
+			}
+		});
+	}
+	
+	private void _registerJMX()
+	{
+		final Membership membership = _membership;
+		if(membership == null) return;
+		try
+		{
+			membership.registerJMX();
+		}
+		catch(JMException e)
+		{
+			_log.warning("Could not register membership with JMX: " + e);
 		}
 	}
 	
-	public void leave()
+	private void _unregisterJMX()
 	{
-		synchronized(_clusterLock)
+		final Membership membership = _membership;
+		if(membership == null) return;
+		try
+		{
+			membership.unregisterJMX();
+		}
+		catch(JMException e)
 		{
-			_log.info("Leaving cluster " + this);
-			
-			// Tolerate multiple calls to this method
-			if(_state == null) return;
-			
-			// Stop sending & receiving heartbeats
-			_heart.stop();
-			
-			// Stop checking for network connectivity
-			_ping.stop();
-			
-			// No cluster state
-			_changeState(null);
+			_log.warning("Could not unregister membership from JMX: " + e);
 		}
 	}
+	
+	public void leave()
+	{
+		_fire(new Event(Cause.LEAVE)
+		{
+			@Override NodeState apply(NodeState state)
+			{
+				_log.info("Leaving cluster " + Failover.this);
+				
+				// Tolerate multiple calls to this method
+				if(state == null) return null;
+				
+				// Stop sending & receiving heartbeats
+				_heart.stop();
+				
+				// Stop checking for network connectivity
+				_ping.stop();
+				_unregisterJMX();
+				
+				// No cluster state
+				return null;
+			}
+		});
+	}
 }
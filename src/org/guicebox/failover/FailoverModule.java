@@ -8,7 +8,9 @@ import java.util.*;
 import org.guicebox.*;
 
 /**
- * Binds {@link Failover} as the {@link Cluster} implementation.
+ * Binds {@link Failover} as the {@link Cluster} implementation, unless another such as {@link Partitioned} is
+ * specified. Network connectivity is checked with {@link JavaPing}, unless another {@link Ping} implementation such as
+ * {@link TcpPing} or {@link UdpEchoPing} is specified.
  * <p>
  * <b>Note:</b> This module sets {@link Security} properties:
  * <ul>
@@ -21,10 +23,31 @@ import org.guicebox.*;
 public abstract class FailoverModule extends AbstractModule
 {
 	private final String _appName;
+	private final Class<? extends Ping> _ping;
+	private final Class<? extends Cluster> _cluster;
 	
 	public FailoverModule(String appName)
+	{
+		this(appName, JavaPing.class);
+	}
+	
+	/**
+	 * @param ping the implementation to use for checking network connectivity.
+	 */
+	public FailoverModule(String appName, Class<? extends Ping> ping)
+	{
+		this(appName, ping, Failover.class);
+	}
+	
+	/**
+	 * @param ping the implementation to use for checking network connectivity.
+	 * @param cluster the cluster implementation, such as {@link Failover} or {@link Partitioned}.
+	 */
+	public FailoverModule(String appName, Class<? extends Ping> ping, Class<? extends Cluster> cluster)
 	{
 		_appName = appName;
+		_ping = ping;
+		_cluster = cluster;
 	}
 	
 	@Override protected void configure()
@@ -33,9 +56,9 @@ public abstract class FailoverModule extends AbstractModule
 		Security.setProperty("networkaddress.cache.ttl", "0");
 		Security.setProperty("networkaddress.cache.negative.ttl", "0");
 		
-		// Failover cluster implementation
-		bind(Cluster.class).to(Failover.class).in(Scopes.SINGLETON);
-		bind(Ping.class).to(JavaPing.class);
+		// Cluster implementation
+		bind(Cluster.class).to(_cluster).in(Scopes.SINGLETON);
+		bind(Ping.class).to(_ping);
 		bind(Heart.class).to(NonBlockingHeart.class);
 		
 		try
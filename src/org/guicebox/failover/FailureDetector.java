@@ -0,0 +1,26 @@
+package org.guicebox.failover;
+
+/**
+ * Strategy used by {@link NonBlockingHeart} to decide when the absence of heartbeats means the peer is dead. If no
+ * detector is bound, a peer is suspected after {@link HeartbeatTolerance} consecutive {@link HeartbeatInterval}s pass
+ * without a heartbeat.
+ * 
+ * @author willhains
+ * @see PhiAccrualFailureDetector
+ */
+public interface FailureDetector
+{
+	/**
+	 * Records the arrival of a heartbeat.
+	 * 
+	 * @param sender the node that sent the heartbeat.
+	 * @param now the arrival time, according to {@link System#nanoTime()}.
+	 */
+	void onHeartbeat(Node sender, long now);
+	
+	/**
+	 * @return how many nanoseconds after the last heartbeat (from whichever node sent it) the peer should be suspected
+	 * dead.
+	 */
+	long getTimeout();
+}
@@ -2,12 +2,14 @@ package org.guicebox.failover;
 
 import com.google.inject.*;
 import java.io.*;
+import java.util.*;
 import java.util.concurrent.atomic.*;
 import net.jcip.annotations.*;
 import org.guicebox.*;
 
 /**
- * A heartbeat message, containing the application (cluster) name, node status and process fingerprint.
+ * A heartbeat message, containing the application (cluster) name, node state and process fingerprint, and an optional
+ * payload of application values supplied by a bound {@link HeartbeatPayload}.
  * 
  * @author willhains
  */
@@ -21,11 +23,60 @@ import org.guicebox.*;
 	// Node ID
 	private final Node _info;
 	
+	// Sequence number - unique per sending process
+	private final String _seqNo;
+	
+	// Application values (null if deserialized from an older version)
+	private Map<String, String> _payload = Collections.emptyMap();
+	
+	// State of the sending node (null if unknown)
+	private String _state;
+	
+	// Hash of the cluster key, computed on first use
+	private transient int _clusterFingerprint;
+	
 	@Inject public Heartbeat(@ApplicationName String appName, @UserName String env, Node info)
+	{
+		this(appName, env, info, _SEQ.incrementAndGet());
+	}
+	
+	// Should only be called by HeartbeatCodec
+	Heartbeat(String appName, String env, Node info, long seqNo)
 	{
 		_appName = appName;
 		_env = env;
 		_info = info;
+		_seqNo = Long.toString(seqNo);
+	}
+	
+	// Should only be called by HeartbeatCodec
+	Heartbeat(String appName, String env, Node info, long seqNo, Map<String, String> payload)
+	{
+		this(appName, env, info, seqNo);
+		_payload = Collections.unmodifiableMap(payload);
+	}
+	
+	// Should only be called by HeartbeatCodec
+	Heartbeat(String appName, String env, Node info, long seqNo, Map<String, String> payload, String state)
+	{
+		this(appName, env, info, seqNo, payload);
+		_state = state;
+	}
+	
+	@Inject(optional = true) void setPayload(HeartbeatPayload payload)
+	{
+		// Take a snapshot, skipping null keys and values
+		final Map<String, String> values = new LinkedHashMap<String, String>();
+		for(Map.Entry<String, String> entry : payload.getPayload().entrySet())
+		{
+			if(entry.getKey() != null && entry.getValue() != null) values.put(entry.getKey(), entry.getValue());
+		}
+		_payload = Collections.unmodifiableMap(values);
+	}
+	
+	@Inject(optional = true) void setMembership(Membership membership)
+	{
+		_state = membership.getLocalState();
 	}
 	
 	String getAppName()
@@ -38,6 +89,11 @@ import org.guicebox.*;
 		return _env;
 	}
 	
+	long getSequenceNumber()
+	{
+		return Long.parseLong(_seqNo);
+	}
+	
 	/**
 	 * @return {@code true} if the specified heartbeat has the same {@link ApplicationName} and {@link UserName}.
 	 */
@@ -48,6 +104,54 @@ import org.guicebox.*;
 		return true;
 	}
 	
+	/**
+	 * @return a key that is equal for heartbeats from the same cluster, for looking up clusters in hash tables.
+	 */
+	public String getClusterKey()
+	{
+		// Length prefix keeps the key unambiguous whatever characters the names contain
+		return _appName.length() + ":" + _appName + "@" + _env;
+	}
+	
+	/**
+	 * @return a hash of {@link #getClusterKey()}. Heartbeats with different fingerprints are from different clusters.
+	 */
+	public int getClusterFingerprint()
+	{
+		int fingerprint = _clusterFingerprint;
+		if(fingerprint == 0) _clusterFingerprint = fingerprint = getClusterKey().hashCode();
+		return fingerprint;
+	}
+	
+	/**
+	 * @return the application values sent with this heartbeat, which is empty if no {@link HeartbeatPayload} is bound.
+	 * Not considered by {@link #equals(Object)}.
+	 */
+	public Map<String, String> getPayload()
+	{
+		return _payload == null ? Collections.<String, String> emptyMap() : _payload;
+	}
+	
+	/**
+	 * @return the state of the node that sent this heartbeat, or {@code null} if it was not sent. Not considered by
+	 * {@link #equals(Object)}.
+	 */
+	public String getState()
+	{
+		return _state;
+	}
+	
+	/**
+	 * @return {@code true} unless the sending node is known to be neither primary nor volunteering to be, so that only
+	 * contending heartbeats keep a standby node standing by.
+	 */
+	boolean isContending()
+	{
+		return _state == null
+			|| NodeState.Impl.PRIMARY.name().equals(_state)
+			|| NodeState.Impl.VOLUNTEER.name().equals(_state);
+	}
+	
 	/**
 	 * @return the fingerprint of the node that sent this heartbeat.
 	 */
@@ -78,9 +182,8 @@ import org.guicebox.*;
 		return hash;
 	}
 	
-	// Unique sequence number - for logging only
+	// Source of sequence numbers for heartbeats sent by this process
 	private static final AtomicLong _SEQ = new AtomicLong();
-	private final String _seqNo = Long.toString(_SEQ.incrementAndGet());
 	
 	@Override public String toString()
 	{
@@ -0,0 +1,322 @@
+package org.guicebox.failover;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.charset.*;
+import java.util.*;
+import net.jcip.annotations.*;
+
+/**
+ * Converts {@link Heartbeat}s to and from the compact binary wire format used by {@link Transport}s. The format is a
+ * fixed header followed by length-prefixed UTF-8 fields:
+ * 
+ * <pre>
+ *  0  int    magic number (&quot;GBhb&quot;)
+ *  4  byte   format version
+ *  5  byte   node state (1 + ordinal of {@link NodeState.Impl}, or zero if unknown)
+ *  6  short  total length of the packet
+ *  8  long   sequence number
+ * 16  int    cluster fingerprint ({@link Heartbeat#getClusterFingerprint()})
+ * 20  long   node fingerprint (64-bit hash of node address and process ID)
+ * 28  short  length of application name, followed by its UTF-8 bytes
+ *     short  length of environment, followed by its UTF-8 bytes
+ *     short  length of node address, followed by its UTF-8 bytes
+ *     short  length of node process ID, followed by its UTF-8 bytes
+ *     short  number of payload entries, each a key and value encoded like the fields above (omitted if none)
+ * </pre>
+ * 
+ * The fingerprints let a receiver reject heartbeats from other clusters, and its own heartbeats, by comparing the
+ * header alone. Version 1 heartbeats, which have no fingerprints and a 16-byte header, are still accepted. Decoders
+ * that predate the payload ignore it, and those that predate the node state read it as reserved.
+ * <p>
+ * 
+ * In {@link LegacyHeartbeats legacy} mode, heartbeats are sent using Java serialization, and both formats are accepted
+ * when receiving. Otherwise, Java-serialized packets are ignored.
+ * 
+ * @author willhains
+ */
+@ThreadSafe public final class HeartbeatCodec
+{
+	/**
+	 * The largest packet that will be encoded or decoded.
+	 */
+	public static final int MAX_LENGTH = 1024;
+	
+	/**
+	 * The largest encoded {@link Heartbeat#getPayload() payload}, so that a large payload can't stop heartbeats being
+	 * sent. Entries that would exceed it are left out.
+	 */
+	public static final int MAX_PAYLOAD_LENGTH = 512;
+	
+	// Header fields
+	private static final int _MAGIC = 0x47426862;
+	private static final byte _VERSION = 2, _VERSION_1 = 1;
+	private static final int _HEADER_LENGTH = 28, _HEADER_LENGTH_1 = 16;
+	
+	// First two bytes of a Java serialization stream
+	private static final short _SERIALIZED_MAGIC = (short)0xACED;
+	
+	// Whether to send Java-serialized heartbeats and accept them when receiving
+	private volatile boolean _legacy;
+	
+	// UTF-8 converters are stateful, so are guarded separately to allow concurrent sending & receiving
+	@GuardedBy("this") private final CharsetEncoder _utf8Encoder;
+	@GuardedBy("_utf8Decoder") private final CharsetDecoder _utf8Decoder;
+	@GuardedBy("_utf8Decoder") private final CharBuffer _chars = CharBuffer.allocate(MAX_LENGTH);
+	
+	public HeartbeatCodec()
+	{
+		final Charset utf8 = Charset.forName("UTF-8");
+		_utf8Encoder = utf8.newEncoder();
+		_utf8Decoder = utf8.newDecoder();
+	}
+	
+	/**
+	 * @param legacy {@code true} to send heartbeats using Java serialization and accept them when receiving.
+	 */
+	public void setLegacy(boolean legacy)
+	{
+		_legacy = legacy;
+	}
+	
+	/**
+	 * Encodes the specified heartbeat into the buffer, which is cleared first and flipped ready for sending afterwards.
+	 * 
+	 * @throws IOException if the heartbeat doesn't fit in the buffer.
+	 */
+	public void encode(Heartbeat hb, ByteBuffer buf) throws IOException
+	{
+		buf.clear();
+		if(_legacy)
+		{
+			_encodeSerialized(hb, buf);
+			return;
+		}
+		synchronized(this)
+		{
+			try
+			{
+				buf.putInt(_MAGIC).put(_VERSION).put(_stateCode(hb.getState())).putShort((short)0);
+				buf.putLong(hb.getSequenceNumber());
+				buf.putInt(hb.getClusterFingerprint()).putLong(hb.getNode().getFingerprint());
+				_putString(hb.getAppName(), buf);
+				_putString(hb.getEnv(), buf);
+				_putString(hb.getNode().getAddress(), buf);
+				_putString(hb.getNode().getProcessID(), buf);
+				_putPayload(hb.getPayload(), buf);
+				buf.putShort(6, (short)buf.position());
+				buf.flip();
+			}
+			catch(BufferOverflowException e)
+			{
+				throw new IOException("Heartbeat too large: " + hb);
+			}
+		}
+	}
+	
+	private static byte _stateCode(String state)
+	{
+		final NodeState.Impl[] states = NodeState.Impl.values();
+		for(int i = 0; i < states.length; i++)
+		{
+			if(states[i].name().equals(state)) return (byte)(i + 1);
+		}
+		return 0;
+	}
+	
+	private static String _state(byte code)
+	{
+		final NodeState.Impl[] states = NodeState.Impl.values();
+		return code > 0 && code <= states.length ? states[code - 1].name() : null;
+	}
+	
+	private void _putString(String s, ByteBuffer buf) throws CharacterCodingException
+	{
+		// Leave room for the length prefix, then fill it in once the length is known
+		final int lengthAt = buf.position();
+		buf.putShort((short)0);
+		_utf8Encoder.reset();
+		final CoderResult result = _utf8Encoder.encode(CharBuffer.wrap(s), buf, true);
+		if(result.isOverflow()) throw new BufferOverflowException();
+		if(result.isError()) result.throwException();
+		_utf8Encoder.flush(buf);
+		buf.putShort(lengthAt, (short)(buf.position() - lengthAt - 2));
+	}
+	
+	private void _putPayload(Map<String, String> payload, ByteBuffer buf) throws CharacterCodingException
+	{
+		if(payload.isEmpty()) return;
+		final int countAt = buf.position();
+		final int limit = buf.limit();
+		buf.putShort((short)0);
+		buf.limit(Math.min(limit, buf.position() + MAX_PAYLOAD_LENGTH));
+		try
+		{
+			short count = 0;
+			for(Map.Entry<String, String> entry : payload.entrySet())
+			{
+				final int entryAt = buf.position();
+				try
+				{
+					_putString(entry.getKey(), buf);
+					_putString(entry.getValue(), buf);
+					count++;
+				}
+				catch(BufferOverflowException e)
+				{
+					// Leave out entries that don't fit
+					buf.position(entryAt);
+				}
+			}
+			buf.putShort(countAt, count);
+		}
+		finally
+		{
+			buf.limit(limit);
+		}
+	}
+	
+	private static void _encodeSerialized(Heartbeat hb, ByteBuffer buf) throws IOException
+	{
+		final ByteArrayOutputStream msg = new ByteArrayOutputStream();
+		new ObjectOutputStream(msg).writeObject(hb);
+		if(msg.size() > buf.remaining()) throw new IOException("Heartbeat too large: " + hb);
+		buf.put(msg.toByteArray());
+		buf.flip();
+	}
+	
+	/**
+	 * Decodes a heartbeat from the remaining bytes in the buffer.
+	 * 
+	 * @return the heartbeat, or {@code null} if the buffer does not contain a valid heartbeat.
+	 */
+	public Heartbeat decode(ByteBuffer buf)
+	{
+		try
+		{
+			if(buf.remaining() >= 2 && buf.getShort(buf.position()) == _SERIALIZED_MAGIC)
+			{
+				return _legacy ? _decodeSerialized(buf) : null;
+			}
+			if(buf.remaining() < _HEADER_LENGTH_1) return null;
+			final int start = buf.position();
+			if(buf.getInt(start) != _MAGIC) return null;
+			final byte version = buf.get(start + 4);
+			if(version != _VERSION && version != _VERSION_1) return null;
+			if(buf.getShort(start + 6) != buf.remaining()) return null;
+			final long seqNo = buf.getLong(start + 8);
+			final String state = _state(buf.get(start + 5));
+			buf.position(start + (version == _VERSION ? _HEADER_LENGTH : _HEADER_LENGTH_1));
+			synchronized(_utf8Decoder)
+			{
+				final String appName = _getString(buf);
+				final String env = _getString(buf);
+				final String address = _getString(buf);
+				final String processId = _getString(buf);
+				final Map<String, String> payload = new LinkedHashMap<String, String>();
+				for(int count = buf.hasRemaining() ? buf.getShort() : 0; count > 0; count--)
+				{
+					payload.put(_getString(buf), _getString(buf));
+				}
+				return new Heartbeat(appName, env, new Node(address, processId), seqNo, payload, state);
+			}
+		}
+		catch(BufferUnderflowException e)
+		{
+			// Truncated
+			return null;
+		}
+		catch(IllegalArgumentException e)
+		{
+			// Field length out of bounds
+			return null;
+		}
+		catch(CharacterCodingException e)
+		{
+			// Not UTF-8
+			return null;
+		}
+	}
+	
+	/**
+	 * Decodes a heartbeat from the remaining bytes in the buffer, unless it is from the node that sent the specified
+	 * heartbeat or from a different cluster. Such heartbeats are rejected by their header fingerprints, without being
+	 * decoded.
+	 * 
+	 * @return the heartbeat, or {@code null} if the buffer does not contain a valid heartbeat from another node in the
+	 * same cluster.
+	 */
+	public Heartbeat decode(ByteBuffer buf, Heartbeat ownHeartbeat)
+	{
+		// Check the fingerprints first
+		final int fingerprint = peekClusterFingerprint(buf);
+		if(fingerprint != 0)
+		{
+			if(fingerprint != ownHeartbeat.getClusterFingerprint()) return null;
+			if(buf.getLong(buf.position() + 20) == ownHeartbeat.getNode().getFingerprint()) return null;
+		}
+		
+		// Older formats can only be checked after decoding
+		final Heartbeat heartbeat = decode(buf);
+		if(heartbeat == null) return null;
+		if(ownHeartbeat.equals(heartbeat)) return null;
+		if(!ownHeartbeat.isSameCluster(heartbeat)) return null;
+		return heartbeat;
+	}
+	
+	/**
+	 * @return the cluster fingerprint in the header of the heartbeat in the buffer, or zero if it has no fingerprint.
+	 */
+	public int peekClusterFingerprint(ByteBuffer buf)
+	{
+		final int start = buf.position();
+		if(buf.remaining() < _HEADER_LENGTH) return 0;
+		if(buf.getInt(start) != _MAGIC) return 0;
+		if(buf.get(start + 4) != _VERSION) return 0;
+		return buf.getInt(start + 16);
+	}
+	
+	private String _getString(ByteBuffer buf) throws CharacterCodingException
+	{
+		final int length = buf.getShort() & 0xFFFF;
+		final int end = buf.position() + length;
+		final int limit = buf.limit();
+		buf.limit(end);
+		try
+		{
+			_chars.clear();
+			_utf8Decoder.reset();
+			final CoderResult result = _utf8Decoder.decode(buf, _chars, true);
+			if(result.isError()) result.throwException();
+			_chars.flip();
+			return _chars.toString();
+		}
+		finally
+		{
+			buf.limit(limit);
+		}
+	}
+	
+	private static Heartbeat _decodeSerialized(ByteBuffer buf)
+	{
+		final byte[] bytes = new byte[buf.remaining()];
+		buf.get(bytes);
+		try
+		{
+			return (Heartbeat)new ObjectInputStream(new ByteArrayInputStream(bytes)).readObject();
+		}
+		catch(ClassNotFoundException e)
+		{
+			// Not a heartbeat
+		}
+		catch(ClassCastException e)
+		{
+			// Not a heartbeat
+		}
+		catch(IOException e)
+		{
+			// Not a heartbeat
+		}
+		return null;
+	}
+}
@@ -0,0 +1,21 @@
+package org.guicebox.failover;
+
+import java.util.*;
+
+/**
+ * Supplies application values (for example load, queue depth or the last applied sequence number) to be sent with
+ * each {@link Heartbeat}. Bind an implementation in Guice to populate the payload; other nodes can read it from
+ * {@link Heartbeat#getPayload()}.
+ * 
+ * @author willhains
+ */
+public interface HeartbeatPayload
+{
+	/**
+	 * Called on the heartbeat thread each time a heartbeat is sent, so should return quickly. The payload is limited to
+	 * {@link HeartbeatCodec#MAX_PAYLOAD_LENGTH} bytes when encoded; entries that don't fit are not sent.
+	 * 
+	 * @return the values to send with the next heartbeat.
+	 */
+	Map<String, String> getPayload();
+}
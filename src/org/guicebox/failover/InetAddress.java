@@ -0,0 +1,16 @@
+package org.guicebox.failover;
+
+import java.io.*;
+
+/**
+ * Abstracts {@link java.net.InetAddress} for testing, and for the alternative ping protocols of {@link TcpPing} and
+ * {@link UdpEchoPing}.
+ * 
+ * @author willhains
+ */
+interface InetAddress
+{
+	String getHostAddress();
+	
+	boolean isReachable(int timeout) throws IOException;
+}
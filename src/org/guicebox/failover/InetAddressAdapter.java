@@ -0,0 +1,29 @@
+package org.guicebox.failover;
+
+import java.io.*;
+import java.net.*;
+
+/**
+ * Adapts {@link InetAddress} to the real {@link java.net.InetAddress}.
+ * 
+ * @author willhains
+ */
+final class InetAddressAdapter implements InetAddress
+{
+	private final java.net.InetAddress _inner;
+	
+	InetAddressAdapter(String host) throws UnknownHostException
+	{
+		_inner = java.net.InetAddress.getByName(host);
+	}
+	
+	public String getHostAddress()
+	{
+		return _inner.getHostAddress();
+	}
+	
+	public boolean isReachable(int timeout) throws IOException
+	{
+		return _inner.isReachable(timeout);
+	}
+}
@@ -1,191 +1,283 @@
-package org.guicebox.failover;
-
-import static java.util.concurrent.TimeUnit.*;
-
-import com.google.inject.*;
-import java.io.*;
-import java.net.*;
-import java.util.*;
-import java.util.concurrent.*;
-import java.util.logging.*;
-import net.jcip.annotations.*;
-import org.guicebox.*;
-
-/**
- * Utility for pinging a list of specified network addresses. The wire protocol is implemented by
- * {@link java.net.InetAddress#isReachable(int)}.
- * 
- * @author willhains
- */
-@ThreadSafe public final class JavaPing implements Ping
-{
-	private final Logger _log;
-	
-	// The well-known addresses to ping
-	private final List<InetAddress> _wka;
-	
-	// How long to wait between each ping
-	private volatile int _pingInterval = 1000;
-	
-	// How many multiples of the ping interval to wait before timing out
-	private volatile int _pingTolerance = 3;
-	
-	// Timer thread & task and its lock
-	private final ScheduledExecutorService _ping;
-	private final Object _pingLock = new Object();
-	@GuardedBy("_pingLock") private Future<?> _pingTask;
-	
-	/**
-	 * Prepares a ping to the specified well-known address (WKA). Call {@link #start(PingListener)} to start pinging.
-	 * 
-	 * @param wka the comma-or-whitespace-separated host names or IP addresses of the ping targets.
-	 * @throws UnknownHostException if the specified host name could not be found in DNS.
-	 */
-	@Inject public JavaPing(@WellKnownAddress String wka, Logger log) throws UnknownHostException
-	{
-		// Look up the IP address of the WKA
-		this( //
-			_parseSet(wka),
-			NamedExecutors.newSingleThreadScheduledExecutor("JavaPing: " + wka),
-			log);
-	}
-	
-	private static Set<InetAddress> _parseSet(String addresses) throws UnknownHostException
-	{
-		assert addresses != null && addresses.trim().length() > 0 : "No WKAs provided!";
-		final Set<InetAddress> wkaSet = new LinkedHashSet<InetAddress>();
-		for(String wka : addresses.split("[,;\\s]"))
-		{
-			if(wka.length() > 0) wkaSet.add(new InetAddressAdapter(wka));
-		}
-		return wkaSet;
-	}
-	
-	// Should only be called from unit tests
-	JavaPing(Set<InetAddress> wka, ScheduledExecutorService pingThread, Logger log)
-	{
-		assert wka != null && wka.size() > 0 : "No WKAs provided!";
-		_wka = new LinkedList<InetAddress>(wka);
-		_ping = pingThread;
-		_log = log;
-	}
-	
-	@Inject(optional = true) void setPingInterval(@PingInterval int interval)
-	{
-		assert interval > 0 : "JavaPing interval must be > 0";
-		_pingInterval = interval;
-	}
-	
-	@Inject(optional = true) void setPingTolerance(@PingTolerance int tolerance)
-	{
-		assert tolerance > 0 : "JavaPing tolerance must be > 0";
-		_pingTolerance = tolerance;
-	}
-	
-	public void start(final PingListener pingListener)
-	{
-		synchronized(_pingLock)
-		{
-			// Make sure we don't have multiple pings running
-			stopPinging();
-			
-			// Create and schedule the ping task
-			final Runnable command = new Runnable()
-			{
-				public void run()
-				{
-					for(int failures = 1; failures <= _pingTolerance; failures++)
-					{
-						// Abort if interrupted
-						if(Thread.currentThread().isInterrupted())
-						{
-							_log.finest("JavaPing interrupted. Shutting down.");
-							return;
-						}
-						
-						try
-						{
-							for(final InetAddress wka : _wka)
-							{
-								// Java ping
-								_log.finest("Pinging " + wka.getHostAddress() + "...");
-								if(wka.isReachable(_pingInterval * _pingTolerance))
-								{
-									// Pinged successfully
-									_log.finest("JavaPing response");
-									pingListener.onPing();
-									
-									// Move this host to the front of the queue to avoid pinging a dead host
-									Collections.sort(_wka, new Comparator<InetAddress>()
-									{
-										public int compare(InetAddress o1, InetAddress o2)
-										{
-											if(o1 == wka) return o2 == wka ? 0 : -1;
-											return o2 == wka ? 1 : 0;
-										}
-									});
-									return;
-								}
-							}
-							
-							// JavaPing timeout
-							_log.warning("Time out (" + failures + "/" + _pingTolerance + ")");
-						}
-						catch(IOException e)
-						{
-							_log.severe("Could not verify WKA: " + e);
-							break;
-						}
-					}
-					
-					// Beyond tolerance - notify listener
-					pingListener.onPingTimeout();
-				}
-			};
-			_pingTask = _ping.scheduleWithFixedDelay(command, 0, _pingInterval, MILLISECONDS);
-		}
-	}
-	
-	public void stopPinging()
-	{
-		synchronized(_pingLock)
-		{
-			if(_pingTask != null) _pingTask.cancel(true);
-		}
-	}
-	
-	public void stop()
-	{
-		// Shut down the executor
-		_ping.shutdownNow();
-	}
-}
-
-// Used to abstract java.net for testing
-interface InetAddress
-{
-	String getHostAddress();
-	
-	boolean isReachable(int timeout) throws IOException;
-}
-
-// Adapts InetAddress to the real java.net.InetAddress
-final class InetAddressAdapter implements InetAddress
-{
-	private final java.net.InetAddress _inner;
-	
-	InetAddressAdapter(String host) throws UnknownHostException
-	{
-		_inner = java.net.InetAddress.getByName(host);
-	}
-	
-	public String getHostAddress()
-	{
-		return _inner.getHostAddress();
-	}
-	
-	public boolean isReachable(int timeout) throws IOException
-	{
-		return _inner.isReachable(timeout);
-	}
-}
+package org.guicebox.failover;
+
+import static java.util.concurrent.TimeUnit.*;
+
+import com.google.inject.*;
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.logging.*;
+import net.jcip.annotations.*;
+import org.guicebox.*;
+
+/**
+ * Utility for pinging a list of specified network addresses. The wire protocol is implemented by
+ * {@link java.net.InetAddress#isReachable(int)}. All addresses are pinged concurrently, and connectivity is confirmed
+ * as soon as {@link PingQuorum} of them respond. The latest round-trip time to each address is available from
+ * {@link #getLatencies()}.
+ * 
+ * @author willhains
+ */
+@ThreadSafe public final class JavaPing implements Ping
+{
+	private final Logger _log;
+	
+	// The well-known addresses to ping
+	private final List<InetAddress> _wka;
+	
+	// How long to wait between each ping
+	private volatile int _pingInterval = 1000;
+	
+	// How many multiples of the ping interval to wait before timing out
+	private volatile int _pingTolerance = 3;
+	
+	// How many WKAs must respond
+	private volatile int _quorum = 1;
+	
+	// Latest round-trip time (milliseconds) to each WKA, or -1 if it didn't respond
+	private final ConcurrentMap<String, Long> _latencies = new ConcurrentHashMap<String, Long>();
+	
+	// Ping round counter, and the round of each recorded latency, so stragglers can't overwrite newer results
+	private final AtomicLong _round = new AtomicLong();
+	@GuardedBy("_latencies") private final Map<String, Long> _latencyRounds = new HashMap<String, Long>();
+	
+	// Threads for pinging WKAs concurrently
+	private final ExecutorService _probe;
+	
+	// Timer thread & task and its lock
+	private final ScheduledExecutorService _ping;
+	private final Object _pingLock = new Object();
+	@GuardedBy("_pingLock") private Future<?> _pingTask;
+	
+	/**
+	 * Prepares a ping to the specified well-known address (WKA). Call {@link #start(PingListener)} to start pinging.
+	 * 
+	 * @param wka the comma-or-whitespace-separated host names or IP addresses of the ping targets.
+	 * @throws UnknownHostException if the specified host name could not be found in DNS.
+	 */
+	@Inject public JavaPing(@WellKnownAddress String wka, Logger log) throws UnknownHostException
+	{
+		// Look up the IP address of the WKA
+		this(_parseSet(wka), "JavaPing: " + wka, log);
+	}
+	
+	private static Set<InetAddress> _parseSet(String addresses) throws UnknownHostException
+	{
+		final Set<InetAddress> wkaSet = new LinkedHashSet<InetAddress>();
+		for(String wka : split(addresses))
+		{
+			wkaSet.add(new InetAddressAdapter(wka));
+		}
+		return wkaSet;
+	}
+	
+	// Splits a WKA specification into individual addresses
+	static List<String> split(String addresses)
+	{
+		assert addresses != null && addresses.trim().length() > 0 : "No WKAs provided!";
+		final List<String> wkaList = new ArrayList<String>();
+		for(String wka : addresses.split("[,;\\s]"))
+		{
+			if(wka.length() > 0) wkaList.add(wka);
+		}
+		return wkaList;
+	}
+	
+	// Should only be called by other Ping implementations that use JavaPing for scheduling
+	JavaPing(Set<InetAddress> wka, String threadName, Logger log)
+	{
+		this(
+			wka,
+			NamedExecutors.newSingleThreadScheduledExecutor(threadName),
+			NamedExecutors.newCachedThreadPool(threadName + " probe"),
+			log);
+	}
+	
+	// Should only be called from unit tests
+	JavaPing(Set<InetAddress> wka, ScheduledExecutorService pingThread, ExecutorService probeThreads, Logger log)
+	{
+		assert wka != null && wka.size() > 0 : "No WKAs provided!";
+		_wka = new ArrayList<InetAddress>(wka);
+		_ping = pingThread;
+		_probe = probeThreads;
+		_log = log;
+	}
+	
+	@Inject(optional = true) void setPingInterval(@PingInterval int interval)
+	{
+		assert interval > 0 : "JavaPing interval must be > 0";
+		_pingInterval = interval;
+	}
+	
+	@Inject(optional = true) void setPingTolerance(@PingTolerance int tolerance)
+	{
+		assert tolerance > 0 : "JavaPing tolerance must be > 0";
+		_pingTolerance = tolerance;
+	}
+	
+	@Inject(optional = true) void setPingQuorum(@PingQuorum int quorum)
+	{
+		assert quorum > 0 && quorum <= _wka.size() : "JavaPing quorum must be between 1 and the number of WKAs";
+		_quorum = quorum;
+	}
+	
+	/**
+	 * @return the latest round-trip time in milliseconds to each WKA, keyed by IP address. Addresses that did not
+	 * respond to the latest ping have a latency of -1.
+	 */
+	public Map<String, Long> getLatencies()
+	{
+		return Collections.unmodifiableMap(_latencies);
+	}
+	
+	public void start(final PingListener pingListener)
+	{
+		synchronized(_pingLock)
+		{
+			// Make sure we don't have multiple pings running
+			stopPinging();
+			
+			// Create and schedule the ping task
+			final Runnable command = new Runnable()
+			{
+				public void run()
+				{
+					for(int failures = 1; failures <= _pingTolerance; failures++)
+					{
+						// Abort if interrupted
+						if(Thread.currentThread().isInterrupted())
+						{
+							_log.finest("JavaPing interrupted. Shutting down.");
+							return;
+						}
+						
+						try
+						{
+							if(_wka.size() == 1 ? _pingSequentially() : _pingConcurrently())
+							{
+								// Pinged successfully
+								_log.finest("JavaPing response");
+								pingListener.onPing();
+								return;
+							}
+							
+							// JavaPing timeout
+							_log.warning("Time out (" + failures + "/" + _pingTolerance + ")");
+						}
+						catch(IOException e)
+						{
+							_log.severe("Could not verify WKA: " + e);
+							break;
+						}
+					}
+					
+					// Beyond tolerance - notify listener
+					pingListener.onPingTimeout();
+				}
+			};
+			_pingTask = _ping.scheduleWithFixedDelay(command, 0, _pingInterval, MILLISECONDS);
+		}
+	}
+	
+	// Pings each WKA in turn until the quorum responds
+	private boolean _pingSequentially() throws IOException
+	{
+		final int timeout = _pingInterval * _pingTolerance;
+		final long round = _round.incrementAndGet();
+		int reached = 0;
+		for(InetAddress wka : _wka)
+		{
+			if(_isReachable(wka, timeout, round) && ++reached >= _quorum) return true;
+		}
+		return false;
+	}
+	
+	// Pings all WKAs at once, and waits only until the quorum responds
+	private boolean _pingConcurrently() throws IOException
+	{
+		final int timeout = _pingInterval * _pingTolerance;
+		final long round = _round.incrementAndGet();
+		final CompletionService<Boolean> completed = new ExecutorCompletionService<Boolean>(_probe);
+		final List<Future<Boolean>> probes = new ArrayList<Future<Boolean>>(_wka.size());
+		for(final InetAddress wka : _wka)
+		{
+			probes.add(completed.submit(new Callable<Boolean>()
+			{
+				public Boolean call() throws IOException
+				{
+					return _isReachable(wka, timeout, round);
+				}
+			}));
+		}
+		int reached = 0;
+		IOException error = null;
+		try
+		{
+			// Stop waiting as soon as the quorum is reached, or can no longer be reached
+			for(int pending = probes.size(); reached < _quorum && reached + pending >= _quorum; pending--)
+			{
+				try
+				{
+					if(completed.take().get()) reached++;
+				}
+				catch(ExecutionException e)
+				{
+					if(!(e.getCause() instanceof IOException)) throw new IOException(e.getCause());
+					_log.severe("Could not ping WKA: " + e.getCause());
+					if(error == null) error = (IOException)e.getCause();
+				}
+			}
+		}
+		catch(InterruptedException e)
+		{
+			// Abort, but restore interrupt status
+			Thread.currentThread().interrupt();
+		}
+		finally
+		{
+			// Don't wait for the stragglers
+			for(Future<Boolean> probe : probes)
+			{
+				probe.cancel(true);
+			}
+		}
+		if(reached >= _quorum) return true;
+		if(error != null && reached == 0) throw error;
+		return false;
+	}
+	
+	// Pings the WKA, recording its latency unless a later round has already done so
+	private boolean _isReachable(InetAddress wka, int timeout, long round) throws IOException
+	{
+		_log.finest("Pinging " + wka.getHostAddress() + "...");
+		final long start = System.nanoTime();
+		final boolean reachable = wka.isReachable(timeout);
+		final long latency = reachable ? NANOSECONDS.toMillis(System.nanoTime() - start) : -1L;
+		synchronized(_latencies)
+		{
+			final Long latest = _latencyRounds.get(wka.getHostAddress());
+			if(latest != null && latest > round) return reachable;
+			_latencyRounds.put(wka.getHostAddress(), round);
+			_latencies.put(wka.getHostAddress(), latency);
+		}
+		if(reachable) _log.finest("Pinged " + wka.getHostAddress() + " in " + latency + "ms");
+		return reachable;
+	}
+	
+	public void stopPinging()
+	{
+		synchronized(_pingLock)
+		{
+			if(_pingTask != null) _pingTask.cancel(true);
+		}
+	}
+	
+	public void stop()
+	{
+		// Shut down the executors
+		_ping.shutdownNow();
+		_probe.shutdownNow();
+	}
+}
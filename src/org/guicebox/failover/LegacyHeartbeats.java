@@ -0,0 +1,19 @@
+package org.guicebox.failover;
+
+import static java.lang.annotation.ElementType.*;
+import static java.lang.annotation.RetentionPolicy.*;
+
+import com.google.inject.*;
+import java.lang.annotation.*;
+
+/**
+ * Set to {@code true} to send heartbeats using Java serialization, as earlier versions of GuiceBox do, while also
+ * accepting heartbeats in the compact binary format. Use this during a rolling upgrade from an earlier version, then
+ * remove it once all nodes in the cluster have been upgraded. See {@link HeartbeatCodec}.
+ * 
+ * @author willhains
+ */
+@Retention(RUNTIME) @Target( { FIELD, PARAMETER }) @BindingAnnotation public @interface LegacyHeartbeats
+{	
+
+}
@@ -0,0 +1,71 @@
+package org.guicebox.failover;
+
+import java.util.*;
+import net.jcip.annotations.*;
+
+/**
+ * A live node in the {@link Membership} view of the cluster, as of its most recent heartbeat.
+ * 
+ * @author willhains
+ */
+@Immutable public final class Member
+{
+	private final Node _node;
+	private final String _state;
+	private final long _lastSeen;
+	private final Map<String, String> _payload;
+	
+	// Timer wheel tick the heartbeat was received in
+	private final long _tick;
+	
+	Member(Heartbeat hb, long lastSeen, long tick)
+	{
+		_node = hb.getNode();
+		_state = hb.getState();
+		_payload = hb.getPayload();
+		_lastSeen = lastSeen;
+		_tick = tick;
+	}
+	
+	/**
+	 * @return the node's fingerprint.
+	 */
+	public Node getNode()
+	{
+		return _node;
+	}
+	
+	/**
+	 * @return the node's state, as sent with its heartbeat, or {@code null} if it did not send one.
+	 */
+	public String getState()
+	{
+		return _state;
+	}
+	
+	/**
+	 * @return the time (in milliseconds since the epoch) the node's most recent heartbeat was received.
+	 */
+	public long getLastSeen()
+	{
+		return _lastSeen;
+	}
+	
+	/**
+	 * @return the {@link HeartbeatPayload payload} of the node's most recent heartbeat.
+	 */
+	public Map<String, String> getPayload()
+	{
+		return _payload;
+	}
+	
+	long getTick()
+	{
+		return _tick;
+	}
+	
+	@Override public String toString()
+	{
+		return _node + " " + _state + " " + new Date(_lastSeen);
+	}
+}
@@ -0,0 +1,20 @@
+package org.guicebox.failover;
+
+/**
+ * Listener interface for other nodes joining and leaving a {@link Partitioned} cluster. These are not transitions of
+ * this node's state, so they are not reported to {@link org.guicebox.ClusterChangeListener}s.
+ * 
+ * @author willhains
+ */
+public interface MemberListener
+{
+	/**
+	 * Called when heartbeats are first received from another node.
+	 */
+	void onMemberJoined(Node member);
+	
+	/**
+	 * Called when heartbeats from another node have stopped for {@link HeartbeatInterval} x {@link HeartbeatTolerance}.
+	 */
+	void onMemberLeft(Node member);
+}
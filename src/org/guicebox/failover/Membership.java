@@ -0,0 +1,245 @@
+package org.guicebox.failover;
+
+import static java.util.concurrent.TimeUnit.*;
+
+import com.google.inject.*;
+import java.lang.management.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.logging.*;
+import javax.management.*;
+import net.jcip.annotations.*;
+import org.guicebox.*;
+
+/**
+ * A view of the live nodes in the cluster, built from the heartbeats this node receives. Each peer is listed with the
+ * state it sent with its most recent heartbeat, until it has missed {@link HeartbeatInterval} x
+ * {@link HeartbeatTolerance} worth of heartbeats. Nodes only appear while they are sending heartbeats, so standby nodes
+ * only appear when {@link StandbyHeartbeats} are enabled.
+ * <p>
+ * Peers are expired with a timer wheel, advanced whenever the view is updated or read, so no thread is needed and
+ * expiry is accurate to one heartbeat interval. The view can be read without blocking heartbeats, and is available
+ * over JMX via {@link MembershipMBean}.
+ * <p>
+ * Tracking membership is opt-in: install a {@link MembershipModule} to enable it.
+ * 
+ * @author willhains
+ */
+@ThreadSafe public class Membership implements MembershipMBean
+{
+	private final Logger _log;
+	
+	// Application cluster name
+	private final String _appName;
+	private final String _env;
+	
+	// Expiry configuration
+	private volatile int _hbInterval = 1000;
+	private volatile int _hbTolerance = 6;
+	
+	// State of this node, sent with its heartbeats
+	private volatile String _localState;
+	
+	// Live peers
+	private final ConcurrentMap<Node, Member> _members = new ConcurrentHashMap<Node, Member>();
+	
+	// Timer wheel: each slot holds the nodes seen in ticks with that index (some may have been seen again since)
+	@GuardedBy("_wheel") private final List<Set<Node>> _wheel = new ArrayList<Set<Node>>();
+	@GuardedBy("_wheel") private long _origin, _tick;
+	
+	// Should only be called by MembershipModule and unit tests, so that Guice cannot bind it just in time
+	Membership(String appName, String env, Logger log)
+	{
+		_appName = appName;
+		_env = env;
+		_log = log;
+	}
+	
+	@Inject(optional = true) final void setHeartbeatInterval(@HeartbeatInterval int interval)
+	{
+		assert interval > 0 : "Heartbeat interval must be > 0";
+		_hbInterval = interval;
+	}
+	
+	@Inject(optional = true) final void setHeartbeatTolerance(@HeartbeatTolerance int tolerance)
+	{
+		assert tolerance > 0 : "Heartbeat tolerance must be > 0";
+		_hbTolerance = tolerance;
+	}
+	
+	@Override public String toString()
+	{
+		return _appName + " (" + _env + ")";
+	}
+	
+	/**
+	 * Registers this object with the platform MBean server, replacing any previously registered for the same cluster.
+	 * 
+	 * @throws JMException if the MBean couldn't be registered for some reason.
+	 */
+	public void registerJMX() throws JMException
+	{
+		final MBeanServer jmxServer = ManagementFactory.getPlatformMBeanServer();
+		final ObjectName objectName = _objectName();
+		if(jmxServer.isRegistered(objectName)) jmxServer.unregisterMBean(objectName);
+		jmxServer.registerMBean(this, objectName);
+	}
+	
+	/**
+	 * Unregisters this cluster's MBean from the platform MBean server, if it is registered.
+	 * 
+	 * @throws JMException if the MBean couldn't be unregistered for some reason.
+	 */
+	public void unregisterJMX() throws JMException
+	{
+		final MBeanServer jmxServer = ManagementFactory.getPlatformMBeanServer();
+		final ObjectName objectName = _objectName();
+		if(jmxServer.isRegistered(objectName)) jmxServer.unregisterMBean(objectName);
+	}
+	
+	private ObjectName _objectName() throws MalformedObjectNameException
+	{
+		return new ObjectName("GuiceBox:name="
+			+ MembershipMBean.class.getSimpleName()
+			+ ",cluster="
+			+ ObjectName.quote(toString()));
+	}
+	
+	void setLocalState(String state)
+	{
+		_localState = state;
+	}
+	
+	public String getLocalState()
+	{
+		return _localState;
+	}
+	
+	/**
+	 * Records a heartbeat received from a peer.
+	 */
+	public void onHeartbeat(Heartbeat hb)
+	{
+		onHeartbeat(hb, System.nanoTime());
+	}
+	
+	// Should only be called by unit tests
+	void onHeartbeat(Heartbeat hb, long nanos)
+	{
+		synchronized(_wheel)
+		{
+			_advance(nanos);
+			final Member member = new Member(hb, System.currentTimeMillis(), _tick);
+			if(_members.put(member.getNode(), member) == null) _log.info("Peer joined: " + member);
+			_wheel.get((int)(_tick % _wheel.size())).add(member.getNode());
+		}
+	}
+	
+	/**
+	 * @return the live peers, in {@link Node} order.
+	 */
+	public List<Member> getMembers()
+	{
+		return getMembers(System.nanoTime());
+	}
+	
+	// Should only be called by unit tests
+	List<Member> getMembers(long nanos)
+	{
+		synchronized(_wheel)
+		{
+			_advance(nanos);
+		}
+		final List<Member> members = new ArrayList<Member>(_members.values());
+		Collections.sort(members, new Comparator<Member>()
+		{
+			public int compare(Member m1, Member m2)
+			{
+				return m1.getNode().compareTo(m2.getNode());
+			}
+		});
+		return members;
+	}
+	
+	/**
+	 * @return the most recent heartbeat details of the specified peer, or {@code null} if it is not live.
+	 */
+	public Member getMember(Node node)
+	{
+		synchronized(_wheel)
+		{
+			_advance(System.nanoTime());
+		}
+		return _members.get(node);
+	}
+	
+	public String[] getPeers()
+	{
+		final List<Member> members = getMembers();
+		final String[] peers = new String[members.size()];
+		for(int i = 0; i < peers.length; i++)
+		{
+			peers[i] = members.get(i).toString();
+		}
+		return peers;
+	}
+	
+	public int getPeerCount()
+	{
+		return getMembers().size();
+	}
+	
+	public int getPrimaryCount()
+	{
+		return getPrimaryCount(System.nanoTime());
+	}
+	
+	// Should only be called by unit tests
+	int getPrimaryCount(long nanos)
+	{
+		final String primary = NodeState.Impl.PRIMARY.name();
+		int count = primary.equals(_localState) ? 1 : 0;
+		for(Member member : getMembers(nanos))
+		{
+			if(primary.equals(member.getState())) count++;
+		}
+		return count;
+	}
+	
+	public boolean isSplitBrain()
+	{
+		return getPrimaryCount() > 1;
+	}
+	
+	// Moves the wheel on to the current tick, expiring the peers not seen for a full turn
+	@GuardedBy("_wheel") private void _advance(long nanos)
+	{
+		// Start the wheel on first use, sized to the tolerance
+		if(_wheel.isEmpty())
+		{
+			for(int i = 0; i < _hbTolerance; i++)
+			{
+				_wheel.add(new HashSet<Node>());
+			}
+			_origin = nanos;
+		}
+		final int slots = _wheel.size();
+		final long now = (nanos - _origin) / MILLISECONDS.toNanos(_hbInterval);
+		
+		// After a long gap, one turn of the wheel expires everything that needs it
+		if(now - _tick > slots) _tick = now - slots;
+		while(_tick < now)
+		{
+			_tick++;
+			final Set<Node> slot = _wheel.get((int)(_tick % slots));
+			for(Node node : slot)
+			{
+				final Member member = _members.get(node);
+				if(member == null || member.getTick() > _tick - slots) continue;
+				_members.remove(node);
+				_log.warning("Peer expired: " + member);
+			}
+			slot.clear();
+		}
+	}
+}
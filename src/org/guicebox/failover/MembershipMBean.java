@@ -0,0 +1,31 @@
+package org.guicebox.failover;
+
+/**
+ * JMX interface for {@link Membership}.
+ * 
+ * @author willhains
+ */
+public interface MembershipMBean
+{
+	/**
+	 * @return the state of this node.
+	 */
+	String getLocalState();
+	
+	/**
+	 * @return a description of each live peer.
+	 */
+	String[] getPeers();
+	
+	int getPeerCount();
+	
+	/**
+	 * @return the number of nodes, including this one, that claim to be primary.
+	 */
+	int getPrimaryCount();
+	
+	/**
+	 * @return {@code true} if more than one node claims to be primary.
+	 */
+	boolean isSplitBrain();
+}
@@ -0,0 +1,30 @@
+package org.guicebox.failover;
+
+import com.google.inject.*;
+import java.util.logging.*;
+import org.guicebox.*;
+
+/**
+ * Enables the {@link Membership} view of the cluster. Without this module, {@link Failover} keeps no membership, sends
+ * no node state with its heartbeats, and registers nothing with JMX. Install it alongside a {@link FailoverModule}.
+ * 
+ * @author willhains
+ */
+public class MembershipModule extends AbstractModule
+{
+	@Override protected void configure()
+	{
+		// All bindings are provided
+	}
+	
+	@Provides @Singleton Membership provideMembership(
+		@ApplicationName String appName,
+		@UserName String env,
+		Logger log,
+		Injector injector)
+	{
+		final Membership membership = new Membership(appName, env, log);
+		injector.injectMembers(membership);
+		return membership;
+	}
+}
@@ -16,6 +16,10 @@ import net.jcip.annotations.*;
 	private final String _address;
 	private final String _processId;
 	private transient boolean _preferLowerOlder = true;
+	private transient Superiority _superiority;
+	
+	// 64-bit hash of the address and process ID, computed on first use
+	private transient long _fingerprint;
 	
 	@Inject public Node(@Localhost String address, @ProcessId String processId)
 	{
@@ -31,18 +35,53 @@ import net.jcip.annotations.*;
 		_preferLowerOlder = preferLowerOlder;
 	}
 	
-	// Should only be called by JUnit tests
+	@Inject(optional = true) void setSuperiority(Superiority superiority)
+	{
+		_superiority = superiority;
+	}
+	
+	// Should only be called by HeartbeatCodec and JUnit tests
 	String getAddress()
 	{
 		return _address;
 	}
 	
-	// Should only be called by JUnit tests
+	// Should only be called by HeartbeatCodec and JUnit tests
 	String getProcessID()
 	{
 		return _processId;
 	}
 	
+	// Should only be called by HeartbeatCodec, Partitioned and JUnit tests
+	long getFingerprint()
+	{
+		long fingerprint = _fingerprint;
+		if(fingerprint == 0) _fingerprint = fingerprint = _fnv1a(_fnv1a(0xcbf29ce484222325L, _address), _processId);
+		return fingerprint;
+	}
+	
+	// FNV-1a hash, continued over the characters of the string and a terminator
+	private static long _fnv1a(long hash, String s)
+	{
+		for(int i = 0; i <= s.length(); i++)
+		{
+			hash ^= i < s.length() ? s.charAt(i) : 0;
+			hash *= 0x100000001b3L;
+		}
+		return hash;
+	}
+	
+	/**
+	 * @return {@code true} if this node is superior to the node that sent the specified heartbeat, according to the
+	 * bound {@link Superiority}, or {@link #isSuperiorTo(Node)} if there is none or it can't decide.
+	 */
+	public boolean isSuperiorTo(Heartbeat heartbeat)
+	{
+		final Superiority superiority = _superiority;
+		final int compare = superiority == null ? 0 : superiority.compare(this, heartbeat);
+		return compare == 0 ? isSuperiorTo(heartbeat.getNode()) : compare > 0;
+	}
+	
 	/**
 	 * @return {@code true} if this node is superior to the specified node.
 	 */
@@ -76,7 +76,7 @@ public interface NodeState
 			public NodeState onPeerAlive(Node thisNode, Heart heart, Heartbeat heartbeat, Application app)
 			{
 				// If this is the superior node, send a heartbeat now to stop the other node
-				if(thisNode.isSuperiorTo(heartbeat.getNode()))
+				if(thisNode.isSuperiorTo(heartbeat))
 				{
 					_log.warning("Received heartbeat from INFERIOR node: " + heartbeat);
 					heart.beat();
@@ -118,7 +118,7 @@ public interface NodeState
 			public NodeState onPeerAlive(Node thisNode, Heart heart, Heartbeat heartbeat, Application app)
 			{
 				// If this is the superior node, send a heartbeat now to stop the other node
-				if(thisNode.isSuperiorTo(heartbeat.getNode()))
+				if(thisNode.isSuperiorTo(heartbeat))
 				{
 					_log.warning("Received heartbeat from INFERIOR node: " + heartbeat);
 					heart.beat();
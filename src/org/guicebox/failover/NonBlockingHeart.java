@@ -11,6 +11,20 @@ import net.jcip.annotations.*;
 /**
  * Utility for sending and receiving heartbeats. The actual wire protocol is implemented by {@link Transport}. This
  * class is responsible for managing the background threads and firing events to the {@link HeartbeatListener}.
+ * <p>
+ * If the transport is a {@link PushTransport}, heartbeats are pushed to the listener as they arrive, and a timer fires
+ * {@link HeartbeatListener#onHeartbeatTimeout()} exactly {@link HeartbeatInterval} x {@link HeartbeatTolerance}
+ * milliseconds after the last heartbeat was seen. Otherwise, the transport is polled.
+ * <p>
+ * If the transport is a {@link SharedTransport}, heartbeats are pushed in the same way, but no threads are started:
+ * heartbeats are sent and timeouts are fired on the transport's shared scheduler. A heartbeat that can't be sent is
+ * retried on the next beat instead of by waiting on the scheduler, which would hold up the other clusters.
+ * <p>
+ * If a {@link FailureDetector} is bound, it decides how long after the last heartbeat to fire the timeout, instead of
+ * {@link HeartbeatTolerance}.
+ * <p>
+ * Heartbeats from nodes that are standing by (see {@link StandbyHeartbeats}) are passed to the listener, but don't
+ * count as heartbeats for the timeout, which is only held off by a primary or volunteering node.
  * 
  * @author willhains
  */
@@ -30,11 +44,15 @@ import net.jcip.annotations.*;
 	// Number of heartbeats to miss
 	private volatile int _hbTolerance = 6;
 	
+	// Decides when the peer is dead (null means after missing the tolerated number of heartbeats)
+	private volatile FailureDetector _detector;
+	
 	// Send/receive threads & tasks and their locks
 	private final ScheduledExecutorService _listen, _beat;
 	private final Object _listenLock = new Object();
 	private final Object _beatLock = new Object();
 	@GuardedBy("_listenLock") private Future<?> _listenTask;
+	@GuardedBy("_listenLock") private PushListener _pushListener;
 	@GuardedBy("_beatLock") private Future<?> _beatTask;
 	
 	@Inject NonBlockingHeart(Provider<Heartbeat> pulse, Transport transport, Logger log)
@@ -42,8 +60,12 @@ import net.jcip.annotations.*;
 		this(
 			pulse,
 			transport,
-			newSingleThreadScheduledExecutor("Heartbeat listener"),
-			newSingleThreadScheduledExecutor("Hearbeat sender"),
+			transport instanceof SharedTransport
+				? ((SharedTransport)transport).getScheduler()
+				: newScheduledThreadPool(2, "Heartbeat listener"),
+			transport instanceof SharedTransport
+				? ((SharedTransport)transport).getScheduler()
+				: newSingleThreadScheduledExecutor("Hearbeat sender"),
 			log);
 	}
 	
@@ -74,6 +96,11 @@ import net.jcip.annotations.*;
 		_hbTolerance = tolerance;
 	}
 	
+	@Inject(optional = true) final void setFailureDetector(FailureDetector detector)
+	{
+		_detector = detector;
+	}
+	
 	public void listen(final HeartbeatListener heartbeatListener)
 	{
 		synchronized(_listenLock)
@@ -81,13 +108,25 @@ import net.jcip.annotations.*;
 			// Make sure we don't have multiple listeners running
 			stopListening();
 			
+			// Let the transport push heartbeats if it can
+			if(_transport instanceof PushTransport || _transport instanceof SharedTransport)
+			{
+				_pushListener = new PushListener(heartbeatListener);
+				_pushListener.start();
+				return;
+			}
+			
 			// Start listening
 			final Heartbeat ownHeartbeat = _pulse.get();
 			final Runnable listen = new Runnable()
 			{
+				// Time the last contending heartbeat was received, or timeout was fired
+				private long _lastSeen = System.nanoTime();
+				
 				public void run()
 				{
-					for(int failures = 1; failures <= _hbTolerance; failures++)
+					final FailureDetector detector = _detector;
+					for(int failures = 1; detector != null || failures <= _hbTolerance; failures++)
 					{
 						// Abort if interrupted
 						if(Thread.currentThread().isInterrupted())
@@ -103,8 +142,22 @@ import net.jcip.annotations.*;
 							
 							// Received successfully
 							_log.finest("Received heartbeat: " + heartbeat);
+							if(heartbeat.isContending())
+							{
+								_lastSeen = System.nanoTime();
+								if(detector != null) detector.onHeartbeat(heartbeat.getNode(), _lastSeen);
+								heartbeatListener.onHeartbeat(heartbeat);
+								return;
+							}
+							
+							// Standby heartbeats don't count, but they stop the receive timing out
 							heartbeatListener.onHeartbeat(heartbeat);
-							return;
+							final long timeout = detector == null
+								? MILLISECONDS.toNanos((long)_hbInterval * _hbTolerance)
+								: detector.getTimeout();
+							if(System.nanoTime() - _lastSeen >= timeout) break;
+							failures--;
+							continue;
 						}
 						catch(TimeoutException e)
 						{
@@ -122,9 +175,13 @@ import net.jcip.annotations.*;
 								Thread.currentThread().interrupt();
 							}
 						}
+						
+						// Ask the failure detector whether the peer is dead yet
+						if(detector != null && System.nanoTime() - _lastSeen >= detector.getTimeout()) break;
 					}
 					
 					// Beyond tolerance - notify listener
+					_lastSeen = System.nanoTime();
 					heartbeatListener.onHeartbeatTimeout();
 				}
 			};
@@ -132,6 +189,134 @@ import net.jcip.annotations.*;
 		}
 	}
 	
+	// Receives heartbeats pushed by the transport, and fires a timeout when none has been seen for long enough
+	private final class PushListener implements HeartbeatListener
+	{
+		private final HeartbeatListener _listener;
+		private final Heartbeat _ownHeartbeat = _pulse.get();
+		private final long _window = MILLISECONDS.toNanos((long)_hbInterval * _hbTolerance);
+		
+		// Time (System.nanoTime) the last heartbeat was seen, or the last timeout was fired
+		private volatile long _lastSeen;
+		
+		@GuardedBy("_listenLock") private boolean _stopped;
+		@GuardedBy("_listenLock") private Future<?> _receiveTask, _deadlineTask;
+		
+		PushListener(HeartbeatListener listener)
+		{
+			_listener = listener;
+		}
+		
+		// Subscribes to a shared transport, or waits for heartbeats on the listener thread
+		private final Runnable _receive = new Runnable()
+		{
+			public void run()
+			{
+				try
+				{
+					if(_transport instanceof SharedTransport)
+					{
+						((SharedTransport)_transport).subscribe(_ownHeartbeat, PushListener.this);
+						return;
+					}
+					((PushTransport)_transport).receive(_ownHeartbeat, PushListener.this);
+					_log.info("Heartbeat listener interrupted. Shutting down.");
+				}
+				catch(TransportException e)
+				{
+					_log.severe("Could not read heartbeat: " + e);
+					_retry();
+				}
+				catch(RuntimeException e)
+				{
+					_log.log(Level.SEVERE, "Heartbeat transport failed", e);
+					_retry();
+				}
+			}
+			
+			// Try again later; the deadline keeps running in the meantime
+			private void _retry()
+			{
+				synchronized(_listenLock)
+				{
+					if(!_stopped) _receiveTask = _listen.schedule(this, _hbInterval, MILLISECONDS);
+				}
+			}
+		};
+		
+		// Fires a timeout if the deadline has passed, otherwise waits until the deadline
+		private final Runnable _deadline = new Runnable()
+		{
+			public void run()
+			{
+				// Heartbeats are recorded under the same lock, so one arriving now can't be missed
+				synchronized(_listenLock)
+				{
+					if(_stopped) return;
+					final long now = System.nanoTime();
+					long delay = _lastSeen + _timeout() - now;
+					if(delay <= 0)
+					{
+						_log.fine("Time out (" + _hbTolerance + "/" + _hbTolerance + ")");
+						_listener.onHeartbeatTimeout();
+						_lastSeen = now;
+						delay = _timeout();
+					}
+					_deadlineTask = _listen.schedule(this, _untilNextCheck(delay), NANOSECONDS);
+				}
+			}
+		};
+		
+		// Nanoseconds after the last heartbeat at which to fire the timeout
+		private long _timeout()
+		{
+			final FailureDetector detector = _detector;
+			return detector == null ? _window : detector.getTimeout();
+		}
+		
+		// The detector's timeout may shrink as it learns, so check it at least once per interval
+		private long _untilNextCheck(long delay)
+		{
+			return _detector == null ? delay : Math.min(delay, MILLISECONDS.toNanos(_hbInterval));
+		}
+		
+		@GuardedBy("_listenLock") void start()
+		{
+			_lastSeen = System.nanoTime();
+			_receiveTask = _listen.submit(_receive);
+			_deadlineTask = _listen.schedule(_deadline, _untilNextCheck(_timeout()), NANOSECONDS);
+		}
+		
+		@GuardedBy("_listenLock") void stop()
+		{
+			_stopped = true;
+			_receiveTask.cancel(true);
+			_deadlineTask.cancel(false);
+			if(_transport instanceof SharedTransport) ((SharedTransport)_transport).unsubscribe(this);
+		}
+		
+		public void onHeartbeat(Heartbeat heartbeat)
+		{
+			synchronized(_listenLock)
+			{
+				if(_stopped) return;
+				if(heartbeat.isContending())
+				{
+					_lastSeen = System.nanoTime();
+					final FailureDetector detector = _detector;
+					if(detector != null) detector.onHeartbeat(heartbeat.getNode(), _lastSeen);
+				}
+			}
+			_log.finest("Received heartbeat: " + heartbeat);
+			_listener.onHeartbeat(heartbeat);
+		}
+		
+		public void onHeartbeatTimeout()
+		{
+			// Timeouts are detected by the deadline, not the transport
+		}
+	}
+	
 	public void beat()
 	{
 		synchronized(_beatLock)
@@ -142,9 +327,13 @@ import net.jcip.annotations.*;
 			// Start beating
 			final Runnable beat = new Runnable()
 			{
+				// Consecutive failures on a shared scheduler, where retries wait for the next beat
+				private int _failures;
+				
 				public void run()
 				{
-					for(int failures = 0; failures < _hbTolerance; failures++)
+					final boolean shared = _transport instanceof SharedTransport;
+					for(int failures = shared ? _failures : 0; failures < _hbTolerance; failures++)
 					{
 						// Abort if interrupted
 						if(Thread.currentThread().isInterrupted())
@@ -161,13 +350,21 @@ import net.jcip.annotations.*;
 							
 							// Sent successfully
 							_log.finest("Sent heartbeat: " + heartbeat);
+							_failures = 0;
 							return;
 						}
 						catch(TransportException e)
 						{
+							_log.severe("Couldn't send heartbeat (" + failures + "/" + _hbTolerance + "): " + e);
+							if(shared)
+							{
+								// Don't hold up the other clusters' tasks; try again on the next beat
+								_failures = failures + 1;
+								if(_failures < _hbTolerance) return;
+								continue;
+							}
 							try
 							{
-								_log.severe("Couldn't send heartbeat (" + failures + "/" + _hbTolerance + "): " + e);
 								Thread.sleep(_hbInterval);
 							}
 							catch(InterruptedException ee)
@@ -191,6 +388,8 @@ import net.jcip.annotations.*;
 		synchronized(_listenLock)
 		{
 			if(_listenTask != null) _listenTask.cancel(true);
+			if(_pushListener != null) _pushListener.stop();
+			_pushListener = null;
 		}
 	}
 	
@@ -204,6 +403,14 @@ import net.jcip.annotations.*;
 	
 	public void stop()
 	{
+		// Leave a shared scheduler running for other clusters
+		if(_transport instanceof SharedTransport)
+		{
+			stopBeating();
+			stopListening();
+			return;
+		}
+		
 		// Shut down the executors
 		_beat.shutdownNow();
 		_listen.shutdownNow();
@@ -0,0 +1,25 @@
+package org.guicebox.failover;
+
+/**
+ * Listener interface for {@link Partitioned}. Bind an implementation in Guice to be told which partitions this node
+ * is responsible for.
+ * 
+ * @author willhains
+ */
+public interface PartitionListener
+{
+	/**
+	 * Called when this node becomes the owner of a partition. This may be called before the application's
+	 * {@link org.guicebox.Start} methods have completed.
+	 * 
+	 * @param partition the partition number, from zero to one less than the number of {@link Partitions}.
+	 */
+	void onPartitionAssigned(int partition);
+	
+	/**
+	 * Called when this node gives up a partition, before it is assigned to any other node by this node.
+	 * 
+	 * @param partition the partition number, from zero to one less than the number of {@link Partitions}.
+	 */
+	void onPartitionRevoked(int partition);
+}
@@ -0,0 +1,465 @@
+package org.guicebox.failover;
+
+import static java.util.concurrent.TimeUnit.*;
+import static org.guicebox.NamedExecutors.*;
+
+import com.google.inject.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.logging.*;
+import net.jcip.annotations.*;
+import org.guicebox.*;
+import org.guicebox.ClusterChange.Cause;
+
+/**
+ * Implements an active-active strategy, as an alternative to {@link Failover}. The application's work is divided into
+ * a fixed number of {@link Partitions}, which are spread across all live nodes instead of leaving standby nodes idle.
+ * Every connected node sends heartbeats, and the nodes whose heartbeats have been received within
+ * {@link HeartbeatInterval} x {@link HeartbeatTolerance} are the live members of the cluster. Each partition is owned
+ * by the member that scores highest for it (rendezvous hashing), so every node works out the same assignment from the
+ * same membership, and when a node joins or leaves only the partitions it gains or loses move.
+ * <p>
+ * When this node gains or loses a partition, the bound {@link PartitionListener} is told. The {@link Application} is
+ * started when the node gains its first partition, and stopped when it loses its last. Starting the application only
+ * submits its {@link Start} methods to their threads, so the first {@link PartitionListener#onPartitionAssigned(int)}
+ * callbacks may run before those methods have completed. As with {@link Failover}, the node pings a well-known
+ * address, and gives up all its partitions while it cannot reach it. Other nodes joining and leaving are reported to
+ * {@link MemberListener}s.
+ * <p>
+ * Until heartbeats have propagated, nodes may briefly disagree about the membership, so a partition can have two
+ * owners (or none) for up to one heartbeat interval after a node joins or leaves.
+ * 
+ * @author willhains
+ */
+@ThreadSafe public class Partitioned implements Cluster
+{
+	/**
+	 * Node states reported to {@link ClusterListener}s.
+	 */
+	public static final String DISCONNECTED = "DISCONNECTED", CONNECTED = "CONNECTED";
+	
+	private final Logger _log;
+	
+	// Application cluster name
+	private final String _appName;
+	private final String _env;
+	
+	// Unique fingerprint of this node
+	private final Node _node;
+	
+	// Heartbeat & ping utilities
+	private final Provider<Heart> _heartFactory;
+	private final Provider<Ping> _pingFactory;
+	
+	// Single-threaded executor ensures that cluster state is correct by thread confinement
+	private final ScheduledExecutorService _thread;
+	
+	// Configuration
+	private volatile int _partitionCount = 16;
+	private volatile int _hbInterval = 1000;
+	private volatile int _hbTolerance = 6;
+	private volatile PartitionListener _partitionListener;
+	
+	// Cluster state (confined to _thread)
+	private Heart _heart;
+	private Ping _ping;
+	private Application _app;
+	private Future<?> _sweepTask;
+	private String _state;
+	private long _round;
+	private final Map<Node, Long> _lastSeen = new HashMap<Node, Long>();
+	private final SortedSet<Integer> _owned = new TreeSet<Integer>();
+	
+	// Partitions owned by this node, for other threads
+	private volatile Set<Integer> _partitions = Collections.emptySet();
+	
+	// Cluster listeners
+	private final Set<ClusterListener> _listeners = new CopyOnWriteArraySet<ClusterListener>();
+	private final Set<ClusterChangeListener> _changeListeners = new CopyOnWriteArraySet<ClusterChangeListener>();
+	private final Set<MemberListener> _memberListeners = new CopyOnWriteArraySet<MemberListener>();
+	
+	@Inject Partitioned(
+		@ApplicationName String appName,
+		@UserName String env,
+		Node node,
+		Provider<Heart> heartFactory,
+		Provider<Ping> pingFactory,
+		Logger log)
+	{
+		this(appName, env, node, heartFactory, pingFactory, newSingleThreadScheduledExecutor("Partitions"), log);
+	}
+	
+	// Should only be called by unit tests
+	Partitioned(
+		String appName,
+		String env,
+		Node node,
+		Provider<Heart> heartFactory,
+		Provider<Ping> pingFactory,
+		ScheduledExecutorService thread,
+		Logger log)
+	{
+		_appName = appName;
+		_env = env;
+		_node = node;
+		_heartFactory = heartFactory;
+		_pingFactory = pingFactory;
+		_thread = thread;
+		_log = log;
+	}
+	
+	@Inject(optional = true) final void setPartitionCount(@Partitions int partitions)
+	{
+		assert partitions > 0 : "Partitions must be > 0";
+		_partitionCount = partitions;
+	}
+	
+	@Inject(optional = true) final void setHeartbeatInterval(@HeartbeatInterval int interval)
+	{
+		assert interval > 0 : "Heartbeat interval must be > 0";
+		_hbInterval = interval;
+	}
+	
+	@Inject(optional = true) final void setHeartbeatTolerance(@HeartbeatTolerance int tolerance)
+	{
+		assert tolerance > 0 : "Heartbeat tolerance must be > 0";
+		_hbTolerance = tolerance;
+	}
+	
+	@Inject(optional = true) final void setPartitionListener(PartitionListener listener)
+	{
+		_partitionListener = listener;
+	}
+	
+	@Override public String toString()
+	{
+		return _appName + " (" + _env + ")";
+	}
+	
+	/**
+	 * @return the partitions currently owned by this node.
+	 */
+	public Set<Integer> getPartitions()
+	{
+		return _partitions;
+	}
+	
+	public void addListener(ClusterListener listener)
+	{
+		_listeners.add(listener);
+	}
+	
+	public void removeListener(ClusterListener listener)
+	{
+		_listeners.remove(listener);
+	}
+	
+	public void addChangeListener(ClusterChangeListener listener)
+	{
+		_changeListeners.add(listener);
+	}
+	
+	public void removeChangeListener(ClusterChangeListener listener)
+	{
+		_changeListeners.remove(listener);
+	}
+	
+	/**
+	 * Adds a listener to be told when other nodes join or leave the cluster.
+	 */
+	public void addMemberListener(MemberListener listener)
+	{
+		_memberListeners.add(listener);
+	}
+	
+	public void removeMemberListener(MemberListener listener)
+	{
+		_memberListeners.remove(listener);
+	}
+	
+	public void join(final Application app)
+	{
+		_execute(new Runnable()
+		{
+			public void run()
+			{
+				// Tolerate multiple calls to this method
+				if(_state != null) return;
+				_log.info("Joining cluster " + Partitioned.this);
+				
+				_app = app;
+				_heart = _heartFactory.get();
+				_ping = _pingFactory.get();
+				_setState(DISCONNECTED, Cause.JOIN);
+				
+				// Start checking for network connectivity
+				_ping.start(new PingListener()
+				{
+					public void onPing()
+					{
+						_execute(_connect);
+					}
+					
+					public void onPingTimeout()
+					{
+						_execute(_disconnect);
+					}
+				});
+				
+				// Start listening for heartbeats from the other members
+				_heart.listen(new HeartbeatListener()
+				{
+					public void onHeartbeat(final Heartbeat hb)
+					{
+						_execute(new Runnable()
+						{
+							public void run()
+							{
+								_onHeartbeat(hb);
+							}
+						});
+					}
+					
+					public void onHeartbeatTimeout()
+					{
+						// Members are expired individually
+					}
+				});
+				
+				// Expire members once per heartbeat interval
+				_sweepTask = _thread.scheduleWithFixedDelay(_sweep, _hbInterval, _hbInterval, MILLISECONDS);
+			}
+		});
+	}
+	
+	public void leave()
+	{
+		_execute(new Runnable()
+		{
+			public void run()
+			{
+				// Tolerate multiple calls to this method
+				if(_state == null) return;
+				_log.info("Leaving cluster " + Partitioned.this);
+				
+				// Stop sending & receiving heartbeats, and checking for network connectivity
+				_sweepTask.cancel(false);
+				_heart.stop();
+				_ping.stop();
+				
+				// Give up all partitions
+				_lastSeen.clear();
+				_rebalance(false);
+				_setState(null, Cause.LEAVE);
+			}
+		});
+	}
+	
+	// Network connectivity confirmed
+	private final Runnable _connect = new Runnable()
+	{
+		public void run()
+		{
+			if(!DISCONNECTED.equals(_state)) return;
+			_heart.beat();
+			_setState(CONNECTED, Cause.PING);
+			_rebalance(true);
+		}
+	};
+	
+	// Network connectivity lost
+	private final Runnable _disconnect = new Runnable()
+	{
+		public void run()
+		{
+			if(!CONNECTED.equals(_state)) return;
+			_heart.stopBeating();
+			_lastSeen.clear();
+			_rebalance(false);
+			_setState(DISCONNECTED, Cause.PING_TIMEOUT);
+		}
+	};
+	
+	private void _onHeartbeat(Heartbeat hb)
+	{
+		if(!CONNECTED.equals(_state)) return;
+		if(_lastSeen.put(hb.getNode(), _round) != null) return;
+		
+		// A new member has joined
+		_log.info("Member joined: " + hb.getNode());
+		_notifyMember(hb.getNode(), true);
+		_rebalance(true);
+	}
+	
+	// Removes members whose heartbeats have stopped
+	private final Runnable _sweep = new Runnable()
+	{
+		public void run()
+		{
+			try
+			{
+				_round++;
+				for(Iterator<Map.Entry<Node, Long>> i = _lastSeen.entrySet().iterator(); i.hasNext();)
+				{
+					final Map.Entry<Node, Long> member = i.next();
+					if(member.getValue() >= _round - _hbTolerance) continue;
+					i.remove();
+					_log.warning("Member left: " + member.getKey());
+					_notifyMember(member.getKey(), false);
+					_rebalance(true);
+				}
+			}
+			catch(RuntimeException e)
+			{
+				// Keep sweeping
+				_log.severe("Could not expire members: " + e);
+			}
+		}
+	};
+	
+	/*
+	 * Moves partitions to match the current membership, giving up lost partitions before taking on new ones.
+	 */
+	private void _rebalance(boolean connected)
+	{
+		final SortedSet<Integer> target = connected ? _assign() : new TreeSet<Integer>();
+		final boolean wasActive = !_owned.isEmpty();
+		final PartitionListener listener = _partitionListener;
+		for(Iterator<Integer> i = _owned.iterator(); i.hasNext();)
+		{
+			final Integer partition = i.next();
+			if(target.contains(partition)) continue;
+			i.remove();
+			if(listener != null) _notifyRevoked(listener, partition);
+		}
+		if(wasActive && _owned.isEmpty() && target.isEmpty()) _app.stop();
+		if(!wasActive && !target.isEmpty()) _app.start();
+		for(Integer partition : target)
+		{
+			if(!_owned.add(partition)) continue;
+			if(listener != null) _notifyAssigned(listener, partition);
+		}
+		_partitions = Collections.unmodifiableSet(new TreeSet<Integer>(_owned));
+	}
+	
+	// A failing listener must not leave the rebalance half done
+	private void _notifyRevoked(PartitionListener listener, int partition)
+	{
+		try
+		{
+			listener.onPartitionRevoked(partition);
+		}
+		catch(RuntimeException e)
+		{
+			_log.severe("Partition listener failed to give up partition " + partition + ": " + e);
+		}
+	}
+	
+	private void _notifyAssigned(PartitionListener listener, int partition)
+	{
+		try
+		{
+			listener.onPartitionAssigned(partition);
+		}
+		catch(RuntimeException e)
+		{
+			_log.severe("Partition listener failed to take partition " + partition + ": " + e);
+		}
+	}
+	
+	// The partitions that this node should own
+	private SortedSet<Integer> _assign()
+	{
+		final SortedSet<Integer> assigned = new TreeSet<Integer>();
+		for(int partition = 0; partition < _partitionCount; partition++)
+		{
+			final long score = score(_node, partition);
+			boolean highest = true;
+			for(Node member : _lastSeen.keySet())
+			{
+				final long other = score(member, partition);
+				if(other > score || other == score && member.compareTo(_node) < 0)
+				{
+					highest = false;
+					break;
+				}
+			}
+			if(highest) assigned.add(partition);
+		}
+		return assigned;
+	}
+	
+	/**
+	 * @return the rendezvous hashing score of the node for the partition; the highest scoring node owns the partition.
+	 */
+	static long score(Node node, int partition)
+	{
+		// Mix the node fingerprint with the partition number (SplitMix64 finaliser)
+		long hash = node.getFingerprint() + (partition + 1) * 0x9e3779b97f4a7c15L;
+		hash = (hash ^ hash >>> 30) * 0xbf58476d1ce4e5b9L;
+		hash = (hash ^ hash >>> 27) * 0x94d049bb133111ebL;
+		return hash ^ hash >>> 31;
+	}
+	
+	private void _setState(String newState, Cause cause)
+	{
+		final String oldState = _state;
+		_state = newState;
+		for(ClusterListener listener : _listeners)
+		{
+			try
+			{
+				listener.onClusterChange(newState);
+			}
+			catch(RuntimeException e)
+			{
+				_log.severe("Cluster listener failed: " + e);
+			}
+		}
+		_notifyChange(new ClusterChange(oldState, newState, cause, null, System.currentTimeMillis()));
+	}
+	
+	// Membership changes are not changes of state
+	private void _notifyMember(Node member, boolean joined)
+	{
+		for(MemberListener listener : _memberListeners)
+		{
+			try
+			{
+				if(joined) listener.onMemberJoined(member);
+				else listener.onMemberLeft(member);
+			}
+			catch(RuntimeException e)
+			{
+				_log.severe("Member listener failed: " + e);
+			}
+		}
+	}
+	
+	private void _notifyChange(ClusterChange change)
+	{
+		for(ClusterChangeListener listener : _changeListeners)
+		{
+			try
+			{
+				listener.onClusterChange(change);
+			}
+			catch(RuntimeException e)
+			{
+				_log.severe("Cluster listener failed: " + e);
+			}
+		}
+	}
+	
+	private void _execute(Runnable command)
+	{
+		try
+		{
+			_thread.execute(command);
+		}
+		catch(RejectedExecutionException e)
+		{
+			// Shutting down
+		}
+	}
+}
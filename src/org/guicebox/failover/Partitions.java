@@ -0,0 +1,17 @@
+package org.guicebox.failover;
+
+import static java.lang.annotation.ElementType.*;
+import static java.lang.annotation.RetentionPolicy.*;
+
+import com.google.inject.*;
+import java.lang.annotation.*;
+
+/**
+ * The number of partitions the work of a {@link Partitioned} cluster is divided into.
+ * 
+ * @author willhains
+ */
+@Retention(RUNTIME) @Target( { FIELD, PARAMETER }) @BindingAnnotation public @interface Partitions
+{	
+
+}
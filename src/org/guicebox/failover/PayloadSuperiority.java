@@ -0,0 +1,91 @@
+package org.guicebox.failover;
+
+import com.google.inject.*;
+import java.util.*;
+import net.jcip.annotations.*;
+
+/**
+ * A {@link Superiority} that compares values sent in the {@link HeartbeatPayload} of each node, in the following order:
+ * <ol>
+ * <li>{@link #PRIORITY} - the higher configured priority wins.</li>
+ * <li>{@link #READY} - a node that has finished warming up ({@code "true"}) wins.</li>
+ * <li>{@link #LOAD} - the less loaded node wins, if it is less loaded by more than a quarter.</li>
+ * <li>{@link #STARTED} - the node started earliest (in milliseconds since the epoch) wins.</li>
+ * </ol>
+ * A value is only compared if both nodes send it and it parses. If all values are equal, the default ordering
+ * decides.
+ * <p>
+ * Each node compares its current values with the ones the other node sent in an earlier heartbeat, so values that
+ * change all the time could make both nodes think they are superior. Loads that are close are treated as equal for
+ * this reason, so the election only turns on load while one node is clearly less loaded than the other.
+ * 
+ * @author willhains
+ */
+@ThreadSafe public final class PayloadSuperiority implements Superiority
+{
+	/**
+	 * Payload keys.
+	 */
+	public static final String PRIORITY = "priority", READY = "ready", LOAD = "load", STARTED = "started";
+	
+	// Loads that differ by no more than this fraction of the larger are equal
+	private static final double _LOAD_MARGIN = 0.25;
+	
+	// Values sent by this node
+	private final HeartbeatPayload _payload;
+	
+	@Inject public PayloadSuperiority(HeartbeatPayload payload)
+	{
+		_payload = payload;
+	}
+	
+	public int compare(Node thisNode, Heartbeat peer)
+	{
+		final Map<String, String> mine = _payload.getPayload();
+		final Map<String, String> theirs = peer.getPayload();
+		int compare = _compare(mine.get(PRIORITY), theirs.get(PRIORITY));
+		if(compare != 0) return compare;
+		compare = _compareReady(mine.get(READY), theirs.get(READY));
+		if(compare != 0) return compare;
+		compare = -_compareLoad(mine.get(LOAD), theirs.get(LOAD));
+		if(compare != 0) return compare;
+		return -_compare(mine.get(STARTED), theirs.get(STARTED));
+	}
+	
+	// Compares numbers, or returns zero if either is missing or not a number
+	private static int _compare(String mine, String theirs)
+	{
+		if(mine == null || theirs == null) return 0;
+		try
+		{
+			return Double.compare(Double.parseDouble(mine), Double.parseDouble(theirs));
+		}
+		catch(NumberFormatException e)
+		{
+			return 0;
+		}
+	}
+	
+	// Compares loads, or returns zero if they are too close to call
+	private static int _compareLoad(String mine, String theirs)
+	{
+		if(mine == null || theirs == null) return 0;
+		try
+		{
+			final double mineLoad = Double.parseDouble(mine), theirsLoad = Double.parseDouble(theirs);
+			final double margin = _LOAD_MARGIN * Math.max(Math.abs(mineLoad), Math.abs(theirsLoad));
+			return Math.abs(mineLoad - theirsLoad) <= margin ? 0 : Double.compare(mineLoad, theirsLoad);
+		}
+		catch(NumberFormatException e)
+		{
+			return 0;
+		}
+	}
+	
+	private static int _compareReady(String mine, String theirs)
+	{
+		if(mine == null || theirs == null) return 0;
+		final boolean mineReady = Boolean.parseBoolean(mine), theirsReady = Boolean.parseBoolean(theirs);
+		return mineReady == theirsReady ? 0 : mineReady ? 1 : -1;
+	}
+}
@@ -0,0 +1,174 @@
+package org.guicebox.failover;
+
+import static java.util.concurrent.TimeUnit.*;
+
+import com.google.inject.*;
+import java.util.*;
+import net.jcip.annotations.*;
+
+/**
+ * Implements the phi accrual failure detector of Hayashibara et al. The intervals between recent heartbeats are
+ * assumed to be normally distributed, and the peer is suspected once the probability of a heartbeat still arriving
+ * falls below 10<sup>-{@link PhiThreshold}</sup>. This adapts to the actual behaviour of the network, allowing short
+ * {@link HeartbeatInterval}s to be used without false positives. Each sender's heartbeats are sampled separately, and
+ * the timeout is measured from the most recent heartbeat, using the history of the node that sent it.
+ * <p>
+ * To use this detector, bind it as the {@link FailureDetector} implementation.
+ * 
+ * @author willhains
+ */
+@ThreadSafe public final class PhiAccrualFailureDetector implements FailureDetector
+{
+	// Number of heartbeat intervals to learn from
+	private static final int _SAMPLES = 200;
+	
+	// Most senders to keep a history for; the least recently heard from is forgotten first
+	private static final int _SENDERS = 64;
+	
+	// Expected interval between heartbeats, used until enough have been received
+	private volatile long _expected = MILLISECONDS.toNanos(1000);
+	
+	// Extra delay to tolerate
+	private volatile long _acceptablePause;
+	
+	// Number of standard deviations above the mean interval corresponding to the phi threshold
+	private volatile double _deviations = _solve(8.0);
+	
+	// Arrival history of each sender, so interleaved heartbeats from several contenders aren't mixed together
+	@GuardedBy("this") private final Map<Node, History> _histories = new LinkedHashMap<Node, History>(16, 0.75f, true)
+	{
+		private static final long serialVersionUID = 1L;
+		
+		@Override protected boolean removeEldestEntry(Map.Entry<Node, History> eldest)
+		{
+			return size() > _SENDERS;
+		}
+	};
+	
+	// History of the sender of the most recent heartbeat, which the timeout is measured from
+	@GuardedBy("this") private History _latest = new History();
+	
+	@Inject(optional = true) void setHeartbeatInterval(@HeartbeatInterval int interval)
+	{
+		assert interval > 0 : "Heartbeat interval must be > 0";
+		_expected = MILLISECONDS.toNanos(interval);
+	}
+	
+	@Inject(optional = true) void setPhiThreshold(@PhiThreshold double threshold)
+	{
+		assert threshold > 0 : "Phi threshold must be > 0";
+		_deviations = _solve(threshold);
+	}
+	
+	@Inject(optional = true) void setAcceptablePause(@AcceptablePause int pause)
+	{
+		assert pause >= 0 : "Acceptable pause must be >= 0";
+		_acceptablePause = MILLISECONDS.toNanos(pause);
+	}
+	
+	public synchronized void onHeartbeat(Node sender, long now)
+	{
+		History history = _histories.get(sender);
+		if(history == null) _histories.put(sender, history = new History());
+		history.onHeartbeat(now);
+		_latest = history;
+	}
+	
+	public synchronized long getTimeout()
+	{
+		return _latest.getTimeout();
+	}
+	
+	/**
+	 * @param now the current time, according to {@link System#nanoTime()}.
+	 * @return the current level of suspicion, given that no heartbeat has arrived since the last one.
+	 */
+	public synchronized double phi(long now)
+	{
+		return _latest.phi(now);
+	}
+	
+	// Recent heartbeat intervals of one sender, and their running totals, guarded by the detector
+	private final class History
+	{
+		private final long[] _intervals = new long[_SAMPLES];
+		private int _count, _next;
+		private double _sum, _sumOfSquares;
+		private long _lastArrival = -1L;
+		
+		void onHeartbeat(long now)
+		{
+			if(_lastArrival >= 0)
+			{
+				final long interval = now - _lastArrival;
+				
+				// Don't learn from gaps the sender was already suspected for
+				if(interval <= getTimeout())
+				{
+					if(_count == _SAMPLES)
+					{
+						final long oldest = _intervals[_next];
+						_sum -= oldest;
+						_sumOfSquares -= (double)oldest * oldest;
+					}
+					else
+					{
+						_count++;
+					}
+					_intervals[_next] = interval;
+					_next = (_next + 1) % _SAMPLES;
+					_sum += interval;
+					_sumOfSquares += (double)interval * interval;
+				}
+			}
+			_lastArrival = now;
+		}
+		
+		long getTimeout()
+		{
+			final double mean = _mean();
+			return (long)(mean + _deviations * _deviation(mean)) + _acceptablePause;
+		}
+		
+		double phi(long now)
+		{
+			if(_lastArrival < 0) return 0.0;
+			final double mean = _mean();
+			final double y = (now - _lastArrival - _acceptablePause - mean) / _deviation(mean);
+			return Math.log10(1.0 + Math.exp(_logistic(y)));
+		}
+		
+		// Until there is enough history, assume the configured interval
+		private double _mean()
+		{
+			return _count < 2 ? _expected : _sum / _count;
+		}
+		
+		// Never less than a quarter of the mean, so a perfectly regular peer isn't suspected on the slightest delay
+		private double _deviation(double mean)
+		{
+			final double variance = _count < 2 ? 0.0 : _sumOfSquares / _count - mean * mean;
+			return Math.max(Math.sqrt(Math.max(variance, 0.0)), mean / 4);
+		}
+	}
+	
+	// Logistic approximation of the normal distribution: P(X > mean + y deviations) = 1 / (1 + e^_logistic(y))
+	private static double _logistic(double y)
+	{
+		return y * (1.5976 + 0.070566 * y * y);
+	}
+	
+	// Solves phi(y) = threshold for y by bisection (phi is increasing in y)
+	private static double _solve(double threshold)
+	{
+		final double target = Math.log(Math.pow(10.0, threshold) - 1.0);
+		double low = 0.0, high = 64.0;
+		for(int i = 0; i < 64; i++)
+		{
+			final double mid = (low + high) / 2;
+			if(_logistic(mid) < target) low = mid;
+			else high = mid;
+		}
+		return high;
+	}
+}
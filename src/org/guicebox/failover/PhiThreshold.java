@@ -0,0 +1,18 @@
+package org.guicebox.failover;
+
+import static java.lang.annotation.ElementType.*;
+import static java.lang.annotation.RetentionPolicy.*;
+
+import com.google.inject.*;
+import java.lang.annotation.*;
+
+/**
+ * The level of suspicion at which {@link PhiAccrualFailureDetector} declares the peer dead. A threshold of 1 means
+ * about a 10% chance of a false positive, 2 means about 1%, 3 means about 0.1%, and so on.
+ * 
+ * @author willhains
+ */
+@Retention(RUNTIME) @Target( { FIELD, PARAMETER }) @BindingAnnotation public @interface PhiThreshold
+{
+	
+}
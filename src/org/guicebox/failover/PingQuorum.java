@@ -0,0 +1,17 @@
+package org.guicebox.failover;
+
+import static java.lang.annotation.ElementType.*;
+import static java.lang.annotation.RetentionPolicy.*;
+
+import com.google.inject.*;
+import java.lang.annotation.*;
+
+/**
+ * How many of the {@link WellKnownAddress}es must respond to a ping to confirm network connectivity. Defaults to 1.
+ * 
+ * @author willhains
+ */
+@Retention(RUNTIME) @Target( { FIELD, PARAMETER }) @BindingAnnotation public @interface PingQuorum
+{
+	
+}
@@ -0,0 +1,23 @@
+package org.guicebox.failover;
+
+/**
+ * A {@link Transport} that can deliver heartbeats to a listener as soon as they arrive, instead of being polled.
+ * {@link NonBlockingHeart} uses this mode automatically when the bound transport supports it.
+ * 
+ * @author willhains
+ */
+public interface PushTransport extends Transport
+{
+	/**
+	 * Blocks until the calling thread is interrupted, passing each valid {@link Heartbeat} received from another node
+	 * in the same cluster to {@link HeartbeatListener#onHeartbeat(Heartbeat)}. No CPU is consumed while waiting for
+	 * heartbeats. The listener's {@link HeartbeatListener#onHeartbeatTimeout()} method is never called; detecting
+	 * missing heartbeats is the caller's job.
+	 * 
+	 * @param ownHeartbeat a heartbeat from this node, used to determine whether received heartbeats are from other
+	 * nodes in the same cluster.
+	 * @param listener receives the heartbeats, on the calling thread.
+	 * @throws TransportException if an error occurs while waiting or receiving (wraps real cause of error).
+	 */
+	void receive(Heartbeat ownHeartbeat, HeartbeatListener listener) throws TransportException;
+}
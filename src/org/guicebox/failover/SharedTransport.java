@@ -0,0 +1,38 @@
+package org.guicebox.failover;
+
+import java.util.concurrent.*;
+
+/**
+ * A {@link Transport} shared by many clusters in the same process, so that the number of threads and sockets does not
+ * grow with the number of clusters. Instead of a thread per cluster waiting for heartbeats, each cluster subscribes a
+ * listener, and the transport delivers heartbeats to it from its own thread. {@link NonBlockingHeart} uses this mode
+ * automatically when the bound transport supports it, and runs its timers on the transport's scheduler.
+ * 
+ * @author willhains
+ */
+public interface SharedTransport extends Transport
+{
+	/**
+	 * Passes each valid {@link Heartbeat} received from another node in the same cluster to
+	 * {@link HeartbeatListener#onHeartbeat(Heartbeat)}, until the listener is unsubscribed. Returns immediately. The
+	 * listener's {@link HeartbeatListener#onHeartbeatTimeout()} method is never called; detecting missing heartbeats
+	 * is the caller's job.
+	 * 
+	 * @param ownHeartbeat a heartbeat from this node, used to determine whether received heartbeats are from other
+	 * nodes in the same cluster.
+	 * @param listener receives the heartbeats, on a thread shared with other clusters. Must not block.
+	 * @throws TransportException if the transport could not start receiving (wraps real cause of error).
+	 */
+	void subscribe(Heartbeat ownHeartbeat, HeartbeatListener listener) throws TransportException;
+	
+	/**
+	 * Stops passing heartbeats to the specified listener.
+	 */
+	void unsubscribe(HeartbeatListener listener);
+	
+	/**
+	 * @return the scheduler shared by all clusters using this transport, for sending heartbeats and detecting
+	 * timeouts. Never shut down by its users.
+	 */
+	ScheduledExecutorService getScheduler();
+}
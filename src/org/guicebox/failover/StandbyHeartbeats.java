@@ -0,0 +1,20 @@
+package org.guicebox.failover;
+
+import static java.lang.annotation.ElementType.*;
+import static java.lang.annotation.RetentionPolicy.*;
+
+import com.google.inject.*;
+import java.lang.annotation.*;
+
+/**
+ * Whether {@link Failover} nodes send heartbeats while in standby, so that every node appears in the
+ * {@link Membership} of its peers. Defaults to {@code false}. Only enable it when every node in the cluster sends its
+ * state with its heartbeats, or older nodes will take standby heartbeats for a live primary. Has no effect unless a
+ * {@link MembershipModule} is installed, as heartbeats only carry the node state while membership is tracked.
+ * 
+ * @author willhains
+ */
+@Retention(RUNTIME) @Target( { FIELD, PARAMETER }) @BindingAnnotation public @interface StandbyHeartbeats
+{	
+
+}
@@ -0,0 +1,23 @@
+package org.guicebox.failover;
+
+/**
+ * Decides which of two {@link Node}s volunteering to become primary at the same time should win. Bind an
+ * implementation in Guice to prefer the best-prepared node (for example the least loaded, or the one with a warm
+ * cache) over the default ordering by address and process ID.
+ * <p>
+ * Every node in the cluster must reach the same decision from its own point of view, or both nodes may keep
+ * volunteering (or both yield). Base decisions on values that are stable during an election, such as those sent in
+ * the {@link HeartbeatPayload}.
+ * 
+ * @author willhains
+ */
+public interface Superiority
+{
+	/**
+	 * @param thisNode the node making the decision.
+	 * @param peer a heartbeat from the other volunteer.
+	 * @return a positive number if this node should win, a negative number if it should yield, or zero to fall back to
+	 * the default ordering.
+	 */
+	int compare(Node thisNode, Heartbeat peer);
+}
@@ -0,0 +1,54 @@
+package org.guicebox.failover;
+
+import java.io.*;
+import java.net.*;
+import java.nio.channels.*;
+
+/**
+ * Pings a {@code host:port} by connecting to it with a non-blocking {@link SocketChannel}, for {@link TcpPing}.
+ * 
+ * @author willhains
+ */
+final class TcpConnectAddress implements InetAddress
+{
+	private final InetSocketAddress _address;
+	
+	TcpConnectAddress(InetSocketAddress address)
+	{
+		_address = address;
+	}
+	
+	public String getHostAddress()
+	{
+		return _address.getAddress().getHostAddress() + ":" + _address.getPort();
+	}
+	
+	public boolean isReachable(int timeout) throws IOException
+	{
+		final SocketChannel channel = SocketChannel.open();
+		try
+		{
+			channel.configureBlocking(false);
+			if(channel.connect(_address)) return true;
+			final Selector selector = Selector.open();
+			try
+			{
+				channel.register(selector, SelectionKey.OP_CONNECT);
+				return selector.select(timeout) > 0 && channel.finishConnect();
+			}
+			finally
+			{
+				selector.close();
+			}
+		}
+		catch(ConnectException e)
+		{
+			// Connection refused, so the host is there
+			return true;
+		}
+		finally
+		{
+			channel.close();
+		}
+	}
+}
@@ -0,0 +1,121 @@
+package org.guicebox.failover;
+
+import com.google.inject.*;
+import java.net.*;
+import java.util.*;
+import java.util.logging.*;
+import net.jcip.annotations.*;
+
+/**
+ * Utility for pinging a list of specified network addresses by opening TCP connections to them, for networks where
+ * ICMP is blocked. Each {@link WellKnownAddress} is a {@code host:port} pair. A host is reachable if it accepts or
+ * refuses the connection within the timeout; either way, it is on the network. Scheduling, concurrency and
+ * {@link PingQuorum} are the same as for {@link JavaPing}.
+ * 
+ * @author willhains
+ */
+@ThreadSafe public final class TcpPing implements Ping
+{
+	private final JavaPing _ping;
+	
+	/**
+	 * Prepares a ping to the specified well-known address (WKA). Call {@link #start(PingListener)} to start pinging.
+	 * 
+	 * @param wka the comma-or-whitespace-separated {@code host:port} pairs of the ping targets.
+	 * @throws UnknownHostException if the specified host name could not be found in DNS.
+	 * @throws IllegalArgumentException if any of the targets has no port.
+	 */
+	@Inject public TcpPing(@WellKnownAddress String wka, Logger log) throws UnknownHostException
+	{
+		final Set<InetAddress> wkaSet = new LinkedHashSet<InetAddress>();
+		for(String address : JavaPing.split(wka))
+		{
+			wkaSet.add(new TcpConnectAddress(parse(address)));
+		}
+		_ping = new JavaPing(wkaSet, "TcpPing: " + wka, log);
+	}
+	
+	/**
+	 * Parses a {@code host:port} pair, which must have a port. There is no default, because the standard echo port is
+	 * exactly the one that firewalls tend to block. An IPv6 host must be enclosed in square brackets.
+	 * 
+	 * @throws UnknownHostException if the specified host name could not be found in DNS.
+	 * @throws IllegalArgumentException if no port is specified.
+	 */
+	static InetSocketAddress parse(String address) throws UnknownHostException
+	{
+		return parse(address, -1);
+	}
+	
+	/**
+	 * Parses a {@code host:port} pair. An IPv6 host with a port must be enclosed in square brackets.
+	 * 
+	 * @param defaultPort the port to use if none is specified, or a negative number if the port is required.
+	 * @throws UnknownHostException if the specified host name could not be found in DNS.
+	 * @throws IllegalArgumentException if no port is specified, and there is no default.
+	 */
+	static InetSocketAddress parse(String address, int defaultPort) throws UnknownHostException
+	{
+		final String host;
+		int port = defaultPort;
+		final int colon = address.lastIndexOf(':');
+		if(address.startsWith("["))
+		{
+			// [IPv6]:port
+			final int end = address.indexOf(']');
+			host = address.substring(1, end);
+			if(colon > end) port = Integer.parseInt(address.substring(colon + 1));
+		}
+		else if(colon >= 0 && colon == address.indexOf(':'))
+		{
+			// host:port
+			host = address.substring(0, colon);
+			port = Integer.parseInt(address.substring(colon + 1));
+		}
+		else
+		{
+			// Host name, IPv4 or unbracketed IPv6 address
+			host = address;
+		}
+		if(port < 0) throw new IllegalArgumentException("No port specified for " + address);
+		return new InetSocketAddress(java.net.InetAddress.getByName(host), port);
+	}
+	
+	@Inject(optional = true) void setPingInterval(@PingInterval int interval)
+	{
+		_ping.setPingInterval(interval);
+	}
+	
+	@Inject(optional = true) void setPingTolerance(@PingTolerance int tolerance)
+	{
+		_ping.setPingTolerance(tolerance);
+	}
+	
+	@Inject(optional = true) void setPingQuorum(@PingQuorum int quorum)
+	{
+		_ping.setPingQuorum(quorum);
+	}
+	
+	/**
+	 * @see JavaPing#getLatencies()
+	 */
+	public Map<String, Long> getLatencies()
+	{
+		return _ping.getLatencies();
+	}
+	
+	public void start(PingListener pingListener)
+	{
+		_ping.start(pingListener);
+	}
+	
+	public void stopPinging()
+	{
+		_ping.stopPinging();
+	}
+	
+	public void stop()
+	{
+		_ping.stop();
+	}
+}
@@ -0,0 +1,72 @@
+package org.guicebox.failover;
+
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Pings a {@code host:port} by sending it a numbered datagram with a non-blocking {@link DatagramChannel}, and waiting
+ * for it to be echoed, for {@link UdpEchoPing}.
+ * 
+ * @author willhains
+ */
+final class UdpEchoAddress implements InetAddress
+{
+	private final InetSocketAddress _address;
+	
+	// Numbers each ping, so late echoes of earlier pings are not mistaken for responses
+	private final AtomicLong _seq = new AtomicLong();
+	
+	UdpEchoAddress(InetSocketAddress address)
+	{
+		_address = address;
+	}
+	
+	public String getHostAddress()
+	{
+		return _address.getAddress().getHostAddress() + ":" + _address.getPort();
+	}
+	
+	public boolean isReachable(int timeout) throws IOException
+	{
+		final long deadline = System.currentTimeMillis() + timeout;
+		final long seq = _seq.incrementAndGet();
+		final ByteBuffer buf = ByteBuffer.allocate(8);
+		final DatagramChannel channel = DatagramChannel.open();
+		try
+		{
+			channel.configureBlocking(false);
+			channel.connect(_address);
+			buf.putLong(seq).flip();
+			channel.write(buf);
+			final Selector selector = Selector.open();
+			try
+			{
+				channel.register(selector, SelectionKey.OP_READ);
+				for(long remaining = timeout; remaining > 0; remaining = deadline - System.currentTimeMillis())
+				{
+					if(selector.select(remaining) == 0) continue;
+					selector.selectedKeys().clear();
+					buf.clear();
+					if(channel.read(buf) == 8 && buf.getLong(0) == seq) return true;
+				}
+				return false;
+			}
+			finally
+			{
+				selector.close();
+			}
+		}
+		catch(PortUnreachableException e)
+		{
+			// Nothing listening on the port, but the host is there
+			return true;
+		}
+		finally
+		{
+			channel.close();
+		}
+	}
+}
@@ -0,0 +1,74 @@
+package org.guicebox.failover;
+
+import com.google.inject.*;
+import java.net.*;
+import java.util.*;
+import java.util.logging.*;
+import net.jcip.annotations.*;
+
+/**
+ * Utility for pinging a list of specified network addresses by sending them UDP datagrams and waiting for the echo, for
+ * networks where ICMP is blocked. Each {@link WellKnownAddress} is a {@code host:port} pair (the port defaults to 7,
+ * the standard echo service), which should be running an echo service or a {@link UdpEchoResponder}. Scheduling,
+ * concurrency and {@link PingQuorum} are the same as for {@link JavaPing}.
+ * 
+ * @author willhains
+ */
+@ThreadSafe public final class UdpEchoPing implements Ping
+{
+	private final JavaPing _ping;
+	
+	/**
+	 * Prepares a ping to the specified well-known address (WKA). Call {@link #start(PingListener)} to start pinging.
+	 * 
+	 * @param wka the comma-or-whitespace-separated {@code host:port} pairs of the ping targets.
+	 * @throws UnknownHostException if the specified host name could not be found in DNS.
+	 */
+	@Inject public UdpEchoPing(@WellKnownAddress String wka, Logger log) throws UnknownHostException
+	{
+		final Set<InetAddress> wkaSet = new LinkedHashSet<InetAddress>();
+		for(String address : JavaPing.split(wka))
+		{
+			wkaSet.add(new UdpEchoAddress(TcpPing.parse(address, 7)));
+		}
+		_ping = new JavaPing(wkaSet, "UdpEchoPing: " + wka, log);
+	}
+	
+	@Inject(optional = true) void setPingInterval(@PingInterval int interval)
+	{
+		_ping.setPingInterval(interval);
+	}
+	
+	@Inject(optional = true) void setPingTolerance(@PingTolerance int tolerance)
+	{
+		_ping.setPingTolerance(tolerance);
+	}
+	
+	@Inject(optional = true) void setPingQuorum(@PingQuorum int quorum)
+	{
+		_ping.setPingQuorum(quorum);
+	}
+	
+	/**
+	 * @see JavaPing#getLatencies()
+	 */
+	public Map<String, Long> getLatencies()
+	{
+		return _ping.getLatencies();
+	}
+	
+	public void start(PingListener pingListener)
+	{
+		_ping.start(pingListener);
+	}
+	
+	public void stopPinging()
+	{
+		_ping.stopPinging();
+	}
+	
+	public void stop()
+	{
+		_ping.stop();
+	}
+}
@@ -0,0 +1,84 @@
+package org.guicebox.failover;
+
+import static org.guicebox.NamedExecutors.*;
+
+import java.io.*;
+import java.net.*;
+import java.util.logging.*;
+import net.jcip.annotations.*;
+
+/**
+ * A stand-in for the echo service, for {@link UdpEchoPing} targets that do not run one. Returns each datagram it
+ * receives to its sender, from a daemon thread, until {@link #stop()} is called.
+ * 
+ * @author willhains
+ */
+@ThreadSafe public final class UdpEchoResponder
+{
+	// Longest datagram echoed in full; UdpEchoPing only sends 8 bytes
+	private static final int _MAX_LENGTH = 64;
+	
+	private final Logger _log;
+	private final DatagramSocket _socket;
+	private final Thread _thread;
+	
+	/**
+	 * Binds the responder to the specified address. Call {@link #start()} to start echoing.
+	 * 
+	 * @param address the local address and port to listen on; port zero picks a free port.
+	 * @throws SocketException if the socket could not be bound.
+	 */
+	public UdpEchoResponder(InetSocketAddress address, Logger log) throws SocketException
+	{
+		_log = log;
+		_socket = new DatagramSocket(address);
+		_thread = configure(single("UdpEchoResponder: " + address), true, Thread.NORM_PRIORITY, log).newThread(
+			new Runnable()
+			{
+				public void run()
+				{
+					_echo();
+				}
+			});
+	}
+	
+	/**
+	 * @return the port the responder is listening on.
+	 */
+	public int getLocalPort()
+	{
+		return _socket.getLocalPort();
+	}
+	
+	public void start()
+	{
+		_thread.start();
+	}
+	
+	/**
+	 * Closes the socket and waits for the responder thread to finish.
+	 */
+	public void stop() throws InterruptedException
+	{
+		_socket.close();
+		_thread.join();
+	}
+	
+	private void _echo()
+	{
+		final DatagramPacket packet = new DatagramPacket(new byte[_MAX_LENGTH], _MAX_LENGTH);
+		while(!_socket.isClosed())
+		{
+			try
+			{
+				packet.setLength(_MAX_LENGTH);
+				_socket.receive(packet);
+				_socket.send(packet);
+			}
+			catch(IOException e)
+			{
+				if(!_socket.isClosed()) _log.warning("Failed to echo datagram: " + e);
+			}
+		}
+	}
+}
@@ -0,0 +1,68 @@
+package org.guicebox.failover.replication;
+
+import java.util.*;
+import java.util.concurrent.*;
+import net.jcip.annotations.*;
+
+/**
+ * A {@link ReplicationTransport} that delivers messages to the other transports connected to the same network in this
+ * JVM. Useful for testing replication without a real network.
+ * 
+ * @author willhains
+ */
+@ThreadSafe public final class LocalReplicationTransport implements ReplicationTransport
+{
+	private final Collection<LocalReplicationTransport> _network;
+	private final BlockingQueue<ReplicationMessage> _inbox = new LinkedBlockingQueue<ReplicationMessage>();
+	
+	/**
+	 * @param network the transports to deliver messages to, which should be thread-safe. This transport is added to
+	 * it.
+	 */
+	public LocalReplicationTransport(Collection<LocalReplicationTransport> network)
+	{
+		_network = network;
+		_network.add(this);
+	}
+	
+	public void send(ReplicationMessage msg)
+	{
+		// A disconnected node's messages go nowhere
+		if(!_network.contains(this)) return;
+		for(LocalReplicationTransport peer : _network)
+		{
+			if(peer != this) peer._inbox.offer(msg);
+		}
+	}
+	
+	public ReplicationMessage receive(int timeout) throws TimeoutException
+	{
+		try
+		{
+			final ReplicationMessage msg = _inbox.poll(timeout, TimeUnit.MILLISECONDS);
+			if(msg == null) throw new TimeoutException();
+			return msg;
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new TimeoutException();
+		}
+	}
+	
+	public void connect()
+	{
+		if(!_network.contains(this)) _network.add(this);
+	}
+	
+	public void disconnect()
+	{
+		_network.remove(this);
+		_inbox.clear();
+	}
+	
+	@Override public String toString()
+	{
+		return "local";
+	}
+}
@@ -0,0 +1,17 @@
+package org.guicebox.failover.replication;
+
+import static java.lang.annotation.ElementType.*;
+import static java.lang.annotation.RetentionPolicy.*;
+
+import com.google.inject.*;
+import java.lang.annotation.*;
+
+/**
+ * Milliseconds between batches of deltas sent by the primary {@link Replicator}.
+ * 
+ * @author willhains
+ */
+@Retention(RUNTIME) @Target( { FIELD, PARAMETER }) @BindingAnnotation public @interface ReplicationInterval
+{	
+
+}
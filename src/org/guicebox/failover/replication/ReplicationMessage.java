@@ -0,0 +1,93 @@
+package org.guicebox.failover.replication;
+
+import java.io.*;
+import java.util.*;
+import net.jcip.annotations.*;
+
+/**
+ * A message between {@link Replicator}s: a batch of state deltas or a snapshot sent by the primary node, or a request
+ * from a standby node to catch up. Each message carries the epoch of the primary whose deltas it concerns, which
+ * increases every time a node takes over, so that deltas numbered by different primaries are never confused.
+ * 
+ * @author willhains
+ */
+@Immutable public final class ReplicationMessage implements Serializable
+{
+	private static final long serialVersionUID = -2216604729856839247L;
+	
+	/**
+	 * The kinds of message.
+	 */
+	public enum Kind
+	{
+		/**
+		 * Consecutive deltas, the first of which has the message's sequence number.
+		 */
+		DELTAS,
+		
+		/**
+		 * A snapshot of the whole state, including every delta up to the message's sequence number.
+		 */
+		SNAPSHOT,
+		
+		/**
+		 * A request for everything after the message's sequence number.
+		 */
+		CATCH_UP
+	}
+	
+	private final Kind _kind;
+	private final long _epoch, _epochStart;
+	private final long _seqNo;
+	private final List<byte[]> _data;
+	
+	public ReplicationMessage(Kind kind, long epoch, long epochStart, long seqNo, List<byte[]> data)
+	{
+		_kind = kind;
+		_epoch = epoch;
+		_epochStart = epochStart;
+		_seqNo = seqNo;
+		_data = Collections.unmodifiableList(new ArrayList<byte[]>(data));
+	}
+	
+	public Kind getKind()
+	{
+		return _kind;
+	}
+	
+	/**
+	 * @return the epoch of the primary that sent the deltas or snapshot, or of the deltas applied by the standby that
+	 * asked to catch up.
+	 */
+	public long getEpoch()
+	{
+		return _epoch;
+	}
+	
+	/**
+	 * @return the sequence number of the last delta the primary had applied when it took over, after which deltas are
+	 * its own.
+	 */
+	public long getEpochStart()
+	{
+		return _epochStart;
+	}
+	
+	public long getSequenceNumber()
+	{
+		return _seqNo;
+	}
+	
+	/**
+	 * @return the deltas, the snapshot (a single element), or nothing for a catch-up request.
+	 */
+	public List<byte[]> getData()
+	{
+		return _data;
+	}
+	
+	@Override public String toString()
+	{
+		return _kind + " " + _epoch + ":" + _seqNo + " (" + _data.size() + ")";
+	}
+}
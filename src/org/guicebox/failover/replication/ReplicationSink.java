@@ -0,0 +1,23 @@
+package org.guicebox.failover.replication;
+
+/**
+ * Applies the state replicated from the primary node to the application on a standby node. Calls are made one at a
+ * time, in sequence number order, on the {@link Replicator}'s receiving thread.
+ * 
+ * @author willhains
+ */
+public interface ReplicationSink
+{
+	/**
+	 * Replaces the whole application state. The sequence number can be lower than that of the last delta applied, when
+	 * a new primary took over without some of the deltas this node had applied; those deltas are discarded.
+	 * 
+	 * @param seqNo the sequence number of the last delta included in the snapshot.
+	 */
+	void onSnapshot(long seqNo, byte[] snapshot);
+	
+	/**
+	 * Applies a delta to the application state. The delta with the previous sequence number has already been applied.
+	 */
+	void onDelta(long seqNo, byte[] delta);
+}
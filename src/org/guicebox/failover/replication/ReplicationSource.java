@@ -0,0 +1,18 @@
+package org.guicebox.failover.replication;
+
+/**
+ * Supplies the primary node's application state to a {@link Replicator}, for standby nodes that have fallen too far
+ * behind to catch up from deltas.
+ * 
+ * @author willhains
+ */
+public interface ReplicationSource
+{
+	/**
+	 * Called while {@link Replicator#publish(byte[])} is blocked, so must return a snapshot that includes the effects
+	 * of every delta published so far, and no others.
+	 * 
+	 * @return the whole application state.
+	 */
+	byte[] getSnapshot();
+}
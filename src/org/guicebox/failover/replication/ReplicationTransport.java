@@ -0,0 +1,45 @@
+package org.guicebox.failover.replication;
+
+import java.util.concurrent.*;
+import org.guicebox.failover.*;
+
+/**
+ * Interface to the physical transport layer for broadcast distribution of {@link ReplicationMessage}s to the other
+ * nodes in the cluster, in the same style as the heartbeat {@link Transport}. Messages may be lost, but must be
+ * delivered in the order they were sent, and never to the node that sent them.
+ * 
+ * @author willhains
+ */
+public interface ReplicationTransport
+{
+	/**
+	 * Opens the connections used in the transport of messages, or reopens them after {@link #disconnect()}. Must
+	 * tolerate multiple calls.
+	 * 
+	 * @throws TransportException if an error occurs while connecting (wraps real cause of error).
+	 */
+	void connect() throws TransportException;
+	
+	/**
+	 * Broadcasts the specified message to other nodes in the cluster.
+	 * 
+	 * @throws TransportException if an error occurs while sending (wraps real cause of error).
+	 */
+	void send(ReplicationMessage msg) throws TransportException;
+	
+	/**
+	 * Blocks for the specified number of milliseconds, or until a message is received from another node.
+	 * 
+	 * @return the message that was received.
+	 * @throws TransportException if an error occurs while waiting or receiving (wraps real cause of error).
+	 * @throws TimeoutException if the specified timeout expires before a message is received, or the calling thread is
+	 * interrupted.
+	 */
+	ReplicationMessage receive(int timeout) throws TransportException, TimeoutException;
+	
+	/**
+	 * Clean up connections used in the transport of messages. Must tolerate multiple calls. Must swallow any exceptions
+	 * raised during disconnection.
+	 */
+	void disconnect();
+}
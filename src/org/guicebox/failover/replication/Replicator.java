@@ -0,0 +1,465 @@
+package org.guicebox.failover.replication;
+
+import static java.util.concurrent.TimeUnit.*;
+import static org.guicebox.NamedExecutors.*;
+
+import com.google.inject.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.logging.*;
+import net.jcip.annotations.*;
+import org.guicebox.*;
+import org.guicebox.failover.*;
+import org.guicebox.failover.replication.ReplicationMessage.Kind;
+
+/**
+ * Replicates application state from the primary node of a {@link Failover} cluster to its standby nodes, so that a
+ * standby can take over without rebuilding its state. The primary application calls {@link #publish(byte[])} with a
+ * delta for each change to its state. Deltas are numbered in sequence and sent to the standby nodes in batches every
+ * {@link ReplicationInterval}, where they are passed to the {@link ReplicationSink}. A standby that misses deltas asks
+ * the primary to catch it up, from the deltas the primary still retains, or else from a snapshot supplied by the
+ * {@link ReplicationSource}. The primary answers every request, so a standby that hears nothing back within 100
+ * intervals asks again.
+ * <p>
+ * Each takeover starts a new epoch, and messages are tagged with the epoch of the primary that sent them, so a standby
+ * ignores an old primary's deltas once it has heard from a new one. A standby that had applied deltas the new primary
+ * never received (because the new primary was lagging when it took over) discards its state and catches up from a
+ * snapshot.
+ * <p>
+ * The replicator follows the GuiceBox lifecycle of the application, so bind it in Guice:
+ * <ul>
+ * <li>{@link Warm} - connects the transport, starts receiving, and asks the primary to catch this node up.</li>
+ * <li>{@link Start} - takes over as the primary, continuing the sequence from the last delta applied on this node.
+ * Application {@link Start} methods that publish deltas should declare {@code after = Replicator.class}, and can find
+ * where the replicated state ends by calling {@link #getLastApplied()}.</li>
+ * <li>{@link Stop} - sends any outstanding deltas and returns to standing by.</li>
+ * <li>{@link Cool} - stops receiving, and disconnects the transport.</li>
+ * </ul>
+ * 
+ * @author willhains
+ */
+@ThreadSafe @Singleton public final class Replicator
+{
+	/**
+	 * The most deltas sent in one message.
+	 */
+	public static final int MAX_BATCH = 256;
+	
+	// Deltas retained by the primary for catching up standby nodes
+	private static final int _RETAINED = 4096;
+	
+	private final Logger _log;
+	
+	// Application state
+	private final ReplicationTransport _transport;
+	private final ReplicationSource _source;
+	private final ReplicationSink _sink;
+	
+	// Sending & receiving threads
+	private final ScheduledExecutorService _sender;
+	private final ExecutorService _receiver;
+	
+	// Interval between batches
+	private volatile int _interval = 10;
+	
+	// Whether this node is the primary
+	@GuardedBy("this") private boolean _primary;
+	
+	// Sequence number of the last delta applied on this node (or published, when primary)
+	@GuardedBy("this") private long _applied;
+	
+	// Epoch of the deltas applied on this node and the last delta applied before it started, and the newest epoch seen
+	@GuardedBy("this") private long _epoch, _epochStart, _newestEpoch;
+	
+	// Last delta this node asked to be caught up from (-1 when not waiting for an answer), and when it asked
+	@GuardedBy("this") private long _catchUpFrom = -1, _catchUpTime;
+	
+	// Recent deltas, ending with the last one published, and those not yet sent
+	@GuardedBy("this") private final LinkedList<byte[]> _retained = new LinkedList<byte[]>();
+	@GuardedBy("this") private final List<byte[]> _batch = new ArrayList<byte[]>();
+	
+	// Tasks and their lock
+	private final Object _taskLock = new Object();
+	@GuardedBy("_taskLock") private Future<?> _receiveTask, _sendTask;
+	
+	@Inject Replicator(ReplicationTransport transport, ReplicationSource source, ReplicationSink sink, Logger log)
+	{
+		this(
+			transport,
+			source,
+			sink,
+			newSingleThreadScheduledExecutor("Replication sender"),
+			newSingleThreadExecutor("Replication receiver"),
+			log);
+	}
+	
+	// Should only be called by unit tests
+	Replicator(
+		ReplicationTransport transport,
+		ReplicationSource source,
+		ReplicationSink sink,
+		ScheduledExecutorService sender,
+		ExecutorService receiver,
+		Logger log)
+	{
+		_transport = transport;
+		_source = source;
+		_sink = sink;
+		_sender = sender;
+		_receiver = receiver;
+		_log = log;
+	}
+	
+	@Inject(optional = true) void setReplicationInterval(@ReplicationInterval int interval)
+	{
+		assert interval > 0 : "Replication interval must be > 0";
+		_interval = interval;
+	}
+	
+	/**
+	 * Records a change to the application state, to be sent to the standby nodes with the next batch.
+	 * 
+	 * @return the sequence number of the delta.
+	 * @throws IllegalStateException if this node is not the primary.
+	 */
+	public long publish(byte[] delta)
+	{
+		final boolean full;
+		final long seqNo;
+		synchronized(this)
+		{
+			if(!_primary) throw new IllegalStateException("Only the primary node can publish");
+			seqNo = ++_applied;
+			_retained.addLast(delta);
+			if(_retained.size() > _RETAINED) _retained.removeFirst();
+			_batch.add(delta);
+			full = _batch.size() == MAX_BATCH;
+		}
+		
+		// Don't wait for the interval to send a full batch
+		if(full) _sender.execute(_sendBatch);
+		return seqNo;
+	}
+	
+	/**
+	 * @return the sequence number of the last delta applied on this node, or published if this node is the primary.
+	 */
+	public synchronized long getLastApplied()
+	{
+		return _applied;
+	}
+	
+	/**
+	 * Connects the transport, starts receiving deltas from the primary node, and asks it to catch this node up.
+	 */
+	@Warm public void connect()
+	{
+		try
+		{
+			_transport.connect();
+		}
+		catch(TransportException e)
+		{
+			// Receiving will keep trying
+			_log.severe("Could not connect replication transport: " + e.getCause());
+		}
+		synchronized(_taskLock)
+		{
+			if(_receiveTask == null) _receiveTask = _receiver.submit(_receive);
+		}
+		final List<ReplicationMessage> request;
+		synchronized(this)
+		{
+			// Any earlier request was lost with the connection
+			_catchUpFrom = -1;
+			request = _catchUpRequest();
+		}
+		for(ReplicationMessage msg : request)
+		{
+			_send(msg);
+		}
+	}
+	
+	/**
+	 * Takes over as the primary node, continuing the sequence from the last delta applied on this node.
+	 */
+	@Start public void takeOver()
+	{
+		synchronized(this)
+		{
+			_primary = true;
+			_retained.clear();
+			_batch.clear();
+			_epoch = _newestEpoch = _newestEpoch + 1;
+			_epochStart = _applied;
+			_log.info("Took over replication in epoch " + _epoch + " after delta " + _applied);
+		}
+		synchronized(_taskLock)
+		{
+			if(_sendTask != null) return;
+			_sendTask = _sender.scheduleWithFixedDelay(_sendBatch, _interval, _interval, MILLISECONDS);
+		}
+	}
+	
+	/**
+	 * Sends any outstanding deltas, and returns to standing by.
+	 */
+	@Stop public void standBy()
+	{
+		synchronized(_taskLock)
+		{
+			if(_sendTask != null) _sendTask.cancel(false);
+			_sendTask = null;
+		}
+		_sendBatch.run();
+		synchronized(this)
+		{
+			_primary = false;
+			_catchUpFrom = -1;
+		}
+	}
+	
+	/**
+	 * Stops receiving deltas, and disconnects the transport until {@link #connect()} is called.
+	 */
+	@Cool public void disconnect()
+	{
+		synchronized(_taskLock)
+		{
+			if(_receiveTask != null) _receiveTask.cancel(true);
+			_receiveTask = null;
+		}
+		_transport.disconnect();
+	}
+	
+	/**
+	 * Stops the replication threads permanently.
+	 */
+	@Kill public void shutdown()
+	{
+		_sender.shutdownNow();
+		_receiver.shutdownNow();
+	}
+	
+	// Sends the deltas published since the last batch
+	private final Runnable _sendBatch = new Runnable()
+	{
+		public void run()
+		{
+			final ReplicationMessage msg;
+			synchronized(Replicator.this)
+			{
+				if(_batch.isEmpty()) return;
+				msg = new ReplicationMessage(Kind.DELTAS, _epoch, _epochStart, _applied - _batch.size() + 1, _batch);
+				_batch.clear();
+			}
+			_send(msg);
+		}
+	};
+	
+	private void _send(ReplicationMessage msg)
+	{
+		try
+		{
+			_transport.send(msg);
+		}
+		catch(TransportException e)
+		{
+			// Standby nodes will ask to catch up when they notice the gap
+			_log.warning("Could not send " + msg + ": " + e.getCause());
+		}
+	}
+	
+	// Receives messages from other nodes until interrupted
+	private final Runnable _receive = new Runnable()
+	{
+		public void run()
+		{
+			while(!Thread.currentThread().isInterrupted())
+			{
+				try
+				{
+					onMessage(_transport.receive(_timeout()));
+				}
+				catch(TimeoutException e)
+				{
+					// The request or its answer may have been lost
+					onReceiveTimeout();
+				}
+				catch(TransportException e)
+				{
+					_log.severe("Could not receive replication message: " + e.getCause());
+					try
+					{
+						Thread.sleep(1000);
+					}
+					catch(InterruptedException ee)
+					{
+						return;
+					}
+				}
+				catch(RuntimeException e)
+				{
+					_log.severe("Could not apply replication message: " + e);
+				}
+			}
+		}
+	};
+	
+	// Should only be called by the receiving thread and unit tests
+	void onReceiveTimeout()
+	{
+		final List<ReplicationMessage> request;
+		synchronized(this)
+		{
+			// Ask again if the primary has not answered
+			if(_catchUpFrom != _applied) return;
+			request = _catchUpRequest();
+		}
+		for(ReplicationMessage msg : request)
+		{
+			_send(msg);
+		}
+	}
+	
+	// Should only be called by the receiving thread and unit tests
+	void onMessage(ReplicationMessage msg)
+	{
+		final List<ReplicationMessage> replies;
+		synchronized(this)
+		{
+			_newestEpoch = Math.max(_newestEpoch, msg.getEpoch());
+			
+			// The primary only answers catch-up requests, and standby nodes ignore them
+			if(_primary != (msg.getKind() == Kind.CATCH_UP)) return;
+			if(_primary) replies = _catchUp(msg);
+			
+			// Ignore a primary that has since been replaced
+			else if(msg.getEpoch() < _epoch) return;
+			else if(msg.getKind() == Kind.SNAPSHOT) replies = _applySnapshot(msg);
+			else if(msg.getEpoch() > _epoch && _applied > msg.getEpochStart()) replies = _rejoin(msg);
+			else replies = _applyDeltas(msg);
+		}
+		for(ReplicationMessage reply : replies)
+		{
+			_send(reply);
+		}
+	}
+	
+	@GuardedBy("this") private List<ReplicationMessage> _applySnapshot(ReplicationMessage msg)
+	{
+		// Ignore snapshots this node is already up to date with, unless they replace an old primary's state
+		if(msg.getSequenceNumber() > _applied || msg.getEpoch() > _epoch)
+		{
+			_sink.onSnapshot(msg.getSequenceNumber(), msg.getData().get(0));
+			_applied = msg.getSequenceNumber();
+			_epoch = msg.getEpoch();
+			_epochStart = msg.getEpochStart();
+		}
+		return Collections.emptyList();
+	}
+	
+	// This node applied deltas that a new primary never had, so it asks to catch up, which gets it a snapshot
+	@GuardedBy("this") private List<ReplicationMessage> _rejoin(ReplicationMessage msg)
+	{
+		final List<ReplicationMessage> request = _catchUpRequest();
+		if(!request.isEmpty())
+		{
+			_log.warning("Epoch "
+				+ msg.getEpoch()
+				+ " started after delta "
+				+ msg.getEpochStart()
+				+ ", so deltas up to "
+				+ _applied
+				+ " will be replaced by a snapshot");
+		}
+		return request;
+	}
+	
+	// Applies the deltas that follow on from the last one applied, or asks to catch up if some are missing
+	@GuardedBy("this") private List<ReplicationMessage> _applyDeltas(ReplicationMessage msg)
+	{
+		long seqNo = msg.getSequenceNumber();
+		if(seqNo > _applied + 1) return _catchUpRequest();
+		
+		// Deltas follow on (from a new primary, up to where it took over), so any request has been answered
+		_epoch = msg.getEpoch();
+		_epochStart = msg.getEpochStart();
+		_catchUpFrom = -1;
+		for(byte[] delta : msg.getData())
+		{
+			if(seqNo == _applied + 1)
+			{
+				_sink.onDelta(seqNo, delta);
+				_applied = seqNo;
+			}
+			seqNo++;
+		}
+		return Collections.emptyList();
+	}
+	
+	// Asks the primary for everything after the last delta applied, unless recently asked for it
+	@GuardedBy("this") private List<ReplicationMessage> _catchUpRequest()
+	{
+		if(_primary) return Collections.emptyList();
+		final long now = System.nanoTime();
+		if(_catchUpFrom == _applied && now - _catchUpTime < MILLISECONDS.toNanos(_timeout()))
+		{
+			return Collections.emptyList();
+		}
+		_catchUpFrom = _applied;
+		_catchUpTime = now;
+		return Collections.singletonList(
+			new ReplicationMessage(Kind.CATCH_UP, _epoch, _epochStart, _applied, Collections.<byte[]> emptyList()));
+	}
+	
+	// How long to wait for a message, or for the answer to a request, before asking again
+	private int _timeout()
+	{
+		return _interval * 100;
+	}
+	
+	// The messages that will bring a node up to date from the delta it requested
+	@GuardedBy("this") private List<ReplicationMessage> _catchUp(ReplicationMessage request)
+	{
+		// Ignore nodes that have followed a newer primary
+		if(request.getEpoch() > _epoch) return Collections.emptyList();
+		
+		// Send a snapshot to replace deltas that this node never had
+		final long from = request.getSequenceNumber();
+		if(request.getEpoch() < _epoch && from > _epochStart) return _snapshot(from);
+		
+		// Answer even when there is nothing to send, so the node knows it is up to date
+		if(from >= _applied)
+		{
+			final List<byte[]> none = Collections.emptyList();
+			return Collections.singletonList(
+				new ReplicationMessage(Kind.DELTAS, _epoch, _epochStart, _applied + 1, none));
+		}
+		
+		// Send a snapshot if the deltas are no longer retained
+		final long oldest = _applied - _retained.size() + 1;
+		if(from + 1 < oldest) return _snapshot(from);
+		
+		// Otherwise send the retained deltas in batches
+		final List<ReplicationMessage> replies = new ArrayList<ReplicationMessage>();
+		final List<byte[]> deltas = _retained.subList((int)(from + 1 - oldest), _retained.size());
+		for(int i = 0; i < deltas.size(); i += MAX_BATCH)
+		{
+			final List<byte[]> batch = deltas.subList(i, Math.min(deltas.size(), i + MAX_BATCH));
+			replies.add(new ReplicationMessage(Kind.DELTAS, _epoch, _epochStart, from + 1 + i, batch));
+		}
+		return replies;
+	}
+	
+	@GuardedBy("this") private List<ReplicationMessage> _snapshot(long from)
+	{
+		_log.info("Sending snapshot at delta " + _applied + " to catch up from delta " + from);
+		return Collections.singletonList(new ReplicationMessage(
+			Kind.SNAPSHOT,
+			_epoch,
+			_epochStart,
+			_applied,
+			Collections.singletonList(_source.getSnapshot())));
+	}
+}
@@ -0,0 +1,158 @@
+package org.guicebox.failover.udp;
+
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+
+/**
+ * Adapts {@link HeartbeatChannel} to a real, non-blocking {@link DatagramChannel}.
+ * 
+ * @author willhains
+ */
+final class DatagramChannelAdapter implements HeartbeatChannel
+{
+	private final DatagramChannel _channel;
+	private final Selector _selector;
+	private final MembershipKey _membership;
+	
+	private DatagramChannelAdapter(DatagramChannel channel, Selector selector, MembershipKey membership)
+	{
+		_channel = channel;
+		_selector = selector;
+		_membership = membership;
+	}
+	
+	static DatagramChannelAdapter forReceiving(InetAddress group, int port, String interfaceName) throws IOException
+	{
+		final DatagramChannel channel = _open(group, interfaceName);
+		try
+		{
+			channel.bind(new InetSocketAddress(port));
+			final MembershipKey membership = group.isMulticastAddress() //
+				? channel.join(group, _networkInterface(interfaceName))
+				: null;
+			channel.configureBlocking(false);
+			final Selector selector = Selector.open();
+			channel.register(selector, SelectionKey.OP_READ);
+			return new DatagramChannelAdapter(channel, selector, membership);
+		}
+		catch(IOException e)
+		{
+			channel.close();
+			throw e;
+		}
+	}
+	
+	static DatagramChannelAdapter forSending(InetAddress group, int port, int ttl, String interfaceName)
+		throws IOException
+	{
+		final DatagramChannel channel = _open(group, interfaceName);
+		try
+		{
+			channel.bind(new InetSocketAddress(port));
+			channel.setOption(StandardSocketOptions.IP_MULTICAST_TTL, ttl);
+			return new DatagramChannelAdapter(channel, null, null);
+		}
+		catch(IOException e)
+		{
+			channel.close();
+			throw e;
+		}
+	}
+	
+	private static DatagramChannel _open(InetAddress group, String interfaceName) throws IOException
+	{
+		final DatagramChannel channel = DatagramChannel.open(group instanceof Inet6Address
+			? StandardProtocolFamily.INET6
+			: StandardProtocolFamily.INET);
+		channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+		if(interfaceName != null)
+		{
+			channel.setOption(StandardSocketOptions.IP_MULTICAST_IF, _networkInterface(interfaceName));
+		}
+		return channel;
+	}
+	
+	private static NetworkInterface _networkInterface(String interfaceName) throws IOException
+	{
+		final NetworkInterface ni = interfaceName == null //
+			? defaultInterface(Collections.list(NetworkInterface.getNetworkInterfaces()))
+			: NetworkInterface.getByName(interfaceName);
+		if(ni == null) throw new SocketException("No network interface for multicast: " + interfaceName);
+		return ni;
+	}
+	
+	/**
+	 * Chooses the interface on which to join the multicast group when none is configured. The local host address is no
+	 * use for this, as it often resolves to a loopback address (e.g. 127.0.1.1), and heartbeats from other hosts would
+	 * never arrive.
+	 * 
+	 * @return the first interface that is up, supports multicast and is not a loopback interface; otherwise the first
+	 * loopback interface that is up, so that a lone host can still hear itself; otherwise {@code null}.
+	 */
+	static NetworkInterface defaultInterface(List<NetworkInterface> interfaces) throws SocketException
+	{
+		NetworkInterface loopback = null;
+		for(NetworkInterface ni : interfaces)
+		{
+			if(!ni.isUp()) continue;
+			if(!ni.isLoopback() && ni.supportsMulticast()) return ni;
+			if(ni.isLoopback() && loopback == null) loopback = ni;
+		}
+		return loopback;
+	}
+	
+	public boolean receive(ByteBuffer buf, long timeout) throws IOException
+	{
+		try
+		{
+			_selector.select(timeout);
+			_selector.selectedKeys().clear();
+			
+			// Receiving on an interrupted thread would close the channel
+			if(Thread.currentThread().isInterrupted()) return false;
+			buf.clear();
+			if(_channel.receive(buf) == null) return false;
+			buf.flip();
+			return true;
+		}
+		catch(ClosedSelectorException e)
+		{
+			// Closed by another thread while waiting
+			throw new AsynchronousCloseException();
+		}
+		catch(ClosedChannelException e)
+		{
+			// Only another thread closes the channel
+			if(e instanceof AsynchronousCloseException) throw e;
+			throw new AsynchronousCloseException();
+		}
+	}
+	
+	public void send(ByteBuffer buf, SocketAddress target) throws IOException
+	{
+		_channel.send(buf, target);
+	}
+	
+	public boolean isOpen()
+	{
+		return _channel.isOpen();
+	}
+	
+	public void close()
+	{
+		try
+		{
+			// Wake any receiving thread first
+			if(_selector != null) _selector.close();
+			if(_membership != null) _membership.drop();
+			_channel.close();
+		}
+		catch(IOException e)
+		{
+			// Swallow exceptions during disconnection
+		}
+	}
+}
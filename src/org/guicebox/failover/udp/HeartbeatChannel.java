@@ -0,0 +1,28 @@
+package org.guicebox.failover.udp;
+
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+
+/**
+ * Abstracts a non-blocking {@link java.nio.channels.DatagramChannel} for testing.
+ * 
+ * @author willhains
+ */
+interface HeartbeatChannel
+{
+	/**
+	 * Waits up to the specified number of milliseconds for a datagram. If one arrives, it is copied into the buffer,
+	 * which is flipped ready for reading.
+	 * 
+	 * @return {@code false} if no datagram arrived before the timeout.
+	 * @throws java.nio.channels.AsynchronousCloseException if the channel is closed by another thread while waiting.
+	 */
+	boolean receive(ByteBuffer buf, long timeout) throws IOException;
+	
+	void send(ByteBuffer buf, SocketAddress target) throws IOException;
+	
+	boolean isOpen();
+	
+	void close();
+}
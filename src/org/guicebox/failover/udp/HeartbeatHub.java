@@ -0,0 +1,331 @@
+package org.guicebox.failover.udp;
+
+import static org.guicebox.NamedExecutors.*;
+
+import java.io.*;
+import java.net.*;
+import java.net.InetAddress;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.logging.*;
+import net.jcip.annotations.*;
+import org.guicebox.failover.*;
+
+/**
+ * Multiplexes the heartbeats of many clusters in the same process over one pair of {@link DatagramChannel}s per
+ * multicast address and ports, so that the number of threads and sockets stays constant however many clusters there
+ * are. Received heartbeats are demultiplexed to the listeners of each cluster by
+ * {@link Heartbeat#getClusterFingerprint()}, and heartbeats for clusters with no listeners are dropped undecoded.
+ * Java-serialized heartbeats from older nodes are only decoded for clusters that accept {@link LegacyHeartbeats}.
+ * <p>
+ * Create one hub per process, and pass it to the {@link HubFailoverModule} of each application.
+ * 
+ * @author willhains
+ */
+@ThreadSafe public class HeartbeatHub
+{
+	private static final Logger _log = Logger.getLogger(HeartbeatHub.class.getName());
+	
+	// Timers shared by all clusters
+	private final ScheduledExecutorService _scheduler;
+	
+	// Channels by address & ports
+	private final ConcurrentMap<String, Channel> _channels = new ConcurrentHashMap<String, Channel>();
+	
+	public HeartbeatHub()
+	{
+		this(newScheduledThreadPool(2, "Heartbeat hub"));
+	}
+	
+	// Called by unit tests
+	HeartbeatHub(ScheduledExecutorService scheduler)
+	{
+		_scheduler = scheduler;
+	}
+	
+	ScheduledExecutorService getScheduler()
+	{
+		return _scheduler;
+	}
+	
+	// Gets the channel for the specified address & ports, creating it if necessary
+	Channel getChannel(InetAddress group, int sourcePort, int destPort, int ttl, String interfaceName)
+	{
+		final String name = group.getHostAddress() + ":" + sourcePort + "-->" + destPort;
+		final Channel channel = _channels.get(name);
+		if(channel != null) return channel;
+		final Channel created = new Channel(name, group, sourcePort, destPort, ttl, interfaceName);
+		final Channel existing = _channels.putIfAbsent(name, created);
+		return existing == null ? created : existing;
+	}
+	
+	private static HeartbeatCodec _legacyCodec()
+	{
+		final HeartbeatCodec codec = new HeartbeatCodec();
+		codec.setLegacy(true);
+		return codec;
+	}
+	
+	/**
+	 * Stops all threads and closes all channels. The hub cannot be used after calling this method.
+	 */
+	public void shutdown()
+	{
+		_scheduler.shutdownNow();
+		for(Channel channel : _channels.values())
+		{
+			channel.close();
+		}
+	}
+	
+	/**
+	 * Factory method to avoid using real {@link DatagramChannel}s in unit tests.
+	 * 
+	 * @return a channel that has joined the multicast group on the specified port.
+	 * @throws IOException if the channel cannot be opened or the group cannot be joined.
+	 */
+	protected HeartbeatChannel openReceiveChannel(InetAddress group, int port, String interfaceName) throws IOException
+	{
+		return DatagramChannelAdapter.forReceiving(group, port, interfaceName);
+	}
+	
+	/**
+	 * Factory method to avoid using real {@link DatagramChannel}s in unit tests.
+	 * 
+	 * @return a channel for sending multicast datagrams from the specified port.
+	 * @throws IOException if the channel cannot be opened.
+	 */
+	protected HeartbeatChannel openSendChannel(InetAddress group, int port, int ttl, String interfaceName)
+		throws IOException
+	{
+		return DatagramChannelAdapter.forSending(group, port, ttl, interfaceName);
+	}
+	
+	// A listener for the heartbeats of one cluster, the node it listens for, and whether it accepts legacy heartbeats
+	private static final class Subscription
+	{
+		final Heartbeat _ownHeartbeat;
+		final HeartbeatListener _listener;
+		final boolean _legacy;
+		
+		Subscription(Heartbeat ownHeartbeat, HeartbeatListener listener, boolean legacy)
+		{
+			_ownHeartbeat = ownHeartbeat;
+			_listener = listener;
+			_legacy = legacy;
+		}
+	}
+	
+	// The channels for one address & ports, shared by all clusters using them
+	final class Channel
+	{
+		private final String _name;
+		private final InetAddress _group;
+		private final int _sourcePort, _destPort, _ttl;
+		private final String _interfaceName;
+		private final InetSocketAddress _destination;
+		
+		// Subscriptions by cluster fingerprint
+		private final ConcurrentMap<Integer, List<Subscription>> _subscriptions =
+			new ConcurrentHashMap<Integer, List<Subscription>>();
+		
+		// Sending channel and its lock
+		private final Object _sendLock = new Object();
+		@GuardedBy("_sendLock") private HeartbeatChannel _sendChannel;
+		@GuardedBy("_sendLock") private final ByteBuffer _sendBuffer = ByteBuffer
+			.allocateDirect(HeartbeatCodec.MAX_LENGTH);
+		
+		// Receiving channel & thread and their lock
+		private final Object _receiveLock = new Object();
+		@GuardedBy("_receiveLock") private HeartbeatChannel _receiveChannel;
+		@GuardedBy("_receiveLock") private ExecutorService _receiveThread;
+		
+		Channel(String name, InetAddress group, int sourcePort, int destPort, int ttl, String interfaceName)
+		{
+			_name = name;
+			_group = group;
+			_sourcePort = sourcePort;
+			_destPort = destPort;
+			_ttl = ttl;
+			_interfaceName = interfaceName;
+			_destination = new InetSocketAddress(group, destPort);
+		}
+		
+		void send(Heartbeat hb, HeartbeatCodec codec) throws IOException
+		{
+			synchronized(_sendLock)
+			{
+				if(_sendChannel == null || !_sendChannel.isOpen())
+				{
+					_sendChannel = openSendChannel(_group, _sourcePort, _ttl, _interfaceName);
+				}
+				codec.encode(hb, _sendBuffer);
+				_sendChannel.send(_sendBuffer, _destination);
+			}
+		}
+		
+		void subscribe(Heartbeat ownHeartbeat, HeartbeatListener listener, boolean legacy) throws IOException
+		{
+			// Add to the cluster's subscriptions first, so its heartbeats are not dropped as unwanted
+			final Integer key = ownHeartbeat.getClusterFingerprint();
+			List<Subscription> subscriptions = _subscriptions.get(key);
+			if(subscriptions == null)
+			{
+				final List<Subscription> created = new CopyOnWriteArrayList<Subscription>();
+				subscriptions = _subscriptions.putIfAbsent(key, created);
+				if(subscriptions == null) subscriptions = created;
+			}
+			subscriptions.add(new Subscription(ownHeartbeat, listener, legacy));
+			
+			// Join the multicast group and start receiving
+			try
+			{
+				synchronized(_receiveLock)
+				{
+					_openReceiveChannel();
+					if(_receiveThread == null)
+					{
+						_receiveThread = newSingleThreadExecutor("Heartbeat hub " + _name);
+						_receiveThread.submit(_receive);
+					}
+				}
+			}
+			catch(IOException e)
+			{
+				unsubscribe(listener);
+				throw e;
+			}
+		}
+		
+		void unsubscribe(HeartbeatListener listener)
+		{
+			for(List<Subscription> subscriptions : _subscriptions.values())
+			{
+				for(Subscription subscription : subscriptions)
+				{
+					if(subscription._listener == listener) subscriptions.remove(subscription);
+				}
+			}
+		}
+		
+		@GuardedBy("_receiveLock") private HeartbeatChannel _openReceiveChannel() throws IOException
+		{
+			if(_receiveChannel == null || !_receiveChannel.isOpen())
+			{
+				_receiveChannel = openReceiveChannel(_group, _destPort, _interfaceName);
+			}
+			return _receiveChannel;
+		}
+		
+		// Receives heartbeats for all clusters until interrupted
+		private final Runnable _receive = new Runnable()
+		{
+			private final HeartbeatCodec _codec = new HeartbeatCodec(), _legacyCodec = _legacyCodec();
+			private final ByteBuffer _buffer = ByteBuffer.allocateDirect(HeartbeatCodec.MAX_LENGTH);
+			
+			public void run()
+			{
+				while(!Thread.currentThread().isInterrupted())
+				{
+					try
+					{
+						final HeartbeatChannel channel;
+						synchronized(_receiveLock)
+						{
+							channel = _openReceiveChannel();
+						}
+						if(!channel.receive(_buffer, 0L)) continue;
+						
+						// Drop heartbeats for clusters with no listeners without decoding them
+						final int fingerprint = _codec.peekClusterFingerprint(_buffer);
+						if(fingerprint != 0 && !_subscriptions.containsKey(fingerprint)) continue;
+						final int start = _buffer.position();
+						final Heartbeat heartbeat = _codec.decode(_buffer);
+						if(heartbeat != null) _dispatch(heartbeat, false);
+						else if(_hasLegacySubscription())
+						{
+							// Only clusters that accept legacy heartbeats should see them
+							_buffer.position(start);
+							_dispatch(_legacyCodec.decode(_buffer), true);
+						}
+					}
+					catch(AsynchronousCloseException e)
+					{
+						// Interrupted or closed while receiving
+						return;
+					}
+					catch(IOException e)
+					{
+						_log.severe("Could not read heartbeat on " + _name + ": " + e);
+						_closeReceiveChannel();
+						try
+						{
+							Thread.sleep(1000);
+						}
+						catch(InterruptedException ee)
+						{
+							return;
+						}
+					}
+				}
+			}
+		};
+		
+		// Passes a heartbeat to each listener of its cluster, except on the node that sent it
+		private void _dispatch(Heartbeat heartbeat, boolean legacy)
+		{
+			if(heartbeat == null) return;
+			final List<Subscription> subscriptions = _subscriptions.get(heartbeat.getClusterFingerprint());
+			if(subscriptions == null) return;
+			for(Subscription subscription : subscriptions)
+			{
+				if(legacy && !subscription._legacy) continue;
+				if(subscription._ownHeartbeat.equals(heartbeat)) continue;
+				if(!subscription._ownHeartbeat.isSameCluster(heartbeat)) continue;
+				try
+				{
+					subscription._listener.onHeartbeat(heartbeat);
+				}
+				catch(RuntimeException e)
+				{
+					_log.severe("Heartbeat listener failed: " + e);
+				}
+			}
+		}
+		
+		private boolean _hasLegacySubscription()
+		{
+			for(List<Subscription> subscriptions : _subscriptions.values())
+			{
+				for(Subscription subscription : subscriptions)
+				{
+					if(subscription._legacy) return true;
+				}
+			}
+			return false;
+		}
+		
+		private void _closeReceiveChannel()
+		{
+			synchronized(_receiveLock)
+			{
+				if(_receiveChannel != null) _receiveChannel.close();
+			}
+		}
+		
+		void close()
+		{
+			synchronized(_receiveLock)
+			{
+				if(_receiveThread != null) _receiveThread.shutdownNow();
+				if(_receiveChannel != null) _receiveChannel.close();
+			}
+			synchronized(_sendLock)
+			{
+				if(_sendChannel != null) _sendChannel.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,56 @@
+package org.guicebox.failover.udp;
+
+import com.google.inject.*;
+import org.guicebox.*;
+import org.guicebox.failover.*;
+
+/**
+ * Binds {@link HubTransport} as the {@link Transport} implementation, sending and receiving heartbeats through the
+ * specified {@link HeartbeatHub}. Use the same hub for every application in the process.
+ * 
+ * @author willhains
+ * @see FailoverModule
+ */
+public final class HubFailoverModule extends FailoverModule
+{
+	private final HeartbeatHub _hub;
+	
+	public HubFailoverModule(String appName, HeartbeatHub hub)
+	{
+		super(appName);
+		_hub = hub;
+	}
+	
+	/**
+	 * @param ping the implementation to use for checking network connectivity.
+	 */
+	public HubFailoverModule(String appName, Class<? extends Ping> ping, HeartbeatHub hub)
+	{
+		super(appName, ping);
+		_hub = hub;
+	}
+	
+	/**
+	 * @param ping the implementation to use for checking network connectivity.
+	 * @param cluster the cluster implementation, such as {@link Failover} or {@link Partitioned}.
+	 */
+	public HubFailoverModule(
+		String appName,
+		Class<? extends Ping> ping,
+		Class<? extends Cluster> cluster,
+		HeartbeatHub hub)
+	{
+		super(appName, ping, cluster);
+		_hub = hub;
+	}
+	
+	/**
+	 * Includes a call to {@link FailoverModule#configure(Binder)}.
+	 */
+	@Override protected void configure()
+	{
+		super.configure();
+		bind(HeartbeatHub.class).toInstance(_hub);
+		bind(Transport.class).to(HubTransport.class);
+	}
+}
@@ -0,0 +1,156 @@
+package org.guicebox.failover.udp;
+
+import com.google.inject.*;
+import java.io.*;
+import java.net.*;
+import java.net.InetAddress;
+import java.util.concurrent.*;
+import net.jcip.annotations.*;
+import org.guicebox.failover.*;
+
+/**
+ * Implements a UDP-based transport of heartbeats for one cluster, over channels shared with the other clusters of a
+ * {@link HeartbeatHub}.
+ * 
+ * @author willhains
+ */
+@ThreadSafe public class HubTransport implements SharedTransport
+{
+	// The hub that owns the channels
+	private final HeartbeatHub _hub;
+	
+	// The multicast address for heartbeats
+	private final InetAddress _groupAddress;
+	
+	// The multicast port for receiving heartbeats
+	private volatile int _sourcePort = 7979;
+	
+	// The multicast port for sending heartbeats
+	private volatile int _destPort = 9797;
+	
+	// Time to Live
+	private volatile int _ttl = 16;
+	
+	// Network interface on which to join the multicast group (null means the first non-loopback multicast interface)
+	private volatile String _interfaceName;
+	
+	// Wire format of heartbeats sent by this cluster, and whether it accepts heartbeats from older nodes
+	private final HeartbeatCodec _codec = new HeartbeatCodec();
+	private volatile boolean _legacy;
+	
+	@Inject HubTransport(HeartbeatHub hub, @GroupAddress String groupAddress) throws UnknownHostException
+	{
+		_hub = hub;
+		_groupAddress = InetAddress.getByName(groupAddress);
+	}
+	
+	@Inject(optional = true) final void setSourcePort(@SourcePort int port)
+	{
+		_sourcePort = port;
+	}
+	
+	@Inject(optional = true) final void setDestinationPort(@DestinationPort int port)
+	{
+		_destPort = port;
+	}
+	
+	@Inject(optional = true) final void setTimeToLive(@TimeToLive int ttl)
+	{
+		_ttl = ttl;
+	}
+	
+	@Inject(optional = true) final void setMulticastInterface(@MulticastInterface String interfaceName)
+	{
+		_interfaceName = interfaceName;
+	}
+	
+	@Inject(optional = true) final void setLegacyHeartbeats(@LegacyHeartbeats boolean legacy)
+	{
+		_codec.setLegacy(legacy);
+		_legacy = legacy;
+	}
+	
+	private HeartbeatHub.Channel _channel()
+	{
+		return _hub.getChannel(_groupAddress, _sourcePort, _destPort, _ttl, _interfaceName);
+	}
+	
+	public void subscribe(Heartbeat ownHeartbeat, HeartbeatListener listener) throws TransportException
+	{
+		try
+		{
+			_channel().subscribe(ownHeartbeat, listener, _legacy);
+		}
+		catch(IOException e)
+		{
+			// Wrap and re-throw
+			throw new TransportException(e);
+		}
+	}
+	
+	public void unsubscribe(HeartbeatListener listener)
+	{
+		_channel().unsubscribe(listener);
+	}
+	
+	public ScheduledExecutorService getScheduler()
+	{
+		return _hub.getScheduler();
+	}
+	
+	public Heartbeat receive(Heartbeat ownHeartbeat, int timeout) throws TransportException, TimeoutException
+	{
+		// Subscribe just long enough to receive one heartbeat
+		final BlockingQueue<Heartbeat> received = new ArrayBlockingQueue<Heartbeat>(1);
+		final HeartbeatListener listener = new HeartbeatListener()
+		{
+			public void onHeartbeat(Heartbeat heartbeat)
+			{
+				received.offer(heartbeat);
+			}
+			
+			public void onHeartbeatTimeout()
+			{
+				// Not called by the hub
+			}
+		};
+		subscribe(ownHeartbeat, listener);
+		try
+		{
+			final Heartbeat heartbeat = received.poll(timeout, TimeUnit.MILLISECONDS);
+			if(heartbeat == null) throw new TimeoutException();
+			return heartbeat;
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new TimeoutException("Thread interrupted");
+		}
+		finally
+		{
+			unsubscribe(listener);
+		}
+	}
+	
+	public void send(Heartbeat hb) throws TransportException
+	{
+		try
+		{
+			_channel().send(hb, _codec);
+		}
+		catch(IOException e)
+		{
+			throw new TransportException(e);
+		}
+	}
+	
+	public void disconnect()
+	{
+		// The channels belong to the hub, which may still be serving other clusters
+	}
+	
+	@Override public String toString()
+	{
+		return "hub://" + _groupAddress + ":" + _sourcePort + "-->" + _destPort;
+	}
+}
@@ -0,0 +1,18 @@
+package org.guicebox.failover.udp;
+
+import static java.lang.annotation.ElementType.*;
+import static java.lang.annotation.RetentionPolicy.*;
+
+import com.google.inject.*;
+import java.lang.annotation.*;
+
+/**
+ * The name of the network interface (e.g. "eth0") on which {@link NioTransport} should join the multicast group. By
+ * default, the first interface that is up, supports multicast and is not a loopback interface is used.
+ * 
+ * @author willhains
+ */
+@Retention(RUNTIME) @Target( { FIELD, PARAMETER }) @BindingAnnotation public @interface MulticastInterface
+{
+	
+}
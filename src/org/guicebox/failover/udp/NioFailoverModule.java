@@ -0,0 +1,45 @@
+package org.guicebox.failover.udp;
+
+import com.google.inject.*;
+import org.guicebox.*;
+import org.guicebox.failover.*;
+
+/**
+ * Binds {@link NioTransport} as the {@link Transport} implementation.
+ * 
+ * @author willhains
+ * @see FailoverModule
+ */
+public final class NioFailoverModule extends FailoverModule
+{
+	public NioFailoverModule(String appName)
+	{
+		super(appName);
+	}
+	
+	/**
+	 * @param ping the implementation to use for checking network connectivity.
+	 */
+	public NioFailoverModule(String appName, Class<? extends Ping> ping)
+	{
+		super(appName, ping);
+	}
+	
+	/**
+	 * @param ping the implementation to use for checking network connectivity.
+	 * @param cluster the cluster implementation, such as {@link Failover} or {@link Partitioned}.
+	 */
+	public NioFailoverModule(String appName, Class<? extends Ping> ping, Class<? extends Cluster> cluster)
+	{
+		super(appName, ping, cluster);
+	}
+	
+	/**
+	 * Includes a call to {@link FailoverModule#configure(Binder)}.
+	 */
+	@Override protected void configure()
+	{
+		super.configure();
+		bind(Transport.class).to(NioTransport.class);
+	}
+}
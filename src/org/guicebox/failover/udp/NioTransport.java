@@ -0,0 +1,246 @@
+package org.guicebox.failover.udp;
+
+import static java.util.concurrent.TimeUnit.*;
+
+import com.google.inject.*;
+import java.io.*;
+import java.net.*;
+import java.net.InetAddress;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.concurrent.*;
+import net.jcip.annotations.*;
+import org.guicebox.failover.*;
+
+/**
+ * Implements a UDP-based transport of heartbeats using non-blocking {@link DatagramChannel}s. Heartbeats are received
+ * by waiting on a {@link Selector} until the timeout expires, or until interrupted when heartbeats are pushed to a
+ * listener. Heartbeats are sent and received through direct buffers that are reused for every heartbeat.
+ * 
+ * @author willhains
+ */
+@ThreadSafe public class NioTransport implements PushTransport
+{
+	// The multicast address for heartbeats
+	private final InetAddress _groupAddress;
+	
+	// The multicast port for receiving heartbeats
+	private volatile int _sourcePort = 7979;
+	
+	// The multicast port for sending heartbeats
+	private volatile int _destPort = 9797;
+	
+	// Time to Live
+	private volatile int _ttl = 16;
+	
+	// Network interface on which to join the multicast group (null means the first non-loopback multicast interface)
+	private volatile String _interfaceName;
+	
+	// Channels used for sending/receiving and their locks
+	private final Object _sendLock = new Object();
+	private final Object _receiveLock = new Object();
+	@GuardedBy("_sendLock") private HeartbeatChannel _sendChannel;
+	@GuardedBy("_receiveLock") private volatile HeartbeatChannel _receiveChannel;
+	
+	// Wire format of heartbeats
+	private final HeartbeatCodec _codec = new HeartbeatCodec();
+	
+	// Packet buffers, reused for every heartbeat
+	@GuardedBy("_sendLock") private final ByteBuffer _sendBuffer = ByteBuffer.allocateDirect(HeartbeatCodec.MAX_LENGTH);
+	@GuardedBy("_receiveLock") private final ByteBuffer _receiveBuffer = ByteBuffer
+		.allocateDirect(HeartbeatCodec.MAX_LENGTH);
+	@GuardedBy("_sendLock") private InetSocketAddress _destination;
+	
+	@Inject NioTransport(@GroupAddress String groupAddress) throws UnknownHostException
+	{
+		_groupAddress = InetAddress.getByName(groupAddress);
+	}
+	
+	@Inject(optional = true) final void setSourcePort(@SourcePort int port)
+	{
+		_sourcePort = port;
+	}
+	
+	@Inject(optional = true) final void setDestinationPort(@DestinationPort int port)
+	{
+		_destPort = port;
+	}
+	
+	@Inject(optional = true) final void setTimeToLive(@TimeToLive int ttl)
+	{
+		_ttl = ttl;
+	}
+	
+	@Inject(optional = true) final void setMulticastInterface(@MulticastInterface String interfaceName)
+	{
+		_interfaceName = interfaceName;
+	}
+	
+	@Inject(optional = true) final void setLegacyHeartbeats(@LegacyHeartbeats boolean legacy)
+	{
+		_codec.setLegacy(legacy);
+	}
+	
+	public Heartbeat receive(Heartbeat ownHeartbeat, int timeout) throws TransportException, TimeoutException
+	{
+		synchronized(_receiveLock)
+		{
+			final long deadline = System.nanoTime() + MILLISECONDS.toNanos(timeout);
+			try
+			{
+				// Join the multicast group
+				if(_receiveChannel == null || !_receiveChannel.isOpen())
+				{
+					_receiveChannel = openReceiveChannel(_groupAddress, _destPort, _interfaceName);
+				}
+				
+				// Loop until timeout expires
+				for(long remaining = timeout; remaining > 0; remaining = _millisUntil(deadline))
+				{
+					// Timeout on thread interrupt
+					if(Thread.currentThread().isInterrupted()) throw new TimeoutException("Thread interrupted");
+					
+					// Wait for the next message
+					if(!_receiveChannel.receive(_receiveBuffer, remaining)) continue;
+					
+					// Ignore non-heartbeats, own heartbeats and heartbeats from other clusters
+					final Heartbeat heartbeat = _decode(ownHeartbeat);
+					if(heartbeat != null) return heartbeat;
+				}
+			}
+			catch(ClosedByInterruptException e)
+			{
+				throw new TimeoutException("Thread interrupted");
+			}
+			catch(AsynchronousCloseException e)
+			{
+				throw new TimeoutException("Disconnected");
+			}
+			catch(IOException e)
+			{
+				// Wrap and re-throw
+				throw new TransportException(e);
+			}
+			
+			// Time up!
+			throw new TimeoutException();
+		}
+	}
+	
+	public void receive(Heartbeat ownHeartbeat, HeartbeatListener listener) throws TransportException
+	{
+		synchronized(_receiveLock)
+		{
+			try
+			{
+				// Join the multicast group
+				if(_receiveChannel == null || !_receiveChannel.isOpen())
+				{
+					_receiveChannel = openReceiveChannel(_groupAddress, _destPort, _interfaceName);
+				}
+				
+				// Loop until interrupted
+				while(!Thread.currentThread().isInterrupted())
+				{
+					// Wait indefinitely for the next message
+					if(!_receiveChannel.receive(_receiveBuffer, 0L)) continue;
+					
+					// Ignore non-heartbeats, own heartbeats and heartbeats from other clusters
+					final Heartbeat heartbeat = _decode(ownHeartbeat);
+					if(heartbeat != null) listener.onHeartbeat(heartbeat);
+				}
+			}
+			catch(AsynchronousCloseException e)
+			{
+				// Interrupted or disconnected while receiving
+			}
+			catch(IOException e)
+			{
+				// Wrap and re-throw
+				throw new TransportException(e);
+			}
+		}
+	}
+	
+	// Decodes the received packet, returning null if it is not a heartbeat from another node in the same cluster
+	@GuardedBy("_receiveLock") private Heartbeat _decode(Heartbeat ownHeartbeat)
+	{
+		return _codec.decode(_receiveBuffer, ownHeartbeat);
+	}
+	
+	private static long _millisUntil(long deadline)
+	{
+		return NANOSECONDS.toMillis(deadline - System.nanoTime());
+	}
+	
+	public void send(Heartbeat hb) throws TransportException
+	{
+		synchronized(_sendLock)
+		{
+			try
+			{
+				// Open the channel
+				if(_sendChannel == null || !_sendChannel.isOpen())
+				{
+					_sendChannel = openSendChannel(_groupAddress, _sourcePort, _ttl, _interfaceName);
+				}
+				if(_destination == null || _destination.getPort() != _destPort)
+				{
+					_destination = new InetSocketAddress(_groupAddress, _destPort);
+				}
+				
+				// Encode & send heartbeat packet
+				_codec.encode(hb, _sendBuffer);
+				_sendChannel.send(_sendBuffer, _destination);
+			}
+			catch(IOException e)
+			{
+				throw new TransportException(e);
+			}
+		}
+	}
+	
+	public void disconnect()
+	{
+		// Close the receive channel first, to wake a receiving thread that holds the lock while it waits
+		final HeartbeatChannel receiveChannel = _receiveChannel;
+		if(receiveChannel != null) receiveChannel.close();
+		synchronized(_receiveLock)
+		{
+			if(_receiveChannel != null && _receiveChannel != receiveChannel) _receiveChannel.close();
+			_receiveChannel = null;
+		}
+		synchronized(_sendLock)
+		{
+			if(_sendChannel != null) _sendChannel.close();
+		}
+	}
+	
+	@Override public String toString()
+	{
+		return "nio://" + _groupAddress + ":" + _sourcePort + "-->" + _destPort;
+	}
+	
+	/**
+	 * Factory method to avoid using real {@link DatagramChannel}s in unit tests.
+	 * 
+	 * @return a channel that has joined the multicast group on the specified port.
+	 * @throws IOException if the channel cannot be opened or the group cannot be joined.
+	 */
+	protected HeartbeatChannel openReceiveChannel(InetAddress group, int port, String interfaceName) throws IOException
+	{
+		return DatagramChannelAdapter.forReceiving(group, port, interfaceName);
+	}
+	
+	/**
+	 * Factory method to avoid using real {@link DatagramChannel}s in unit tests.
+	 * 
+	 * @return a channel for sending multicast datagrams from the specified port.
+	 * @throws IOException if the channel cannot be opened.
+	 */
+	protected HeartbeatChannel openSendChannel(InetAddress group, int port, int ttl, String interfaceName)
+		throws IOException
+	{
+		return DatagramChannelAdapter.forSending(group, port, ttl, interfaceName);
+	}
+}
@@ -1,6 +1,7 @@
 package org.guicebox.failover.udp;
 
 import com.google.inject.*;
+import org.guicebox.*;
 import org.guicebox.failover.*;
 
 /**
@@ -16,6 +17,23 @@ public final class UdpFailoverModule extends FailoverModule
 		super(appName);
 	}
 	
+	/**
+	 * @param ping the implementation to use for checking network connectivity.
+	 */
+	public UdpFailoverModule(String appName, Class<? extends Ping> ping)
+	{
+		super(appName, ping);
+	}
+	
+	/**
+	 * @param ping the implementation to use for checking network connectivity.
+	 * @param cluster the cluster implementation, such as {@link Failover} or {@link Partitioned}.
+	 */
+	public UdpFailoverModule(String appName, Class<? extends Ping> ping, Class<? extends Cluster> cluster)
+	{
+		super(appName, ping, cluster);
+	}
+	
 	/**
 	 * Includes a call to {@link FailoverModule#configure(Binder)}.
 	 */
@@ -4,6 +4,7 @@ import com.google.inject.*;
 import java.io.*;
 import java.net.*;
 import java.net.InetAddress;
+import java.nio.*;
 import java.util.concurrent.*;
 import net.jcip.annotations.*;
 import org.guicebox.failover.*;
@@ -33,9 +34,20 @@ import org.guicebox.failover.*;
 	@GuardedBy("_sendLock") private MulticastSocket _sendSocket;
 	@GuardedBy("_receiveLock") private MulticastSocket _receiveSocket;
 	
+	// Wire format of heartbeats
+	private final HeartbeatCodec _codec = new HeartbeatCodec();
+	
+	// Packet buffers, reused for every heartbeat
+	@GuardedBy("_sendLock") private final ByteBuffer _sendBuffer = ByteBuffer.allocate(HeartbeatCodec.MAX_LENGTH);
+	@GuardedBy("_receiveLock") private final ByteBuffer _receiveBuffer = ByteBuffer.allocate(HeartbeatCodec.MAX_LENGTH);
+	@GuardedBy("_sendLock") private final DatagramPacket _sendPacket;
+	@GuardedBy("_receiveLock") private final DatagramPacket _receivePacket;
+	
 	@Inject UdpTransport(@GroupAddress String groupAddress) throws UnknownHostException
 	{
 		_groupAddress = InetAddress.getByName(groupAddress);
+		_sendPacket = new DatagramPacket(_sendBuffer.array(), 0, _groupAddress, _destPort);
+		_receivePacket = new DatagramPacket(_receiveBuffer.array(), _receiveBuffer.capacity());
 	}
 	
 	@Inject(optional = true) final void setSourcePort(@SourcePort int port)
@@ -53,6 +65,11 @@ import org.guicebox.failover.*;
 		_ttl = ttl;
 	}
 	
+	@Inject(optional = true) final void setLegacyHeartbeats(@LegacyHeartbeats boolean legacy)
+	{
+		_codec.setLegacy(legacy);
+	}
+	
 	public Heartbeat receive(Heartbeat ownHeartbeat, int timeout) throws TransportException, TimeoutException
 	{
 		synchronized(_receiveLock)
@@ -76,27 +93,15 @@ import org.guicebox.failover.*;
 					if(Thread.currentThread().isInterrupted()) throw new TimeoutException("Thread interrupted");
 					
 					// Receive the next message
-					final byte[] buf = new byte[1024];
-					final DatagramPacket msg = new DatagramPacket(buf, buf.length);
-					_receiveSocket.receive(msg);
-					
-					// Deserialise the heartbeat 
-					final Heartbeat heartbeat = decodePacket(msg);
+					_receivePacket.setData(_receiveBuffer.array());
+					_receiveSocket.receive(_receivePacket);
 					
-					// Ignore own heartbeats and heartbeats from other clusters
-					if(ownHeartbeat.equals(heartbeat)) continue;
-					if(!ownHeartbeat.isSameCluster(heartbeat)) continue;
+					// Ignore non-heartbeats, own heartbeats and heartbeats from other clusters
+					final Heartbeat heartbeat = _decode(_receivePacket, ownHeartbeat);
+					if(heartbeat == null) continue;
 					
 					return heartbeat;
 				}
-				catch(ClassNotFoundException e)
-				{
-					// Not a heartbeat
-				}
-				catch(ClassCastException e)
-				{
-					// Not a heartbeat
-				}
 				catch(SocketTimeoutException e)
 				{
 					// Avoid being caught as IOException
@@ -128,7 +133,10 @@ import org.guicebox.failover.*;
 				}
 				
 				// Create & send heartbeat packet
-				_sendSocket.send(createPacket(hb, _groupAddress, _destPort));
+				_codec.encode(hb, _sendBuffer);
+				_sendPacket.setData(_sendBuffer.array(), 0, _sendBuffer.limit());
+				_sendPacket.setPort(_destPort);
+				_sendSocket.send(_sendPacket);
 			}
 			catch(IOException e)
 			{
@@ -137,18 +145,25 @@ import org.guicebox.failover.*;
 		}
 	}
 	
+	private Heartbeat _decode(DatagramPacket msg, Heartbeat ownHeartbeat)
+	{
+		return _codec.decode(ByteBuffer.wrap(msg.getData(), msg.getOffset(), msg.getLength()), ownHeartbeat);
+	}
+	
+	// Called by unit tests and benchmarks
 	static DatagramPacket createPacket(Heartbeat hb, InetAddress groupAddress, int destPort) throws IOException
 	{
-		final ByteArrayOutputStream msg = new ByteArrayOutputStream();
-		new ObjectOutputStream(msg).writeObject(hb);
-		return new DatagramPacket(msg.toByteArray(), msg.size(), groupAddress, destPort);
+		final ByteBuffer buf = ByteBuffer.allocate(HeartbeatCodec.MAX_LENGTH);
+		new HeartbeatCodec().encode(hb, buf);
+		final byte[] msg = new byte[buf.limit()];
+		buf.get(msg);
+		return new DatagramPacket(msg, msg.length, groupAddress, destPort);
 	}
 	
-	static Heartbeat decodePacket(DatagramPacket msg) throws IOException, ClassNotFoundException, ClassCastException
+	// Called by unit tests and benchmarks
+	static Heartbeat decodePacket(DatagramPacket msg)
 	{
-		final InputStream in = new ByteArrayInputStream(msg.getData(), 0, msg.getLength());
-		final Object obj = new ObjectInputStream(in).readObject();
-		return (Heartbeat)obj;
+		return new HeartbeatCodec().decode(ByteBuffer.wrap(msg.getData(), msg.getOffset(), msg.getLength()));
 	}
 	
 	public void disconnect()
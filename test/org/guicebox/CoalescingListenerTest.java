@@ -0,0 +1,94 @@
+package org.guicebox;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+import java.util.concurrent.*;
+import org.easymock.*;
+import org.guicebox.ClusterChange.Cause;
+import org.junit.*;
+
+/**
+ * @author willhains
+ */
+@SuppressWarnings("unchecked") public class CoalescingListenerTest
+{
+	// Mocks
+	private Object[] _mocks;
+	private ClusterChangeListener _listener;
+	private ScheduledExecutorService _timer;
+	private ScheduledFuture<?> _flushTask;
+	
+	// Captures
+	private Capture<Runnable> _flush;
+	private Capture<ClusterChange> _change;
+	
+	@Before public void createMocks()
+	{
+		_mocks = new Object[] {
+			_listener = createMock(ClusterChangeListener.class),
+			_timer = createMock(ScheduledExecutorService.class),
+			_flushTask = createMock(ScheduledFuture.class),
+		// Add all mocks here!
+		};
+		_flush = new Capture<Runnable>();
+		_change = new Capture<ClusterChange>();
+	}
+	
+	private static ClusterChange _change(String oldState, String newState, Cause cause, long time)
+	{
+		return new ClusterChange(oldState, newState, cause, null, time);
+	}
+	
+	@Test public void burst()
+	{
+		// Should schedule one flush for the whole burst, then pass on a single change
+		_timer.schedule(capture(_flush), eq(100L), eq(TimeUnit.MILLISECONDS));
+		expectLastCall().andReturn(_flushTask);
+		_listener.onClusterChange(capture(_change));
+		replay(_mocks);
+		
+		final ClusterChangeListener coalescing = new CoalescingListener(_listener, 100, _timer);
+		coalescing.onClusterChange(_change("STANDBY", "VOLUNTEER", Cause.HEARTBEAT_TIMEOUT, 1));
+		coalescing.onClusterChange(_change("VOLUNTEER", "PRIMARY", Cause.HEARTBEAT_TIMEOUT, 2));
+		_flush.getValue().run();
+		verify(_mocks);
+		
+		assertEquals("STANDBY", _change.getValue().getOldState());
+		assertEquals("PRIMARY", _change.getValue().getNewState());
+		assertEquals(2, _change.getValue().getTime());
+	}
+	
+	@Test public void noNetChange()
+	{
+		// Should not pass on a burst that ends where it started
+		_timer.schedule(capture(_flush), eq(100L), eq(TimeUnit.MILLISECONDS));
+		expectLastCall().andReturn(_flushTask);
+		replay(_mocks);
+		
+		final ClusterChangeListener coalescing = new CoalescingListener(_listener, 100, _timer);
+		coalescing.onClusterChange(_change("STANDBY", "VOLUNTEER", Cause.HEARTBEAT_TIMEOUT, 1));
+		coalescing.onClusterChange(_change("VOLUNTEER", "STANDBY", Cause.HEARTBEAT, 2));
+		_flush.getValue().run();
+		verify(_mocks);
+	}
+	
+	@Test public void consecutiveBursts()
+	{
+		// Should start a new window after each flush
+		_timer.schedule(capture(_flush), eq(100L), eq(TimeUnit.MILLISECONDS));
+		expectLastCall().andReturn(_flushTask).times(2);
+		_listener.onClusterChange(capture(_change));
+		expectLastCall().times(2);
+		replay(_mocks);
+		
+		final ClusterChangeListener coalescing = new CoalescingListener(_listener, 100, _timer);
+		coalescing.onClusterChange(_change(null, "DISCONNECTED", Cause.JOIN, 1));
+		_flush.getValue().run();
+		assertEquals("DISCONNECTED", _change.getValue().getNewState());
+		coalescing.onClusterChange(_change("DISCONNECTED", "STANDBY", Cause.PING, 2));
+		_flush.getValue().run();
+		assertEquals("STANDBY", _change.getValue().getNewState());
+		verify(_mocks);
+	}
+}
@@ -0,0 +1,245 @@
+package org.guicebox;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.logging.*;
+import org.junit.*;
+
+/**
+ * @author willhains
+ */
+public class CommandRunnerTest
+{
+	// Record of the order in which commands were called
+	private final List<String> _calls = Collections.synchronizedList(new ArrayList<String>());
+	
+	private ExecutorService _pool;
+	
+	@After public void shutdownPool()
+	{
+		if(_pool != null) _pool.shutdownNow();
+	}
+	
+	private CommandRunner _sequential()
+	{
+		_pool = Executors.newCachedThreadPool();
+		return new CommandRunner(null, _pool, Logger.getAnonymousLogger());
+	}
+	
+	private CommandRunner _concurrent(int threads)
+	{
+		_pool = Executors.newFixedThreadPool(threads);
+		return new CommandRunner(_pool, _pool, Logger.getAnonymousLogger());
+	}
+	
+	private CommandRunner _timed(int stopTimeout)
+	{
+		_pool = Executors.newCachedThreadPool();
+		final CommandRunner runner = new CommandRunner(null, _pool, Logger.getAnonymousLogger());
+		runner.setStopTimeout(stopTimeout);
+		return runner;
+	}
+	
+	// Dummy owner classes for declaring dependencies
+	static final class Database
+	{
+	}
+	
+	static final class Cache
+	{
+	}
+	
+	static final class Server
+	{
+	}
+	
+	private Callable<?> _cmd(final String name, Class<?> owner, Class<?>... after)
+	{
+		return new DependentCommand(new Callable<Object>()
+		{
+			public Object call() throws Exception
+			{
+				_calls.add(name);
+				return null;
+			}
+			
+			@Override public String toString()
+			{
+				return name;
+			}
+		}, owner, after);
+	}
+	
+	@Test public void sequentialHonoursDependencies() throws Throwable
+	{
+		final List<Callable<?>> cmds = new ArrayList<Callable<?>>();
+		cmds.add(_cmd("server", Server.class, Database.class, Cache.class));
+		cmds.add(_cmd("cache", Cache.class, Database.class));
+		cmds.add(_cmd("database", Database.class));
+		
+		_sequential().start(cmds);
+		
+		assertEquals(Arrays.asList("database", "cache", "server"), _calls);
+	}
+	
+	@Test public void sequentialPreservesOrderWithoutDependencies() throws Throwable
+	{
+		final List<Callable<?>> cmds = new ArrayList<Callable<?>>();
+		cmds.add(_cmd("a", Server.class));
+		cmds.add(_cmd("b", Cache.class));
+		cmds.add(_cmd("c", Database.class));
+		
+		_sequential().start(cmds);
+		
+		assertEquals(Arrays.asList("a", "b", "c"), _calls);
+	}
+	
+	@Test public void concurrentHonoursDependencies() throws Throwable
+	{
+		final List<Callable<?>> cmds = new ArrayList<Callable<?>>();
+		cmds.add(_cmd("server", Server.class, Cache.class));
+		cmds.add(_cmd("cache1", Cache.class, Database.class));
+		cmds.add(_cmd("cache2", Cache.class, Database.class));
+		cmds.add(_cmd("database", Database.class));
+		
+		_concurrent(4).start(cmds);
+		
+		assertEquals(4, _calls.size());
+		assertEquals("database", _calls.get(0));
+		assertTrue(_calls.subList(1, 3).containsAll(Arrays.asList("cache1", "cache2")));
+		assertEquals("server", _calls.get(3));
+	}
+	
+	@Test public void concurrentRunsIndependentCommandsTogether() throws Throwable
+	{
+		// Each command waits for all the others to start, so this can only complete if they run concurrently
+		final CyclicBarrier barrier = new CyclicBarrier(3);
+		final List<Callable<?>> cmds = new ArrayList<Callable<?>>();
+		for(int i = 0; i < 3; i++)
+		{
+			cmds.add(new Callable<Object>()
+			{
+				public Object call() throws Exception
+				{
+					return barrier.await(5, TimeUnit.SECONDS);
+				}
+			});
+		}
+		
+		_concurrent(3).start(cmds);
+	}
+	
+	@Test public void concurrentFailureStopsDependents() throws Throwable
+	{
+		final List<Callable<?>> cmds = new ArrayList<Callable<?>>();
+		cmds.add(new DependentCommand(new Callable<Object>()
+		{
+			public Object call() throws Exception
+			{
+				throw new IllegalStateException("Fake error");
+			}
+		}, Database.class));
+		cmds.add(_cmd("cache", Cache.class, Database.class));
+		
+		try
+		{
+			_concurrent(2).start(cmds);
+			fail("Expected IllegalStateException");
+		}
+		catch(IllegalStateException e)
+		{
+			// Correct behaviour
+			assertEquals("Fake error", e.getMessage());
+		}
+		assertTrue(_calls.isEmpty());
+	}
+	
+	@Test(expected = GuiceBoxException.class) public void circularDependencies() throws Throwable
+	{
+		final List<Callable<?>> cmds = new ArrayList<Callable<?>>();
+		cmds.add(_cmd("database", Database.class, Cache.class));
+		cmds.add(_cmd("cache", Cache.class, Database.class));
+		
+		try
+		{
+			_sequential().start(cmds);
+		}
+		finally
+		{
+			assertTrue(_calls.isEmpty());
+		}
+	}
+	
+	// Command that runs until interrupted
+	private Callable<?> _stuck(final String name)
+	{
+		return new Callable<Object>()
+		{
+			public Object call() throws Exception
+			{
+				try
+				{
+					Thread.sleep(10000);
+				}
+				catch(InterruptedException e)
+				{
+					_calls.add(name + " interrupted");
+				}
+				return null;
+			}
+			
+			@Override public String toString()
+			{
+				return name;
+			}
+		};
+	}
+	
+	@Test public void stopSequentialKeepsGoingAfterError() throws Throwable
+	{
+		final List<Callable<?>> cmds = new ArrayList<Callable<?>>();
+		cmds.add(new Callable<Object>()
+		{
+			public Object call() throws Exception
+			{
+				throw new Exception("Fake error");
+			}
+		});
+		cmds.add(_cmd("stop", Server.class));
+		
+		assertTrue(_sequential().stop(cmds).isEmpty());
+		assertEquals(Arrays.asList("stop"), _calls);
+	}
+	
+	@Test public void stopSequentialCommandDeadline() throws Throwable
+	{
+		final Callable<?> stuck = new TimedCommand(_stuck("stuck"), 10);
+		final List<Callable<?>> cmds = new ArrayList<Callable<?>>();
+		cmds.add(stuck);
+		cmds.add(_cmd("stop", Server.class));
+		
+		assertEquals(Arrays.asList(stuck), _sequential().stop(cmds));
+		_pool.shutdown();
+		_pool.awaitTermination(5, TimeUnit.SECONDS);
+		assertTrue(_calls.containsAll(Arrays.asList("stuck interrupted", "stop")));
+	}
+	
+	@Test public void stopConcurrentWithDeadlines() throws Throwable
+	{
+		final Callable<?> stuck1 = _stuck("stuck1");
+		final Callable<?> stuck2 = new TimedCommand(_stuck("stuck2"), 10);
+		final List<Callable<?>> cmds = new ArrayList<Callable<?>>();
+		cmds.add(stuck1);
+		cmds.add(_cmd("stop", Server.class));
+		cmds.add(stuck2);
+		
+		final long start = System.currentTimeMillis();
+		assertEquals(Arrays.asList(stuck1, stuck2), _timed(100).stop(cmds));
+		assertTrue(System.currentTimeMillis() - start < 5000);
+		_pool.shutdown();
+		_pool.awaitTermination(5, TimeUnit.SECONDS);
+		assertTrue(_calls.containsAll(Arrays.asList("stuck1 interrupted", "stuck2 interrupted", "stop")));
+	}
+}
@@ -55,6 +55,10 @@ public class GuiceBoxTest
 		_shutdownTrigger = new Capture<Runnable>();
 		_hook.add(eq("GuiceBox shutdown"), capture(_shutdownTrigger));
 		
+		// Warm & cool commands are only expected by the tests that use them
+		expect(_cmdFactory.getCommands(Warm.class)).andStubReturn(Collections.<Callable<?>> emptyList());
+		expect(_cmdFactory.getCommands(Cool.class)).andStubReturn(Collections.<Callable<?>> emptyList());
+		
 		final Capture<Runnable> runnable = new Capture<Runnable>();
 		expect(_gbThread.submit(capture(runnable))).andAnswer(new IAnswer()
 		{
@@ -69,7 +73,8 @@ public class GuiceBoxTest
 	
 	private GuiceBox.Impl _newGuiceBox()
 	{
-		return new GuiceBox.Impl(_cmdFactory, _cluster, _gbThread, _hook, _jmxServer, Logger.getAnonymousLogger());
+		final Logger log = Logger.getAnonymousLogger();
+		return new GuiceBox.Impl(_cmdFactory, new CommandRunner(log), _cluster, _gbThread, _hook, _jmxServer, log);
 	}
 	
 	@Test public void start() throws Throwable
@@ -198,6 +203,64 @@ public class GuiceBoxTest
 		verify(_mocks);
 	}
 	
+	@Test @SuppressWarnings("unchecked") public void warmStandby() throws Throwable
+	{
+		final Callable<?> warm = createMock(Callable.class), cool = createMock(Callable.class);
+		_cluster.join(capture(_app));
+		
+		// Warm up once, before starting
+		expect(_cmdFactory.getCommands(Warm.class)).andReturn(Collections.<Callable<?>> singleton(warm));
+		expect(warm.call()).andReturn(null);
+		expect(_cmdFactory.getCommands(Start.class)).andReturn(Collections.<Callable<?>> singleton(_start));
+		expect(_start.call()).andReturn(null);
+		
+		// Stay warm after stopping, until cooled down
+		expect(_cmdFactory.getCommands(Stop.class)).andReturn(Collections.<Callable<?>> singleton(_stop));
+		expect(_stop.call()).andReturn(null);
+		expect(_cmdFactory.getCommands(Cool.class)).andReturn(Collections.<Callable<?>> singleton(cool));
+		expect(cool.call()).andReturn(null);
+		expect(_gbThread.isShutdown()).andReturn(false).times(5);
+		
+		replay(_mocks);
+		replay(warm, cool);
+		
+		final GuiceBox.Impl gb = _newGuiceBox();
+		gb.start();
+		_app.getValue().warm();
+		_app.getValue().warm();
+		_app.getValue().start();
+		_app.getValue().stop();
+		_app.getValue().cool();
+		
+		verify(_mocks);
+		verify(warm, cool);
+	}
+	
+	@Test @SuppressWarnings("unchecked") public void warmError() throws Throwable
+	{
+		final Callable<?> warm = createMock(Callable.class);
+		_cluster.join(capture(_app));
+		
+		// Failing to warm up should leave the application cold, so it warms up again before starting
+		expect(_cmdFactory.getCommands(Warm.class)).andReturn(Collections.<Callable<?>> singleton(warm)).times(2);
+		expect(warm.call()).andThrow(new Exception("Fake error"));
+		expect(warm.call()).andReturn(null);
+		expect(_cmdFactory.getCommands(Start.class)).andReturn(Collections.<Callable<?>> singleton(_start));
+		expect(_start.call()).andReturn(null);
+		expect(_gbThread.isShutdown()).andReturn(false).times(2);
+		
+		replay(_mocks);
+		replay(warm);
+		
+		final GuiceBox.Impl gb = _newGuiceBox();
+		gb.start();
+		_app.getValue().warm();
+		_app.getValue().start();
+		
+		verify(_mocks);
+		verify(warm);
+	}
+	
 	@Test public void stopUnstarted() throws Throwable
 	{
 		_cluster.leave();
@@ -34,6 +34,86 @@ public class InjectorCommandFactoryTest
 		{
 			assertTrue(kill.contains(cmd.toString()));
 		}
+		assertEquals("[WarmCoolMethods.warmMe()]", cf.getCommands(Warm.class).toString());
+		assertEquals("[WarmCoolMethods.coolMe()]", cf.getCommands(Cool.class).toString());
+	}
+	
+	@Test public void instantiateOnlyGuiceBoxed() throws Throwable
+	{
+		// Should only instantiate bound classes that have GuiceBox annotations
+		final Injector injector = Guice.createInjector(new GoodModule());
+		NothingImpl.instances = 0;
+		WarmCoolMethods.instances = 0;
+		new InjectorCommandFactory(injector, Logger.getAnonymousLogger());
+		assertEquals(0, NothingImpl.instances);
+		assertEquals(1, WarmCoolMethods.instances);
+	}
+	
+	@Test public void periodicMethod() throws Throwable
+	{
+		// Should repeat the method on the shared scheduler, in a thread named for the method
+		final Injector injector = Guice.createInjector(new AbstractModule()
+		{
+			@Override protected void configure()
+			{
+				bind(PeriodicMethod.class).in(Scopes.SINGLETON);
+			}
+		});
+		final CommandFactory cf = new InjectorCommandFactory(injector, Logger.getAnonymousLogger());
+		final PeriodicMethod periodic = injector.getInstance(PeriodicMethod.class);
+		for(Callable<?> cmd : cf.getCommands(Start.class))
+		{
+			assertEquals("Start PeriodicMethod.tick", cmd.toString());
+			cmd.call();
+		}
+		assertTrue(periodic.ticks.await(5, TimeUnit.SECONDS));
+		assertEquals("PeriodicMethod.tick", periodic.threadName);
+		
+		// Should shut down the shared scheduler after killing the task
+		final List<String> kill = new ArrayList<String>();
+		for(Callable<?> cmd : cf.getCommands(Kill.class))
+		{
+			kill.add(cmd.toString());
+			cmd.call();
+		}
+		assertEquals(Arrays.asList("Kill PeriodicMethod.tick", "Kill periodic tasks"), kill);
+	}
+	
+	@Test public void periodicKillTimeout() throws Throwable
+	{
+		// Should give up waiting for a repeating task that ignores interruption
+		final Injector injector = Guice.createInjector(new AbstractModule()
+		{
+			@Override protected void configure()
+			{
+				bind(StubbornPeriodic.class).in(Scopes.SINGLETON);
+			}
+		});
+		final CommandFactory cf = new InjectorCommandFactory(injector, Logger.getAnonymousLogger());
+		final StubbornPeriodic periodic = injector.getInstance(StubbornPeriodic.class);
+		try
+		{
+			for(Callable<?> cmd : cf.getCommands(Start.class))
+			{
+				cmd.call();
+			}
+			assertTrue(periodic.started.await(5, TimeUnit.SECONDS));
+			final Iterator<Callable<?>> kill = cf.getCommands(Kill.class).iterator();
+			kill.next().call();
+			try
+			{
+				kill.next().call();
+				fail("Should time out");
+			}
+			catch(TimeoutException e)
+			{
+				// Correct behaviour
+			}
+		}
+		finally
+		{
+			periodic.release.countDown();
+		}
 	}
 	
 	@Test(expected = GuiceBoxException.class) public void bad1() throws Throwable
@@ -57,6 +137,7 @@ class GoodModule extends AbstractModule
 		bind(StartMethod.class).to(StartMethodImpl.class);
 		bind(StopKillMethods.class).to(StopKillMethodsImpl.class);
 		bind(StartRunnableField.class);
+		bind(WarmCoolMethods.class);
 	}
 }
 
@@ -66,6 +147,12 @@ interface Nothing
 
 class NothingImpl implements Nothing
 {
+	static int instances;
+	
+	NothingImpl()
+	{
+		instances++;
+	}
 }
 
 interface StartMethod
@@ -98,6 +185,58 @@ class StopKillMethodsImpl implements StopKillMethods
 	}
 }
 
+class WarmCoolMethods
+{
+	static int instances;
+	
+	WarmCoolMethods()
+	{
+		instances++;
+	}
+	
+	@Warm public void warmMe()
+	{
+	}
+	
+	@Cool public void coolMe()
+	{
+	}
+}
+
+class PeriodicMethod
+{
+	final CountDownLatch ticks = new CountDownLatch(3);
+	volatile String threadName;
+	
+	@Start(repeat = 1, fixedDelay = true) void tick()
+	{
+		threadName = Thread.currentThread().getName();
+		ticks.countDown();
+	}
+}
+
+class StubbornPeriodic
+{
+	final CountDownLatch started = new CountDownLatch(1), release = new CountDownLatch(1);
+	
+	@Start(repeat = 1, timeout = 100) void tick()
+	{
+		started.countDown();
+		while(true)
+		{
+			try
+			{
+				release.await();
+				return;
+			}
+			catch(InterruptedException e)
+			{
+				// Ignore
+			}
+		}
+	}
+}
+
 class StartRunnableField
 {
 	@Start final Runnable spawnMe = createNiceMock(Runnable.class);
@@ -33,4 +33,50 @@ public class InvokeMethodCommandTest
 		instance.assertCalled();
 		assertEquals("TestClass.method()", cmd.toString());
 	}
+	
+	@Test public void returnValue() throws Exception
+	{
+		// Should return the method's result, including from private and static methods
+		final Method result = Methods.class.getDeclaredMethod("result");
+		assertEquals("result", new InvokeMethodCommand(result, new Methods()).call());
+		assertEquals(42, new InvokeMethodCommand(Methods.class.getDeclaredMethod("answer"), new Methods()).call());
+	}
+	
+	@Test public void unwrappedException() throws Exception
+	{
+		// Should throw the method's exception, not an InvocationTargetException
+		final InvokeMethodCommand cmd = new InvokeMethodCommand(Methods.class.getDeclaredMethod("fail"), new Methods());
+		try
+		{
+			cmd.call();
+			fail();
+		}
+		catch(IllegalStateException e)
+		{
+			assertEquals("failed", e.getMessage());
+		}
+	}
+	
+	@Test(expected = GuiceBoxException.class) public void arguments() throws Exception
+	{
+		new InvokeMethodCommand(Object.class.getMethod("equals", Object.class), new Object());
+	}
+	
+	static class Methods
+	{
+		@SuppressWarnings("unused") private String result()
+		{
+			return "result";
+		}
+		
+		@SuppressWarnings("unused") static int answer()
+		{
+			return 42;
+		}
+		
+		@SuppressWarnings("unused") void fail()
+		{
+			throw new IllegalStateException("failed");
+		}
+	}
 }
@@ -0,0 +1,73 @@
+package org.guicebox;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+import org.junit.*;
+
+/**
+ * @author willhains
+ */
+public class LifecycleIndexTest
+{
+	@Test public void scanOnce()
+	{
+		// Should scan each class once
+		assertSame(LifecycleIndex.of(StopKillImpl.class), LifecycleIndex.of(StopKillImpl.class));
+	}
+	
+	@Test public void inherited() throws Exception
+	{
+		// Should find annotated methods of supertypes
+		final LifecycleIndex index = LifecycleIndex.of(StopKillImpl.class);
+		assertFalse(index.isEmpty());
+		assertEquals(Arrays.asList(StopKill.class.getDeclaredMethod("stopMe")), index.getMethods(Stop.class));
+		assertEquals(Arrays.asList(StopKill.class.getDeclaredMethod("killMe")), index.getMethods(Kill.class));
+		assertTrue(index.getMethods(Start.class).isEmpty());
+		assertTrue(index.getStartFields().isEmpty());
+	}
+	
+	@Test public void fields() throws Exception
+	{
+		final LifecycleIndex index = LifecycleIndex.of(StartField.class);
+		assertEquals(Arrays.asList(StartField.class.getDeclaredField("spawnMe")), index.getStartFields());
+	}
+	
+	@Test public void empty()
+	{
+		// Classes with nothing for GuiceBox need not be instantiated
+		assertTrue(LifecycleIndex.of(Plain.class).isEmpty());
+		assertTrue(LifecycleIndex.of(String.class).isEmpty());
+		assertTrue(LifecycleIndex.of(Plain.class).getMethods(Start.class).isEmpty());
+	}
+	
+	private interface StopKill
+	{
+		@Stop void stopMe();
+		
+		@Kill void killMe();
+	}
+	
+	private static final class StopKillImpl implements StopKill
+	{
+		public void stopMe()
+		{
+		}
+		
+		public void killMe()
+		{
+		}
+	}
+	
+	private static final class StartField
+	{
+		@Start final Runnable spawnMe = new Thread();
+	}
+	
+	private static final class Plain
+	{
+		void notForGuiceBox()
+		{
+		}
+	}
+}
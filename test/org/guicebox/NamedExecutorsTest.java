@@ -3,7 +3,9 @@ package org.guicebox;
 import static org.guicebox.NamedExecutors.*;
 import static org.junit.Assert.*;
 
+import java.util.*;
 import java.util.concurrent.*;
+import java.util.logging.*;
 import org.easymock.*;
 import org.junit.*;
 
@@ -28,6 +30,97 @@ public class NamedExecutorsTest
 		assertEquals("serial-2", tf.newThread(_runnable).getName());
 	}
 	
+	@Test public void virtualThreadFactory()
+	{
+		// Should name the thread, whether or not the JVM supports virtual threads
+		final ThreadFactory tf = virtual("virtual");
+		assertEquals("virtual", tf.newThread(_runnable).getName());
+	}
+	
+	@Test public void virtualSerialThreadFactory()
+	{
+		final ThreadFactory tf = virtualSerial("vserial");
+		assertEquals("vserial-0", tf.newThread(_runnable).getName());
+		assertEquals("vserial-1", tf.newThread(_runnable).getName());
+	}
+	
+	@Test public void configuredThreadFactory() throws Throwable
+	{
+		// Should set the daemon flag & priority, and log uncaught exceptions
+		final List<LogRecord> logged = new ArrayList<LogRecord>();
+		final Logger log = Logger.getAnonymousLogger();
+		log.setUseParentHandlers(false);
+		log.addHandler(new Handler()
+		{
+			@Override public void publish(LogRecord record)
+			{
+				synchronized(logged)
+				{
+					logged.add(record);
+				}
+			}
+			
+			@Override public void flush()
+			{
+				// Nothing to flush
+			}
+			
+			@Override public void close()
+			{
+				// Nothing to close
+			}
+		});
+		final ThreadFactory tf = configure(single("configured"), true, Thread.MAX_PRIORITY, log);
+		final Thread thread = tf.newThread(new Runnable()
+		{
+			public void run()
+			{
+				throw new IllegalStateException("faked");
+			}
+		});
+		assertEquals("configured", thread.getName());
+		assertTrue(thread.isDaemon());
+		assertEquals(Thread.MAX_PRIORITY, thread.getPriority());
+		thread.start();
+		thread.join();
+		synchronized(logged)
+		{
+			assertEquals(1, logged.size());
+			assertEquals("Uncaught exception in thread configured", logged.get(0).getMessage());
+			assertEquals("faked", logged.get(0).getThrown().getMessage());
+		}
+	}
+	
+	@Test public void configuredVirtualThreadFactory()
+	{
+		// Virtual threads (where supported) should keep their daemon flag & priority rather than fail
+		final Logger log = Logger.getAnonymousLogger();
+		final ThreadFactory tf = configure(virtual("configured"), false, Thread.MIN_PRIORITY, log);
+		final Thread thread = tf.newThread(_runnable);
+		assertEquals("configured", thread.getName());
+		assertEquals(isVirtualSupported(), thread.isDaemon());
+		assertEquals(isVirtualSupported() ? Thread.NORM_PRIORITY : Thread.MIN_PRIORITY, thread.getPriority());
+		assertNotNull(thread.getUncaughtExceptionHandler());
+	}
+	
+	@Test public void namedTask()
+	{
+		// Should rename the thread only while the task runs
+		final String[] name = new String[1];
+		final Runnable task = named("task", new Runnable()
+		{
+			public void run()
+			{
+				name[0] = Thread.currentThread().getName();
+			}
+		});
+		final String poolName = Thread.currentThread().getName();
+		task.run();
+		assertEquals("task", name[0]);
+		assertEquals(poolName, Thread.currentThread().getName());
+		assertEquals("task", task.toString());
+	}
+	
 	private final class TName implements Callable<String>
 	{
 		public String call()
@@ -70,4 +163,48 @@ public class NamedExecutorsTest
 	{
 		assertEquals("sched1", newSingleThreadScheduledExecutor("sched1").submit(new TName()).get());
 	}
+	
+	@Test public void virtualPerTask() throws Throwable
+	{
+		final ExecutorService t = newVirtualThreadPerTaskExecutor("virtual");
+		assertTrue(t.submit(new TName()).get().startsWith("virtual-"));
+		t.shutdown();
+	}
+	
+	@Test public void workStealing() throws Throwable
+	{
+		final ForkJoinPool t = newWorkStealingPool(2, "stealing", Logger.getAnonymousLogger());
+		assertEquals(2, t.getParallelism());
+		assertTrue(t.submit(new TName()).get().startsWith("stealing-"));
+		t.shutdown();
+	}
+	
+	@Test public void bounded() throws Throwable
+	{
+		// Should reject tasks once the thread is busy and the queue is full
+		final ThreadPoolExecutor t = newBoundedThreadPool(1, 1, new ThreadPoolExecutor.AbortPolicy(), "bounded");
+		final CountDownLatch release = new CountDownLatch(1);
+		final Future<?> busy = t.submit(new Callable<Object>()
+		{
+			public Object call() throws InterruptedException
+			{
+				release.await();
+				return null;
+			}
+		});
+		final Future<String> queued = t.submit(new TName());
+		try
+		{
+			t.submit(new TName());
+			fail("Should be rejected");
+		}
+		catch(RejectedExecutionException e)
+		{
+			// Expected
+		}
+		release.countDown();
+		busy.get();
+		assertEquals("bounded", queued.get());
+		t.shutdown();
+	}
 }
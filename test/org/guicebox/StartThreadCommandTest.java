@@ -7,6 +7,8 @@ import static org.junit.Assert.*;
 import java.lang.reflect.*;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.logging.*;
+import org.easymock.*;
 import org.junit.*;
 
 /**
@@ -21,6 +23,8 @@ public class StartThreadCommandTest
 	
 	@Start public Runnable simple;
 	@Start("TestName2") public Runnable named;
+	@Start(virtual = true) public Runnable virtual;
+	@Start(timeout = 100) public Runnable stubborn;
 	
 	@Before public void createMocks()
 	{
@@ -77,6 +81,149 @@ public class StartThreadCommandTest
 		verify(_mocks);
 	}
 	
+	@Test public void sharedFixedDelay() throws Throwable
+	{
+		// Should schedule on the shared scheduler, and only cancel its own task when killed
+		final ScheduledFuture<?> task = createMock(ScheduledFuture.class);
+		expect(_thread.scheduleWithFixedDelay((Runnable)anyObject(), eq(0L), eq(10L), eq(MILLISECONDS)));
+		expectLastCall().andReturn(task);
+		expect(task.cancel(true)).andReturn(true);
+		
+		replay(_mocks);
+		replay(task);
+		
+		final StartThreadCommand cmd = StartThreadCommand.createShared(_thread, _runnable, "mock", 10, true);
+		cmd.call();
+		cmd.getKillCommand().call();
+		
+		verify(_mocks);
+		verify(task);
+	}
+	
+	@Test public void virtualStop() throws Throwable
+	{
+		// Should run on its own named thread, and be interrupted when stopped
+		final CountDownLatch started = new CountDownLatch(1), interrupted = new CountDownLatch(1);
+		final String[] name = new String[1];
+		virtual = new Runnable()
+		{
+			public void run()
+			{
+				name[0] = Thread.currentThread().getName();
+				started.countDown();
+				try
+				{
+					new CountDownLatch(1).await();
+				}
+				catch(InterruptedException e)
+				{
+					interrupted.countDown();
+				}
+			}
+		};
+		final Field field = StartThreadCommandTest.class.getField("virtual");
+		final Start start = field.getAnnotation(Start.class);
+		final StartThreadCommand cmd = StartThreadCommand.create(start, virtual, field, _thread, false);
+		cmd.call();
+		assertTrue(started.await(5, SECONDS));
+		assertEquals("StartThreadCommandTest.virtual", name[0]);
+		cmd.getStopCommand().call();
+		assertTrue(interrupted.await(5, SECONDS));
+		cmd.getKillCommand().call();
+	}
+	
+	@Test public void killTimeout() throws Throwable
+	{
+		// Should give up waiting for a thread that ignores interruption
+		final CountDownLatch started = new CountDownLatch(1), release = new CountDownLatch(1);
+		stubborn = new Runnable()
+		{
+			public void run()
+			{
+				started.countDown();
+				while(true)
+				{
+					try
+					{
+						release.await();
+						return;
+					}
+					catch(InterruptedException e)
+					{
+						// Ignore
+					}
+				}
+			}
+		};
+		final Field field = StartThreadCommandTest.class.getField("stubborn");
+		final Start start = field.getAnnotation(Start.class);
+		final StartThreadCommand cmd = StartThreadCommand.create(start, stubborn, field, null, false);
+		cmd.call();
+		assertTrue(started.await(5, SECONDS));
+		cmd.getStopCommand().call();
+		final long killed = System.nanoTime();
+		try
+		{
+			cmd.getKillCommand().call();
+			fail("Should time out");
+		}
+		catch(TimeoutException e)
+		{
+			assertTrue(NANOSECONDS.toMillis(System.nanoTime() - killed) < 5000);
+		}
+		finally
+		{
+			release.countDown();
+		}
+	}
+	
+	@Test public void sharedFailure() throws Throwable
+	{
+		// Should log a shared task that fails, as the scheduler won't run it again
+		final List<LogRecord> logged = new ArrayList<LogRecord>();
+		final Handler handler = new Handler()
+		{
+			@Override public void publish(LogRecord record)
+			{
+				logged.add(record);
+			}
+			
+			@Override public void flush()
+			{
+				// Nothing to flush
+			}
+			
+			@Override public void close()
+			{
+				// Nothing to close
+			}
+		};
+		final Capture<Runnable> task = new Capture<Runnable>();
+		expect(_thread.scheduleAtFixedRate(capture(task), eq(0L), eq(10L), eq(MILLISECONDS))).andReturn(null);
+		_runnable.run();
+		expectLastCall().andThrow(new IllegalStateException("Fake error"));
+		replay(_mocks);
+		
+		final Logger log = Logger.getLogger(StartThreadCommand.class.getName());
+		log.addHandler(handler);
+		try
+		{
+			StartThreadCommand.createShared(_thread, _runnable, "mock", 10, false).call();
+			task.getValue().run();
+			fail("Should rethrow");
+		}
+		catch(IllegalStateException e)
+		{
+			assertEquals(1, logged.size());
+			assertSame(e, logged.get(0).getThrown());
+		}
+		finally
+		{
+			log.removeHandler(handler);
+		}
+		verify(_mocks);
+	}
+	
 	@Test public void callAndStop() throws Throwable
 	{
 		expect(_thread.submit(_runnable)).andReturn(null);
@@ -1,9 +1,15 @@
 package org.guicebox.failover;
 
+import static java.lang.management.ManagementFactory.*;
 import static java.util.logging.Logger.*;
 import static org.easymock.EasyMock.*;
 
+import static org.junit.Assert.*;
+
 import com.google.inject.*;
+import java.util.*;
+import java.util.concurrent.*;
+import javax.management.*;
 import org.easymock.*;
 import org.guicebox.*;
 import org.junit.*;
@@ -27,6 +33,15 @@ public class FailoverTest
 	private Capture<PingListener> _pingListener;
 	private Capture<HeartbeatListener> _hbListener;
 	
+	// Notifies cluster listeners on the calling thread
+	private final Executor _sameThread = new Executor()
+	{
+		public void execute(Runnable command)
+		{
+			command.run();
+		}
+	};
+	
 	// Values
 	private final Node _localhost = new Node("192.168.0.1", "PrimaryProcess");
 	
@@ -58,7 +73,15 @@ public class FailoverTest
 	
 	private Failover _joinCluster()
 	{
-		final Failover failover = new Failover("FailoverTest", "TEST", _state, _localhost, _heartFactory, _pingFactory, getAnonymousLogger());
+		final Failover failover = new Failover(
+			"FailoverTest",
+			"TEST",
+			_state,
+			_localhost,
+			_heartFactory,
+			_pingFactory,
+			_sameThread,
+			getAnonymousLogger());
 		failover.join(_app);
 		return failover;
 	}
@@ -113,6 +136,28 @@ public class FailoverTest
 		verify(_mocks);
 	}
 	
+	@Test public void peerPayload()
+	{
+		// Should keep the payload of the latest heartbeat from another node
+		final Node otherNode = new Node("192.168.0.2", "BackupProcess");
+		final Heartbeat otherHB = new Heartbeat(
+			"FailoverTest",
+			"TEST",
+			otherNode,
+			1L,
+			Collections.singletonMap("load", "0.5"));
+		expect(_state.onPeerAlive(_localhost, _heart, otherHB, _app)).andReturn(_state);
+		
+		replay(_mocks);
+		
+		final Failover failover = _joinCluster();
+		assertTrue(failover.getPeerPayload().isEmpty());
+		_hbListener.getValue().onHeartbeat(otherHB);
+		assertEquals("0.5", failover.getPeerPayload().get("load"));
+		
+		verify(_mocks);
+	}
+	
 	@Test public void onHeartbeatTimeout()
 	{
 		// Should get a heartbeat timeout and pass the event to the node state
@@ -169,10 +214,12 @@ public class FailoverTest
 	
 	@Test public void becomePrimaryThenDisconnect()
 	{
+		_app.warm();
 		_heart.beat();
 		_app.start();
 		_heart.stopBeating();
 		_app.stop();
+		_app.cool();
 		_ping.stop();
 		_heart.stop();
 		_clusterListener.onClusterChange("DISCONNECTED");
@@ -184,7 +231,7 @@ public class FailoverTest
 		
 		replay(_mocks);
 		
-		final Failover failover = new Failover("FailoverTest", "TEST", _localhost, _heartFactory, _pingFactory, getAnonymousLogger());
+		final Failover failover = _createFailover(_sameThread);
 		failover.addListener(_clusterListener);
 		failover.join(_app);
 		_pingListener.getValue().onPing();
@@ -196,4 +243,232 @@ public class FailoverTest
 		
 		verify(_mocks);
 	}
+	
+	@Test public void standbyHeartbeats() throws Exception
+	{
+		// Standby nodes should beat, but standby heartbeats should not hold off a takeover
+		_app.warm();
+		_heart.beat();
+		expectLastCall().times(3);
+		_app.start();
+		_heart.stopBeating();
+		expectLastCall().times(2);
+		_app.stop();
+		_app.cool();
+		_ping.stop();
+		_heart.stop();
+		
+		replay(_mocks);
+		
+		final Membership membership = new Membership("FailoverTest", "TEST", getAnonymousLogger());
+		final Failover failover = _createFailover(_sameThread);
+		failover.setMembership(membership);
+		failover.setStandbyHeartbeats(true);
+		failover.join(_app);
+		final ObjectName objectName = new ObjectName("GuiceBox:name=MembershipMBean,cluster=\"FailoverTest (TEST)\"");
+		assertTrue(getPlatformMBeanServer().isRegistered(objectName));
+		_pingListener.getValue().onPing();
+		assertEquals("STANDBY", membership.getLocalState());
+		
+		// Should record the standby peer without treating it as a primary
+		final Node otherNode = new Node("192.168.0.2", "BackupProcess");
+		final Heartbeat standbyHB = new Heartbeat(
+			"FailoverTest",
+			"TEST",
+			otherNode,
+			1L,
+			Collections.<String, String> emptyMap(),
+			"STANDBY");
+		_hbListener.getValue().onHeartbeat(standbyHB);
+		assertEquals(otherNode, membership.getMember(otherNode).getNode());
+		assertTrue(failover.getPeerPayload().isEmpty());
+		
+		// Should restart beating as a volunteer, so the first heartbeat carries the new state
+		_hbListener.getValue().onHeartbeatTimeout();
+		_hbListener.getValue().onHeartbeatTimeout();
+		assertEquals("PRIMARY", membership.getLocalState());
+		assertEquals(1, membership.getPrimaryCount());
+		_pingListener.getValue().onPingTimeout();
+		failover.leave();
+		assertNull(membership.getLocalState());
+		
+		// Should unregister the membership MBean on leaving
+		assertFalse(getPlatformMBeanServer().isRegistered(objectName));
+		
+		verify(_mocks);
+	}
+	
+	private Failover _createFailover(Executor notifier)
+	{
+		return new Failover(
+			"FailoverTest",
+			"TEST",
+			NodeState.Impl.DISCONNECTED,
+			_localhost,
+			_heartFactory,
+			_pingFactory,
+			notifier,
+			getAnonymousLogger());
+	}
+	
+	@Test public void slowListener() throws Exception
+	{
+		// Should volunteer while the listener is still busy with the first notification
+		_app.warm();
+		_heart.beat();
+		replay(_mocks);
+		
+		// Block the listener on its first notification
+		final CountDownLatch release = new CountDownLatch(1);
+		final BlockingQueue<String> states = new LinkedBlockingQueue<String>();
+		final ExecutorService notifier = Executors.newSingleThreadExecutor();
+		final Failover failover = _createFailover(notifier);
+		failover.addListener(new ClusterListener()
+		{
+			public void onClusterChange(String newState)
+			{
+				try
+				{
+					release.await();
+					states.add(newState);
+				}
+				catch(InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		failover.join(_app);
+		_pingListener.getValue().onPing();
+		_hbListener.getValue().onHeartbeatTimeout();
+		verify(_mocks);
+		
+		// The listener should then receive every change in order
+		release.countDown();
+		assertEquals("DISCONNECTED", states.poll(1, TimeUnit.SECONDS));
+		assertEquals("STANDBY", states.poll(1, TimeUnit.SECONDS));
+		assertEquals("VOLUNTEER", states.poll(1, TimeUnit.SECONDS));
+		notifier.shutdownNow();
+	}
+	
+	@Test public void eventDuringEvent()
+	{
+		// Should finish joining before applying a ping that arrives while joining
+		reset(_ping);
+		_ping.start(isA(PingListener.class));
+		expectLastCall().andAnswer(new IAnswer<Object>()
+		{
+			public Object answer() throws Throwable
+			{
+				((PingListener)getCurrentArguments()[0]).onPing();
+				return null;
+			}
+		});
+		_clusterListener.onClusterChange("DISCONNECTED");
+		_clusterListener.onClusterChange("STANDBY");
+		_app.warm();
+		replay(_mocks);
+		
+		final Failover failover = _createFailover(_sameThread);
+		failover.addListener(_clusterListener);
+		failover.join(_app);
+		
+		verify(_mocks);
+	}
+	
+	@Test public void failingListener()
+	{
+		// Should still notify other listeners, and keep applying events
+		_clusterListener.onClusterChange("DISCONNECTED");
+		_clusterListener.onClusterChange("STANDBY");
+		_app.warm();
+		replay(_mocks);
+		
+		final Failover failover = _createFailover(_sameThread);
+		failover.addListener(new ClusterListener()
+		{
+			public void onClusterChange(String newState)
+			{
+				throw new IllegalStateException("Fake error");
+			}
+		});
+		failover.addListener(_clusterListener);
+		failover.join(_app);
+		_pingListener.getValue().onPing();
+		
+		verify(_mocks);
+	}
+	
+	@Test public void failingTransition()
+	{
+		// Should keep applying events after an error in a transition
+		_app.warm();
+		expectLastCall().andThrow(new AssertionError("Fake error"));
+		_heart.beat();
+		_clusterListener.onClusterChange("DISCONNECTED");
+		_clusterListener.onClusterChange("VOLUNTEER");
+		replay(_mocks);
+		
+		final Failover failover = _createFailover(_sameThread);
+		failover.addListener(_clusterListener);
+		failover.join(_app);
+		_pingListener.getValue().onPing();
+		_hbListener.getValue().onHeartbeatTimeout();
+		
+		verify(_mocks);
+	}
+	
+	@Test public void changeListener()
+	{
+		_app.warm();
+		expectLastCall().times(2);
+		_heart.beat();
+		_heart.stopBeating();
+		_ping.stop();
+		_heart.stop();
+		replay(_mocks);
+		
+		// Record every transition
+		final List<ClusterChange> changes = new ArrayList<ClusterChange>();
+		final Failover failover = _createFailover(_sameThread);
+		failover.addChangeListener(new ClusterChangeListener()
+		{
+			public void onClusterChange(ClusterChange change)
+			{
+				changes.add(change);
+			}
+		});
+		
+		// Repeated pings should not cause transitions
+		failover.join(_app);
+		_pingListener.getValue().onPing();
+		_pingListener.getValue().onPing();
+		_hbListener.getValue().onHeartbeatTimeout();
+		final Node superior = new Node("192.168.0.0", "SuperiorProcess");
+		_hbListener.getValue().onHeartbeat(new Heartbeat("FailoverTest", "TEST", superior));
+		_hbListener.getValue().onHeartbeat(new Heartbeat("FailoverTest", "TEST", superior));
+		failover.leave();
+		verify(_mocks);
+		
+		assertEquals(5, changes.size());
+		_assertChange(changes.get(0), null, "DISCONNECTED", ClusterChange.Cause.JOIN, null);
+		_assertChange(changes.get(1), "DISCONNECTED", "STANDBY", ClusterChange.Cause.PING, null);
+		_assertChange(changes.get(2), "STANDBY", "VOLUNTEER", ClusterChange.Cause.HEARTBEAT_TIMEOUT, null);
+		_assertChange(changes.get(3), "VOLUNTEER", "STANDBY", ClusterChange.Cause.HEARTBEAT, superior.toString());
+		_assertChange(changes.get(4), "STANDBY", null, ClusterChange.Cause.LEAVE, null);
+		assertTrue(changes.get(0).getTime() > 0);
+	}
+	
+	private static void _assertChange(
+		ClusterChange change,
+		String oldState,
+		String newState,
+		ClusterChange.Cause cause,
+		String peer)
+	{
+		assertEquals(oldState, change.getOldState());
+		assertEquals(newState, change.getNewState());
+		assertEquals(cause, change.getCause());
+		assertEquals(peer, change.getPeer());
+	}
 }
@@ -0,0 +1,198 @@
+package org.guicebox.failover;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.nio.*;
+import java.util.*;
+import org.junit.*;
+
+/**
+ * @author willhains
+ */
+public class HeartbeatCodecTest
+{
+	private final HeartbeatCodec _codec = new HeartbeatCodec();
+	private final ByteBuffer _buf = ByteBuffer.allocate(HeartbeatCodec.MAX_LENGTH);
+	private final Node _node = new Node("1.1.1.1", "CodecTestProcess");
+	private final Heartbeat _hb = new Heartbeat("HeartbeatCodecTest", "TEST", _node);
+	
+	@Test public void roundTrip() throws Exception
+	{
+		_codec.encode(_hb, _buf);
+		final Heartbeat decoded = _codec.decode(_buf);
+		assertEquals(_hb, decoded);
+		assertEquals(_hb.getSequenceNumber(), decoded.getSequenceNumber());
+		assertEquals(_hb.toString(), decoded.toString());
+	}
+	
+	@Test public void roundTripUnicode() throws Exception
+	{
+		final Heartbeat hb = new Heartbeat("\u30cf\u30fc\u30c8", "T\u00c9ST", new Node("::1", "\u00fc"));
+		_codec.encode(hb, _buf);
+		assertEquals(hb, _codec.decode(_buf));
+	}
+	
+	@Test public void reuseBuffer() throws Exception
+	{
+		final Heartbeat longer = new Heartbeat("HeartbeatCodecTest-Longer", "TEST", new Node("1.1.1.1", "Longer"));
+		_codec.encode(longer, _buf);
+		assertEquals(longer, _codec.decode(_buf));
+		_codec.encode(_hb, _buf);
+		assertEquals(_hb, _codec.decode(_buf));
+	}
+	
+	@Test public void roundTripPayload() throws Exception
+	{
+		final Map<String, String> payload = new LinkedHashMap<String, String>();
+		payload.put("load", "0.5");
+		payload.put("lastApplied", "12345");
+		final Heartbeat hb = new Heartbeat("HeartbeatCodecTest", "TEST", _node, 7L, payload);
+		_codec.encode(hb, _buf);
+		assertEquals(payload, _codec.decode(_buf).getPayload());
+	}
+	
+	@Test public void roundTripState() throws Exception
+	{
+		// Node state should be sent in the header
+		final Map<String, String> none = Collections.emptyMap();
+		_codec.encode(new Heartbeat("HeartbeatCodecTest", "TEST", _node, 7L, none, "STANDBY"), _buf);
+		final Heartbeat standby = _codec.decode(_buf);
+		assertEquals("STANDBY", standby.getState());
+		assertFalse(standby.isContending());
+		_codec.encode(new Heartbeat("HeartbeatCodecTest", "TEST", _node, 7L, none, "PRIMARY"), _buf);
+		assertTrue(_codec.decode(_buf).isContending());
+		
+		// Unknown state should be treated as contending, as older nodes only beat when contending
+		_codec.encode(_hb, _buf);
+		final Heartbeat unknown = _codec.decode(_buf);
+		assertNull(unknown.getState());
+		assertTrue(unknown.isContending());
+	}
+	
+	@Test public void payloadLimit() throws Exception
+	{
+		// Entries beyond the limit are left out, but the heartbeat is still sent
+		final StringBuilder large = new StringBuilder();
+		while(large.length() < HeartbeatCodec.MAX_PAYLOAD_LENGTH)
+		{
+			large.append("Large");
+		}
+		final Map<String, String> payload = new LinkedHashMap<String, String>();
+		payload.put("small", "1");
+		payload.put("large", large.toString());
+		payload.put("after", "2");
+		_codec.encode(new Heartbeat("HeartbeatCodecTest", "TEST", _node, 7L, payload), _buf);
+		final Map<String, String> decoded = _codec.decode(_buf).getPayload();
+		assertEquals(2, decoded.size());
+		assertEquals("1", decoded.get("small"));
+		assertEquals("2", decoded.get("after"));
+	}
+	
+	@Test public void compactFormat() throws Exception
+	{
+		_codec.encode(_hb, _buf);
+		final ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+		new ObjectOutputStream(serialized).writeObject(_hb);
+		assertTrue(_buf.remaining() < serialized.size() / 2);
+	}
+	
+	@Test(expected = IOException.class) public void tooLarge() throws Exception
+	{
+		final StringBuilder name = new StringBuilder();
+		while(name.length() <= HeartbeatCodec.MAX_LENGTH)
+		{
+			name.append("TooLarge");
+		}
+		_codec.encode(new Heartbeat(name.toString(), "TEST", _node), _buf);
+	}
+	
+	@Test public void rejectTruncated() throws Exception
+	{
+		_codec.encode(_hb, _buf);
+		_buf.limit(_buf.limit() - 1);
+		assertNull(_codec.decode(_buf));
+	}
+	
+	@Test public void rejectCorruptFieldLength() throws Exception
+	{
+		_codec.encode(_hb, _buf);
+		_buf.putShort(28, Short.MAX_VALUE);
+		assertNull(_codec.decode(_buf));
+	}
+	
+	@Test public void rejectGarbage() throws Exception
+	{
+		_buf.clear();
+		_buf.put("I am not a heartbeat".getBytes("UTF-8"));
+		_buf.flip();
+		assertNull(_codec.decode(_buf));
+	}
+	
+	@Test public void rejectSerialized() throws Exception
+	{
+		assertNull(_codec.decode(ByteBuffer.wrap(_serialize(_hb))));
+	}
+	
+	@Test public void legacySendsSerialized() throws Exception
+	{
+		_codec.setLegacy(true);
+		_codec.encode(_hb, _buf);
+		final byte[] bytes = new byte[_buf.remaining()];
+		_buf.get(bytes);
+		assertEquals(_hb, new ObjectInputStream(new ByteArrayInputStream(bytes)).readObject());
+	}
+	
+	@Test public void legacyAcceptsBoth() throws Exception
+	{
+		_codec.encode(_hb, _buf);
+		_codec.setLegacy(true);
+		assertEquals(_hb, _codec.decode(_buf));
+		assertEquals(_hb, _codec.decode(ByteBuffer.wrap(_serialize(_hb))));
+		assertNull(_codec.decode(ByteBuffer.wrap(_serialize("I am not a heartbeat"))));
+	}
+	
+	@Test public void rejectOwnByFingerprint() throws Exception
+	{
+		_codec.encode(_hb, _buf);
+		assertNull(_codec.decode(_buf, new Heartbeat("HeartbeatCodecTest", "TEST", _node)));
+	}
+	
+	@Test public void rejectForeignByFingerprint() throws Exception
+	{
+		_codec.encode(_hb, _buf);
+		assertNull(_codec.decode(_buf, new Heartbeat("OtherApp", "TEST", new Node("2.2.2.2", "Other"))));
+		assertNull(_codec.decode(_buf, new Heartbeat("HeartbeatCodecTest", "PROD", new Node("2.2.2.2", "Other"))));
+	}
+	
+	@Test public void acceptPeer() throws Exception
+	{
+		_codec.encode(_hb, _buf);
+		assertEquals(_hb.getClusterFingerprint(), _codec.peekClusterFingerprint(_buf));
+		final Heartbeat peer = new Heartbeat("HeartbeatCodecTest", "TEST", new Node("2.2.2.2", "Peer"));
+		assertEquals(_hb, _codec.decode(_buf, peer));
+	}
+	
+	@Test public void acceptVersion1() throws Exception
+	{
+		// Strip the fingerprints from the header
+		_codec.encode(_hb, _buf);
+		final ByteBuffer v1 = ByteBuffer.allocate(_buf.remaining() - 12);
+		v1.put(_buf.array(), 0, 16).put(_buf.array(), 28, _buf.remaining() - 28).flip();
+		v1.put(4, (byte)1).putShort(6, (short)v1.remaining());
+		
+		final Heartbeat peer = new Heartbeat("HeartbeatCodecTest", "TEST", new Node("2.2.2.2", "Peer"));
+		assertEquals(0, _codec.peekClusterFingerprint(v1));
+		assertEquals(_hb, _codec.decode(v1.duplicate()));
+		assertNull(_codec.decode(v1.duplicate(), new Heartbeat("HeartbeatCodecTest", "TEST", _node)));
+		assertNull(_codec.decode(v1.duplicate(), new Heartbeat("OtherApp", "TEST", new Node("2.2.2.2", "Other"))));
+		assertEquals(_hb, _codec.decode(v1.duplicate(), peer));
+	}
+	
+	private static byte[] _serialize(Object o) throws IOException
+	{
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		new ObjectOutputStream(bytes).writeObject(o);
+		return bytes.toByteArray();
+	}
+}
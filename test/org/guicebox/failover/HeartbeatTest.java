@@ -2,6 +2,7 @@ package org.guicebox.failover;
 
 import static org.junit.Assert.*;
 
+import com.google.inject.*;
 import java.util.*;
 import org.guicebox.*;
 import org.junit.*;
@@ -43,4 +44,40 @@ public class HeartbeatTest extends GeneralContractTest<Heartbeat>
 		assertFalse(hb1.equals(hb2));
 		assertFalse(hb1.toString().equals(hb2));
 	}
+	
+	@Test public void payload()
+	{
+		// No payload unless bound
+		final Heartbeat hb = new Heartbeat("APP1", "PROD", new Node("1.1.1.1", "1a"));
+		assertTrue(hb.getPayload().isEmpty());
+		
+		// Each heartbeat takes a snapshot of the bound payload
+		final Map<String, String> values = new HashMap<String, String>();
+		values.put("load", "0.75");
+		values.put("ignored", null);
+		final Injector injector = Guice.createInjector(new AbstractModule()
+		{
+			@Override protected void configure()
+			{
+				bindConstant().annotatedWith(ApplicationName.class).to("APP1");
+				bindConstant().annotatedWith(UserName.class).to("PROD");
+				bindConstant().annotatedWith(Localhost.class).to("1.1.1.1");
+				bindConstant().annotatedWith(ProcessId.class).to("1a");
+				bind(HeartbeatPayload.class).toInstance(new HeartbeatPayload()
+				{
+					public Map<String, String> getPayload()
+					{
+						return values;
+					}
+				});
+			}
+		});
+		final Heartbeat withPayload = injector.getInstance(Heartbeat.class);
+		values.put("load", "0.25");
+		assertEquals(Collections.singletonMap("load", "0.75"), withPayload.getPayload());
+		assertEquals("0.25", injector.getInstance(Heartbeat.class).getPayload().get("load"));
+		
+		// Payload is not part of the identity of a heartbeat
+		assertEquals(hb, withPayload);
+	}
 }
@@ -22,6 +22,9 @@ import org.junit.*;
 	private ScheduledExecutorService _pingThread;
 	private ScheduledFuture _pingTask;
 	
+	// Real threads for concurrent pings
+	private final ExecutorService _probeThreads = Executors.newCachedThreadPool();
+	
 	// Captures
 	private Capture<Long> _initial;
 	private Capture<Long> _period;
@@ -66,14 +69,14 @@ import org.junit.*;
 		return _createPing(Collections.singleton(_address1));
 	}
 	
-	private Ping _createMultiPing()
+	private JavaPing _createMultiPing()
 	{
 		return _createPing(new LinkedHashSet(Arrays.asList(_address1, _address2)));
 	}
 	
-	private Ping _createPing(final Set<InetAddress> wkaSet)
+	private JavaPing _createPing(final Set<InetAddress> wkaSet)
 	{
-		final JavaPing ping = new JavaPing(wkaSet, _pingThread, Logger.getAnonymousLogger());
+		final JavaPing ping = new JavaPing(wkaSet, _pingThread, _probeThreads, Logger.getAnonymousLogger());
 		ping.setPingInterval(_interval);
 		ping.setPingTolerance(_tolerance);
 		return ping;
@@ -154,56 +157,32 @@ import org.junit.*;
 		verify(_mocks);
 	}
 	
-	@Test public void temporarilyUnreachable() throws Exception
+	// Answers pings according to whether the address is up
+	private static final class _Reachability implements IAnswer<Boolean>
 	{
-		// Address1 available for a while
-		_address1.isReachable(_interval * _tolerance); // 1
-		expectLastCall().andReturn(true);
-		_listener.onPing();
-		_address1.isReachable(_interval * _tolerance); // 2
-		expectLastCall().andReturn(true);
-		_listener.onPing();
-		
-		// Address1 becomes unavailable
-		_address1.isReachable(_interval * _tolerance); // 3
-		expectLastCall().andReturn(false);
+		volatile boolean up = true;
 		
-		// Address2 is available for a while
-		_address2.isReachable(_interval * _tolerance); // 3
-		expectLastCall().andReturn(true);
-		_listener.onPing();
-		_address2.isReachable(_interval * _tolerance); // 4
-		expectLastCall().andReturn(true);
-		_listener.onPing();
-		
-		for(int i = 0; i < _tolerance; i++)
+		public Boolean answer() throws Throwable
 		{
-			// Address2 fails also
-			_address2.isReachable(_interval * _tolerance); // 5
-			expectLastCall().andReturn(false);
-			
-			// So Address1 is tried again, but both are down
-			_address1.isReachable(_interval * _tolerance); // 5
-			expectLastCall().andReturn(false);
+			return up;
 		}
+	}
+	
+	@Test public void temporarilyUnreachable() throws Exception
+	{
+		final _Reachability reachable1 = new _Reachability(), reachable2 = new _Reachability();
+		expect(_address1.isReachable(_interval * _tolerance)).andAnswer(reachable1).anyTimes();
+		expect(_address2.isReachable(_interval * _tolerance)).andAnswer(reachable2).anyTimes();
 		
-		// The tolerance threshold is crossed
-		_listener.onPingTimeout();
-		
-		// Address1 becomes available again
-		_address2.isReachable(_interval * _tolerance); // 6
-		expectLastCall().andReturn(false);
-		_address1.isReachable(_interval * _tolerance); // 6
-		expectLastCall().andReturn(true);
-		_listener.onPing();
-		_address1.isReachable(_interval * _tolerance); // 7
-		expectLastCall().andReturn(true);
+		// Connectivity is confirmed while either address is up
 		_listener.onPing();
+		expectLastCall().times(4);
+		
+		// The tolerance threshold is crossed once while both are down
+		_listener.onPingTimeout();
 		
 		// The ping is cancelled
 		expect(_pingTask.cancel(true)).andReturn(true);
-		
-		// The End.
 		replay(_mocks);
 		
 		// Start ping
@@ -212,16 +191,134 @@ import org.junit.*;
 		assertEquals(0, (long)_initial.getValue());
 		assertEquals(_interval, (long)_period.getValue());
 		
-		// JavaPing task
-		for(int i = 0; i < 7; i++)
-		{
-			_command.getValue().run();
-		}
+		// Both up, then Address1 down
+		_command.getValue().run();
+		reachable1.up = false;
+		_command.getValue().run();
+		
+		// Both down
+		reachable2.up = false;
+		_command.getValue().run();
+		
+		// Address1 up again, then Address2 up again
+		reachable1.up = true;
+		_command.getValue().run();
+		reachable1.up = false;
+		reachable2.up = true;
+		_command.getValue().run();
 		
 		// Stop pinging
 		ping.stopPinging();
+		verify(_mocks);
+	}
+	
+	@Test public void firstResponseWins() throws Exception
+	{
+		// Address1 takes a long time to fail, but Address2 responds immediately
+		expect(_address1.isReachable(_interval * _tolerance)).andAnswer(new IAnswer<Boolean>()
+		{
+			public Boolean answer() throws Throwable
+			{
+				Thread.sleep(5000);
+				return false;
+			}
+		}).anyTimes();
+		expect(_address2.isReachable(_interval * _tolerance)).andReturn(true);
+		_listener.onPing();
+		replay(_mocks);
 		
-		// The End.
+		// Should not wait for Address1
+		final JavaPing ping = _createMultiPing();
+		ping.start(_listener);
+		final long start = System.currentTimeMillis();
+		_command.getValue().run();
+		assertTrue(System.currentTimeMillis() - start < 2500);
+		assertTrue(ping.getLatencies().get("192.168.0.2") >= 0);
+		verify(_mocks);
+	}
+	
+	@Test public void staleProbe() throws Exception
+	{
+		// Address1 answers the first ping only after the second has finished, and wins the second
+		final CountDownLatch started = new CountDownLatch(1), release = new CountDownLatch(1);
+		expect(_address1.isReachable(_interval * _tolerance)).andAnswer(new IAnswer<Boolean>()
+		{
+			public Boolean answer() throws Throwable
+			{
+				started.countDown();
+				while(true)
+				{
+					try
+					{
+						release.await();
+						return false;
+					}
+					catch(InterruptedException e)
+					{
+						// Ignore cancellation, like a blocking network call
+					}
+				}
+			}
+		});
+		expect(_address1.isReachable(_interval * _tolerance)).andReturn(true).anyTimes();
+		expect(_address2.isReachable(_interval * _tolerance)).andAnswer(new IAnswer<Boolean>()
+		{
+			public Boolean answer() throws Throwable
+			{
+				return started.await(5, TimeUnit.SECONDS);
+			}
+		});
+		expect(_address2.isReachable(_interval * _tolerance)).andAnswer(new IAnswer<Boolean>()
+		{
+			public Boolean answer() throws Throwable
+			{
+				Thread.sleep(5000);
+				return true;
+			}
+		}).anyTimes();
+		_listener.onPing();
+		expectLastCall().times(2);
+		
+		// Let Address1 answer the second ping while it is still stuck on the first
+		makeThreadSafe(_address1, false);
+		replay(_mocks);
+		
+		final JavaPing ping = _createMultiPing();
+		ping.start(_listener);
+		_command.getValue().run();
+		_command.getValue().run();
+		
+		// The late response to the first ping should not overwrite the second
+		release.countDown();
+		_probeThreads.shutdown();
+		assertTrue(_probeThreads.awaitTermination(5, TimeUnit.SECONDS));
+		assertTrue(ping.getLatencies().get("192.168.0.1") >= 0);
+		verify(_mocks);
+	}
+	
+	@Test(expected = AssertionError.class) public void invalidQuorum()
+	{
+		_createMultiPing().setPingQuorum(3);
+	}
+	
+	@Test public void quorum() throws Exception
+	{
+		final _Reachability reachable1 = new _Reachability();
+		expect(_address1.isReachable(_interval * _tolerance)).andAnswer(reachable1).anyTimes();
+		expect(_address2.isReachable(_interval * _tolerance)).andReturn(true).anyTimes();
+		
+		// Both addresses must respond
+		_listener.onPing();
+		_listener.onPingTimeout();
+		replay(_mocks);
+		
+		final JavaPing ping = _createMultiPing();
+		ping.setPingQuorum(2);
+		ping.start(_listener);
+		_command.getValue().run();
+		reachable1.up = false;
+		_command.getValue().run();
+		assertEquals(Long.valueOf(-1L), ping.getLatencies().get("192.168.0.1"));
 		verify(_mocks);
 	}
 	
@@ -284,6 +381,11 @@ import org.junit.*;
 		}
 	}
 	
+	@After public void shutdownProbes()
+	{
+		_probeThreads.shutdownNow();
+	}
+	
 	@After public void clearInterrupt()
 	{
 		// Clear thread interrupt flag to avoid impact on other tests
@@ -0,0 +1,37 @@
+package org.guicebox.failover;
+
+import static org.junit.Assert.*;
+
+import com.google.inject.*;
+import org.guicebox.*;
+import org.junit.*;
+
+/**
+ * @author willhains
+ */
+public class MembershipModuleTest
+{
+	private final Module _constants = new AbstractModule()
+	{
+		@Override protected void configure()
+		{
+			bindConstant().annotatedWith(ApplicationName.class).to("MembershipModuleTest");
+			bindConstant().annotatedWith(UserName.class).to("TEST");
+			bindConstant().annotatedWith(HeartbeatInterval.class).to(1000);
+		}
+	};
+	
+	@Test(expected = ConfigurationException.class) public void optIn()
+	{
+		// Should not be bound just in time, so optional injection skips it
+		Guice.createInjector(_constants).getInstance(Membership.class);
+	}
+	
+	@Test public void singleton()
+	{
+		final Injector injector = Guice.createInjector(_constants, new MembershipModule());
+		final Membership membership = injector.getInstance(Membership.class);
+		assertSame(membership, injector.getInstance(Membership.class));
+		assertEquals("MembershipModuleTest (TEST)", membership.toString());
+	}
+}
@@ -0,0 +1,100 @@
+package org.guicebox.failover;
+
+import static java.util.concurrent.TimeUnit.*;
+import static java.util.logging.Logger.*;
+import static org.junit.Assert.*;
+
+import java.util.*;
+import org.junit.*;
+
+/**
+ * @author willhains
+ */
+public class MembershipTest
+{
+	private static final long _INTERVAL = MILLISECONDS.toNanos(10);
+	
+	private final Membership _membership = new Membership("MembershipTest", "TEST", getAnonymousLogger());
+	private final Node _primary = new Node("192.168.0.1", "PrimaryProcess");
+	private final Node _standby = new Node("192.168.0.2", "StandbyProcess");
+	
+	@Before public void configure()
+	{
+		_membership.setHeartbeatInterval(10);
+		_membership.setHeartbeatTolerance(3);
+	}
+	
+	private static Heartbeat _heartbeat(Node node, String state)
+	{
+		return new Heartbeat("MembershipTest", "TEST", node, 1L, Collections.<String, String> emptyMap(), state);
+	}
+	
+	private List<Node> _nodes(long nanos)
+	{
+		final List<Node> nodes = new ArrayList<Node>();
+		for(Member member : _membership.getMembers(nanos))
+		{
+			nodes.add(member.getNode());
+		}
+		return nodes;
+	}
+	
+	@Test public void members()
+	{
+		// Should list every peer with its latest state, in node order
+		_membership.onHeartbeat(_heartbeat(_standby, "STANDBY"), 0);
+		_membership.onHeartbeat(_heartbeat(_primary, "VOLUNTEER"), 0);
+		_membership.onHeartbeat(_heartbeat(_primary, "PRIMARY"), _INTERVAL);
+		assertEquals(Arrays.asList(_primary, _standby), _nodes(_INTERVAL));
+		assertEquals("PRIMARY", _membership.getMembers(_INTERVAL).get(0).getState());
+		assertEquals("STANDBY", _membership.getMembers(_INTERVAL).get(1).getState());
+	}
+	
+	@Test public void expiry()
+	{
+		_membership.onHeartbeat(_heartbeat(_primary, "PRIMARY"), 0);
+		_membership.onHeartbeat(_heartbeat(_standby, "STANDBY"), 0);
+		
+		// Peers that keep beating should stay in the view
+		for(long tick = 1; tick <= 10; tick++)
+		{
+			_membership.onHeartbeat(_heartbeat(_primary, "PRIMARY"), tick * _INTERVAL + 1);
+			if(tick < 3) assertEquals(Arrays.asList(_primary, _standby), _nodes(tick * _INTERVAL + 2));
+		}
+		
+		// Peers should expire after missing the tolerated number of heartbeats
+		assertEquals(Arrays.asList(_primary), _nodes(10 * _INTERVAL + 2));
+		
+		// A long silence should expire everyone
+		assertTrue(_nodes(1000 * _INTERVAL).isEmpty());
+		
+		// A peer that comes back should be listed again
+		_membership.onHeartbeat(_heartbeat(_standby, "STANDBY"), 1001 * _INTERVAL);
+		assertEquals(Arrays.asList(_standby), _nodes(1001 * _INTERVAL));
+	}
+	
+	@Test public void splitBrain()
+	{
+		// One primary is healthy
+		_membership.setLocalState("STANDBY");
+		_membership.onHeartbeat(_heartbeat(_primary, "PRIMARY"), 0);
+		assertEquals(1, _membership.getPrimaryCount(0));
+		
+		// Another primary, including this node, is split brain
+		_membership.setLocalState("PRIMARY");
+		assertEquals(2, _membership.getPrimaryCount(0));
+	}
+	
+	@Test public void heartbeatState()
+	{
+		// Heartbeats should carry the state of this node
+		_membership.setLocalState("VOLUNTEER");
+		final Heartbeat hb = new Heartbeat("MembershipTest", "TEST", _primary);
+		hb.setMembership(_membership);
+		assertEquals("VOLUNTEER", hb.getState());
+		assertTrue(hb.isContending());
+		_membership.setLocalState("STANDBY");
+		hb.setMembership(_membership);
+		assertFalse(hb.isContending());
+	}
+}
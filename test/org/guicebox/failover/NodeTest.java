@@ -93,4 +93,27 @@ public class NodeTest extends ComparableTest<Node>
 		assertFalse(lesser.isSuperiorTo(equiv));
 		assertFalse(equiv.isSuperiorTo(greater));
 	}
+	
+	@Test public void superiority()
+	{
+		final Node node = imp();
+		final Heartbeat greater = new Heartbeat("APP", "TEST", createGreater(node));
+		final Heartbeat lesser = new Heartbeat("APP", "TEST", createLesser(node));
+		
+		// The policy overrides the default ordering, and falls back to it when undecided
+		final int[] decision = { -1 };
+		node.setSuperiority(new Superiority()
+		{
+			public int compare(Node thisNode, Heartbeat peer)
+			{
+				return decision[0];
+			}
+		});
+		assertFalse(node.isSuperiorTo(greater));
+		decision[0] = 1;
+		assertTrue(node.isSuperiorTo(lesser));
+		decision[0] = 0;
+		assertTrue(node.isSuperiorTo(greater));
+		assertFalse(node.isSuperiorTo(lesser));
+	}
 }
@@ -2,6 +2,7 @@ package org.guicebox.failover;
 
 import static java.util.concurrent.TimeUnit.*;
 import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
 
 import com.google.inject.*;
 import java.util.*;
@@ -69,10 +70,10 @@ import org.junit.*;
 	@Test public void listen() throws Exception
 	{
 		// Should schedule a listen command
-		final ScheduledFuture lstnTask = createMock(ScheduledFuture.class);
+		final ScheduledFuture<?> lstnTask = createMock(ScheduledFuture.class);
 		final Capture<Runnable> command = new Capture<Runnable>();
-		expect(_listenThread.scheduleWithFixedDelay(capture(command), eq(0L), eq(1L), eq(MILLISECONDS))) //
-			.andReturn(lstnTask);
+		_listenThread.scheduleWithFixedDelay(capture(command), eq(0L), eq(1L), eq(MILLISECONDS));
+		expectLastCall().andReturn(lstnTask);
 		
 		// Should try to receive heartbeats - succeed 2 times, timeout 10 times, fail 8 times
 		_transport.receive(_ownHeartbeat, _interval);
@@ -113,13 +114,198 @@ import org.junit.*;
 		verify(lstnTask);
 	}
 	
+	@Test public void listenWithFailureDetector() throws Exception
+	{
+		final FailureDetector detector = createMock(FailureDetector.class);
+		final ScheduledFuture<?> lstnTask = createMock(ScheduledFuture.class);
+		final Capture<Runnable> command = new Capture<Runnable>();
+		_listenThread.scheduleWithFixedDelay(capture(command), eq(0L), eq(1L), eq(MILLISECONDS));
+		expectLastCall().andReturn(lstnTask);
+		
+		// Should tell the detector about received heartbeats
+		_transport.receive(_ownHeartbeat, _interval);
+		expectLastCall().andReturn(_peerHeartbeat);
+		detector.onHeartbeat(eq(_peer), anyLong());
+		_listener.onHeartbeat(_peerHeartbeat);
+		
+		// Should fire a timeout as soon as the detector suspects the peer, regardless of tolerance
+		_transport.receive(_ownHeartbeat, _interval);
+		expectLastCall().andThrow(new TimeoutException()).times(2);
+		expect(detector.getTimeout()).andReturn(Long.MAX_VALUE);
+		expect(detector.getTimeout()).andReturn(0L);
+		_listener.onHeartbeatTimeout();
+		replay(_mocks);
+		replay(detector, lstnTask);
+		
+		// Listen for heartbeats
+		final NonBlockingHeart heart = new NonBlockingHeart(_pulse, _transport, _listenThread, _beatThread, Logger
+			.getAnonymousLogger());
+		heart.setHeartbeatInterval(_interval);
+		heart.setHeartbeatTolerance(_tolerance);
+		heart.setFailureDetector(detector);
+		heart.listen(_listener);
+		command.getValue().run();
+		command.getValue().run();
+		verify(_mocks);
+		verify(detector, lstnTask);
+	}
+	
+	@Test public void listenForPushes() throws Exception
+	{
+		final PushTransport transport = createMock(PushTransport.class);
+		final long window = MILLISECONDS.toNanos(_interval * _tolerance);
+		
+		// Should submit a receive command and schedule a deadline command for interval x tolerance
+		final ScheduledFuture<?> rcvTask = createMock(ScheduledFuture.class);
+		final ScheduledFuture<?> dlTask = createMock(ScheduledFuture.class);
+		final Capture<Runnable> receive = new Capture<Runnable>();
+		final Capture<Runnable> deadline = new Capture<Runnable>();
+		_listenThread.submit(capture(receive));
+		expectLastCall().andReturn(rcvTask);
+		_listenThread.schedule(capture(deadline), eq(window), eq(NANOSECONDS));
+		expectLastCall().andReturn(dlTask);
+		
+		// Transport should push 2 heartbeats, then fail
+		final Capture<HeartbeatListener> pushed = new Capture<HeartbeatListener>();
+		transport.receive(eq(_ownHeartbeat), capture(pushed));
+		expectLastCall().andAnswer(new IAnswer<Object>()
+		{
+			public Object answer() throws Throwable
+			{
+				pushed.getValue().onHeartbeat(_peerHeartbeat);
+				pushed.getValue().onHeartbeat(_peerHeartbeat);
+				throw new TransportException("Fake error");
+			}
+		});
+		_listener.onHeartbeat(_peerHeartbeat);
+		expectLastCall().times(2);
+		
+		// Should retry receiving after an interval
+		_listenThread.schedule(isA(Runnable.class), eq((long)_interval), eq(MILLISECONDS));
+		expectLastCall().andReturn(rcvTask);
+		
+		// Deadline not yet reached, so should wait for the remainder of the window
+		final Capture<Long> delay = new Capture<Long>();
+		_listenThread.schedule(isA(Runnable.class), capture(delay), eq(NANOSECONDS));
+		expectLastCall().andReturn(dlTask);
+		
+		// Deadline reached, so should fire a timeout and wait for a whole window
+		_listener.onHeartbeatTimeout();
+		_listenThread.schedule(isA(Runnable.class), eq(window), eq(NANOSECONDS));
+		expectLastCall().andReturn(dlTask);
+		
+		// Should cancel both commands
+		expect(rcvTask.cancel(true)).andReturn(true);
+		expect(dlTask.cancel(false)).andReturn(true);
+		replay(_mocks);
+		replay(transport, rcvTask, dlTask);
+		
+		// Listen for heartbeats
+		final NonBlockingHeart heart = new NonBlockingHeart(_pulse, transport, _listenThread, _beatThread, Logger
+			.getAnonymousLogger());
+		heart.setHeartbeatInterval(_interval);
+		heart.setHeartbeatTolerance(_tolerance);
+		heart.listen(_listener);
+		
+		// Receive 2 heartbeats, then check the deadline before and after it expires
+		receive.getValue().run();
+		deadline.getValue().run();
+		assertTrue(delay.getValue() > 0 && delay.getValue() <= window);
+		Thread.sleep(_interval * _tolerance + 1);
+		deadline.getValue().run();
+		
+		// Stop listening
+		heart.stopListening();
+		verify(_mocks);
+		verify(transport, rcvTask, dlTask);
+	}
+	
+	@Test public void pushTransportBug() throws Exception
+	{
+		final PushTransport transport = createMock(PushTransport.class);
+		final long window = MILLISECONDS.toNanos(_interval * _tolerance);
+		final ScheduledFuture<?> rcvTask = createMock(ScheduledFuture.class);
+		final ScheduledFuture<?> dlTask = createMock(ScheduledFuture.class);
+		final Capture<Runnable> receive = new Capture<Runnable>();
+		final Capture<Runnable> deadline = new Capture<Runnable>();
+		_listenThread.submit(capture(receive));
+		expectLastCall().andReturn(rcvTask);
+		_listenThread.schedule(capture(deadline), eq(window), eq(NANOSECONDS));
+		expectLastCall().andReturn(dlTask);
+		
+		// Should retry receiving after an unexpected error in the transport
+		transport.receive(eq(_ownHeartbeat), isA(HeartbeatListener.class));
+		expectLastCall().andThrow(new IllegalStateException("Fake bug"));
+		_listenThread.schedule(isA(Runnable.class), eq((long)_interval), eq(MILLISECONDS));
+		expectLastCall().andReturn(rcvTask);
+		
+		// Should not fire a timeout or reschedule the deadline once stopped
+		expect(rcvTask.cancel(true)).andReturn(true);
+		expect(dlTask.cancel(false)).andReturn(true);
+		replay(_mocks);
+		replay(transport, rcvTask, dlTask);
+		
+		final NonBlockingHeart heart = new NonBlockingHeart(_pulse, transport, _listenThread, _beatThread, Logger
+			.getAnonymousLogger());
+		heart.setHeartbeatInterval(_interval);
+		heart.setHeartbeatTolerance(_tolerance);
+		heart.listen(_listener);
+		receive.getValue().run();
+		heart.stopListening();
+		Thread.sleep(_interval * _tolerance + 1);
+		deadline.getValue().run();
+		verify(_mocks);
+		verify(transport, rcvTask, dlTask);
+	}
+	
+	@Test public void listenShared() throws Exception
+	{
+		final SharedTransport transport = createMock(SharedTransport.class);
+		final long window = MILLISECONDS.toNanos(_interval * _tolerance);
+		
+		// Should run on the transport's scheduler, submitting a subscribe command and scheduling a deadline command
+		expect(transport.getScheduler()).andReturn(_listenThread).times(2);
+		final ScheduledFuture<?> rcvTask = createMock(ScheduledFuture.class);
+		final ScheduledFuture<?> dlTask = createMock(ScheduledFuture.class);
+		final Capture<Runnable> receive = new Capture<Runnable>();
+		_listenThread.submit(capture(receive));
+		expectLastCall().andReturn(rcvTask);
+		_listenThread.schedule(isA(Runnable.class), eq(window), eq(NANOSECONDS));
+		expectLastCall().andReturn(dlTask);
+		
+		// Transport should push a heartbeat to the subscribed listener
+		final Capture<HeartbeatListener> pushed = new Capture<HeartbeatListener>();
+		transport.subscribe(eq(_ownHeartbeat), capture(pushed));
+		_listener.onHeartbeat(_peerHeartbeat);
+		
+		// Should unsubscribe and cancel both commands, without shutting down the shared scheduler
+		expect(rcvTask.cancel(true)).andReturn(true);
+		expect(dlTask.cancel(false)).andReturn(true);
+		transport.unsubscribe(isA(HeartbeatListener.class));
+		replay(_mocks);
+		replay(transport, rcvTask, dlTask);
+		
+		// Listen for heartbeats
+		final NonBlockingHeart heart = new NonBlockingHeart(_pulse, transport, Logger.getAnonymousLogger());
+		heart.setHeartbeatInterval(_interval);
+		heart.setHeartbeatTolerance(_tolerance);
+		heart.listen(_listener);
+		receive.getValue().run();
+		pushed.getValue().onHeartbeat(_peerHeartbeat);
+		
+		// Stop the heart
+		heart.stop();
+		verify(_mocks);
+		verify(transport, rcvTask, dlTask);
+	}
+	
 	@Test public void beat() throws Exception
 	{
 		// Should schedule a beat _command
-		final ScheduledFuture beatTask = createMock(ScheduledFuture.class);
+		final ScheduledFuture<?> beatTask = createMock(ScheduledFuture.class);
 		final Capture<Runnable> command = new Capture<Runnable>();
-		expect(_beatThread.scheduleAtFixedRate(capture(command), eq(0L), eq((long)_interval), eq(MILLISECONDS)))
-			.andReturn(beatTask);
+		_beatThread.scheduleAtFixedRate(capture(command), eq(0L), eq((long)_interval), eq(MILLISECONDS));
+		expectLastCall().andReturn(beatTask);
 		
 		// Should try to send heartbeats - succeed 2 times, fail 3 times
 		_transport.send(_ownHeartbeat);
@@ -142,17 +328,53 @@ import org.junit.*;
 		verify(beatTask);
 	}
 	
+	@Test public void beatShared() throws Exception
+	{
+		// Should beat on the transport's scheduler
+		final SharedTransport transport = createMock(SharedTransport.class);
+		expect(transport.getScheduler()).andReturn(_beatThread).times(2);
+		final ScheduledFuture<?> beatTask = createMock(ScheduledFuture.class);
+		final Capture<Runnable> command = new Capture<Runnable>();
+		_beatThread.scheduleAtFixedRate(capture(command), eq(0L), eq(60000L), eq(MILLISECONDS));
+		expectLastCall().andReturn(beatTask);
+		
+		// Failures should be retried on the next beat, without waiting on the shared scheduler
+		transport.send(_ownHeartbeat);
+		expectLastCall().andThrow(new TransportException("Fake error"));
+		transport.send(_ownHeartbeat);
+		transport.send(_ownHeartbeat);
+		expectLastCall().andThrow(new TransportException("Fake error")).times(3);
+		
+		// Should cancel the beat command after missing the tolerated number of consecutive beats
+		expect(beatTask.cancel(true)).andReturn(true);
+		replay(_mocks);
+		replay(transport, beatTask);
+		
+		final NonBlockingHeart heart = new NonBlockingHeart(_pulse, transport, Logger.getAnonymousLogger());
+		heart.setHeartbeatInterval(60000);
+		heart.setHeartbeatTolerance(_tolerance);
+		heart.beat();
+		final long start = System.nanoTime();
+		for(int i = 0; i < 5; i++)
+		{
+			command.getValue().run();
+		}
+		assertTrue(NANOSECONDS.toMillis(System.nanoTime() - start) < 10000);
+		verify(_mocks);
+		verify(transport, beatTask);
+	}
+	
 	@Test public void stop() throws Exception
 	{
 		// Should schedule beat & listen commands 
-		final ScheduledFuture beatTask = createMock(ScheduledFuture.class);
-		final ScheduledFuture lstnTask = createMock(ScheduledFuture.class);
+		final ScheduledFuture<?> beatTask = createMock(ScheduledFuture.class);
+		final ScheduledFuture<?> lstnTask = createMock(ScheduledFuture.class);
 		final Capture<Runnable> beatCommand = new Capture<Runnable>();
 		final Capture<Runnable> lstnCommand = new Capture<Runnable>();
-		expect(_beatThread.scheduleAtFixedRate(capture(beatCommand), eq(0L), eq((long)_interval), eq(MILLISECONDS))) //
-			.andReturn(beatTask);
-		expect(_listenThread.scheduleWithFixedDelay(capture(lstnCommand), eq(0L), eq(1L), eq(MILLISECONDS))) //
-			.andReturn(lstnTask);
+		_beatThread.scheduleAtFixedRate(capture(beatCommand), eq(0L), eq((long)_interval), eq(MILLISECONDS));
+		expectLastCall().andReturn(beatTask);
+		_listenThread.scheduleWithFixedDelay(capture(lstnCommand), eq(0L), eq(1L), eq(MILLISECONDS));
+		expectLastCall().andReturn(lstnTask);
 		
 		// Should shut down the schedulers and cancel the beat & listen commands
 		expect(_beatThread.shutdownNow()).andAnswer(new _ShutdownAnswer());
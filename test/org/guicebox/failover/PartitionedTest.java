@@ -0,0 +1,401 @@
+package org.guicebox.failover;
+
+import static java.util.concurrent.TimeUnit.*;
+import static java.util.logging.Logger.*;
+import static org.easymock.EasyMock.*;
+
+import static org.junit.Assert.*;
+
+import com.google.inject.*;
+import java.util.*;
+import java.util.concurrent.*;
+import org.easymock.*;
+import org.guicebox.*;
+import org.junit.*;
+
+/**
+ * @author willhains
+ */
+public class PartitionedTest
+{
+	private static final int _PARTITIONS = 16, _TOLERANCE = 3;
+	
+	// Members of the simulated cluster
+	private final List<Member> _network = new ArrayList<Member>();
+	
+	// One node of the cluster, running its cluster thread on the calling thread
+	private final class Member implements Heart, PartitionListener
+	{
+		final Node node;
+		final Partitioned cluster;
+		final List<String> events = new ArrayList<String>();
+		final Set<Integer> owned = new TreeSet<Integer>();
+		PingListener pingListener;
+		HeartbeatListener hbListener;
+		Runnable sweep;
+		boolean beating;
+		
+		// Records when the application is started & stopped
+		final Application app = new Application()
+		{
+			public void start()
+			{
+				events.add("start");
+			}
+			
+			public void stop()
+			{
+				events.add("stop");
+			}
+			
+			public void warm()
+			{
+				events.add("warm");
+			}
+			
+			public void cool()
+			{
+				events.add("cool");
+			}
+		};
+		
+		@SuppressWarnings("unchecked") Member(String address)
+		{
+			node = new Node(address, "PartitionedTest");
+			
+			// Ping checks are triggered by the test
+			final Ping ping = createNiceMock(Ping.class);
+			ping.start((PingListener)anyObject());
+			expectLastCall().andAnswer(new IAnswer<Object>()
+			{
+				public Object answer()
+				{
+					pingListener = (PingListener)getCurrentArguments()[0];
+					return null;
+				}
+			});
+			
+			// Commands run immediately, and sweeps are triggered by the test
+			final ScheduledExecutorService thread = createNiceMock(ScheduledExecutorService.class);
+			thread.execute((Runnable)anyObject());
+			expectLastCall().andAnswer(new IAnswer<Object>()
+			{
+				public Object answer()
+				{
+					((Runnable)getCurrentArguments()[0]).run();
+					return null;
+				}
+			}).anyTimes();
+			thread.scheduleWithFixedDelay((Runnable)anyObject(), anyLong(), anyLong(), eq(MILLISECONDS));
+			expectLastCall().andAnswer(new IAnswer<Object>()
+			{
+				public Object answer()
+					{
+					sweep = (Runnable)getCurrentArguments()[0];
+					return createNiceMock(ScheduledFuture.class);
+				}
+			});
+			replay(ping, thread);
+			
+			cluster = new Partitioned("PartitionedTest", "TEST", node, new Provider<Heart>()
+			{
+				public Heart get()
+				{
+					return Member.this;
+				}
+			}, new Provider<Ping>()
+			{
+				public Ping get()
+				{
+					return ping;
+				}
+			}, thread, getAnonymousLogger());
+			cluster.setPartitionCount(_PARTITIONS);
+			cluster.setHeartbeatTolerance(_TOLERANCE);
+			cluster.setPartitionListener(this);
+			_network.add(this);
+		}
+		
+		Member connect()
+		{
+			cluster.join(app);
+			pingListener.onPing();
+			return this;
+		}
+		
+		public void listen(HeartbeatListener heartbeatListener)
+		{
+			hbListener = heartbeatListener;
+		}
+		
+		public void beat()
+		{
+			beating = true;
+		}
+		
+		public void stopListening()
+		{
+			hbListener = null;
+		}
+		
+		public void stopBeating()
+		{
+			beating = false;
+		}
+		
+		public void stop()
+		{
+			stopBeating();
+			stopListening();
+		}
+		
+		public void onPartitionAssigned(int partition)
+		{
+			assertTrue(owned.add(partition));
+			events.add("+" + partition);
+		}
+		
+		public void onPartitionRevoked(int partition)
+		{
+			assertTrue(owned.remove(partition));
+			events.add("-" + partition);
+		}
+	}
+	
+	// Delivers one heartbeat from every beating member to every other listening member
+	private void _beat()
+	{
+		for(Member from : _network)
+		{
+			if(!from.beating) continue;
+			final Heartbeat hb = new Heartbeat("PartitionedTest", "TEST", from.node, 0);
+			for(Member to : _network)
+			{
+				if(to != from && to.hbListener != null) to.hbListener.onHeartbeat(hb);
+			}
+		}
+	}
+	
+	// Advances time by one heartbeat interval
+	private void _tick()
+	{
+		_beat();
+		for(Member member : _network)
+		{
+			if(member.sweep != null) member.sweep.run();
+		}
+	}
+	
+	// Checks that every partition is owned by exactly one member
+	private void _assertOwnedOnce()
+	{
+		final int[] owners = new int[_PARTITIONS];
+		for(Member member : _network)
+		{
+			assertEquals(member.owned, member.cluster.getPartitions());
+			for(int partition : member.owned) owners[partition]++;
+		}
+		for(int partition = 0; partition < _PARTITIONS; partition++)
+		{
+			assertEquals("Owners of partition " + partition, 1, owners[partition]);
+		}
+	}
+	
+	@Test public void singleNode()
+	{
+		// A node alone in the cluster should own every partition
+		final Member a = new Member("192.168.0.1").connect();
+		assertEquals(_PARTITIONS, a.owned.size());
+		assertEquals("start", a.events.get(0));
+		_assertOwnedOnce();
+	}
+	
+	@Test public void notConnected()
+	{
+		// Should not own any partitions until network connectivity is confirmed
+		final Member a = new Member("192.168.0.1");
+		a.cluster.join(a.app);
+		assertTrue(a.cluster.getPartitions().isEmpty());
+		assertFalse(a.beating);
+		assertTrue(a.events.isEmpty());
+	}
+	
+	@Test public void spread()
+	{
+		// Partitions should be spread across all members, each owned exactly once
+		final Member a = new Member("192.168.0.1").connect();
+		final Member b = new Member("192.168.0.2").connect();
+		final Member c = new Member("192.168.0.3").connect();
+		_beat();
+		_assertOwnedOnce();
+		for(Member member : _network)
+		{
+			assertFalse(member.owned.isEmpty());
+			assertEquals(1, Collections.frequency(member.events, "start"));
+		}
+		
+		// Every member should agree on the assignment
+		assertEquals(Partitioned.score(a.node, 0) > Partitioned.score(b.node, 0)
+			&& Partitioned.score(a.node, 0) > Partitioned.score(c.node, 0), a.owned.contains(0));
+	}
+	
+	@Test public void memberJoins()
+	{
+		final Member a = new Member("192.168.0.1").connect();
+		final Member b = new Member("192.168.0.2").connect();
+		_beat();
+		final Set<Integer> ownedA = new TreeSet<Integer>(a.owned), ownedB = new TreeSet<Integer>(b.owned);
+		a.events.clear();
+		b.events.clear();
+		
+		// Existing members should only give up partitions to the new member
+		final Member c = new Member("192.168.0.3").connect();
+		_beat();
+		_assertOwnedOnce();
+		assertTrue(ownedA.containsAll(a.owned));
+		assertTrue(ownedB.containsAll(b.owned));
+		for(String event : a.events) assertTrue(event.startsWith("-"));
+		for(String event : b.events) assertTrue(event.startsWith("-"));
+		assertEquals(c.owned.size(), ownedA.size() - a.owned.size() + ownedB.size() - b.owned.size());
+	}
+	
+	@Test public void memberLeaves()
+	{
+		final Member a = new Member("192.168.0.1").connect();
+		final Member b = new Member("192.168.0.2").connect();
+		final Member c = new Member("192.168.0.3").connect();
+		_beat();
+		final Set<Integer> ownedA = new TreeSet<Integer>(a.owned);
+		a.events.clear();
+		
+		// The remaining members should take over the partitions of a member that leaves
+		c.cluster.leave();
+		c.cluster.leave();
+		assertTrue(c.owned.isEmpty());
+		assertEquals("stop", c.events.get(c.events.size() - 1));
+		for(int i = 0; i < _TOLERANCE; i++)
+		{
+			_tick();
+			assertEquals(ownedA, a.owned);
+		}
+		_tick();
+		_network.remove(c);
+		_assertOwnedOnce();
+		
+		// Existing members should only gain partitions
+		assertTrue(a.owned.containsAll(ownedA));
+		for(String event : a.events) assertTrue(event.startsWith("+"));
+		assertEquals(_PARTITIONS, a.owned.size() + b.owned.size());
+	}
+	
+	@Test public void memberListener()
+	{
+		final Member a = new Member("192.168.0.1").connect();
+		final List<String> members = new ArrayList<String>();
+		final List<ClusterChange> changes = new ArrayList<ClusterChange>();
+		a.cluster.addMemberListener(new MemberListener()
+		{
+			public void onMemberJoined(Node member)
+			{
+				members.add("+" + member);
+			}
+			
+			public void onMemberLeft(Node member)
+			{
+				members.add("-" + member);
+			}
+		});
+		a.cluster.addChangeListener(new ClusterChangeListener()
+		{
+			public void onClusterChange(ClusterChange change)
+			{
+				changes.add(change);
+			}
+		});
+		
+		// Members should be reported as they join and leave, without any change of state
+		final Member b = new Member("192.168.0.2").connect();
+		_beat();
+		b.cluster.leave();
+		for(int i = 0; i <= _TOLERANCE; i++)
+		{
+			_tick();
+		}
+		assertEquals(Arrays.asList("+" + b.node, "-" + b.node), members);
+		assertTrue(changes.isEmpty());
+	}
+	
+	@Test public void pingTimeout()
+	{
+		final Member a = new Member("192.168.0.1").connect();
+		final Member b = new Member("192.168.0.2").connect();
+		_beat();
+		
+		// Should give up all partitions, and stop beating, until connectivity returns
+		a.pingListener.onPingTimeout();
+		assertFalse(a.beating);
+		assertTrue(a.owned.isEmpty());
+		assertEquals("stop", a.events.get(a.events.size() - 1));
+		
+		// Revoking partitions should come before stopping the application
+		assertTrue(a.events.get(a.events.size() - 2).startsWith("-"));
+		
+		// Other member should take over once heartbeats time out
+		for(int i = 0; i <= _TOLERANCE; i++) _tick();
+		assertEquals(1, Collections.frequency(b.events, "start"));
+		assertEquals(_PARTITIONS, b.owned.size());
+		
+		// Reconnecting should rebalance again
+		a.pingListener.onPing();
+		_beat();
+		_assertOwnedOnce();
+		assertEquals(2, Collections.frequency(a.events, "start"));
+	}
+	
+	@Test public void failingPartitionListener()
+	{
+		// A listener that fails on every partition should not stop the rest being assigned
+		final Member a = new Member("192.168.0.1");
+		a.cluster.setPartitionListener(new PartitionListener()
+		{
+			public void onPartitionAssigned(int partition)
+			{
+				a.events.add("+" + partition);
+				throw new IllegalStateException("Can't take partition " + partition);
+			}
+			
+			public void onPartitionRevoked(int partition)
+			{
+				a.events.add("-" + partition);
+				throw new IllegalStateException("Can't give up partition " + partition);
+			}
+		});
+		a.connect();
+		assertEquals(_PARTITIONS, a.cluster.getPartitions().size());
+		assertEquals("start", a.events.get(0));
+		assertEquals(_PARTITIONS + 1, a.events.size());
+		
+		// Nor the rest being revoked
+		a.pingListener.onPingTimeout();
+		assertTrue(a.cluster.getPartitions().isEmpty());
+		assertEquals("stop", a.events.get(a.events.size() - 1));
+		assertEquals(2 * _PARTITIONS + 2, a.events.size());
+	}
+	
+	@Test public void clusterListener()
+	{
+		final Member a = new Member("192.168.0.1");
+		final List<String> states = new ArrayList<String>();
+		a.cluster.addListener(new ClusterListener()
+		{
+			public void onClusterChange(String newState)
+			{
+				states.add(newState);
+			}
+		});
+		a.connect();
+		a.pingListener.onPingTimeout();
+		a.cluster.leave();
+		assertEquals(Arrays.asList("DISCONNECTED", "CONNECTED", "DISCONNECTED", null), states);
+	}
+}
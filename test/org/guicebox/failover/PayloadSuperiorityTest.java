@@ -0,0 +1,113 @@
+package org.guicebox.failover;
+
+import static org.guicebox.failover.PayloadSuperiority.*;
+import static org.junit.Assert.*;
+
+import java.util.*;
+import org.junit.*;
+
+/**
+ * @author willhains
+ */
+public class PayloadSuperiorityTest
+{
+	private final Map<String, String> _mine = new HashMap<String, String>(), _theirs = new HashMap<String, String>();
+	private final Node _node = new Node("1.1.1.1", "Mine");
+	private final Superiority _superiority = new PayloadSuperiority(new HeartbeatPayload()
+	{
+		public Map<String, String> getPayload()
+		{
+			return _mine;
+		}
+	});
+	
+	private int _compare()
+	{
+		return _superiority.compare(_node, new Heartbeat("APP", "TEST", new Node("1.1.1.2", "Theirs"), 1L, _theirs));
+	}
+	
+	@Test public void undecided()
+	{
+		assertEquals(0, _compare());
+		_mine.put(LOAD, "0.5");
+		assertEquals(0, _compare());
+		_theirs.put(LOAD, "not a number");
+		assertEquals(0, _compare());
+		_theirs.put(LOAD, "0.5");
+		assertEquals(0, _compare());
+	}
+	
+	@Test public void priority()
+	{
+		_mine.put(PRIORITY, "2");
+		_theirs.put(PRIORITY, "1");
+		_mine.put(LOAD, "0.9");
+		_theirs.put(LOAD, "0.1");
+		assertTrue(_compare() > 0);
+		_theirs.put(PRIORITY, "3");
+		assertTrue(_compare() < 0);
+	}
+	
+	@Test public void ready()
+	{
+		_mine.put(READY, "false");
+		_theirs.put(READY, "true");
+		_mine.put(LOAD, "0.1");
+		_theirs.put(LOAD, "0.9");
+		assertTrue(_compare() < 0);
+		_mine.put(READY, "true");
+		assertTrue(_compare() > 0);
+	}
+	
+	@Test public void loadThenStarted()
+	{
+		_mine.put(LOAD, "0.9");
+		_theirs.put(LOAD, "0.1");
+		assertTrue(_compare() < 0);
+		_mine.put(LOAD, "0.1");
+		_mine.put(STARTED, "1000");
+		_theirs.put(STARTED, "2000");
+		assertTrue(_compare() > 0);
+	}
+	
+	@Test public void closeLoads()
+	{
+		// Loads that are close should be equal
+		_mine.put(LOAD, "0.4");
+		_theirs.put(LOAD, "0.45");
+		assertEquals(0, _compare());
+	}
+	
+	@Test public void symmetric()
+	{
+		// Each node sees its own current load, and the other's load from an earlier heartbeat
+		final Map<String, String> aNow = new HashMap<String, String>(), aSent = new HashMap<String, String>();
+		final Map<String, String> bNow = new HashMap<String, String>(), bSent = new HashMap<String, String>();
+		aNow.put(LOAD, "0.4");
+		aSent.put(LOAD, "0.5");
+		aSent.put(STARTED, "1000");
+		aNow.put(STARTED, "1000");
+		bNow.put(LOAD, "0.4");
+		bSent.put(LOAD, "0.5");
+		bSent.put(STARTED, "2000");
+		bNow.put(STARTED, "2000");
+		final Node a = new Node("1.1.1.1", "A"), b = new Node("1.1.1.2", "B");
+		final int aCompare = _superiority(aNow).compare(a, new Heartbeat("APP", "TEST", b, 1L, bSent));
+		final int bCompare = _superiority(bNow).compare(b, new Heartbeat("APP", "TEST", a, 1L, aSent));
+		
+		// Should not both win
+		assertTrue(aCompare > 0);
+		assertTrue(bCompare < 0);
+	}
+	
+	private static Superiority _superiority(final Map<String, String> payload)
+	{
+		return new PayloadSuperiority(new HeartbeatPayload()
+		{
+			public Map<String, String> getPayload()
+			{
+				return payload;
+			}
+		});
+	}
+}
@@ -0,0 +1,112 @@
+package org.guicebox.failover;
+
+import static java.util.concurrent.TimeUnit.*;
+import static org.junit.Assert.*;
+
+import org.junit.*;
+
+/**
+ * @author willhains
+ */
+public class PhiAccrualFailureDetectorTest
+{
+	private final PhiAccrualFailureDetector _detector = new PhiAccrualFailureDetector();
+	private final Node _sender = new Node("1.1.1.1", "PhiTestSender");
+	private final Node _other = new Node("1.1.1.2", "PhiTestOther");
+	
+	// Simulates heartbeats arriving at the specified intervals (in milliseconds), returning the last arrival time
+	private long _arrive(long start, long... intervals)
+	{
+		long now = start;
+		_detector.onHeartbeat(_sender, now);
+		for(long interval : intervals)
+		{
+			now += MILLISECONDS.toNanos(interval);
+			_detector.onHeartbeat(_sender, now);
+		}
+		return now;
+	}
+	
+	@Test(expected = AssertionError.class) public void invalidThreshold()
+	{
+		_detector.setPhiThreshold(0);
+	}
+	
+	@Test public void defaultsToHeartbeatInterval()
+	{
+		_detector.setHeartbeatInterval(100);
+		final long timeout = _detector.getTimeout();
+		assertTrue(timeout > MILLISECONDS.toNanos(100));
+		assertTrue(timeout < MILLISECONDS.toNanos(1000));
+	}
+	
+	@Test public void learnsFromRegularHeartbeats()
+	{
+		_detector.setHeartbeatInterval(1000);
+		_arrive(0L, 100, 100, 100, 100, 100, 100, 100, 100);
+		
+		// Sub-second detection, even though the configured interval is 1 second
+		final long timeout = _detector.getTimeout();
+		assertTrue(timeout > MILLISECONDS.toNanos(100));
+		assertTrue(timeout < MILLISECONDS.toNanos(500));
+	}
+	
+	@Test public void toleratesJitter()
+	{
+		_arrive(0L, 100, 100, 100, 100, 100, 100, 100, 100);
+		final long regular = _detector.getTimeout();
+		
+		final PhiAccrualFailureDetectorTest jittery = new PhiAccrualFailureDetectorTest();
+		jittery._arrive(0L, 50, 150, 60, 140, 20, 180, 100, 100);
+		assertTrue(jittery._detector.getTimeout() > regular);
+	}
+	
+	@Test public void acceptablePause()
+	{
+		_arrive(0L, 100, 100, 100);
+		final long timeout = _detector.getTimeout();
+		_detector.setAcceptablePause(2000);
+		assertEquals(timeout + MILLISECONDS.toNanos(2000), _detector.getTimeout());
+	}
+	
+	@Test public void higherThresholdWaitsLonger()
+	{
+		_arrive(0L, 100, 100, 100);
+		_detector.setPhiThreshold(1);
+		final long timeout = _detector.getTimeout();
+		_detector.setPhiThreshold(12);
+		assertTrue(_detector.getTimeout() > timeout);
+	}
+	
+	@Test public void phiReachesThresholdAtTimeout()
+	{
+		final long last = _arrive(0L, 100, 110, 90, 105, 95, 100);
+		assertEquals(0.0, _detector.phi(last), 0.01);
+		assertEquals(Math.log10(2), _detector.phi(last + MILLISECONDS.toNanos(100)), 0.01);
+		assertEquals(8.0, _detector.phi(last + _detector.getTimeout()), 0.01);
+		assertTrue(_detector.phi(last + 2 * _detector.getTimeout()) > 8.0);
+	}
+	
+	@Test public void perSender()
+	{
+		// Interleaved heartbeats from two senders shouldn't look like one sender beating twice as fast
+		_arrive(0L, 100, 100, 100, 100, 100, 100, 100, 100);
+		final long regular = _detector.getTimeout();
+		
+		final PhiAccrualFailureDetector interleaved = new PhiAccrualFailureDetector();
+		for(long now = 0L; now <= MILLISECONDS.toNanos(800); now += MILLISECONDS.toNanos(100))
+		{
+			interleaved.onHeartbeat(_sender, now);
+			interleaved.onHeartbeat(_other, now + MILLISECONDS.toNanos(30));
+		}
+		assertEquals(regular, interleaved.getTimeout());
+	}
+	
+	@Test public void ignoresGapsAfterSuspicion()
+	{
+		final long last = _arrive(0L, 100, 100, 100);
+		final long timeout = _detector.getTimeout();
+		_arrive(last + MILLISECONDS.toNanos(60000), 100);
+		assertEquals(timeout, _detector.getTimeout());
+	}
+}
@@ -0,0 +1,90 @@
+package org.guicebox.failover;
+
+import static org.junit.Assert.*;
+
+import java.net.*;
+import java.util.concurrent.*;
+import java.util.logging.*;
+import org.junit.*;
+
+/**
+ * @author willhains
+ */
+public class TcpPingTest
+{
+	private ServerSocket _server;
+	
+	@Before public void listen() throws Exception
+	{
+		_server = new ServerSocket(0, 1, java.net.InetAddress.getByName("127.0.0.1"));
+	}
+	
+	@After public void close() throws Exception
+	{
+		_server.close();
+	}
+	
+	@Test public void parse() throws Exception
+	{
+		assertEquals(new InetSocketAddress("127.0.0.1", 80), TcpPing.parse("127.0.0.1:80", 7));
+		assertEquals(new InetSocketAddress("127.0.0.1", 7), TcpPing.parse("127.0.0.1", 7));
+		assertEquals(new InetSocketAddress("::1", 80), TcpPing.parse("[::1]:80", 7));
+		assertEquals(new InetSocketAddress("::1", 7), TcpPing.parse("[::1]", 7));
+		assertEquals(new InetSocketAddress("::1", 7), TcpPing.parse("::1", 7));
+		assertEquals(new InetSocketAddress("127.0.0.1", 80), TcpPing.parse("127.0.0.1:80"));
+		assertEquals(new InetSocketAddress("::1", 80), TcpPing.parse("[::1]:80"));
+	}
+	
+	@Test(expected = IllegalArgumentException.class) public void missingPort() throws Exception
+	{
+		TcpPing.parse("127.0.0.1");
+	}
+	
+	@Test(expected = IllegalArgumentException.class) public void missingIpv6Port() throws Exception
+	{
+		new TcpPing("[::1]", Logger.getAnonymousLogger());
+	}
+	
+	@Test public void connect() throws Exception
+	{
+		final TcpConnectAddress address = new TcpConnectAddress(new InetSocketAddress("127.0.0.1", _server
+			.getLocalPort()));
+		assertEquals("127.0.0.1:" + _server.getLocalPort(), address.getHostAddress());
+		assertTrue(address.isReachable(1000));
+	}
+	
+	@Test public void refused() throws Exception
+	{
+		final int port = _server.getLocalPort();
+		_server.close();
+		assertTrue(new TcpConnectAddress(new InetSocketAddress("127.0.0.1", port)).isReachable(1000));
+	}
+	
+	@Test public void ping() throws Exception
+	{
+		final CountDownLatch pinged = new CountDownLatch(1);
+		final TcpPing ping = new TcpPing("127.0.0.1:" + _server.getLocalPort(), Logger.getAnonymousLogger());
+		ping.setPingInterval(100);
+		try
+		{
+			ping.start(new PingListener()
+			{
+				public void onPing()
+				{
+					pinged.countDown();
+				}
+				
+				public void onPingTimeout()
+				{
+					fail("Timed out");
+				}
+			});
+			assertTrue(pinged.await(5, TimeUnit.SECONDS));
+			assertTrue(ping.getLatencies().get("127.0.0.1:" + _server.getLocalPort()) >= 0);
+		}
+		finally
+		{
+			ping.stop();
+		}
+	}
+}
@@ -0,0 +1,84 @@
+package org.guicebox.failover;
+
+import static org.junit.Assert.*;
+
+import java.net.*;
+import java.util.concurrent.*;
+import java.util.logging.*;
+import org.junit.*;
+
+/**
+ * @author willhains
+ */
+public class UdpEchoPingTest
+{
+	private UdpEchoResponder _responder;
+	
+	@Before public void startResponder() throws Exception
+	{
+		_responder = new UdpEchoResponder(new InetSocketAddress("127.0.0.1", 0), Logger.getAnonymousLogger());
+		_responder.start();
+	}
+	
+	@After public void stopResponder() throws Exception
+	{
+		_responder.stop();
+	}
+	
+	private UdpEchoAddress _address(int port)
+	{
+		return new UdpEchoAddress(new InetSocketAddress("127.0.0.1", port));
+	}
+	
+	@Test public void echo() throws Exception
+	{
+		final UdpEchoAddress address = _address(_responder.getLocalPort());
+		assertEquals("127.0.0.1:" + _responder.getLocalPort(), address.getHostAddress());
+		assertTrue(address.isReachable(1000));
+		assertTrue(address.isReachable(1000));
+	}
+	
+	@Test public void noEcho() throws Exception
+	{
+		// Listening, but not echoing
+		final DatagramSocket silent = new DatagramSocket(0, java.net.InetAddress.getByName("127.0.0.1"));
+		try
+		{
+			final long start = System.currentTimeMillis();
+			assertFalse(_address(silent.getLocalPort()).isReachable(50));
+			assertTrue(System.currentTimeMillis() - start >= 50);
+		}
+		finally
+		{
+			silent.close();
+		}
+	}
+	
+	@Test public void ping() throws Exception
+	{
+		final CountDownLatch pinged = new CountDownLatch(1);
+		final UdpEchoPing ping = new UdpEchoPing("127.0.0.1:" + _responder.getLocalPort(), Logger
+			.getAnonymousLogger());
+		ping.setPingInterval(100);
+		try
+		{
+			ping.start(new PingListener()
+			{
+				public void onPing()
+				{
+					pinged.countDown();
+				}
+				
+				public void onPingTimeout()
+				{
+					fail("Timed out");
+				}
+			});
+			assertTrue(pinged.await(5, TimeUnit.SECONDS));
+		}
+		finally
+		{
+			ping.stop();
+		}
+	}
+}
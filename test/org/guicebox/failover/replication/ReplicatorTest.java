@@ -0,0 +1,335 @@
+package org.guicebox.failover.replication;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.logging.*;
+import org.guicebox.failover.*;
+import org.guicebox.failover.replication.ReplicationMessage.Kind;
+import org.junit.*;
+
+/**
+ * @author willhains
+ */
+public class ReplicatorTest
+{
+	private final Collection<LocalReplicationTransport> _network =
+		new CopyOnWriteArrayList<LocalReplicationTransport>();
+	private final List<Replicator> _replicators = new ArrayList<Replicator>();
+	
+	// Records what is applied on a node, and supplies its state as a snapshot
+	private static final class Member implements ReplicationSource, ReplicationSink
+	{
+		final BlockingQueue<String> applied = new LinkedBlockingQueue<String>();
+		final List<String> state = new CopyOnWriteArrayList<String>();
+		
+		public byte[] getSnapshot()
+		{
+			return Integer.toString(state.size()).getBytes();
+		}
+		
+		public void onSnapshot(long seqNo, byte[] snapshot)
+		{
+			applied.add("snapshot " + seqNo + " " + new String(snapshot));
+		}
+		
+		public void onDelta(long seqNo, byte[] delta)
+		{
+			applied.add(seqNo + " " + new String(delta));
+		}
+		
+		String next() throws InterruptedException
+		{
+			return applied.poll(5, TimeUnit.SECONDS);
+		}
+	}
+	
+	// Loses the first message of the specified kind that it sends
+	private static final class LossyTransport implements ReplicationTransport
+	{
+		final ReplicationTransport network;
+		final Kind lose;
+		boolean lost;
+		
+		LossyTransport(ReplicationTransport network, Kind lose)
+		{
+			this.network = network;
+			this.lose = lose;
+		}
+		
+		public void connect() throws TransportException
+		{
+			network.connect();
+		}
+		
+		public synchronized void send(ReplicationMessage msg) throws TransportException
+		{
+			if(!lost && msg.getKind() == lose) lost = true;
+			else network.send(msg);
+		}
+		
+		public ReplicationMessage receive(int timeout) throws TransportException, TimeoutException
+		{
+			return network.receive(timeout);
+		}
+		
+		public void disconnect()
+		{
+			network.disconnect();
+		}
+	}
+	
+	private Replicator _createReplicator(Member node)
+	{
+		return _createReplicator(node, new LocalReplicationTransport(_network));
+	}
+	
+	private Replicator _createReplicator(Member node, ReplicationTransport transport)
+	{
+		final Replicator replicator = new Replicator(
+			transport,
+			node,
+			node,
+			Executors.newSingleThreadScheduledExecutor(),
+			Executors.newSingleThreadExecutor(),
+			Logger.getAnonymousLogger());
+		replicator.setReplicationInterval(1);
+		_replicators.add(replicator);
+		return replicator;
+	}
+	
+	private static void _publish(Replicator primary, Member node, int count)
+	{
+		for(int i = 0; i < count; i++)
+		{
+			final String delta = "d" + node.state.size();
+			node.state.add(delta);
+			primary.publish(delta.getBytes());
+		}
+	}
+	
+	@Test public void replicate() throws Exception
+	{
+		final Member primaryNode = new Member(), standbyNode = new Member();
+		final Replicator primary = _createReplicator(primaryNode), standby = _createReplicator(standbyNode);
+		primary.connect();
+		primary.takeOver();
+		standby.connect();
+		
+		_publish(primary, primaryNode, 3);
+		assertEquals("1 d0", standbyNode.next());
+		assertEquals("2 d1", standbyNode.next());
+		assertEquals("3 d2", standbyNode.next());
+		assertEquals(3, primary.getLastApplied());
+		assertEquals(3, standby.getLastApplied());
+	}
+	
+	@Test public void catchUpFromRetainedDeltas() throws Exception
+	{
+		final Member primaryNode = new Member(), standbyNode = new Member();
+		final Replicator primary = _createReplicator(primaryNode);
+		primary.connect();
+		primary.takeOver();
+		_publish(primary, primaryNode, 2);
+		
+		// A late standby should be sent the deltas it missed
+		Thread.sleep(50);
+		_createReplicator(standbyNode).connect();
+		assertEquals("1 d0", standbyNode.next());
+		assertEquals("2 d1", standbyNode.next());
+	}
+	
+	@Test public void catchUpFromSnapshot() throws Exception
+	{
+		final Member primaryNode = new Member(), standbyNode = new Member();
+		final Replicator primary = _createReplicator(primaryNode);
+		primary.connect();
+		primary.takeOver();
+		_publish(primary, primaryNode, 5000);
+		
+		// Too many deltas have been published for a late standby to catch up from them
+		Thread.sleep(50);
+		final Replicator standby = _createReplicator(standbyNode);
+		standby.connect();
+		assertEquals("snapshot 5000 5000", standbyNode.next());
+		_publish(primary, primaryNode, 1);
+		assertEquals("5001 d5000", standbyNode.next());
+	}
+	
+	@Test public void lostRequest() throws Exception
+	{
+		final Member primaryNode = new Member(), standbyNode = new Member();
+		final Replicator primary = _createReplicator(primaryNode);
+		primary.connect();
+		primary.takeOver();
+		_publish(primary, primaryNode, 2);
+		
+		// A standby whose catch-up request is lost should ask again
+		Thread.sleep(50);
+		final LocalReplicationTransport network = new LocalReplicationTransport(_network);
+		_createReplicator(standbyNode, new LossyTransport(network, Kind.CATCH_UP)).connect();
+		assertEquals("1 d0", standbyNode.next());
+		assertEquals("2 d1", standbyNode.next());
+	}
+	
+	@Test public void lostAnswer() throws Exception
+	{
+		final Member primaryNode = new Member(), standbyNode = new Member();
+		final LocalReplicationTransport network = new LocalReplicationTransport(_network);
+		final Replicator primary = _createReplicator(primaryNode, new LossyTransport(network, Kind.SNAPSHOT));
+		primary.connect();
+		primary.takeOver();
+		_publish(primary, primaryNode, 5000);
+		
+		// A standby whose catch-up snapshot is lost should ask again, even while deltas keep arriving
+		Thread.sleep(50);
+		final Replicator standby = _createReplicator(standbyNode);
+		standby.connect();
+		_publish(primary, primaryNode, 1);
+		assertEquals("snapshot 5001 5001", standbyNode.next());
+		assertEquals(5001, standby.getLastApplied());
+	}
+	
+	@Test public void coolAndWarm() throws Exception
+	{
+		final Member primaryNode = new Member(), standbyNode = new Member();
+		final Replicator primary = _createReplicator(primaryNode), standby = _createReplicator(standbyNode);
+		primary.connect();
+		primary.takeOver();
+		standby.connect();
+		_publish(primary, primaryNode, 1);
+		assertEquals("1 d0", standbyNode.next());
+		
+		// A standby that is cooled & warmed again should reconnect and catch up on what it missed
+		standby.disconnect();
+		_publish(primary, primaryNode, 1);
+		Thread.sleep(50);
+		standby.connect();
+		assertEquals("2 d1", standbyNode.next());
+		_publish(primary, primaryNode, 1);
+		assertEquals("3 d2", standbyNode.next());
+		
+		// And again
+		standby.disconnect();
+		_publish(primary, primaryNode, 1);
+		Thread.sleep(50);
+		standby.connect();
+		assertEquals("4 d3", standbyNode.next());
+	}
+	
+	@Test public void takeOver() throws Exception
+	{
+		final Member primaryNode = new Member(), standbyNode = new Member();
+		final Replicator primary = _createReplicator(primaryNode), standby = _createReplicator(standbyNode);
+		primary.connect();
+		primary.takeOver();
+		standby.connect();
+		_publish(primary, primaryNode, 2);
+		assertEquals("1 d0", standbyNode.next());
+		assertEquals("2 d1", standbyNode.next());
+		
+		// The old primary dies, and the standby continues the sequence
+		primary.disconnect();
+		primary.shutdown();
+		standby.takeOver();
+		assertEquals(2, standby.getLastApplied());
+		assertEquals(3, standby.publish("d2".getBytes()));
+	}
+	
+	@Test public void laggingTakeOver() throws Exception
+	{
+		final Member primaryNode = new Member(), laggingNode = new Member(), leadingNode = new Member();
+		final Replicator primary = _createReplicator(primaryNode);
+		final Replicator lagging = _createReplicator(laggingNode), leading = _createReplicator(leadingNode);
+		primary.connect();
+		primary.takeOver();
+		lagging.connect();
+		leading.connect();
+		_publish(primary, primaryNode, 1);
+		assertEquals("1 d0", laggingNode.next());
+		assertEquals("1 d0", leadingNode.next());
+		
+		// One standby misses a delta, then the old primary dies
+		lagging.disconnect();
+		_publish(primary, primaryNode, 1);
+		assertEquals("2 d1", leadingNode.next());
+		primary.disconnect();
+		primary.shutdown();
+		
+		// The lagging standby takes over, so the other should replace its delta 2 with the new primary's state
+		lagging.connect();
+		lagging.takeOver();
+		_publish(lagging, laggingNode, 1);
+		assertEquals("snapshot 2 1", leadingNode.next());
+		_publish(lagging, laggingNode, 1);
+		assertEquals("3 d1", leadingNode.next());
+		assertNull(leadingNode.applied.poll(50, TimeUnit.MILLISECONDS));
+	}
+	
+	@Test public void standByAfterStopping() throws Exception
+	{
+		final Member primaryNode = new Member(), standbyNode = new Member();
+		final Replicator primary = _createReplicator(primaryNode), standby = _createReplicator(standbyNode);
+		primary.setReplicationInterval(60000);
+		primary.connect();
+		primary.takeOver();
+		standby.connect();
+		
+		// Outstanding deltas should be sent when stopping
+		_publish(primary, primaryNode, 1);
+		primary.standBy();
+		assertEquals("1 d0", standbyNode.next());
+		
+		// Then the roles can swap
+		standby.takeOver();
+		standby.publish("d1".getBytes());
+		assertEquals("2 d1", primaryNode.next());
+	}
+	
+	@Test(expected = IllegalStateException.class) public void publishOnStandby()
+	{
+		_createReplicator(new Member()).publish(new byte[0]);
+	}
+	
+	@Test public void gap() throws Exception
+	{
+		final Member standbyNode = new Member();
+		final Replicator standby = _createReplicator(standbyNode);
+		final LocalReplicationTransport primary = new LocalReplicationTransport(_network);
+		final List<byte[]> deltas = Collections.singletonList("d".getBytes());
+		
+		// Missing deltas should be requested once, and later deltas ignored until they arrive
+		standby.onMessage(new ReplicationMessage(Kind.DELTAS, 1, 0, 1, deltas));
+		standby.onMessage(new ReplicationMessage(Kind.DELTAS, 1, 0, 3, deltas));
+		standby.onMessage(new ReplicationMessage(Kind.DELTAS, 1, 0, 4, deltas));
+		final ReplicationMessage request = primary.receive(1000);
+		assertEquals(Kind.CATCH_UP, request.getKind());
+		assertEquals(1, request.getSequenceNumber());
+		try
+		{
+			primary.receive(10);
+			fail("Expected only one catch-up request");
+		}
+		catch(TimeoutException e)
+		{
+			// Correct behaviour
+		}
+		assertEquals("1 d", standbyNode.next());
+		assertNull(standbyNode.applied.poll());
+		
+		// Repeated and old deltas are ignored
+		standby.onMessage(new ReplicationMessage(Kind.DELTAS, 1, 0, 1, Arrays.asList("d".getBytes(), "e".getBytes())));
+		assertEquals("2 e", standbyNode.next());
+		assertNull(standbyNode.applied.poll());
+	}
+	
+	@After public void shutdown()
+	{
+		for(Replicator replicator : _replicators)
+		{
+			replicator.disconnect();
+			replicator.shutdown();
+		}
+	}
+}
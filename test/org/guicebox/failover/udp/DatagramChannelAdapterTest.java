@@ -0,0 +1,47 @@
+package org.guicebox.failover.udp;
+
+import static org.junit.Assert.*;
+
+import java.net.*;
+import java.util.*;
+import org.junit.*;
+
+/**
+ * @author willhains
+ */
+public class DatagramChannelAdapterTest
+{
+	private final List<NetworkInterface> _loopback = new ArrayList<NetworkInterface>();
+	private final List<NetworkInterface> _external = new ArrayList<NetworkInterface>();
+	
+	@Before public void findInterfaces() throws Exception
+	{
+		for(NetworkInterface ni : Collections.list(NetworkInterface.getNetworkInterfaces()))
+		{
+			if(!ni.isUp()) continue;
+			if(ni.isLoopback()) _loopback.add(ni);
+			else if(ni.supportsMulticast()) _external.add(ni);
+		}
+	}
+	
+	@Test public void skipLoopback() throws Exception
+	{
+		// Should prefer any other multicast interface, even when loopback is listed first
+		Assume.assumeTrue(!_loopback.isEmpty() && !_external.isEmpty());
+		final List<NetworkInterface> interfaces = new ArrayList<NetworkInterface>(_loopback);
+		interfaces.addAll(_external);
+		assertEquals(_external.get(0), DatagramChannelAdapter.defaultInterface(interfaces));
+	}
+	
+	@Test public void onlyLoopback() throws Exception
+	{
+		// Should fall back to loopback, so a lone host can still hear itself
+		Assume.assumeTrue(!_loopback.isEmpty());
+		assertEquals(_loopback.get(0), DatagramChannelAdapter.defaultInterface(_loopback));
+	}
+	
+	@Test public void noInterfaces() throws Exception
+	{
+		assertNull(DatagramChannelAdapter.defaultInterface(Collections.<NetworkInterface> emptyList()));
+	}
+}
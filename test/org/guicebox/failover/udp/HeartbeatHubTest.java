@@ -0,0 +1,251 @@
+package org.guicebox.failover.udp;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.net.*;
+import java.net.InetAddress;
+import java.nio.*;
+import java.util.*;
+import java.util.concurrent.*;
+import org.guicebox.failover.*;
+import org.junit.*;
+
+/**
+ * @author willhains
+ */
+public class HeartbeatHubTest
+{
+	// Values
+	private final Node _localhost = new Node("127.0.0.1", "HubTestProcess");
+	private final Node _peer = new Node("1.1.1.1", "HubTestPeer");
+	private final Heartbeat _ownA = new Heartbeat("ClusterA", "TEST", _localhost);
+	private final Heartbeat _peerA = new Heartbeat("ClusterA", "TEST", _peer);
+	private final Heartbeat _ownB = new Heartbeat("ClusterB", "TEST", _localhost);
+	private final Heartbeat _peerB = new Heartbeat("ClusterB", "TEST", _peer);
+	private final Heartbeat _peerC = new Heartbeat("ClusterC", "TEST", _peer);
+	private final String _groupAddress = "1.1.1.1";
+	
+	// Fake channels
+	private final FakeChannel _receiveChannel = new FakeChannel(), _sendChannel = new FakeChannel();
+	private int _receiveChannelsOpened;
+	private FakeChannelHub _hub;
+	
+	@Before public void createHub()
+	{
+		_hub = new FakeChannelHub();
+	}
+	
+	@After public void shutdownHub()
+	{
+		_hub.shutdown();
+	}
+	
+	private HubTransport _transport() throws Exception
+	{
+		final HubTransport transport = new HubTransport(_hub, _groupAddress);
+		transport.setSourcePort(1111);
+		transport.setDestinationPort(2222);
+		return transport;
+	}
+	
+	// Collects the heartbeats pushed to it
+	private static final class Collector implements HeartbeatListener
+	{
+		final BlockingQueue<Heartbeat> received = new LinkedBlockingQueue<Heartbeat>();
+		
+		public void onHeartbeat(Heartbeat heartbeat)
+		{
+			received.add(heartbeat);
+		}
+		
+		public void onHeartbeatTimeout()
+		{
+			fail("Should never be called");
+		}
+	}
+	
+	@Test public void demultiplex() throws Exception
+	{
+		// Two clusters share one receive channel
+		final Collector clusterA = new Collector(), clusterB = new Collector();
+		_transport().subscribe(_ownA, clusterA);
+		_transport().subscribe(_ownB, clusterB);
+		assertEquals(1, _receiveChannelsOpened);
+		
+		// Each cluster should only get heartbeats from its own peers
+		_receiveChannel.deliver(_ownA);
+		_receiveChannel.deliver(_peerC);
+		_receiveChannel.deliver(_peerB);
+		_receiveChannel.deliver(_peerA);
+		assertEquals(_peerA, clusterA.received.poll(5, TimeUnit.SECONDS));
+		assertEquals(_peerB, clusterB.received.poll(5, TimeUnit.SECONDS));
+		assertTrue(clusterA.received.isEmpty());
+		assertTrue(clusterB.received.isEmpty());
+	}
+	
+	@Test public void unsubscribe() throws Exception
+	{
+		final Collector clusterA = new Collector(), clusterB = new Collector();
+		final HubTransport transport = _transport();
+		transport.subscribe(_ownA, clusterA);
+		transport.subscribe(_ownB, clusterB);
+		transport.unsubscribe(clusterA);
+		
+		// Should no longer get heartbeats
+		_receiveChannel.deliver(_peerA);
+		_receiveChannel.deliver(_peerB);
+		assertEquals(_peerB, clusterB.received.poll(5, TimeUnit.SECONDS));
+		assertTrue(clusterA.received.isEmpty());
+	}
+	
+	@Test public void receive() throws Exception
+	{
+		_receiveChannel.deliver(_peerB);
+		_receiveChannel.deliver(_peerA);
+		assertEquals(_peerA, _transport().receive(_ownA, 5000));
+		try
+		{
+			_transport().receive(_ownA, 10);
+			fail("Expected TimeoutException");
+		}
+		catch(TimeoutException e)
+		{
+			// Correct behaviour
+		}
+	}
+	
+	@Test public void send() throws Exception
+	{
+		// Both clusters should send through the same channel
+		_transport().send(_ownA);
+		_transport().send(_ownB);
+		assertEquals(_ownA, _sendChannel.sent.poll());
+		assertEquals(_ownB, _sendChannel.sent.poll());
+		assertSame(_hub.getScheduler(), _transport().getScheduler());
+	}
+	
+	@Test public void legacy() throws Exception
+	{
+		// Only clusters that accept legacy heartbeats should get them
+		final Collector clusterA = new Collector(), clusterB = new Collector();
+		final HubTransport legacy = _transport();
+		legacy.setLegacyHeartbeats(true);
+		legacy.subscribe(_ownA, clusterA);
+		_transport().subscribe(_ownB, clusterB);
+		_receiveChannel.deliverLegacy(_peerB);
+		_receiveChannel.deliverLegacy(_peerA);
+		_receiveChannel.deliver(_peerB);
+		assertEquals(_peerA, clusterA.received.poll(5, TimeUnit.SECONDS));
+		assertEquals(_peerB, clusterB.received.poll(5, TimeUnit.SECONDS));
+		assertTrue(clusterA.received.isEmpty());
+		assertTrue(clusterB.received.isEmpty());
+	}
+	
+	@Test public void loopback() throws Exception
+	{
+		// Find a free port
+		final DatagramSocket probe = new DatagramSocket();
+		final int port = probe.getLocalPort();
+		probe.close();
+		
+		// Unicast to self through real channels
+		final HeartbeatHub hub = new HeartbeatHub();
+		try
+		{
+			final HubTransport transport = new HubTransport(hub, "127.0.0.1");
+			transport.setSourcePort(0);
+			transport.setDestinationPort(port);
+			final Collector clusterA = new Collector(), clusterB = new Collector();
+			transport.subscribe(_ownA, clusterA);
+			transport.subscribe(_ownB, clusterB);
+			transport.send(_peerB);
+			assertEquals(_peerB, clusterB.received.poll(5, TimeUnit.SECONDS));
+			assertTrue(clusterA.received.isEmpty());
+		}
+		finally
+		{
+			hub.shutdown();
+		}
+	}
+	
+	// Delivers queued heartbeats to the receiver, and keeps sent heartbeats
+	private static final class FakeChannel implements HeartbeatChannel
+	{
+		private final HeartbeatCodec _codec = new HeartbeatCodec(), _legacyCodec = new HeartbeatCodec();
+		private final BlockingQueue<ByteBuffer> _inbox = new LinkedBlockingQueue<ByteBuffer>();
+		final Queue<Heartbeat> sent = new ConcurrentLinkedQueue<Heartbeat>();
+		private volatile boolean _open = true;
+		
+		FakeChannel()
+		{
+			_legacyCodec.setLegacy(true);
+		}
+		
+		void deliver(Heartbeat hb) throws IOException
+		{
+			_deliver(hb, _codec);
+		}
+		
+		void deliverLegacy(Heartbeat hb) throws IOException
+		{
+			_deliver(hb, _legacyCodec);
+		}
+		
+		private void _deliver(Heartbeat hb, HeartbeatCodec codec) throws IOException
+		{
+			final ByteBuffer encoded = ByteBuffer.allocate(HeartbeatCodec.MAX_LENGTH);
+			codec.encode(hb, encoded);
+			_inbox.add(encoded);
+		}
+		
+		public boolean receive(ByteBuffer buf, long timeout) throws IOException
+		{
+			try
+			{
+				final ByteBuffer encoded = _inbox.poll(timeout == 0 ? 100 : timeout, TimeUnit.MILLISECONDS);
+				if(encoded == null) return false;
+				buf.clear();
+				buf.put(encoded);
+				buf.flip();
+				return true;
+			}
+			catch(InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+		
+		public void send(ByteBuffer buf, SocketAddress target)
+		{
+			sent.add(_codec.decode(buf));
+		}
+		
+		public boolean isOpen()
+		{
+			return _open;
+		}
+		
+		public void close()
+		{
+			_open = false;
+		}
+	}
+	
+	private final class FakeChannelHub extends HeartbeatHub
+	{
+		@Override protected HeartbeatChannel openReceiveChannel(InetAddress group, int port, String interfaceName)
+		{
+			assertEquals(2222, port);
+			_receiveChannelsOpened++;
+			return _receiveChannel;
+		}
+		
+		@Override protected HeartbeatChannel openSendChannel(InetAddress group, int port, int ttl, String interfaceName)
+		{
+			assertEquals(1111, port);
+			return _sendChannel;
+		}
+	}
+}
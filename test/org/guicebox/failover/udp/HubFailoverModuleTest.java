@@ -0,0 +1,36 @@
+package org.guicebox.failover.udp;
+
+import static org.junit.Assert.*;
+
+import com.google.inject.*;
+import org.guicebox.*;
+import org.guicebox.failover.*;
+import org.junit.*;
+
+/**
+ * @author willhains
+ */
+public class HubFailoverModuleTest
+{
+	@Test public void checkBindings() throws Exception
+	{
+		final String appName = "HubFailoverModuleTest";
+		final HeartbeatHub hub = new HeartbeatHub();
+		final Injector injector = Guice.createInjector(new HubFailoverModule(appName, hub), new AbstractModule()
+		{
+			@Override protected void configure()
+			{
+				bindConstant().annotatedWith(UserName.class).to("TEST");
+				bindConstant().annotatedWith(WellKnownAddress.class).to("1.1.1.1");
+				bindConstant().annotatedWith(GroupAddress.class).to("2.2.2.2");
+			}
+		});
+		UdpFailoverModuleTest.assertBinding(injector, Cluster.class, Failover.class);
+		UdpFailoverModuleTest.assertBinding(injector, Ping.class, JavaPing.class);
+		UdpFailoverModuleTest.assertBinding(injector, Heart.class, NonBlockingHeart.class);
+		UdpFailoverModuleTest.assertBinding(injector, Transport.class, HubTransport.class);
+		assertSame(hub, injector.getInstance(HeartbeatHub.class));
+		assertEquals(appName, UdpFailoverModuleTest.getConstant(injector, ApplicationName.class));
+		hub.shutdown();
+	}
+}
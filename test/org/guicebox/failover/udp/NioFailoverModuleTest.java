@@ -0,0 +1,35 @@
+package org.guicebox.failover.udp;
+
+import static org.junit.Assert.*;
+
+import com.google.inject.*;
+import org.guicebox.*;
+import org.guicebox.failover.*;
+import org.junit.*;
+
+/**
+ * @author willhains
+ */
+public class NioFailoverModuleTest
+{
+	@Test public void checkBindings() throws Exception
+	{
+		final String appName = "NioFailoverModuleTest";
+		final Injector injector = Guice.createInjector(new NioFailoverModule(appName), new AbstractModule()
+		{
+			@Override protected void configure()
+			{
+				bindConstant().annotatedWith(UserName.class).to("TEST");
+				bindConstant().annotatedWith(WellKnownAddress.class).to("1.1.1.1");
+				bindConstant().annotatedWith(GroupAddress.class).to("2.2.2.2");
+			}
+		});
+		UdpFailoverModuleTest.assertBinding(injector, Cluster.class, Failover.class);
+		UdpFailoverModuleTest.assertBinding(injector, Ping.class, JavaPing.class);
+		UdpFailoverModuleTest.assertBinding(injector, Heart.class, NonBlockingHeart.class);
+		UdpFailoverModuleTest.assertBinding(injector, Transport.class, NioTransport.class);
+		assertEquals(appName, UdpFailoverModuleTest.getConstant(injector, ApplicationName.class));
+		assertNotNull(UdpFailoverModuleTest.getConstant(injector, ProcessId.class));
+		assertNotNull(UdpFailoverModuleTest.getConstant(injector, Localhost.class));
+	}
+}
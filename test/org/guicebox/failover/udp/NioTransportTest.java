@@ -0,0 +1,358 @@
+package org.guicebox.failover.udp;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.net.*;
+import java.net.InetAddress;
+import java.nio.*;
+import java.util.concurrent.*;
+import org.easymock.*;
+import org.guicebox.failover.*;
+import org.junit.*;
+
+/**
+ * @author willhains
+ */
+public class NioTransportTest
+{
+	// Mocks
+	private HeartbeatChannel _channel;
+	
+	// Captures
+	private final Capture<ByteBuffer> _buf = new Capture<ByteBuffer>();
+	private final Capture<Long> _wait = new Capture<Long>();
+	
+	// Values
+	private final Node _localhost = new Node("127.0.0.1", "HeartTestProcess");
+	private final Node _peer = new Node("1.1.1.1", "HeartTestPeer");
+	private final Heartbeat _pulse = new Heartbeat("NioTransportTest", "TEST", _localhost);
+	private final Heartbeat _peerPulse = new Heartbeat("NioTransportTest", "TEST", _peer);
+	private final String _groupAddress = "1.1.1.1";
+	private final int _timeout = 10;
+	private final int _ttl = 8, _sourcePort = 1111, _destPort = 2222;
+	
+	@Before public void createMocks() throws Exception
+	{
+		_channel = createMock(HeartbeatChannel.class);
+	}
+	
+	private NioTransport _transport() throws Exception
+	{
+		final NioTransport nio = new MockChannelNioTransport(_groupAddress);
+		nio.setTimeToLive(_ttl);
+		nio.setSourcePort(_sourcePort);
+		nio.setDestinationPort(_destPort);
+		return nio;
+	}
+	
+	// Answers a receive call with the specified heartbeat
+	private IAnswer<Boolean> _deliver(final Heartbeat hb)
+	{
+		return new IAnswer<Boolean>()
+		{
+			public Boolean answer() throws Throwable
+			{
+				new HeartbeatCodec().encode(hb, _buf.getValue());
+				return true;
+			}
+		};
+	}
+	
+	// Answers a receive call by waiting for the timeout to expire
+	private final IAnswer<Boolean> _nothing = new IAnswer<Boolean>()
+	{
+		public Boolean answer() throws Throwable
+		{
+			Thread.sleep(_wait.getValue());
+			return false;
+		}
+	};
+	
+	@Test public void receiveSuccessfully() throws Exception
+	{
+		expect(_channel.receive(capture(_buf), capture(_wait))).andAnswer(_deliver(_peerPulse));
+		
+		replay(_channel);
+		
+		assertEquals(_peerPulse, _transport().receive(_pulse, _timeout));
+		assertTrue(_wait.getValue() <= _timeout);
+		
+		verify(_channel);
+	}
+	
+	@Test public void receiveTimeout() throws Exception
+	{
+		expect(_channel.receive(capture(_buf), capture(_wait))).andAnswer(_nothing).atLeastOnce();
+		
+		replay(_channel);
+		
+		final long start = System.nanoTime();
+		try
+		{
+			_transport().receive(_pulse, _timeout);
+			fail("Expected TimeoutException");
+		}
+		catch(TimeoutException e)
+		{
+			// Correct behaviour
+			assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(_timeout - 1));
+		}
+		
+		verify(_channel);
+	}
+	
+	@Test public void receiveIOException() throws Exception
+	{
+		final String errorStr = "Aaarrggh!! Network error!!";
+		expect(_channel.receive(capture(_buf), capture(_wait))).andThrow(new IOException(errorStr));
+		
+		replay(_channel);
+		
+		try
+		{
+			_transport().receive(_pulse, _timeout);
+			fail("Expected TransportException");
+		}
+		catch(TransportException e)
+		{
+			// Correct behaviour
+			assertEquals("java.io.IOException: " + errorStr, e.getMessage());
+		}
+		
+		verify(_channel);
+	}
+	
+	@Test public void receiveIgnoresOwnAndOtherClusterHeartbeats() throws Exception
+	{
+		expect(_channel.receive(capture(_buf), capture(_wait))).andAnswer(_deliver(_pulse));
+		expect(_channel.receive(capture(_buf), capture(_wait))).andAnswer(
+			_deliver(new Heartbeat("AnotherCluster", "TEST", _peer)));
+		expect(_channel.receive(capture(_buf), capture(_wait))).andAnswer(_nothing).atLeastOnce();
+		
+		replay(_channel);
+		
+		try
+		{
+			_transport().receive(_pulse, _timeout);
+			fail("Expected TimeoutException");
+		}
+		catch(TimeoutException e)
+		{
+			// Correct behaviour
+		}
+		
+		verify(_channel);
+	}
+	
+	@Test public void receiveNonHeartbeatThenHeartbeat() throws Exception
+	{
+		expect(_channel.receive(capture(_buf), capture(_wait))).andAnswer(new IAnswer<Boolean>()
+		{
+			public Boolean answer() throws Throwable
+			{
+				final ByteBuffer buf = _buf.getValue();
+				buf.clear();
+				buf.put("I am not a heartbeat".getBytes("UTF-8"));
+				buf.flip();
+				return true;
+			}
+		});
+		expect(_channel.receive(capture(_buf), capture(_wait))).andAnswer(_deliver(_peerPulse));
+		
+		replay(_channel);
+		
+		assertEquals(_peerPulse, _transport().receive(_pulse, _timeout));
+		
+		verify(_channel);
+	}
+	
+	@Test public void receiveInterrupted() throws Exception
+	{
+		replay(_channel);
+		
+		try
+		{
+			Thread.currentThread().interrupt();
+			_transport().receive(_pulse, _timeout);
+			fail("Expected TimeoutException");
+		}
+		catch(TimeoutException e)
+		{
+			// Correct behaviour
+			assertTrue(Thread.interrupted());
+		}
+		
+		verify(_channel);
+	}
+	
+	@Test public void receivePushed() throws Exception
+	{
+		final HeartbeatListener listener = createMock(HeartbeatListener.class);
+		expect(_channel.receive(capture(_buf), eq(0L))).andAnswer(_deliver(_pulse));
+		expect(_channel.receive(capture(_buf), eq(0L))).andAnswer(_deliver(_peerPulse));
+		expect(_channel.receive(capture(_buf), eq(0L))).andReturn(false);
+		expect(_channel.receive(capture(_buf), eq(0L))).andAnswer(_deliver(_peerPulse));
+		expect(_channel.receive(capture(_buf), eq(0L))).andAnswer(new IAnswer<Boolean>()
+		{
+			public Boolean answer() throws Throwable
+			{
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		});
+		listener.onHeartbeat(_peerPulse);
+		expectLastCall().times(2);
+		
+		replay(_channel, listener);
+		
+		_transport().receive(_pulse, listener);
+		assertTrue(Thread.interrupted());
+		
+		verify(_channel, listener);
+	}
+	
+	@Test public void sendSuccessfully() throws Exception
+	{
+		final Capture<SocketAddress> target = new Capture<SocketAddress>();
+		expect(_channel.isOpen()).andReturn(true);
+		_channel.send(capture(_buf), capture(target));
+		expectLastCall().times(2);
+		
+		replay(_channel);
+		
+		final NioTransport nio = _transport();
+		nio.send(_pulse);
+		nio.send(_pulse);
+		assertEquals(_pulse, new HeartbeatCodec().decode(_buf.getValue()));
+		assertEquals(new InetSocketAddress(InetAddress.getByName(_groupAddress), _destPort), target.getValue());
+		
+		verify(_channel);
+	}
+	
+	@Test public void sendIOException() throws Exception
+	{
+		final String errorStr = "Aaarrggh!! Network error!!";
+		_channel.send(capture(_buf), isA(SocketAddress.class));
+		expectLastCall().andThrow(new IOException(errorStr));
+		
+		replay(_channel);
+		
+		try
+		{
+			_transport().send(_pulse);
+			fail("Expected TransportException");
+		}
+		catch(TransportException e)
+		{
+			// Correct behaviour
+			assertEquals("java.io.IOException: " + errorStr, e.getMessage());
+		}
+		
+		verify(_channel);
+	}
+	
+	@Test public void disconnect() throws Exception
+	{
+		_channel.send(capture(_buf), isA(SocketAddress.class));
+		expect(_channel.receive(capture(_buf), capture(_wait))).andAnswer(_deliver(_peerPulse));
+		_channel.close();
+		expectLastCall().times(2);
+		
+		replay(_channel);
+		
+		final NioTransport nio = _transport();
+		nio.send(_pulse);
+		nio.receive(_pulse, _timeout);
+		nio.disconnect();
+		
+		verify(_channel);
+	}
+	
+	@Test public void loopback() throws Exception
+	{
+		// Find a free port
+		final DatagramSocket probe = new DatagramSocket();
+		final int port = probe.getLocalPort();
+		probe.close();
+		
+		// Unicast to self through real channels
+		final NioTransport nio = new NioTransport("127.0.0.1");
+		nio.setSourcePort(0);
+		nio.setDestinationPort(port);
+		try
+		{
+			try
+			{
+				nio.receive(_pulse, 1);
+				fail("Expected TimeoutException");
+			}
+			catch(TimeoutException e)
+			{
+				// Correct behaviour
+			}
+			nio.send(_peerPulse);
+			assertEquals(_peerPulse, nio.receive(_pulse, 5000));
+		}
+		finally
+		{
+			nio.disconnect();
+		}
+	}
+	
+	@Test public void disconnectWhileReceiving() throws Exception
+	{
+		// Find a free port
+		final DatagramSocket probe = new DatagramSocket();
+		final int port = probe.getLocalPort();
+		probe.close();
+		
+		// Receive pushed heartbeats through real channels on a quiet network
+		final NioTransport nio = new NioTransport("127.0.0.1");
+		nio.setDestinationPort(port);
+		final FutureTask<Void> receiving = new FutureTask<Void>(new Callable<Void>()
+		{
+			public Void call() throws Exception
+			{
+				nio.receive(_pulse, createMock(HeartbeatListener.class));
+				return null;
+			}
+		});
+		new Thread(receiving).start();
+		Thread.sleep(200);
+		
+		// Should not wait for a heartbeat to release the receiving thread
+		final FutureTask<Void> disconnecting = new FutureTask<Void>(new Runnable()
+		{
+			public void run()
+			{
+				nio.disconnect();
+			}
+		}, null);
+		new Thread(disconnecting).start();
+		disconnecting.get(5, TimeUnit.SECONDS);
+		receiving.get(5, TimeUnit.SECONDS);
+	}
+	
+	private final class MockChannelNioTransport extends NioTransport
+	{
+		MockChannelNioTransport(String groupAddress) throws UnknownHostException
+		{
+			super(groupAddress);
+		}
+		
+		@Override protected HeartbeatChannel openReceiveChannel(InetAddress group, int port, String interfaceName)
+		{
+			assertEquals(_destPort, port);
+			return _channel;
+		}
+		
+		@Override protected HeartbeatChannel openSendChannel(InetAddress group, int port, int ttl, String interfaceName)
+		{
+			assertEquals(_sourcePort, port);
+			assertEquals(_ttl, ttl);
+			return _channel;
+		}
+	}
+}
@@ -34,6 +34,22 @@ public class UdpFailoverModuleTest
 		assertNotNull(getConstant(injector, Localhost.class));
 	}
 	
+	@Test public void selectPing() throws Exception
+	{
+		final Injector injector = Guice.createInjector(
+			new UdpFailoverModule("UdpFailoverModuleTest", TcpPing.class),
+			new AbstractModule()
+			{
+				@Override protected void configure()
+				{
+					bindConstant().annotatedWith(UserName.class).to("TEST");
+					bindConstant().annotatedWith(WellKnownAddress.class).to("1.1.1.1:80");
+					bindConstant().annotatedWith(GroupAddress.class).to("2.2.2.2");
+				}
+			});
+		assertBinding(injector, Ping.class, TcpPing.class);
+	}
+	
 	static void assertBinding(final Injector injector, final Class<?> intfc, final Class<?> impl)
 	{
 		assertSame(impl, injector.getInstance(intfc).getClass());
@@ -314,6 +314,26 @@ import org.junit.*;
 		verify(_mocks);
 	}
 	
+	@Test public void sendLegacy() throws Exception
+	{
+		_socket.setTimeToLive(_ttl);
+		_socket.send(capture(_msg));
+		
+		replay(_mocks);
+		
+		final MockSocketUdpTransport udp = new MockSocketUdpTransport(_groupAddress);
+		udp.setTimeToLive(_ttl);
+		udp.setSourcePort(_sourcePort);
+		udp.setDestinationPort(_destPort);
+		udp.setLegacyHeartbeats(true);
+		udp.send(_pulse.get());
+		final DatagramPacket msg = _msg.getValue();
+		final InputStream in = new ByteArrayInputStream(msg.getData(), msg.getOffset(), msg.getLength());
+		assertEquals(_pulse.get(), new ObjectInputStream(in).readObject());
+		
+		verify(_mocks);
+	}
+	
 	@Test public void sendIOException() throws Exception
 	{
 		final String errorStr = "Aaarrggh!! Network error!!";